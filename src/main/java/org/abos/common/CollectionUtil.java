@@ -34,6 +34,29 @@ public final class CollectionUtil {
         return it.next();
     }
 
+    /**
+     * Randomly permutes the specified range of the given array.
+     *
+     * @param array the array to shuffle
+     * @param fromIndex the first index to shuffle (inclusive)
+     * @param toIndex the last index to shuffle (exclusive)
+     * @param random a {@link Random} instance
+     * @throws NullPointerException If {@code array} or {@code random} refers to {@code null}.
+     * @throws IndexOutOfBoundsException If the range is invalid.
+     * @implNote Draws from {@code random} exactly like {@link Collections#shuffle(List, Random)} does
+     * for a list of the same size, so both produce the same permutation.
+     */
+    public static void shuffle(final int[] array, final int fromIndex, final int toIndex, final Random random) {
+        Objects.checkFromToIndex(fromIndex, toIndex, array.length);
+        Objects.requireNonNull(random);
+        for (int i = toIndex - fromIndex; i > 1; i--) {
+            final int j = fromIndex + random.nextInt(i);
+            final int tmp = array[fromIndex + i - 1];
+            array[fromIndex + i - 1] = array[j];
+            array[j] = tmp;
+        }
+    }
+
     /**
      * Returns a random entry from the given map.
      *
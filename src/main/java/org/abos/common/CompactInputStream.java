@@ -0,0 +1,111 @@
+package org.abos.common;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A {@link DataInputStream} reading what a {@link CompactOutputStream} wrote.
+ */
+public class CompactInputStream extends DataInputStream {
+
+    /**
+     * The string table to look up strings in.
+     */
+    protected final List<String> strings;
+
+    /**
+     * If new strings are read right after their index.
+     */
+    protected final boolean inlineStrings;
+
+    /**
+     * Creates a new {@link CompactInputStream} reading each string right after its index the first time,
+     * as written by {@link CompactOutputStream#CompactOutputStream(java.io.OutputStream, boolean)}.
+     * @param in the underlying input stream
+     */
+    public CompactInputStream(final InputStream in) {
+        super(in);
+        strings = new ArrayList<>();
+        inlineStrings = true;
+    }
+
+    /**
+     * Creates a new {@link CompactInputStream}.
+     * @param in the underlying input stream
+     * @param strings the string table, usually read by {@link #readStringTable(DataInputStream)}, not {@code null}
+     * @throws NullPointerException If {@code strings} refers to {@code null}.
+     */
+    public CompactInputStream(final InputStream in, final List<String> strings) {
+        super(in);
+        this.strings = Objects.requireNonNull(strings);
+        inlineStrings = false;
+    }
+
+    /**
+     * Reads an {@code int} written by {@link CompactOutputStream#writeVarInt(int)}.
+     * @return the read value
+     * @throws IOException If an I/O exception occurs or the value is malformed.
+     */
+    public final int readVarInt() throws IOException {
+        int result = 0;
+        for (int shift = 0; shift < Integer.SIZE; shift += 7) {
+            final int b = readUnsignedByte();
+            result |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new IOException("Malformed variable-length integer!");
+    }
+
+    /**
+     * Reads an {@code int} written by {@link CompactOutputStream#writeSignedVarInt(int)}.
+     * @return the read value
+     * @throws IOException If an I/O exception occurs or the value is malformed.
+     */
+    public final int readSignedVarInt() throws IOException {
+        final int v = readVarInt();
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    /**
+     * Reads a string written by {@link CompactOutputStream#writeTableString(String)}.
+     * @return the read string, not {@code null}
+     * @throws IOException If an I/O exception occurs or the index isn't in the string table.
+     */
+    public final String readTableString() throws IOException {
+        final int index = readVarInt();
+        if (inlineStrings && index == strings.size()) {
+            final String s = readUTF();
+            strings.add(s);
+            return s;
+        }
+        if (index < 0 || index >= strings.size()) {
+            throw new IOException("String index " + index + " out of range!");
+        }
+        return strings.get(index);
+    }
+
+    /**
+     * Reads a string table written by {@link CompactOutputStream#writeStringTable()}.
+     * @param dis the {@link DataInputStream} to read from, might be a {@link CompactInputStream} as well
+     * @return the string table
+     * @throws IOException If an I/O exception occurs.
+     */
+    public static List<String> readStringTable(final DataInputStream dis) throws IOException {
+        final CompactInputStream cis = dis instanceof CompactInputStream compact ? compact : new CompactInputStream(dis, List.of());
+        final int size = cis.readVarInt();
+        if (size < 0) {
+            throw new IOException("Negative string table size!");
+        }
+        final List<String> result = new ArrayList<>(Math.min(size, 1 << 16));
+        for (int i = 0; i < size; i++) {
+            result.add(dis.readUTF());
+        }
+        return result;
+    }
+}
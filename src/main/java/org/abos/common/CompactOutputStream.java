@@ -0,0 +1,119 @@
+package org.abos.common;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A {@link DataOutputStream} which can additionally write variable-length integers and strings
+ * as indices into a string table, which has to be written separately with {@link #writeStringTable()}.
+ * Alternatively each string is written right after its index the first time, so the stream can be read in one pass,
+ * see {@link #CompactOutputStream(OutputStream, boolean)}.
+ * @see CompactInputStream
+ */
+public class CompactOutputStream extends DataOutputStream {
+
+    /**
+     * The index of each string in the string table.
+     */
+    protected final Map<String, Integer> stringIndices = new HashMap<>();
+
+    /**
+     * The string table, in order of first occurrence.
+     */
+    protected final List<String> strings = new ArrayList<>();
+
+    /**
+     * If new strings are written right after their index.
+     */
+    protected final boolean inlineStrings;
+
+    /**
+     * Creates a new {@link CompactOutputStream} with an empty string table.
+     * @param out the underlying output stream
+     */
+    public CompactOutputStream(final OutputStream out) {
+        this(out, false);
+    }
+
+    /**
+     * Creates a new {@link CompactOutputStream} with an empty string table.
+     * @param out the underlying output stream
+     * @param inlineStrings if each string is written right after its index the first time,
+     *                      to be read by {@link CompactInputStream#CompactInputStream(java.io.InputStream)}
+     */
+    public CompactOutputStream(final OutputStream out, final boolean inlineStrings) {
+        super(out);
+        this.inlineStrings = inlineStrings;
+    }
+
+    /**
+     * Writes an {@code int} in one to five bytes, seven bits per byte, small non-negative values taking the fewest bytes.
+     * @param v the value to write
+     * @throws IOException If an I/O exception occurs.
+     * @see CompactInputStream#readVarInt()
+     */
+    public final void writeVarInt(int v) throws IOException {
+        while ((v & ~0x7F) != 0) {
+            write((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        write(v);
+    }
+
+    /**
+     * Writes an {@code int} like {@link #writeVarInt(int)}, but values close to zero take the fewest bytes regardless of their sign.
+     * @param v the value to write
+     * @throws IOException If an I/O exception occurs.
+     * @see CompactInputStream#readSignedVarInt()
+     */
+    public final void writeSignedVarInt(final int v) throws IOException {
+        writeVarInt((v << 1) ^ (v >> 31));
+    }
+
+    /**
+     * Writes the index of the specified string in the string table, adding the string to the table if necessary.
+     * @param s the string to write, not {@code null}
+     * @throws IOException If an I/O exception occurs.
+     * @throws NullPointerException If {@code s} refers to {@code null}.
+     * @see CompactInputStream#readTableString()
+     */
+    public final void writeTableString(final String s) throws IOException {
+        final Integer index = stringIndices.get(s);
+        if (index != null) {
+            writeVarInt(index);
+            return;
+        }
+        writeVarInt(strings.size());
+        if (inlineStrings) {
+            writeUTF(s);
+        }
+        stringIndices.put(s, strings.size());
+        strings.add(s);
+    }
+
+    /**
+     * Returns the strings written by {@link #writeTableString(String)} so far.
+     * @return an unmodifiable view of the string table
+     */
+    public List<String> getStringTable() {
+        return Collections.unmodifiableList(strings);
+    }
+
+    /**
+     * Writes the string table, usually after everything referring to it has been written.
+     * @throws IOException If an I/O exception occurs.
+     * @see CompactInputStream#readStringTable(java.io.DataInputStream)
+     */
+    public void writeStringTable() throws IOException {
+        writeVarInt(strings.size());
+        for (String s : strings) {
+            writeUTF(s);
+        }
+    }
+}
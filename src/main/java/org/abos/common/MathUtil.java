@@ -1,7 +1,9 @@
 package org.abos.common;
 
+import java.util.Arrays;
 import java.util.Deque;
 import java.util.LinkedList;
+import java.util.Random;
 
 /**
  * Additional utilities where {@link Math} isn't enough.
@@ -226,6 +228,91 @@ public final class MathUtil {
         return true;
     }
     
+    /**
+     * Draws a uniformly distributed integer between 0 (inclusive) and {@code bound} (exclusive)
+     * that is none of the excluded values.
+     * @param random a {@link Random} instance
+     * @param bound the upper bound (exclusive)
+     * @param excluded The values that must not be drawn. Values outside the range and duplicates are ignored.
+     * @return a random integer in the range that is not excluded
+     * @throws NullPointerException If {@code random} or {@code excluded} refers to {@code null}.
+     * @throws IllegalArgumentException If no value remains to be drawn.
+     * @implNote Calls {@link Random#nextInt(int)} exactly once and maps the result past the excluded values,
+     * so the cost only depends on the number of excluded values, not on how likely they are to be hit.
+     */
+    public static int nextIntExcluding(final Random random, final int bound, final int... excluded) {
+        final int[] sorted = excluded.clone();
+        Arrays.sort(sorted);
+        int excludedCount = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (sorted[i] >= 0 && sorted[i] < bound && (i == 0 || sorted[i] != sorted[i-1])) {
+                excludedCount++;
+            }
+        }
+        if (bound - excludedCount <= 0) {
+            throw new IllegalArgumentException("No values left to draw from!");
+        }
+        int result = random.nextInt(bound - excludedCount);
+        // shifting past each smaller or equal excluded value in ascending order keeps the mapping bijective
+        for (int i = 0; i < sorted.length; i++) {
+            if (sorted[i] < 0 || (i != 0 && sorted[i] == sorted[i-1])) {
+                continue;
+            }
+            if (sorted[i] > result) {
+                break;
+            }
+            result++;
+        }
+        return result;
+    }
+
+    /**
+     * Scrambles the bits of the specified value, so that similar inputs give unrelated outputs.
+     * @param z the value to scramble
+     * @return the scrambled value
+     * @implNote Uses the finalizer of SplitMix64.
+     */
+    public static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Counter-based hash of a seed and two counters. Unlike a {@link Random} instance
+     * this has no state, so every value can be computed on its own and in any order.
+     * @param seed the seed
+     * @param a the first counter
+     * @param b the second counter
+     * @return a pseudo random value determined by the parameters
+     */
+    public static long hash(final long seed, final int a, final int b) {
+        return mix64(seed ^ mix64(((long)a << 32) | (b & 0xFFFFFFFFL)));
+    }
+
+    /**
+     * Maps a hash to an integer between 0 (inclusive) and {@code bound} (exclusive).
+     * @param hash a hash value, e.g. from {@link #hash(long, int, int)}
+     * @param bound the upper bound (exclusive), must be positive
+     * @return an integer in the range
+     * @throws IllegalArgumentException If {@code bound} isn't positive.
+     */
+    public static int hashToInt(final long hash, final int bound) {
+        if (bound <= 0) {
+            throw new IllegalArgumentException("Bound must be positive!");
+        }
+        return (int)Math.floorMod(hash, (long)bound);
+    }
+
+    /**
+     * Maps a hash to a double between 0 (inclusive) and 1 (exclusive).
+     * @param hash a hash value, e.g. from {@link #hash(long, int, int)}
+     * @return a double in the range
+     */
+    public static double hashToDouble(final long hash) {
+        return (hash >>> 11) * 0x1.0p-53;
+    }
+
     private static void cacheIfPrime(final int n) {
         final double sqrt = Math.sqrt(n);
         for (int prime : CACHED_PRIMES) {
@@ -246,9 +333,9 @@ public final class MathUtil {
      * @return {@code true} if n is prime, else {@code false}.
      * @implNote Primes are cached, so first call of method for a given n may take
      * significantly longer than second call with the same n. To actually
-     * test if n is prime, the Sieve of Erasthonese is used.
+     * test if n is prime, the Sieve of Erasthonese is used. The cache is shared by all threads, so calls are synchronized.
      */
-    public static boolean isPrime(final int n) {
+    public static synchronized boolean isPrime(final int n) {
         if (n < 0) {
             return isPrime(-n);
         }
@@ -271,8 +358,9 @@ public final class MathUtil {
      * are 1, 1, and then the sum of the previous two fibonacci numbers, e.g. 2, 3, 5, 8, 13, ...
      * @param n the number to check
      * @return {@code true} if n is fibonacci, else {@code false}.
+     * @implNote Fibonacci numbers are cached and shared by all threads, so calls are synchronized.
      */
-    public static boolean isFibonacci(final int n) {
+    public static synchronized boolean isFibonacci(final int n) {
         if (n < 1) {
             return false;
         }
@@ -0,0 +1,166 @@
+package org.abos.common;
+
+import java.util.Objects;
+import java.util.function.IntConsumer;
+
+/**
+ * An immutable array whose modifications return a new array sharing all unchanged parts with the old one.
+ * The elements are kept in a tree with 32 children per node, so modifications and lookups
+ * take time and space logarithmic in the size, with a very small base.
+ * <p>
+ * As old versions stay valid, keeping a version is free, and the differences of two versions
+ * derived from each other can be found by only looking at the parts they don't share,
+ * see {@link #forEachDifference(PersistentArray, PersistentArray, IntConsumer)}.
+ * @param <T> the type of the elements
+ */
+public final class PersistentArray<T> {
+
+    private static final int BITS = 5;
+
+    private static final int WIDTH = 1 << BITS;
+
+    private static final int MASK = WIDTH - 1;
+
+    private static final PersistentArray<?> EMPTY = new PersistentArray<>(0, 0, new Object[WIDTH]);
+
+    private final int size;
+
+    /**
+     * The bit shift of the root level, {@code 0} if the root holds the elements.
+     */
+    private final int shift;
+
+    private final Object[] root;
+
+    private PersistentArray(final int size, final int shift, final Object[] root) {
+        this.size = size;
+        this.shift = shift;
+        this.root = root;
+    }
+
+    /**
+     * Returns the empty array.
+     * @param <T> the type of the elements
+     * @return the empty array, not {@code null}
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> PersistentArray<T> empty() {
+        return (PersistentArray<T>)EMPTY;
+    }
+
+    /**
+     * Returns the number of elements of this array.
+     * @return a non-negative number
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the specified element.
+     * @param index the index of the element
+     * @return the element, might be {@code null}
+     * @throws IndexOutOfBoundsException If {@code index} is negative or not less than {@link #size()}.
+     */
+    @SuppressWarnings("unchecked")
+    public T get(final int index) {
+        Objects.checkIndex(index, size);
+        Object[] node = root;
+        for (int level = shift; level > 0; level -= BITS) {
+            node = (Object[])node[(index >>> level) & MASK];
+        }
+        return (T)node[index & MASK];
+    }
+
+    /**
+     * Returns an array with the specified element replaced.
+     * @param index the index of the element
+     * @param element the new element, might be {@code null}
+     * @return the new array, or this one if the element {@link Object#equals(Object) equals} the current one
+     * @throws IndexOutOfBoundsException If {@code index} is negative or not less than {@link #size()}.
+     */
+    public PersistentArray<T> set(final int index, final T element) {
+        if (Objects.equals(get(index), element)) {
+            return this;
+        }
+        return new PersistentArray<>(size, shift, setIn(root, shift, index, element));
+    }
+
+    /**
+     * Returns an array with the specified element appended.
+     * @param element the new element, might be {@code null}
+     * @return the new array
+     * @throws IllegalStateException If this array has {@link Integer#MAX_VALUE} elements already.
+     */
+    public PersistentArray<T> append(final T element) {
+        if (size == Integer.MAX_VALUE) {
+            throw new IllegalStateException("Persistent array is full!");
+        }
+        if ((long)size == 1L << (shift + BITS)) {
+            // the tree is full, so it becomes the first child of a new root
+            final Object[] newRoot = new Object[WIDTH];
+            newRoot[0] = root;
+            return new PersistentArray<>(size + 1, shift + BITS, setIn(newRoot, shift + BITS, size, element));
+        }
+        return new PersistentArray<>(size + 1, shift, setIn(root, shift, size, element));
+    }
+
+    /**
+     * Copies the path to the specified index, creating missing nodes, and sets the element at its end.
+     */
+    private static Object[] setIn(final Object[] node, final int level, final int index, final Object element) {
+        final Object[] copy = node == null ? new Object[WIDTH] : node.clone();
+        final int slot = (index >>> level) & MASK;
+        copy[slot] = level == 0 ? element : setIn((Object[])copy[slot], level - BITS, index, element);
+        return copy;
+    }
+
+    /**
+     * Passes the indices whose elements differ between the specified arrays to the specified action, in ascending order.
+     * Elements are compared by {@link Object#equals(Object) equals}. Parts shared by both arrays are skipped, so if one array is derived
+     * from the other, this takes time proportional to the number of modifications rather than the size.
+     * Indices only one of the arrays has count as different as well.
+     * @param a an array
+     * @param b another array
+     * @param action receives the indices of the differing elements
+     * @param <T> the type of the elements
+     * @throws NullPointerException If any parameter refers to {@code null}.
+     */
+    public static <T> void forEachDifference(final PersistentArray<T> a, final PersistentArray<T> b, final IntConsumer action) {
+        Objects.requireNonNull(action);
+        final PersistentArray<T> smaller = a.shift <= b.shift ? a : b;
+        final PersistentArray<T> larger = smaller == a ? b : a;
+        // the smaller tree corresponds to the leftmost subtree of the same height in the larger one
+        Object[] node = larger.root;
+        for (int level = larger.shift; level > smaller.shift && node != null; level -= BITS) {
+            node = (Object[])node[0];
+        }
+        final int common = Math.min(a.size, b.size);
+        compare(node, smaller.root, smaller.shift, 0, common, action);
+        for (int index = common; index < Math.max(a.size, b.size); index++) {
+            action.accept(index);
+        }
+    }
+
+    private static void compare(final Object[] a, final Object[] b, final int level, final int offset, final int limit, final IntConsumer action) {
+        if (a == b) {
+            return;
+        }
+        for (int slot = 0; slot < WIDTH; slot++) {
+            final long start = offset + ((long)slot << level);
+            if (start >= limit) {
+                return;
+            }
+            final Object childA = a == null ? null : a[slot];
+            final Object childB = b == null ? null : b[slot];
+            if (level == 0) {
+                if (!Objects.equals(childA, childB)) {
+                    action.accept((int)start);
+                }
+            }
+            else {
+                compare((Object[])childA, (Object[])childB, level - BITS, (int)start, limit, action);
+            }
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package org.abos.common;
+
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A set of non-negative integers kept as a bit set in a {@link PersistentArray}.
+ * {@link #copy()} and {@link #assign(PersistentIntSet)} take constant time, as the copies
+ * share their bits until they get modified. Iteration is in ascending order.
+ */
+public class PersistentIntSet extends AbstractSet<Integer> {
+
+    /**
+     * The bits of the set, 64 per word.
+     */
+    protected PersistentArray<Long> words = PersistentArray.empty();
+
+    /**
+     * @see #size()
+     */
+    protected int size;
+
+    /**
+     * Creates a new empty {@link PersistentIntSet}.
+     */
+    public PersistentIntSet() {
+        /* Nothing to do. */
+    }
+
+    /**
+     * Returns a copy of this set in constant time.
+     * @return a new set with the same elements
+     */
+    public PersistentIntSet copy() {
+        final PersistentIntSet result = new PersistentIntSet();
+        result.assign(this);
+        return result;
+    }
+
+    /**
+     * Replaces the elements of this set with the ones of the specified set in constant time.
+     * @param other the set to copy from, not {@code null}
+     * @throws NullPointerException If {@code other} refers to {@code null}.
+     */
+    public void assign(final PersistentIntSet other) {
+        words = other.words;
+        size = other.size;
+    }
+
+    private long word(final int index) {
+        return index < words.size() ? words.get(index) : 0L;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean contains(final Object o) {
+        return o instanceof Integer i && i >= 0 && (word(i >>> 6) & (1L << i)) != 0;
+    }
+
+    /**
+     * Adds the specified integer to this set.
+     * @param i the integer to add, not {@code null}
+     * @return {@code true} if the integer wasn't contained yet, else {@code false}
+     * @throws IllegalArgumentException If {@code i} is negative.
+     */
+    @Override
+    public boolean add(final Integer i) {
+        if (i < 0) {
+            throw new IllegalArgumentException("Only non-negative integers can be added!");
+        }
+        final int index = i >>> 6;
+        final long word = word(index);
+        if ((word & (1L << i)) != 0) {
+            return false;
+        }
+        while (words.size() <= index) {
+            words = words.append(0L);
+        }
+        words = words.set(index, word | (1L << i));
+        size++;
+        return true;
+    }
+
+    @Override
+    public boolean remove(final Object o) {
+        if (!contains(o)) {
+            return false;
+        }
+        final int i = (Integer)o;
+        words = words.set(i >>> 6, word(i >>> 6) & ~(1L << i));
+        size--;
+        return true;
+    }
+
+    @Override
+    public void clear() {
+        words = PersistentArray.empty();
+        size = 0;
+    }
+
+    @Override
+    public Iterator<Integer> iterator() {
+        return new Iterator<>() {
+
+            private final PersistentArray<Long> iterated = words;
+
+            private int index;
+
+            private long remaining = iterated.size() == 0 ? 0L : iterated.get(0);
+
+            @Override
+            public boolean hasNext() {
+                while (remaining == 0L && index + 1 < iterated.size()) {
+                    remaining = iterated.get(++index);
+                }
+                return remaining != 0L;
+            }
+
+            @Override
+            public Integer next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                final int bit = Long.numberOfTrailingZeros(remaining);
+                remaining &= remaining - 1;
+                return (index << 6) + bit;
+            }
+        };
+    }
+}
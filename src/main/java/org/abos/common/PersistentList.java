@@ -0,0 +1,76 @@
+package org.abos.common;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/**
+ * A list kept in a {@link PersistentArray}, which can only grow at its end.
+ * {@link #copy()} and {@link #assign(PersistentList)} take constant time, as the copies
+ * share their elements until they get modified. Setting an element {@link Object#equals(Object) equal} to the current one
+ * keeps the current one, like {@link PersistentArray#set(int, Object)}.
+ * @param <T> the type of the elements
+ */
+public class PersistentList<T> extends AbstractList<T> implements RandomAccess {
+
+    /**
+     * The elements of the list.
+     */
+    protected PersistentArray<T> elements = PersistentArray.empty();
+
+    /**
+     * Creates a new empty {@link PersistentList}.
+     */
+    public PersistentList() {
+        /* Nothing to do. */
+    }
+
+    /**
+     * Returns a copy of this list in constant time.
+     * @return a new list with the same elements
+     */
+    public PersistentList<T> copy() {
+        final PersistentList<T> result = new PersistentList<>();
+        result.assign(this);
+        return result;
+    }
+
+    /**
+     * Replaces the elements of this list with the ones of the specified list in constant time.
+     * @param other the list to copy from, not {@code null}
+     * @throws NullPointerException If {@code other} refers to {@code null}.
+     */
+    public void assign(final PersistentList<T> other) {
+        elements = other.elements;
+        modCount++;
+    }
+
+    @Override
+    public int size() {
+        return elements.size();
+    }
+
+    @Override
+    public T get(final int index) {
+        return elements.get(index);
+    }
+
+    @Override
+    public T set(final int index, final T element) {
+        final T previous = elements.get(index);
+        elements = elements.set(index, element);
+        return previous;
+    }
+
+    @Override
+    public boolean add(final T element) {
+        elements = elements.append(element);
+        modCount++;
+        return true;
+    }
+
+    @Override
+    public void clear() {
+        elements = PersistentArray.empty();
+        modCount++;
+    }
+}
@@ -0,0 +1,241 @@
+package org.abos.common;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+
+/**
+ * An output stream compressing its data in blocks of a fixed size, each on its own, on a separate thread,
+ * so the data of the next block can be produced while the previous one is compressed and written.
+ * Each block is written as its uncompressed length, its compressed length and the compressed bytes in the zlib format,
+ * an uncompressed length of zero marks the end. As every block starts anew, a preset dictionary helps the compression
+ * of every block and not just the first.
+ * <p>
+ * Exceptions of the compression thread are rethrown by the next write or by {@link #close()}.
+ * @see PipelinedInflaterInputStream
+ */
+public class PipelinedDeflaterOutputStream extends OutputStream {
+
+    /**
+     * How many blocks may be waiting for compression before writing blocks.
+     */
+    public static final int MAX_PENDING_BLOCKS = 4;
+
+    /**
+     * The underlying stream, only written by the compression thread.
+     */
+    protected final DataOutputStream out;
+
+    /**
+     * The compression level.
+     */
+    protected final int level;
+
+    /**
+     * The preset dictionary, might be {@code null}.
+     */
+    protected final byte[] dictionary;
+
+    /**
+     * The block currently filled.
+     */
+    protected byte[] block;
+
+    /**
+     * How many bytes of {@link #block} have been filled.
+     */
+    protected int count;
+
+    /**
+     * Compresses and writes the blocks in order.
+     */
+    protected final ExecutorService compressor = Executors.newSingleThreadExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "Block compressor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * The blocks handed to {@link #compressor} and not known to be written yet.
+     */
+    protected final Deque<Future<?>> pending = new ArrayDeque<>();
+
+    /**
+     * Used by {@link #compressor} only.
+     */
+    private final Deflater deflater;
+
+    /**
+     * Used by {@link #compressor} only.
+     */
+    private byte[] compressed = new byte[0];
+
+    private boolean closed;
+
+    /**
+     * Creates a new {@link PipelinedDeflaterOutputStream}.
+     * @param out the underlying output stream
+     * @param blockSize the uncompressed size of the blocks
+     * @param level the compression level, see {@link Deflater#setLevel(int)}
+     * @param dictionary the preset dictionary, can be {@code null}
+     * @throws IllegalArgumentException If {@code blockSize} isn't positive or {@code level} isn't valid.
+     */
+    public PipelinedDeflaterOutputStream(final OutputStream out, final int blockSize, final int level, final byte[] dictionary) {
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("Block size must be positive!");
+        }
+        this.out = new DataOutputStream(out);
+        this.level = level;
+        this.dictionary = dictionary;
+        deflater = new Deflater(level);
+        block = new byte[blockSize];
+    }
+
+    /**
+     * Throws the exception of the compression thread, if any, and waits until at most the specified number of blocks are pending.
+     */
+    private void awaitPending(final int maxPending) throws IOException {
+        while (pending.size() > maxPending || !pending.isEmpty() && pending.peekFirst().isDone()) {
+            try {
+                pending.removeFirst().get();
+            }
+            catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while compressing!", ex);
+            }
+            catch (ExecutionException ex) {
+                if (ex.getCause() instanceof IOException ioe) {
+                    throw ioe;
+                }
+                throw new IOException("Compressing failed!", ex.getCause());
+            }
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed!");
+        }
+    }
+
+    /**
+     * Hands the current block to the compression thread and starts a new one.
+     */
+    private void submitBlock() throws IOException {
+        awaitPending(MAX_PENDING_BLOCKS - 1);
+        final byte[] full = block;
+        final int length = count;
+        pending.addLast(compressor.submit(() -> {
+            writeBlock(full, length);
+            return null;
+        }));
+        block = new byte[block.length];
+        count = 0;
+    }
+
+    /**
+     * Compresses and writes one block, called by {@link #compressor} only.
+     */
+    private void writeBlock(final byte[] data, final int length) throws IOException {
+        deflater.reset();
+        if (dictionary != null) {
+            deflater.setDictionary(dictionary);
+        }
+        deflater.setInput(data, 0, length);
+        deflater.finish();
+        int compressedLength = 0;
+        while (!deflater.finished()) {
+            if (compressedLength == compressed.length) {
+                compressed = Arrays.copyOf(compressed, Math.max(1024, 2 * compressed.length));
+            }
+            compressedLength += deflater.deflate(compressed, compressedLength, compressed.length - compressedLength);
+        }
+        out.writeInt(length);
+        out.writeInt(compressedLength);
+        out.write(compressed, 0, compressedLength);
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        ensureOpen();
+        if (count == block.length) {
+            submitBlock();
+        }
+        block[count++] = (byte)b;
+    }
+
+    @Override
+    public void write(final byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        while (len > 0) {
+            if (count == block.length) {
+                submitBlock();
+            }
+            final int n = Math.min(len, block.length - count);
+            System.arraycopy(b, off, block, count, n);
+            count += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * Hands the data written so far to the compression thread and waits until it has been written and flushed.
+     * @throws IOException If an I/O exception occurs, including one of the compression thread.
+     */
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+        if (count > 0) {
+            submitBlock();
+        }
+        awaitPending(0);
+        out.flush();
+    }
+
+    /**
+     * Writes the remaining data and the end mark, then closes the underlying stream.
+     * @throws IOException If an I/O exception occurs, including one of the compression thread.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            if (count > 0) {
+                submitBlock();
+            }
+            awaitPending(0);
+            out.writeInt(0);
+        }
+        finally {
+            closed = true;
+            // the compression thread mustn't use the deflater or the stream anymore
+            compressor.shutdown();
+            boolean interrupted = false;
+            while (!compressor.isTerminated()) {
+                try {
+                    compressor.awaitTermination(1, TimeUnit.MINUTES);
+                }
+                catch (InterruptedException ex) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            deflater.end();
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package org.abos.common;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * An input stream reading the blocks written by a {@link PipelinedDeflaterOutputStream}, reading and decompressing
+ * the next blocks on a separate thread while the current one is consumed.
+ * <p>
+ * Exceptions of the decompression thread are rethrown by the read reaching the affected block.
+ */
+public class PipelinedInflaterInputStream extends InputStream {
+
+    /**
+     * How many blocks are read ahead.
+     */
+    public static final int READ_AHEAD_BLOCKS = 4;
+
+    /**
+     * The underlying stream, only read by the decompression thread.
+     */
+    protected final DataInputStream in;
+
+    /**
+     * The preset dictionary, might be {@code null}.
+     */
+    protected final byte[] dictionary;
+
+    /**
+     * Reads and decompresses the blocks in order.
+     */
+    protected final ExecutorService decompressor = Executors.newSingleThreadExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "Block decompressor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * The blocks requested from {@link #decompressor}, in order. An empty block marks the end.
+     */
+    protected final Deque<Future<byte[]>> ahead = new ArrayDeque<>();
+
+    /**
+     * The block currently consumed, empty at the end.
+     */
+    protected byte[] block = new byte[0];
+
+    /**
+     * The position in {@link #block}.
+     */
+    protected int position;
+
+    /**
+     * Used by {@link #decompressor} only.
+     */
+    private final Inflater inflater = new Inflater();
+
+    /**
+     * Used by {@link #decompressor} only.
+     */
+    private byte[] compressed = new byte[0];
+
+    /**
+     * If the end mark has been requested, used by {@link #decompressor} only.
+     */
+    private boolean endRead;
+
+    private boolean end;
+
+    private boolean closed;
+
+    /**
+     * Creates a new {@link PipelinedInflaterInputStream} and starts reading ahead.
+     * @param in the underlying input stream
+     * @param dictionary the preset dictionary the blocks have been compressed with, can be {@code null}
+     */
+    public PipelinedInflaterInputStream(final InputStream in, final byte[] dictionary) {
+        this.in = new DataInputStream(in);
+        this.dictionary = dictionary;
+        for (int i = 0; i < READ_AHEAD_BLOCKS; i++) {
+            ahead.addLast(decompressor.submit(this::readBlock));
+        }
+    }
+
+    /**
+     * Reads and decompresses the next block, called by {@link #decompressor} only.
+     * @return the block, empty at the end
+     */
+    private byte[] readBlock() throws IOException {
+        if (endRead) {
+            return new byte[0];
+        }
+        final int length;
+        final int compressedLength;
+        try {
+            length = in.readInt();
+            if (length == 0) {
+                endRead = true;
+                return new byte[0];
+            }
+            compressedLength = in.readInt();
+            if (length < 0 || compressedLength < 0) {
+                throw new IOException("Compressed block is corrupt!");
+            }
+            if (compressed.length < compressedLength) {
+                compressed = new byte[compressedLength];
+            }
+            in.readFully(compressed, 0, compressedLength);
+        }
+        catch (EOFException ex) {
+            throw new IOException("Compressed stream is truncated!", ex);
+        }
+        final byte[] result = new byte[length];
+        inflater.reset();
+        inflater.setInput(compressed, 0, compressedLength);
+        try {
+            int inflated = 0;
+            while (inflated < length) {
+                final int n = inflater.inflate(result, inflated, length - inflated);
+                if (n == 0) {
+                    if (inflater.needsDictionary() && dictionary != null) {
+                        inflater.setDictionary(dictionary);
+                    }
+                    else if (inflater.needsDictionary() || inflater.needsInput() || inflater.finished()) {
+                        throw new IOException("Compressed block is corrupt or needs another dictionary!");
+                    }
+                }
+                inflated += n;
+            }
+        }
+        catch (DataFormatException ex) {
+            throw new IOException("Compressed block is corrupt!", ex);
+        }
+        return result;
+    }
+
+    /**
+     * Makes the next block the current one.
+     * @return {@code false} at the end, else {@code true}
+     */
+    private boolean nextBlock() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed!");
+        }
+        if (end) {
+            return false;
+        }
+        try {
+            block = ahead.removeFirst().get();
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while decompressing!", ex);
+        }
+        catch (ExecutionException ex) {
+            if (ex.getCause() instanceof IOException ioe) {
+                throw ioe;
+            }
+            throw new IOException("Decompressing failed!", ex.getCause());
+        }
+        position = 0;
+        if (block.length == 0) {
+            end = true;
+            return false;
+        }
+        ahead.addLast(decompressor.submit(this::readBlock));
+        return true;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (position == block.length && !nextBlock()) {
+            return -1;
+        }
+        return block[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (position == block.length && !nextBlock()) {
+            return -1;
+        }
+        final int n = Math.min(len, block.length - position);
+        System.arraycopy(block, position, b, off, n);
+        position += n;
+        return n;
+    }
+
+    @Override
+    public int available() {
+        return block.length - position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        block = new byte[0];
+        position = 0;
+        // the decompression thread mustn't use the inflater or the stream anymore
+        decompressor.shutdownNow();
+        boolean interrupted = false;
+        while (!decompressor.isTerminated()) {
+            try {
+                decompressor.awaitTermination(1, TimeUnit.MINUTES);
+            }
+            catch (InterruptedException ex) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        inflater.end();
+        in.close();
+    }
+}
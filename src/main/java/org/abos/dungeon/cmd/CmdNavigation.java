@@ -6,13 +6,20 @@ import org.abos.dungeon.core.Navigation;
 import org.abos.dungeon.core.Player;
 import org.abos.dungeon.core.Room;
 import org.abos.dungeon.core.TurnEntry;
+import org.abos.dungeon.core.save.SaveCatalog;
 
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.FormatStyle;
+import java.util.List;
 import java.util.Scanner;
 
 public class CmdNavigation extends Navigation {
 
+    protected static final DateTimeFormatter SAVED_AT_FORMAT = DateTimeFormatter.ofLocalizedDateTime(FormatStyle.SHORT).withZone(ZoneId.systemDefault());
+
     protected final Scanner scanner = new Scanner(System.in);
 
     @Override
@@ -67,9 +74,28 @@ public class CmdNavigation extends Navigation {
 
     @Override
     protected String selectSaveGame(boolean load) {
-        System.out.print("Select save file: ");
-        final String file = scanner.nextLine();
-        final Path path = Path.of(file);
+        final List<SaveCatalog.Entry> slots = catalog == null ? List.of() : catalog.getEntries();
+        for (int i = 0; i < slots.size(); i++) {
+            final SaveCatalog.Entry slot = slots.get(i);
+            final String seed = slot.seed().isPresent() ? ", seed " + slot.seed().getAsLong() : "";
+            System.out.printf("%d - %s (room %d of %d, %d tasks, %d pets%s, saved %s)%n", i, slot.slot(), slot.highestRoomNumber(),
+                    slot.roomCount(), slot.clearedTaskCount(), slot.menagerieSize(), seed, SAVED_AT_FORMAT.format(slot.savedAt()));
+        }
+        System.out.print(slots.isEmpty() ? "Select save file: " : "Select save slot, new slot name or file: ");
+        final String input = scanner.nextLine();
+        Path path = null;
+        try {
+            final int index = Integer.parseInt(input);
+            if (index < 0 || index >= slots.size()) {
+                System.err.printf("There is no slot %d!%n", index);
+                return null;
+            }
+            path = catalog.getSaveFile(slots.get(index).slot());
+        }
+        catch (NumberFormatException ex) {/* Ignore. */}
+        if (path == null) {
+            path = catalog != null && SaveCatalog.isValidSlot(input) ? catalog.getSaveFile(input) : Path.of(input);
+        }
         if (load && !Files.isReadable(path)) {
             System.err.println("File cannot be opened!");
             return null;
@@ -80,7 +106,7 @@ public class CmdNavigation extends Navigation {
                 return null;
             }
         }
-        return file;
+        return path.toString();
     }
 
     @Override
@@ -91,7 +117,11 @@ public class CmdNavigation extends Navigation {
 
     @Override
     protected void displayOptions() {
-        System.out.println("No options yet!");
+        System.out.printf("Compress saves? Currently %s. (Y/N) ", compressSaves ? "yes" : "no");
+        final String input = scanner.nextLine();
+        if (input.equalsIgnoreCase("y") || input.equalsIgnoreCase("n")) {
+            compressSaves = input.equalsIgnoreCase("y");
+        }
     }
 
     @Override
@@ -1,6 +1,5 @@
 package org.abos.dungeon.cmd;
 
-import org.abos.common.CollectionUtil;
 import org.abos.dungeon.core.*;
 import org.abos.dungeon.core.crafting.Crafting;
 import org.abos.dungeon.core.crafting.CraftingOutput;
@@ -8,15 +7,13 @@ import org.abos.dungeon.core.entity.Item;
 import org.abos.dungeon.core.entity.LivingEntity;
 import org.abos.dungeon.core.reward.DefaultRewardFactory;
 import org.abos.dungeon.core.reward.Reward;
+import org.abos.dungeon.core.save.SaveJournal;
 import org.abos.dungeon.core.task.Information;
 import org.abos.dungeon.core.task.Question;
 import org.abos.dungeon.core.task.DefaultTaskFactory;
 
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.file.Path;
 import java.util.Random;
 import java.util.Scanner;
 import java.util.stream.Collectors;
@@ -180,7 +177,18 @@ public class CmdPlayer extends Player {
 
     @Override
     protected Item selectItem(final String msg) {
-        return CollectionUtil.getByName(Item.REGISTRY, displayText(msg, true));
+        return Item.ORDINALS.getByName(displayText(msg, true));
+    }
+
+    @Override
+    protected Room selectRoom(final String msg) {
+        try {
+            final int id = Integer.parseInt(displayText(msg, true).trim());
+            return currentRoom.getDungeon().getRoom(id);
+        }
+        catch (NumberFormatException | IndexOutOfBoundsException ex) {
+            return null;
+        }
     }
 
     public static void main(String[] args) throws IOException {
@@ -193,17 +201,12 @@ public class CmdPlayer extends Player {
         final Player player;
         boolean testGame = true;
         if (testGame) {
-            try (final DataInputStream dis = new DataInputStream(new FileInputStream(saveFilePath))) {
-                dungeon = Dungeon.readObject(dis, random, new DefaultTaskFactory(random), new DefaultRewardFactory(random));
-                player = Player.readObject(dis, dungeon, CmdPlayer::new);
-//                dungeon = new Dungeon(random, new DefaultTaskFactory(random), new DefaultRewardFactory(random));
-//                player = new CmdPlayer(dungeon.getStartRoom(), new Inventory(Inventory.DEFAULT_INVENTORY_CAPACITY, Inventory.DEFAULT_STACK_CAPACITY));
-            }
-            while (player.getCurrentRoom() != null) {
-                player.enterNextRoom();
-                try (final DataOutputStream dos = new DataOutputStream(new FileOutputStream(saveFilePath))) {
-                    dungeon.writeObject(dos);
-                    player.writeObject(dos);
+            try (final SaveJournal journal = SaveJournal.load(Path.of(saveFilePath), random, new DefaultTaskFactory(random), new DefaultRewardFactory(random), CmdPlayer::new)) {
+                dungeon = journal.getDungeon();
+                player = journal.getPlayer();
+                while (player.getCurrentRoom() != null) {
+                    player.enterNextRoom();
+                    journal.commit();
                 }
             }
             final int tc = player.getClearedTaskCount();
@@ -215,8 +218,8 @@ public class CmdPlayer extends Player {
         else {
             dungeon = new Dungeon(random, new DefaultTaskFactory(random), new DefaultRewardFactory(random));
             player = new CmdPlayer(dungeon.getStartRoom(), new Inventory(Inventory.DEFAULT_INVENTORY_CAPACITY, Inventory.DEFAULT_STACK_CAPACITY));
-            player.getInventory().addItem(CollectionUtil.getByName(Item.REGISTRY, "Raspberry"));
-            player.getInventory().addItem(CollectionUtil.getByName(Item.REGISTRY, "Stick"));
+            player.getInventory().addItem(Item.ORDINALS.getByName("Raspberry"));
+            player.getInventory().addItem(Item.ORDINALS.getByName("Stick"));
             player.craft();
         }
     }
@@ -0,0 +1,199 @@
+package org.abos.dungeon.core;
+
+import org.abos.dungeon.core.task.Task;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Objects;
+
+/**
+ * A compact {@link RoomStore} keeping the room state in parallel primitive arrays (struct of arrays).
+ * The doors of all rooms are packed into one shared array in the order the rooms got filled.
+ */
+public class ArrayRoomStore implements RoomStore {
+
+    /**
+     * The default initial capacity.
+     */
+    public static final int DEFAULT_CAPACITY = 16;
+
+    /**
+     * The biggest array size the VM reliably allows.
+     */
+    private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+    /**
+     * The most rooms to make space for up front when the room count comes from a file, more rooms grow the arrays as they are read.
+     */
+    public static final int MAX_READ_CAPACITY = 1 << 16;
+
+    /**
+     * Offset into {@link #doorTargets} for rooms whose doors haven't been filled yet.
+     */
+    private static final int UNFILLED = -1;
+
+    /**
+     * @see #size()
+     */
+    protected int size;
+
+    /**
+     * @see #getFromId(int)
+     */
+    protected int[] fromIds;
+
+    /**
+     * @see #getDoorCount(int)
+     */
+    protected byte[] doorCounts;
+
+    /**
+     * Where the doors of each room start in {@link #doorTargets}, or {@link #UNFILLED}.
+     */
+    protected int[] doorOffsets;
+
+    /**
+     * The doors of all filled rooms.
+     */
+    protected int[] doorTargets;
+
+    /**
+     * How many entries of {@link #doorTargets} are in use.
+     */
+    protected int doorTargetCount;
+
+    /**
+     * @see #getTask(int)
+     */
+    protected Task[] tasks;
+
+    /**
+     * @see #isRewardCollected(int)
+     */
+    protected final BitSet rewardsCollected = new BitSet();
+
+    /**
+     * Creates a new empty {@link ArrayRoomStore} instance.
+     * @param initialCapacity how many rooms should fit without growing the arrays
+     * @throws IllegalArgumentException If {@code initialCapacity} is negative or bigger than the maximum array size.
+     */
+    public ArrayRoomStore(final int initialCapacity) {
+        if (initialCapacity < 0 || initialCapacity > MAX_ARRAY_SIZE) {
+            throw new IllegalArgumentException("Capacity must be non-negative and at most " + MAX_ARRAY_SIZE + "!");
+        }
+        fromIds = new int[initialCapacity];
+        doorCounts = new byte[initialCapacity];
+        doorOffsets = new int[initialCapacity];
+        doorTargets = new int[(int)Math.min((long)initialCapacity * (Room.MIN_DOORS + Room.MAX_DOORS) / 2, MAX_ARRAY_SIZE)];
+        tasks = new Task[initialCapacity];
+    }
+
+    /**
+     * Creates a new empty {@link ArrayRoomStore} instance with {@link #DEFAULT_CAPACITY}.
+     */
+    public ArrayRoomStore() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    private static int grownCapacity(final int oldCapacity, final int minCapacity) {
+        if (minCapacity > MAX_ARRAY_SIZE || minCapacity < 0) {
+            throw new IllegalStateException("Room store is full!");
+        }
+        final long grown = (long)oldCapacity + (oldCapacity >> 1) + 1;
+        return (int)Math.max(minCapacity, Math.min(grown, MAX_ARRAY_SIZE));
+    }
+
+    private void ensureRoomCapacity(final int minCapacity) {
+        if (minCapacity <= fromIds.length) {
+            return;
+        }
+        final int oldCapacity = fromIds.length;
+        final int newCapacity = grownCapacity(oldCapacity, minCapacity);
+        fromIds = Arrays.copyOf(fromIds, newCapacity);
+        doorCounts = Arrays.copyOf(doorCounts, newCapacity);
+        doorOffsets = Arrays.copyOf(doorOffsets, newCapacity);
+        tasks = Arrays.copyOf(tasks, newCapacity);
+    }
+
+    private void ensureDoorCapacity(final int minCapacity) {
+        if (minCapacity > doorTargets.length) {
+            doorTargets = Arrays.copyOf(doorTargets, grownCapacity(doorTargets.length, minCapacity));
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isFull() {
+        return size == MAX_ARRAY_SIZE;
+    }
+
+    @Override
+    public int add(final int fromId, final int doorCount, final Task task) {
+        if (doorCount < Room.MIN_DOORS || doorCount > Room.MAX_DOORS) {
+            throw new IllegalArgumentException("Door count out of range!");
+        }
+        ensureRoomCapacity(size + 1);
+        fromIds[size] = fromId;
+        doorCounts[size] = (byte)doorCount;
+        doorOffsets[size] = UNFILLED;
+        tasks[size] = task;
+        return size++;
+    }
+
+    @Override
+    public int getFromId(final int id) {
+        return fromIds[id];
+    }
+
+    @Override
+    public int getDoorCount(final int id) {
+        return doorCounts[id];
+    }
+
+    @Override
+    public boolean isFilled(final int id) {
+        return doorOffsets[id] != UNFILLED;
+    }
+
+    @Override
+    public int getDoor(final int id, final int door) {
+        final int offset = doorOffsets[id];
+        if (offset == UNFILLED) {
+            throw new IndexOutOfBoundsException("Doors of room " + id + " haven't been filled yet!");
+        }
+        return doorTargets[offset + Objects.checkIndex(door, doorCounts[id])];
+    }
+
+    @Override
+    public void setDoors(final int id, final int[] doors) {
+        if (isFilled(id)) {
+            throw new IllegalStateException("Doors of room " + id + " have been filled already!");
+        }
+        if (doors.length != doorCounts[id]) {
+            throw new IllegalArgumentException("Door count doesn't match!");
+        }
+        ensureDoorCapacity(doorTargetCount + doors.length);
+        System.arraycopy(doors, 0, doorTargets, doorTargetCount, doors.length);
+        doorOffsets[id] = doorTargetCount;
+        doorTargetCount += doors.length;
+    }
+
+    @Override
+    public Task getTask(final int id) {
+        return tasks[id];
+    }
+
+    @Override
+    public boolean isRewardCollected(final int id) {
+        return rewardsCollected.get(id);
+    }
+
+    @Override
+    public void setRewardCollected(final int id, final boolean rewardCollected) {
+        rewardsCollected.set(id, rewardCollected);
+    }
+}
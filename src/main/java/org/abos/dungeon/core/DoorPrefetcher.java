@@ -0,0 +1,81 @@
+package org.abos.dungeon.core;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Fills the doors of {@link Room Rooms} on a background thread, generating the rooms behind them,
+ * see {@link Player#prefetchDoors()}.
+ * <p>
+ * There is only one background thread, and the {@link Player} waits for each prefetch before touching the dungeon again.
+ * The dungeon is therefore never accessed concurrently. Only doors that would be filled next anyway are prefetched,
+ * so the dungeon draws its random numbers in the same order as without prefetching.
+ */
+public class DoorPrefetcher implements AutoCloseable {
+
+    /**
+     * The executor running the prefetches.
+     */
+    protected final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "Door prefetcher");
+        // an unfinished prefetch shouldn't keep the game from exiting
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Starts filling the doors of the specified room in the background.
+     * Nothing else may access the room's dungeon until {@link #await(Future)} returned.
+     * @param room the room to fill the doors of, not {@code null}
+     * @return the pending prefetch
+     * @throws java.util.concurrent.RejectedExecutionException If this prefetcher has been closed.
+     */
+    public Future<?> prefetch(final Room room) {
+        return executor.submit(room::fillDoors);
+    }
+
+    /**
+     * Waits for the specified prefetch to finish. Interrupts are deferred until it finished,
+     * as the dungeon mustn't be accessed while the prefetch is still running.
+     * @param prefetch a prefetch returned by {@link #prefetch(Room)}
+     * @throws RuntimeException If the prefetch threw an exception, which is rethrown.
+     */
+    public static void await(final Future<?> prefetch) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    prefetch.get();
+                    return;
+                }
+                catch (InterruptedException ex) {
+                    interrupted = true;
+                }
+                catch (ExecutionException ex) {
+                    if (ex.getCause() instanceof RuntimeException re) {
+                        throw re;
+                    }
+                    if (ex.getCause() instanceof Error error) {
+                        throw error;
+                    }
+                    throw new IllegalStateException(ex.getCause());
+                }
+            }
+        }
+        finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Stops the background thread after the pending prefetches finished.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+}
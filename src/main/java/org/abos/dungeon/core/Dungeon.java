@@ -1,16 +1,18 @@
 package org.abos.dungeon.core;
 
+import org.abos.common.CollectionUtil;
+import org.abos.common.MathUtil;
 import org.abos.common.Randomizer;
 import org.abos.common.Serializable;
+import org.abos.dungeon.core.analytics.DoorGraph;
+import org.abos.dungeon.core.analytics.DungeonAnalytics;
 import org.abos.dungeon.core.reward.RewardFactory;
+import org.abos.dungeon.core.task.Task;
 import org.abos.dungeon.core.task.TaskFactory;
 
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.LinkedList;
-import java.util.List;
 import java.util.Objects;
 import java.util.Random;
 
@@ -22,7 +24,7 @@ public class Dungeon implements Randomizer, Serializable {
     /**
      * The end of the dungeon.
      */
-    protected final Room exitRoom = new Room(true, Room.EXIT_ID, this, null);
+    protected final Room exitRoom = new Room(this, Room.EXIT_ID);
 
     /**
      * @see #getStartRoom()
@@ -30,9 +32,9 @@ public class Dungeon implements Randomizer, Serializable {
     protected Room startRoom;
 
     /**
-     * A collection of all rooms currently existing in the dungeon.
+     * The state of all rooms currently existing in the dungeon.
      */
-    protected final List<Room> rooms = new ArrayList<>();
+    protected final RoomStore rooms;
 
     /**
      * @see #random()
@@ -49,16 +51,23 @@ public class Dungeon implements Randomizer, Serializable {
      */
     protected final RewardFactory rewardFactory;
 
+    /**
+     * @see #getPathIndex()
+     */
+    protected PathIndex pathIndex;
+
     /**
      * Creates a new dungeon with the specified parameters.
      * @param random a {@link Random} instance
      * @param taskFactory a {@link TaskFactory} instance
      * @param rewardFactory a {@link RewardFactory} instance
+     * @param rooms the {@link RoomStore} to keep the rooms in
      * @param generateStartRoom if the start room should be generated
-     * @throws NullPointerException If {@code random}, {@code taskFactory} or {@code rewardFactory} refers to {@code null}.
+     * @throws NullPointerException If {@code random}, {@code taskFactory}, {@code rewardFactory} or {@code rooms} refers to {@code null}.
      */
-    private Dungeon(final Random random, final TaskFactory taskFactory, final RewardFactory rewardFactory, final boolean generateStartRoom) {
+    protected Dungeon(final Random random, final TaskFactory taskFactory, final RewardFactory rewardFactory, final RoomStore rooms, final boolean generateStartRoom) {
         this.random = Objects.requireNonNull(random);
+        this.rooms = Objects.requireNonNull(rooms);
         this.taskFactory = Objects.requireNonNull(taskFactory);
         this.rewardFactory = Objects.requireNonNull(rewardFactory);
         if (generateStartRoom) {
@@ -74,7 +83,23 @@ public class Dungeon implements Randomizer, Serializable {
      * @throws NullPointerException If {@code random} or {@code taskFactory} refers to {@code null}.
      */
     public Dungeon(final Random random, final TaskFactory taskFactory, final RewardFactory rewardFactory) {
-        this(random, taskFactory, rewardFactory, true);
+        this(random, taskFactory, rewardFactory, new ArrayRoomStore(), true);
+    }
+
+    /**
+     * Creates a new dungeon keeping its rooms in the specified {@link RoomStore}.
+     * If the store already contains rooms, the dungeon continues with them instead of generating a new start room.
+     * @param random a {@link Random} instance
+     * @param taskFactory a {@link TaskFactory} instance
+     * @param rewardFactory a {@link RewardFactory} instance
+     * @param rooms the room store, e.g. a {@link MappedRoomStore} for dungeons larger than the heap
+     * @throws NullPointerException If any parameter refers to {@code null}.
+     */
+    public Dungeon(final Random random, final TaskFactory taskFactory, final RewardFactory rewardFactory, final RoomStore rooms) {
+        this(random, taskFactory, rewardFactory, rooms, rooms.size() == 0);
+        if (startRoom == null) {
+            startRoom = getRoom(Room.START_ID);
+        }
     }
 
     @Override
@@ -111,31 +136,88 @@ public class Dungeon implements Randomizer, Serializable {
      * @param index the room number
      * @return the specified room
      * @throws IndexOutOfBoundsException If {@code index} is invalid.
-     * @throws IllegalStateException If the ID of the specified room doesn't match its index in the list.
      */
     public Room getRoom(int index) {
-        final Room result = rooms.get(index);
-        if (result.getId() != index) {
-            throw new IllegalStateException("Index and room ID differ!");
+        return new Room(this, Objects.checkIndex(index, rooms.size()));
+    }
+
+    /**
+     * Returns how many rooms currently exist in this dungeon.
+     * @return a positive number if the start room has been generated
+     */
+    public int getRoomCount() {
+        return rooms.size();
+    }
+
+    /**
+     * Returns the {@link RoomStore} the rooms of this dungeon are kept in.
+     * Changing the store directly bypasses the dungeon, so this is meant for decorators like journals.
+     * @return the room store, not {@code null}
+     */
+    public RoomStore getRoomStore() {
+        return rooms;
+    }
+
+    /**
+     * Copies the doors of all rooms into a {@link DoorGraph}, which can then be analysed
+     * independently of this dungeon, e.g. by {@link DungeonAnalytics}.
+     * This is the only part of the analysis that reads the dungeon, so it should be called
+     * from the thread that changes the dungeon.
+     * @return a new snapshot of the doors, not {@code null}
+     * @throws ArithmeticException If the dungeon has more doors than fit into an array.
+     */
+    public DoorGraph createDoorGraph() {
+        final int roomCount = rooms.size();
+        final int[] fromIds = new int[roomCount];
+        final int[] offsets = new int[roomCount + 1];
+        for (int id = 0; id < roomCount; id++) {
+            fromIds[id] = rooms.getFromId(id);
+            offsets[id + 1] = Math.addExact(offsets[id], rooms.isFilled(id) ? rooms.getDoorCount(id) : 0);
         }
-        return result;
+        final int[] targets = new int[offsets[roomCount]];
+        for (int id = 0; id < roomCount; id++) {
+            for (int door = 0; door < offsets[id + 1] - offsets[id]; door++) {
+                targets[offsets[id] + door] = rooms.getDoor(id, door);
+            }
+        }
+        return new DoorGraph(fromIds, offsets, targets);
     }
 
     /**
-     * Returns an existing room different from the specified one.
-     * @param from a room that shall not be returned
+     * Returns the shortest paths over the doors filled so far. The index is built on the first call
+     * and from then on kept up to date whenever doors get filled, so dungeons that are never queried don't pay for it.
+     * @return the path index of this dungeon, not {@code null}
+     * @throws IllegalStateException If the start room hasn't been generated yet.
+     */
+    public PathIndex getPathIndex() {
+        if (pathIndex == null) {
+            if (rooms.size() == 0) {
+                throw new IllegalStateException("There is no start room yet!");
+            }
+            pathIndex = new PathIndex(this);
+        }
+        return pathIndex;
+    }
+
+    /**
+     * Returns an existing room different from the specified ones.
+     * @param excluded rooms that shall not be returned, rooms not existing in this dungeon are ignored
      * @return a randomly selected existing room
      * @throws IllegalStateException If there are no rooms to draw from.
+     * @implNote Draws exactly one random number, independent of how many rooms are excluded.
      */
-    public Room getRandomGeneratedRoom(final Room from) {
-        if (rooms.isEmpty() || (rooms.size() == 1 && rooms.contains(from))) {
-            throw new IllegalStateException("No rooms to draw from!");
+    public Room getRandomGeneratedRoom(final Room... excluded) {
+        final int[] excludedIds = new int[excluded.length];
+        for (int i = 0; i < excluded.length; i++) {
+            // rooms of other dungeons must not shrink the range
+            excludedIds[i] = excluded[i].dungeon == this ? excluded[i].getId() : Room.EXIT_ID;
+        }
+        try {
+            return new Room(this, MathUtil.nextIntExcluding(random(), rooms.size(), excludedIds));
         }
-        Room selected = from;
-        while (selected.equals(from)) {
-            selected = rooms.get(random().nextInt(rooms.size()));
+        catch (IllegalArgumentException ex) {
+            throw new IllegalStateException("No rooms to draw from!", ex);
         }
-        return selected;
     }
 
     /**
@@ -144,12 +226,49 @@ public class Dungeon implements Randomizer, Serializable {
      * @return a new room or {@code null} if the size limit for rooms has been reached
      */
     public Room generateRoom(final Room from) {
-        if (rooms.size() == Integer.MAX_VALUE) {
+        if (rooms.isFull()) {
             return null;
         }
-        final Room generated = new Room(rooms.size(), this, from.getId());
-        rooms.add(generated);
-        return generated;
+        final int id = rooms.size();
+        final int doorCount = generateDoorCount(id);
+        final Task task = id == Room.START_ID ? null : taskFactory.apply(id);
+        rooms.add(from.getId(), doorCount, task);
+        return new Room(this, id);
+    }
+
+    /**
+     * Determines the amount of doors of a room that is about to be generated.
+     * @param id the ID the new room will get
+     * @return a number between {@link Room#MIN_DOORS} and {@link Room#MAX_DOORS} (both inclusive)
+     */
+    protected int generateDoorCount(final int id) {
+        return random().nextInt(Room.MIN_DOORS, Room.MAX_DOORS + 1);
+    }
+
+    /**
+     * Determines the rooms behind the doors of the specified room, generating new rooms as needed.
+     * Door {@link Room#RETURN_ID} leads back to the room the specified room was originally accessed from.
+     * @param room the room to fill the doors of, not the exit
+     * @return the IDs of the rooms behind the doors, exactly {@link Room#getDoorCount()} many
+     */
+    protected int[] generateDoors(final Room room) {
+        final int[] doors = new int[room.getDoorCount()];
+        // the first room is the one guaranteed to open to a new room
+        final Room guaranteedRoom = generateRoom(room);
+        // if null it means the room size limit has been reached
+        if (guaranteedRoom == null) {
+            doors[1] = getRandomGeneratedRoom(room).getId();
+        }
+        else {
+            doors[1] = guaranteedRoom.getId();
+        }
+        // the others (except for door 0) could lead back
+        for (int i = Room.MIN_DOORS; i < doors.length; i++) {
+            doors[i] = getRandomRoom(room).getId();
+        }
+        CollectionUtil.shuffle(doors, 1, doors.length, random());
+        doors[Room.RETURN_ID] = rooms.getFromId(room.getId());
+        return doors;
     }
 
     /**
@@ -165,7 +284,7 @@ public class Dungeon implements Randomizer, Serializable {
      * @return a random room, not {@code null}
      */
     public Room getRandomRoom(final Room from) {
-        if (random().nextDouble() < chanceRoomGoesBack() || rooms.size() == Integer.MAX_VALUE) {
+        if (random().nextDouble() < chanceRoomGoesBack() || rooms.isFull()) {
             return getRandomGeneratedRoom(from);
         }
         return generateRoom(from);
@@ -174,8 +293,8 @@ public class Dungeon implements Randomizer, Serializable {
     @Override
     public void writeObject(final DataOutputStream dos) throws IOException {
         dos.writeInt(rooms.size());
-        for (Room room : rooms) {
-            room.writeObject(dos);
+        for (int i = 0; i < rooms.size(); i++) {
+            new Room(this, i).writeObject(dos);
         }
     }
 
@@ -190,13 +309,59 @@ public class Dungeon implements Randomizer, Serializable {
      */
     public static Dungeon readObject(final DataInputStream dis, final Random random, final TaskFactory taskFactory, final RewardFactory rewardFactory) throws IOException {
         final int roomCount = dis.readInt();
-        final List<Room> rooms = new LinkedList<>();
-        final Dungeon result = new Dungeon(random, taskFactory, rewardFactory, false);
+        return readRooms(dis, roomCount, new Dungeon(random, taskFactory, rewardFactory, storeFor(roomCount), false));
+    }
+
+    /**
+     * Creates a room store for a dungeon with the specified amount of rooms read from a file.
+     * The amount isn't trusted, the store makes space for at most {@link ArrayRoomStore#MAX_READ_CAPACITY} rooms up front.
+     * @param roomCount how many rooms the file claims to contain
+     * @return a new, empty {@link ArrayRoomStore}
+     * @throws IOException If {@code roomCount} is negative.
+     */
+    protected static ArrayRoomStore storeFor(final int roomCount) throws IOException {
+        if (roomCount < 0) {
+            throw new IOException("Negative room count!");
+        }
+        return new ArrayRoomStore(Math.min(roomCount, ArrayRoomStore.MAX_READ_CAPACITY));
+    }
+
+    /**
+     * Reads an {@link Dungeon} instance from the specified stream into the specified {@link RoomStore}.
+     * @param dis the {@link DataInputStream} to read from
+     * @param random the {@link Random} instance for the new dungeon
+     * @param taskFactory the {@link TaskFactory} instance for the new dungeon
+     * @param rewardFactory the {@link RewardFactory} instance for the new dungeon
+     * @param rooms an empty room store for the new dungeon
+     * @return a new {@link Dungeon} instance
+     * @throws IOException If an I/O exception occurs.
+     * @throws IllegalArgumentException If {@code rooms} isn't empty.
+     */
+    public static Dungeon readObject(final DataInputStream dis, final Random random, final TaskFactory taskFactory, final RewardFactory rewardFactory, final RoomStore rooms) throws IOException {
+        if (rooms.size() != 0) {
+            throw new IllegalArgumentException("Room store must be empty!");
+        }
+        final int roomCount = dis.readInt();
+        if (roomCount < 0) {
+            throw new IOException("Negative room count!");
+        }
+        return readRooms(dis, roomCount, new Dungeon(random, taskFactory, rewardFactory, rooms, false));
+    }
+
+    /**
+     * Reads the specified amount of rooms from the stream into the specified empty dungeon.
+     * @param dis the {@link DataInputStream} to read from
+     * @param roomCount how many rooms to read
+     * @param result the dungeon to read into
+     * @return {@code result}
+     * @param <D> the type of the dungeon
+     * @throws IOException If an I/O exception occurs.
+     */
+    protected static <D extends Dungeon> D readRooms(final DataInputStream dis, final int roomCount, final D result) throws IOException {
         for (int i = 0; i < roomCount; i++) {
-            rooms.add(Room.readObject(dis, result));
+            Room.readObject(dis, result);
         }
-        result.startRoom = rooms.get(0);
-        result.rooms.addAll(rooms);
+        result.startRoom = result.getRoom(Room.START_ID);
         return result;
     }
 }
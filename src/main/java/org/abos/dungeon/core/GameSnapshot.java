@@ -0,0 +1,113 @@
+package org.abos.dungeon.core;
+
+import org.abos.dungeon.core.reward.RewardFactory;
+import org.abos.dungeon.core.task.TaskFactory;
+
+import java.util.Objects;
+import java.util.Random;
+import java.util.function.BiFunction;
+
+/**
+ * The state of a game at one point in time, taken from a {@link Dungeon} keeping its rooms in a {@link PersistentRoomStore}.
+ * Taking a snapshot takes constant time apart from copying the creatures of the menagerie, so snapshots can be taken every turn,
+ * e.g. for save points, to undo the last door choice or to {@link #fork(Random, TaskFactory, RewardFactory, BiFunction) fork} the game
+ * to evaluate what an NPC would do.
+ * <p>
+ * The {@link Random} instances of dungeon and player are not part of the snapshot.
+ */
+public final class GameSnapshot {
+
+    private final Dungeon dungeon;
+
+    private final PersistentRoomStore.Snapshot rooms;
+
+    private final Player.Snapshot player;
+
+    private GameSnapshot(final Dungeon dungeon, final PersistentRoomStore.Snapshot rooms, final Player.Snapshot player) {
+        this.dungeon = dungeon;
+        this.rooms = rooms;
+        this.player = player;
+    }
+
+    /**
+     * Takes a snapshot of the specified game.
+     * @param dungeon the dungeon, keeping its rooms in a {@link PersistentRoomStore}
+     * @param player the player roaming the dungeon
+     * @return a new snapshot, not {@code null}
+     * @throws NullPointerException If any parameter refers to {@code null}.
+     * @throws IllegalArgumentException If the dungeon doesn't keep its rooms in a {@link PersistentRoomStore}.
+     */
+    public static GameSnapshot take(final Dungeon dungeon, final Player player) {
+        player.awaitPrefetch();
+        return new GameSnapshot(dungeon, storeOf(dungeon).snapshot(), player.snapshot());
+    }
+
+    private static PersistentRoomStore storeOf(final Dungeon dungeon) {
+        if (!(dungeon.rooms instanceof PersistentRoomStore store)) {
+            throw new IllegalArgumentException("The dungeon must keep its rooms in a " + PersistentRoomStore.class.getSimpleName() + "!");
+        }
+        return store;
+    }
+
+    /**
+     * Returns the dungeon this snapshot was taken of.
+     */
+    public Dungeon getDungeon() {
+        return dungeon;
+    }
+
+    /**
+     * Returns the state of the player.
+     */
+    public Player.Snapshot getPlayer() {
+        return player;
+    }
+
+    /**
+     * Returns the IDs of the rooms that differ between this and the specified snapshot, including the rooms only one of them has.
+     * Takes time proportional to the differences if both snapshots stem from the same game.
+     * @param other another snapshot
+     * @return the IDs in ascending order, might be empty but not {@code null}
+     * @throws NullPointerException If {@code other} refers to {@code null}.
+     */
+    public int[] changedRooms(final GameSnapshot other) {
+        return rooms.changedRooms(other.rooms);
+    }
+
+    /**
+     * Sets the game this snapshot was taken of back to this snapshot.
+     * @param player the player to set back, usually the one this snapshot was taken of
+     * @throws NullPointerException If {@code player} refers to {@code null}.
+     * @see Player#restore(Player.Snapshot, Dungeon)
+     */
+    public void restore(final Player player) {
+        player.awaitPrefetch();
+        storeOf(dungeon).restore(rooms);
+        // rebuilt on the next request
+        dungeon.pathIndex = null;
+        player.restore(this.player, dungeon);
+    }
+
+    /**
+     * A game forked from a snapshot.
+     * @param dungeon the new dungeon
+     * @param player the new player
+     */
+    public record Fork(Dungeon dungeon, Player player) {
+    }
+
+    /**
+     * Creates a new game in the state of this snapshot, independent of the game this snapshot was taken of.
+     * @param random the {@link Random} instance for the new dungeon
+     * @param taskFactory the {@link TaskFactory} instance for the new dungeon
+     * @param rewardFactory the {@link RewardFactory} instance for the new dungeon
+     * @param playerConstructor a constructor for the player subclass
+     * @return the new game
+     * @throws NullPointerException If any parameter refers to {@code null}.
+     */
+    public Fork fork(final Random random, final TaskFactory taskFactory, final RewardFactory rewardFactory,
+                     final BiFunction<Room, Inventory, Player> playerConstructor) {
+        final Dungeon forked = new Dungeon(random, taskFactory, rewardFactory, new PersistentRoomStore(rooms));
+        return new Fork(forked, Player.fork(player, forked, playerConstructor));
+    }
+}
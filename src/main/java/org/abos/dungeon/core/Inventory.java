@@ -1,6 +1,7 @@
 package org.abos.dungeon.core;
 
-import org.abos.common.CollectionUtil;
+import org.abos.common.CompactInputStream;
+import org.abos.common.CompactOutputStream;
 import org.abos.common.Serializable;
 import org.abos.dungeon.core.entity.Item;
 import org.abos.dungeon.core.entity.ItemStack;
@@ -8,31 +9,101 @@ import org.abos.dungeon.core.entity.ItemStack;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.Comparator;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 
+/**
+ * An inventory of items in stacks. Only the total count of each item is kept, the stacks are derived from it:
+ * as many full stacks as possible, followed by one partial stack for the rest. Each stack takes one slot of the inventory.
+ * <p>
+ * The counts are indexed by the {@link Item#getOrdinal() ordinals} of the items, so no item is ever hashed.
+ * Running totals of the stacks of each item type are kept along, so counting by item or by type takes constant time.
+ * The items are listed in alphabetical order, sorting only the items in the inventory, and every change increases
+ * the {@link #getVersion() version}, so the {@link #getItemView() view} is only rebuilt after the inventory changed.
+ * <p>
+ * As there are no stacks of their own, some operations behave differently than when the stacks were kept as they were filled:
+ * <ul>
+ *     <li>{@link #removeItem(Item, Integer)} only checks the stack index, the item is always taken from the partial stack.</li>
+ *     <li>{@link #increaseStackCapacity()} merges the stacks of each item, which might free slots.</li>
+ *     <li>Reading an inventory merges the stacks written for each item, even if they had another layout, regardless of the capacity.</li>
+ * </ul>
+ * <p>
+ * Changes and reads synchronize on the inventory, so each call sees the inventory between two changes.
+ * {@link #getAllItems()} is a view that synchronizes per call, so iterating it might see changes made in the meantime,
+ * while {@link #getItemView()} and {@link #copy()} are consistent snapshots. Several changes that belong together, like crafting,
+ * are made by a {@link Transaction}, which either makes all of them or none. It is checked against the {@link #getItemVersion(int) versions}
+ * its items had when they have been added to it, so it can be prepared on another thread than the one committing changes in the meantime.
+ */
 public class Inventory implements Iterable<ItemStack>, Serializable {
 
     public static final int DEFAULT_INVENTORY_CAPACITY = 10;
 
     public static final int DEFAULT_STACK_CAPACITY = 10;
 
-    protected final Map<Item, List<Integer>> items = new HashMap<>();
+    /**
+     * Marks items that aren't part of a {@link Transaction}, see {@link #commit(long[], long[])}.
+     */
+    protected static final long NO_VERSION = -1;
+
+    /**
+     * The total count of each item in this inventory, indexed by {@link Item#getOrdinal() ordinal}.
+     * Grows when needed, so it might be shorter than {@link Item#ORDINALS}.
+     */
+    protected int[] counts = new int[0];
+
+    /**
+     * How many stacks of each item type are in this inventory, indexed by {@link org.abos.dungeon.core.entity.EntityRegistry#getTypeId(Class) type ID}.
+     * Grows when needed, so it might be shorter than the type count of {@link Item#ORDINALS}.
+     */
+    protected int[] typeStacks = new int[0];
+
+    /**
+     * How many different items are in this inventory.
+     */
+    protected int itemCount;
+
+    /**
+     * The {@link Item#getOrdinal() ordinals} of the items in this inventory, so they can be listed without looking at all registered items.
+     */
+    protected BitSet present = new BitSet();
+
+    /**
+     * If {@link #counts}, {@link #typeStacks} and {@link #present} are shared with a {@link #copy()}
+     * and have to be copied before the next change.
+     */
+    protected boolean shared;
 
     protected int inventoryCapacity;
 
     protected int stackCapacity;
 
+    /**
+     * How many stacks are in this inventory.
+     */
     protected int size;
 
     protected boolean locked;
 
+    /**
+     * Increased by every change.
+     */
+    protected long version;
+
+    /**
+     * The view built at {@link #viewVersion}, {@code null} if none has been built yet.
+     */
+    private List<ItemStack> view;
+
+    private long viewVersion;
+
     public Inventory(final int inventoryCapacity, final int stackCapacity) {
         if (inventoryCapacity <= 0) {
             throw new IllegalArgumentException("Inventory size must be positive!");
@@ -44,50 +115,189 @@ public class Inventory implements Iterable<ItemStack>, Serializable {
         this.stackCapacity = stackCapacity;
     }
 
-    public int size() {
+    public synchronized int size() {
         return size;
     }
 
-    public boolean isEmpty() {
+    /**
+     * Returns how many stacks fit into this inventory.
+     */
+    public synchronized int getInventoryCapacity() {
+        return inventoryCapacity;
+    }
+
+    /**
+     * Returns how many items fit into a stack.
+     */
+    public synchronized int getStackCapacity() {
+        return stackCapacity;
+    }
+
+    public synchronized boolean isEmpty() {
         return size == 0;
     }
 
-    public boolean isLocked() {
+    public synchronized boolean isLocked() {
         return locked;
     }
 
-    public void setLocked(boolean locked) {
+    public synchronized void setLocked(boolean locked) {
         this.locked = locked;
     }
 
-    public void increaseCapacity() {
+    /**
+     * Returns the version of this inventory, which increases with every change of its contents or capacities.
+     */
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns the version of the item with the specified ordinal, which changes at least with every change of its count.
+     * Here it is the {@link #getVersion() version} of the whole inventory, subclasses might keep one per item.
+     * @param ordinal the {@link Item#getOrdinal() ordinal} of the item
+     * @return the version of the item, not negative
+     */
+    protected long getItemVersion(final int ordinal) {
+        return getVersion();
+    }
+
+    public synchronized void increaseCapacity() {
         inventoryCapacity++;
+        version++;
     }
 
-    public void increaseStackCapacity() {
+    /**
+     * Increases the stack capacity by one. As the stacks are derived from the counts, this might merge stacks and free slots.
+     */
+    public synchronized void increaseStackCapacity() {
+        unshare();
         stackCapacity++;
+        version++;
+        restack();
+    }
+
+    /**
+     * Recomputes the size and the type totals from the counts, after the stack capacity changed.
+     */
+    private void restack() {
+        size = 0;
+        typeStacks = new int[0];
+        for (int ordinal = 0; ordinal < counts.length; ordinal++) {
+            size += stackCount(counts[ordinal]);
+            addTypeStacks(ordinal, stackCount(counts[ordinal]));
+        }
+    }
+
+    /**
+     * Returns how many stacks the specified count of an item takes.
+     */
+    protected int stackCount(final int count) {
+        return (count + stackCapacity - 1) / stackCapacity;
+    }
+
+    /**
+     * Returns the count of the item with the specified ordinal.
+     */
+    private int count(final int ordinal) {
+        // read once, another thread might replace the array
+        final int[] counts = this.counts;
+        return ordinal < counts.length ? counts[ordinal] : 0;
+    }
+
+    /**
+     * Adds the specified number of stacks to the totals of the types of the item with the specified ordinal.
+     */
+    private void addTypeStacks(final int ordinal, final int stacks) {
+        if (stacks == 0) {
+            return;
+        }
+        if (typeStacks.length < Item.ORDINALS.typeCount()) {
+            typeStacks = Arrays.copyOf(typeStacks, Item.ORDINALS.typeCount());
+        }
+        for (int typeId : Item.ORDINALS.getTypeIds(ordinal)) {
+            typeStacks[typeId] += stacks;
+        }
     }
 
     /**
-     * Returns an unmodifiable view of all different items in this inventory.
+     * Sets the count of the item with the specified ordinal and updates the type totals, leaving size and version to the caller.
+     */
+    private void setCount(final int ordinal, final int count) {
+        if (ordinal >= counts.length && count == 0) {
+            return;
+        }
+        unshare();
+        if (ordinal >= counts.length) {
+            counts = Arrays.copyOf(counts, Math.max(ordinal + 1, Item.ORDINALS.size()));
+        }
+        if (counts[ordinal] == 0 && count != 0) {
+            itemCount++;
+            present.set(ordinal);
+        }
+        else if (counts[ordinal] != 0 && count == 0) {
+            itemCount--;
+            present.clear(ordinal);
+        }
+        addTypeStacks(ordinal, stackCount(count) - stackCount(counts[ordinal]));
+        counts[ordinal] = count;
+    }
+
+    /**
+     * Copies the arrays shared with a {@link #copy()}, so they can be changed.
+     */
+    private void unshare() {
+        if (shared) {
+            counts = counts.clone();
+            typeStacks = typeStacks.clone();
+            present = (BitSet)present.clone();
+            shared = false;
+        }
+    }
+
+    private static int ordinalOf(final Item item) {
+        final int ordinal = item.getOrdinal(); // throws NPE
+        if (ordinal < 0) {
+            throw new IllegalArgumentException("Item " + item.getName() + " hasn't been registered!");
+        }
+        return ordinal;
+    }
+
+    /**
+     * Returns an unmodifiable view of all different items in this inventory, in alphabetical order.
      * @return an unmodifiable set, might be empty but not {@code null}
      */
     public Set<Item> getAllItems() {
-        return Collections.unmodifiableSet(items.keySet());
-    }
+        return new AbstractSet<>() {
+            @Override
+            public int size() {
+                synchronized (Inventory.this) {
+                    return itemCount;
+                }
+            }
 
-    protected Integer getFirstNonFullStack(List<Integer> stacks) {
-        int index = 0;
-        for (Integer stack : stacks) {
-            if (stack < stackCapacity) { // throws NPE
-                return index;
+            @Override
+            public boolean contains(Object o) {
+                return o instanceof Item item && countAll(item) > 0;
             }
-            if (stack > stackCapacity) {
-                throw new IllegalStateException("Overfull stack detected!");
+
+            @Override
+            public Iterator<Item> iterator() {
+                return sortedItems().iterator();
             }
-            index++;
+        };
+    }
+
+    /**
+     * Returns the items in this inventory in alphabetical order. Only the items in the inventory are sorted.
+     */
+    private synchronized List<Item> sortedItems() {
+        final List<Item> result = new ArrayList<>(itemCount);
+        for (int ordinal = present.nextSetBit(0); ordinal >= 0; ordinal = present.nextSetBit(ordinal + 1)) {
+            result.add(Item.ORDINALS.get(ordinal));
         }
-        return null;
+        result.sort(Comparator.comparing(Item::getName));
+        return result;
     }
 
     /**
@@ -98,35 +308,39 @@ public class Inventory implements Iterable<ItemStack>, Serializable {
      * @throws IllegalStateException If adding an item was attempted while this inventory is locked.
      */
     public boolean addItem(final Item item) {
+        return addItems(item, 1) == 1;
+    }
+
+    /**
+     * Adds as many of the specified amount of an item to the inventory as there is space for, in constant time.
+     * @param item the item to add, not {@code null}
+     * @param amount how many to add, not negative
+     * @return how many have been added, the rest is lost
+     * @throws NullPointerException If {@code item} refers to {@code null}.
+     * @throws IllegalArgumentException If {@code amount} is negative.
+     * @throws IllegalStateException If adding items was attempted while this inventory is locked.
+     */
+    public synchronized int addItems(final Item item, final int amount) {
         Objects.requireNonNull(item);
+        if (amount < 0) {
+            throw new IllegalArgumentException("Amount must not be negative!");
+        }
         if (isLocked()) {
             throw new IllegalStateException("Inventory is currently locked!");
         }
-        List<Integer> stacks = items.get(item);
-        // first item of kind in inventory
-        if (stacks == null) {
-            if (size < inventoryCapacity) {
-                stacks = new LinkedList<>();
-                stacks.add(1);
-                items.put(item, stacks);
-                size++;
-                return true;
-            }
-            return false;
-        }
-        // first item of stack in inventory
-        final Integer index = getFirstNonFullStack(stacks);
-        if (index == null) {
-            if (size < inventoryCapacity) {
-                stacks.add(1);
-                size++;
-                return true;
-            }
-            return false;
+        final int ordinal = ordinalOf(item);
+        final int oldCount = count(ordinal);
+        // the rest of the partial stack plus the free slots
+        final long space = (stackCapacity - oldCount % stackCapacity) % stackCapacity
+                + (long)Math.max(0, inventoryCapacity - size) * stackCapacity;
+        final int added = (int)Math.min(Math.min(amount, space), Integer.MAX_VALUE - oldCount);
+        if (added == 0) {
+            return 0;
         }
-        // non-first item of a stack
-        stacks.set(index, stacks.get(index) + 1);
-        return true;
+        setCount(ordinal, oldCount + added);
+        size += stackCount(oldCount + added) - stackCount(oldCount);
+        version++;
+        return added;
     }
 
     /**
@@ -136,12 +350,10 @@ public class Inventory implements Iterable<ItemStack>, Serializable {
      * @throws NullPointerException If {@code stacks} or any of its elements refers to {@code null}
      * @throws IllegalStateException If adding items was attempted while this inventory is locked.
      */
-    public boolean addAll(final Iterable<ItemStack> stacks) {
+    public synchronized boolean addAll(final Iterable<ItemStack> stacks) {
         boolean addedAll = true;
         for (ItemStack stack : stacks) {
-            for (Item item : stack) {
-                addedAll &= addItem(item);
-            }
+            addedAll &= addItems(stack.item(), stack.amount()) == stack.amount();
         }
         return addedAll;
     }
@@ -149,45 +361,56 @@ public class Inventory implements Iterable<ItemStack>, Serializable {
     /**
      * Removes one of the specified item from the inventory if possible.
      * @param item The item to remove. {@code null} means the method will return immediately without changing the inventory.
-     * @param stackIndex From which stack to remove the item. Can be {@code null},
-     *                   in that case the first non-full stack or (if not existent) the last full stack is chosen.
+     * @param stackIndex From which stack to remove the item. Can be {@code null}. As the stacks are derived from the total count,
+     *                   the item is always taken from the last stack, the index is only checked.
      * @return {@code true} if the item could be removed. {@code false} if not, especially because of an invalid stack index
      * or because the item wasn't in the inventory to begin with.
      * @throws IllegalStateException If removing an item was attempted while this inventory is locked.
      */
-    public boolean removeItem(final Item item, Integer stackIndex) {
+    public synchronized boolean removeItem(final Item item, Integer stackIndex) {
         if (isLocked()) {
             throw new IllegalStateException("Inventory is currently locked!");
         }
         if (item == null || (stackIndex != null && stackIndex < 0)) {
             return false;
         }
-        final List<Integer> stacks = items.get(item);
-        if (stacks == null) {
+        final int count = countAll(item);
+        if (count == 0) {
             return false;
         }
-        if (stackIndex != null && stacks.size() <= stackIndex) {
+        if (stackIndex != null && stackCount(count) <= stackIndex) {
             return false;
         }
-        if (stackIndex == null) {
-            stackIndex = getFirstNonFullStack(stacks);
-            // might still be null if all stacks are full
-            if (stackIndex == null) {
-                stackIndex = stacks.size() - 1;
-            }
+        return removeItems(item, 1) == 1;
+    }
+
+    /**
+     * Removes as many of the specified amount of an item from the inventory as there are, in constant time.
+     * @param item The item to remove. {@code null} means the method will return immediately without changing the inventory.
+     * @param amount how many to remove, not negative
+     * @return how many have been removed
+     * @throws IllegalArgumentException If {@code amount} is negative.
+     * @throws IllegalStateException If removing items was attempted while this inventory is locked.
+     */
+    public synchronized int removeItems(final Item item, final int amount) {
+        if (amount < 0) {
+            throw new IllegalArgumentException("Amount must not be negative!");
         }
-        final int value = stacks.get(stackIndex);
-        if (value == 1) {
-            stacks.remove(stackIndex);
-            size--;
-            if (stacks.isEmpty()) {
-                items.remove(item);
-            }
+        if (isLocked()) {
+            throw new IllegalStateException("Inventory is currently locked!");
         }
-        else {
-            stacks.set(stackIndex, value - 1);
+        if (item == null) {
+            return 0;
         }
-        return true;
+        final int count = countAll(item);
+        if (count == 0 || amount == 0) {
+            return 0;
+        }
+        final int removed = Math.min(amount, count);
+        size -= stackCount(count) - stackCount(count - removed);
+        setCount(item.getOrdinal(), count - removed);
+        version++;
+        return removed;
     }
 
     /**
@@ -197,25 +420,230 @@ public class Inventory implements Iterable<ItemStack>, Serializable {
      * @throws NullPointerException If {@code stacks} or any of its elements refers to {@code null}
      * @throws IllegalStateException If removing items was attempted while this inventory is locked.
      */
-    public boolean removeAll(Iterable<ItemStack> stacks) {
+    public synchronized boolean removeAll(Iterable<ItemStack> stacks) {
         boolean removedAll = true;
         for (ItemStack stack : stacks) {
-            for (Item item : stack) {
-                removedAll &= removeItem(item, null);
-            }
+            removedAll &= removeItems(stack.item(), stack.amount()) == stack.amount();
         }
         return removedAll;
     }
 
+    /**
+     * The outcome of {@link Transaction#commit()}.
+     */
+    public enum TransactionResult {
+        /**
+         * All changes have been made.
+         */
+        COMMITTED,
+        /**
+         * The inventory changed since the transaction has been started, nothing has been changed.
+         */
+        CONFLICT,
+        /**
+         * Some items to remove aren't in the inventory, nothing has been changed.
+         */
+        MISSING_ITEMS,
+        /**
+         * The items to add don't fit into the inventory, nothing has been changed.
+         */
+        NO_SPACE
+    }
+
+    /**
+     * Starts a transaction on this inventory.
+     * @return a new {@link Transaction}, not {@code null}
+     */
+    public Transaction transaction() {
+        return new Transaction();
+    }
+
+    /**
+     * Collects items to remove from and add to an {@link Inventory} and changes them all at once by {@link #commit()}.
+     * The removals are made before the additions, so the slots they free can be used.
+     * Instances are meant to be used by one thread and only once.
+     */
+    public final class Transaction {
+
+        /**
+         * The changes of the counts, indexed by {@link Item#getOrdinal() ordinal}.
+         */
+        private long[] deltas = new long[0];
+
+        /**
+         * The {@link #getItemVersion(int) versions} of the items when they have been added to the transaction,
+         * indexed by ordinal, {@link #NO_VERSION} for items not in the transaction.
+         */
+        private long[] baseVersions = new long[0];
+
+        private boolean committed;
+
+        private Transaction() {
+            /* Only created by transaction(). */
+        }
+
+        private Transaction change(final Item item, final int amount, final int sign) {
+            if (amount < 0) {
+                throw new IllegalArgumentException("Amount must not be negative!");
+            }
+            if (committed) {
+                throw new IllegalStateException("Transaction has been committed already!");
+            }
+            final int ordinal = ordinalOf(item);
+            if (ordinal >= deltas.length) {
+                final int oldLength = deltas.length;
+                deltas = Arrays.copyOf(deltas, Math.max(ordinal + 1, Item.ORDINALS.size()));
+                baseVersions = Arrays.copyOf(baseVersions, deltas.length);
+                Arrays.fill(baseVersions, oldLength, baseVersions.length, NO_VERSION);
+            }
+            if (baseVersions[ordinal] == NO_VERSION) {
+                baseVersions[ordinal] = getItemVersion(ordinal);
+            }
+            deltas[ordinal] += (long)sign * amount;
+            return this;
+        }
+
+        /**
+         * Adds the specified amount of an item to this transaction.
+         * @param item the item to add, not {@code null}
+         * @param amount how many to add, not negative
+         * @return this transaction
+         * @throws NullPointerException If {@code item} refers to {@code null}.
+         * @throws IllegalArgumentException If {@code amount} is negative.
+         * @throws IllegalStateException If this transaction has been committed already.
+         */
+        public Transaction add(final Item item, final int amount) {
+            return change(item, amount, 1);
+        }
+
+        /**
+         * Removes the specified amount of an item in this transaction.
+         * @param item the item to remove, not {@code null}
+         * @param amount how many to remove, not negative
+         * @return this transaction
+         * @throws NullPointerException If {@code item} refers to {@code null}.
+         * @throws IllegalArgumentException If {@code amount} is negative.
+         * @throws IllegalStateException If this transaction has been committed already.
+         */
+        public Transaction remove(final Item item, final int amount) {
+            return change(item, amount, -1);
+        }
+
+        /**
+         * Adds all the item stacks in this transaction.
+         * @param stacks the stacks to add
+         * @return this transaction
+         * @throws NullPointerException If {@code stacks} or any of its elements refers to {@code null}
+         * @throws IllegalStateException If this transaction has been committed already.
+         */
+        public Transaction addAll(final Iterable<ItemStack> stacks) {
+            for (ItemStack stack : stacks) {
+                add(stack.item(), stack.amount());
+            }
+            return this;
+        }
+
+        /**
+         * Removes all the item stacks in this transaction.
+         * @param stacks the stacks to remove
+         * @return this transaction
+         * @throws NullPointerException If {@code stacks} or any of its elements refers to {@code null}
+         * @throws IllegalStateException If this transaction has been committed already.
+         */
+        public Transaction removeAll(final Iterable<ItemStack> stacks) {
+            for (ItemStack stack : stacks) {
+                remove(stack.item(), stack.amount());
+            }
+            return this;
+        }
+
+        /**
+         * Makes all changes of this transaction if none of its items has changed since it has been added to the transaction,
+         * all items to remove are there and all items to add fit, else none. After a {@link TransactionResult#CONFLICT},
+         * a new transaction can be started.
+         * @return {@link TransactionResult#COMMITTED} if the changes have been made, else why not
+         * @throws IllegalStateException If this transaction has been committed already or the inventory is locked.
+         * @see Inventory#commit(long[], long[])
+         */
+        public TransactionResult commit() {
+            if (committed) {
+                throw new IllegalStateException("Transaction has been committed already!");
+            }
+            committed = true;
+            return Inventory.this.commit(deltas, baseVersions);
+        }
+    }
+
+    /**
+     * Makes the changes of a {@link Transaction} if its items are still at the specified versions,
+     * all items to remove are there and all items to add fit, else none.
+     * @param deltas the changes of the counts, indexed by {@link Item#getOrdinal() ordinal}
+     * @param baseVersions the {@link #getItemVersion(int) versions} of the items when they have been added to the transaction,
+     * indexed by ordinal and as long as {@code deltas}, {@link #NO_VERSION} for items not in the transaction
+     * @return {@link TransactionResult#COMMITTED} if the changes have been made, else why not
+     * @throws IllegalStateException If the inventory is locked.
+     */
+    protected synchronized TransactionResult commit(final long[] deltas, final long[] baseVersions) {
+        if (isLocked()) {
+            throw new IllegalStateException("Inventory is currently locked!");
+        }
+        for (int ordinal = 0; ordinal < baseVersions.length; ordinal++) {
+            if (baseVersions[ordinal] != NO_VERSION && baseVersions[ordinal] != getItemVersion(ordinal)) {
+                return TransactionResult.CONFLICT;
+            }
+        }
+        long newSize = size;
+        boolean changed = false;
+        for (int ordinal = 0; ordinal < deltas.length; ordinal++) {
+            if (deltas[ordinal] == 0) {
+                continue;
+            }
+            final long newCount = count(ordinal) + deltas[ordinal];
+            if (newCount < 0) {
+                return TransactionResult.MISSING_ITEMS;
+            }
+            if (newCount > Integer.MAX_VALUE) {
+                return TransactionResult.NO_SPACE;
+            }
+            newSize += stackCount((int)newCount) - stackCount(count(ordinal));
+            changed = true;
+        }
+        // an inventory that is overfull already may still shrink
+        if (newSize > inventoryCapacity && newSize > size) {
+            return TransactionResult.NO_SPACE;
+        }
+        if (!changed) {
+            return TransactionResult.COMMITTED;
+        }
+        for (int ordinal = 0; ordinal < deltas.length; ordinal++) {
+            if (deltas[ordinal] != 0) {
+                setCount(ordinal, (int)(count(ordinal) + deltas[ordinal]));
+            }
+        }
+        size = (int)newSize;
+        version++;
+        return TransactionResult.COMMITTED;
+    }
+
     /**
      * Returns an unmodifiable view of the items in this inventory.
+     * The stacks are ordered alphabetically by item, the full stacks of an item before its partial stack.
      * @return an unmodifiable view, may be empty but not {@code null}
-     * @implNote the generated view is never cached
+     * @implNote The view is cached until the inventory changes, so repeated calls without changes in between return the same list.
      */
-    public List<ItemStack> getItemView() {
-        return CollectionUtil.getAlphabeticalOrder(items).stream()
-                .flatMap(entry -> entry.getValue().stream().map(amount -> new ItemStack(entry.getKey(), amount)))
-                .toList();
+    public synchronized List<ItemStack> getItemView() {
+        if (view == null || viewVersion != version) {
+            final List<ItemStack> result = new ArrayList<>(size);
+            for (Item item : sortedItems()) {
+                final int count = count(item.getOrdinal());
+                for (int amount = count; amount > 0; amount -= stackCapacity) {
+                    result.add(new ItemStack(item, Math.min(amount, stackCapacity)));
+                }
+            }
+            view = Collections.unmodifiableList(result);
+            viewVersion = version;
+        }
+        return view;
     }
 
     /**
@@ -223,30 +651,44 @@ public class Inventory implements Iterable<ItemStack>, Serializable {
      * The remove operation is not supported. Changing the inventory during the use of
      * this iterator leaves the iterator unchanged.
      * @return an iterator over the inventory, not {@code null}
-     * @implNote Simply calls {@link Iterable#iterator()} on {@link #getItemView()}, so it's a pretty expensive operation.
+     * @implNote Simply calls {@link Iterable#iterator()} on {@link #getItemView()}, so it's only expensive after a change.
      */
     @Override
     public Iterator<ItemStack> iterator() {
         return getItemView().iterator();
     }
 
-    public int countAll(final Item item) {
-        return CollectionUtil.countAll(items, item);
+    public synchronized int countAll(final Item item) {
+        if (item == null || item.getOrdinal() < 0) {
+            return 0;
+        }
+        return count(item.getOrdinal());
     }
 
     public int countAll(final String itemName) {
-        return countAll(CollectionUtil.getByName(Item.REGISTRY, itemName));
+        return countAll(Item.ORDINALS.getByName(itemName));
     }
 
-    public int countAll(final Class<? extends Item> keyClass) {
-        return items.entrySet().stream()
-                .filter(entry -> keyClass.isInstance(entry.getKey()))
-                .mapToInt(entry -> entry.getValue().size())
-                .sum();
+    /**
+     * Returns how many stacks of items of the specified type are in this inventory, in constant time.
+     * @param keyClass the type to count, {@code null} counts nothing
+     * @return the number of stacks
+     */
+    public synchronized int countAll(final Class<? extends Item> keyClass) {
+        final int typeId = Item.ORDINALS.getTypeId(keyClass);
+        return typeId >= 0 && typeId < typeStacks.length ? typeStacks[typeId] : 0;
     }
 
+    /**
+     * If this inventory holds at least as many of each item as the specified one.
+     * Both inventories are read through their public methods, so subclasses keeping their counts elsewhere are compared correctly.
+     * No lock is held for the whole comparison, so changes made in the meantime might be seen.
+     * @param other the inventory to compare to
+     * @return {@code true} if all items of {@code other} are in this inventory, else {@code false}
+     * @throws NullPointerException If {@code other} refers to {@code null}.
+     */
     public boolean contains(final Inventory other) {
-        for (Item item : other.items.keySet()) {
+        for (Item item : other.getAllItems()) {
             if (countAll(item) < other.countAll(item)) {
                 return false;
             }
@@ -254,41 +696,114 @@ public class Inventory implements Iterable<ItemStack>, Serializable {
         return true;
     }
 
+    /**
+     * Returns a copy of this inventory with the same contents and capacities in constant time.
+     * Both share their counts until either changes, then the changed one copies them.
+     * @return a new {@link Inventory} instance, not {@code null}
+     */
+    public synchronized Inventory copy() {
+        final Inventory result = new Inventory(inventoryCapacity, stackCapacity);
+        result.counts = counts;
+        result.typeStacks = typeStacks;
+        result.itemCount = itemCount;
+        result.present = present;
+        result.size = size;
+        result.shared = true;
+        shared = true;
+        return result;
+    }
+
+    /**
+     * Replaces the contents and capacities of this inventory with the ones of the specified inventory.
+     * @param other the inventory to copy, not {@code null}
+     */
+    /* package private */ void replaceWith(final Inventory other) {
+        // copied first, so the lock of the other inventory isn't taken while holding this one
+        final Inventory source = other.copy();
+        synchronized (this) {
+            counts = source.counts;
+            typeStacks = source.typeStacks;
+            itemCount = source.itemCount;
+            present = source.present;
+            shared = source.shared;
+            version++;
+            inventoryCapacity = source.inventoryCapacity;
+            stackCapacity = source.stackCapacity;
+            size = source.size;
+        }
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
         if (!(o instanceof Inventory that)) return false;
-        return inventoryCapacity == that.inventoryCapacity && stackCapacity == that.stackCapacity && items.equals(that.items);
+        // read through the public methods, like contains(Inventory)
+        if (getInventoryCapacity() != that.getInventoryCapacity() || getStackCapacity() != that.getStackCapacity()) {
+            return false;
+        }
+        final Set<Item> items = getAllItems();
+        if (items.size() != that.getAllItems().size()) {
+            return false;
+        }
+        for (Item item : items) {
+            if (countAll(item) != that.countAll(item)) {
+                return false;
+            }
+        }
+        return true;
     }
 
     @Override
-    public int hashCode() {
-        return Objects.hash(items, inventoryCapacity, stackCapacity);
+    public synchronized int hashCode() {
+        int countsHash = 1;
+        for (Item item : getAllItems()) {
+            countsHash = 31 * countsHash + Objects.hash(item.getOrdinal(), countAll(item));
+        }
+        return Objects.hash(countsHash, getInventoryCapacity(), getStackCapacity());
     }
 
     @Override
-    public String toString() {
+    public synchronized String toString() {
         final StringBuilder sb = new StringBuilder(getClass().getSimpleName());
         sb.append("{");
         sb.append("inventoryCapacity=").append(inventoryCapacity);
         sb.append(", stackCapacity=").append(stackCapacity);
         sb.append(", size=").append(size);
         sb.append(", locked=").append(locked);
-        sb.append(", items=").append(items);
+        sb.append(", items={");
+        String separator = "";
+        for (Item item : getAllItems()) {
+            sb.append(separator).append(item.getName()).append('=').append(countAll(item));
+            separator = ", ";
+        }
+        sb.append('}');
         sb.append('}');
         return sb.toString();
     }
 
+    /**
+     * Puts the specified count of an item that isn't in this inventory yet, regardless of the capacity.
+     * Used for counts read from a stream, as the stacks written might have had another layout, and for copies.
+     */
+    /* package private */ void put(final Item item, final int count) {
+        if (count > 0 && countAll(item) == 0) {
+            setCount(item.getOrdinal(), count);
+            size += stackCount(count);
+            version++;
+        }
+    }
+
     @Override
-    public void writeObject(DataOutputStream dos) throws IOException {
+    public synchronized void writeObject(DataOutputStream dos) throws IOException {
         dos.writeInt(inventoryCapacity);
         dos.writeInt(stackCapacity);
-        dos.writeInt(items.size());
-        for (var entry : items.entrySet()) {
-            dos.writeUTF(entry.getKey().getName());
-            dos.writeInt(entry.getValue().size());
-            for (Integer stack : entry.getValue()) {
-                dos.writeInt(stack);
+        dos.writeInt(itemCount);
+        for (Item item : getAllItems()) {
+            final int count = countAll(item);
+            dos.writeUTF(item.getName());
+            dos.writeInt(stackCount(count));
+            for (int amount = count; amount > 0; amount -= stackCapacity) {
+                dos.writeInt(Math.min(amount, stackCapacity));
             }
         }
     }
@@ -307,18 +822,136 @@ public class Inventory implements Iterable<ItemStack>, Serializable {
         final int size = dis.readInt();
         for (int i = 0; i < size; i++) {
             final String name = dis.readUTF();
-            final Item item = CollectionUtil.getByName(Item.REGISTRY, name);
+            final Item item = Item.ORDINALS.getByName(name);
             if (item == null) {
                 throw new IllegalStateException("Unknown item " + name + " encountered!");
             }
-            final List<Integer> stacks = new LinkedList<>();
+            int count = 0;
             final int stackCount = dis.readInt();
             for (int j = 0; j < stackCount; j++) {
-                stacks.add(dis.readInt());
+                count += dis.readInt();
             }
-            result.items.put(item, stacks);
+            result.put(item, count);
+        }
+        return result;
+    }
+
+    /**
+     * Writes this inventory more compactly than {@link #writeObject(DataOutputStream)}, with the item names in the string table.
+     * @param cos the compact output stream
+     * @throws IOException If an I/O exception occurs.
+     * @see #readCompact(CompactInputStream)
+     */
+    public synchronized void writeCompact(final CompactOutputStream cos) throws IOException {
+        cos.writeVarInt(inventoryCapacity);
+        cos.writeVarInt(stackCapacity);
+        cos.writeVarInt(itemCount);
+        for (Item item : getAllItems()) {
+            final int count = countAll(item);
+            cos.writeTableString(item.getName());
+            cos.writeVarInt(stackCount(count));
+            for (int amount = count; amount > 0; amount -= stackCapacity) {
+                cos.writeVarInt(Math.min(amount, stackCapacity));
+            }
+        }
+    }
+
+    /**
+     * Writes how an inventory changed since an earlier copy of it: a flag, followed by the capacities and the counts
+     * of the changed items if anything changed. Both inventories must be copies nobody changes anymore.
+     * @param saved a copy of the inventory as it was, not {@code null}
+     * @param current a copy of the inventory as it is, not {@code null}
+     * @param dos the data output stream
+     * @throws IOException If an I/O exception occurs.
+     * @see #readChanges(DataInputStream)
+     */
+    /* package private */ static void writeChanges(final Inventory saved, final Inventory current, final DataOutputStream dos) throws IOException {
+        final BitSet changed = (BitSet)saved.present.clone();
+        changed.or(current.present);
+        for (int ordinal = changed.nextSetBit(0); ordinal >= 0; ordinal = changed.nextSetBit(ordinal + 1)) {
+            if (saved.count(ordinal) == current.count(ordinal)) {
+                changed.clear(ordinal);
+            }
+        }
+        final boolean anyChange = !changed.isEmpty() || saved.inventoryCapacity != current.inventoryCapacity
+                || saved.stackCapacity != current.stackCapacity;
+        dos.writeBoolean(anyChange);
+        if (!anyChange) {
+            return;
+        }
+        dos.writeInt(current.inventoryCapacity);
+        dos.writeInt(current.stackCapacity);
+        dos.writeInt(changed.cardinality());
+        for (int ordinal = changed.nextSetBit(0); ordinal >= 0; ordinal = changed.nextSetBit(ordinal + 1)) {
+            dos.writeUTF(Item.ORDINALS.get(ordinal).getName());
+            dos.writeInt(current.count(ordinal));
+        }
+    }
+
+    /**
+     * Applies changes written by {@link #writeChanges(Inventory, Inventory, DataOutputStream)} to this inventory, regardless of the capacity.
+     * Nothing is changed if an unknown item name is encountered.
+     * @param dis the {@link DataInputStream} to read from
+     * @throws IllegalStateException If an unknown item name is encountered.
+     * @throws IOException If an I/O exception occurs.
+     */
+    /* package private */ synchronized void readChanges(final DataInputStream dis) throws IllegalStateException, IOException {
+        if (!dis.readBoolean()) {
+            return;
+        }
+        final int newInventoryCapacity = dis.readInt();
+        final int newStackCapacity = dis.readInt();
+        final int[] ordinals = new int[dis.readInt()];
+        final int[] newCounts = new int[ordinals.length];
+        for (int i = 0; i < ordinals.length; i++) {
+            final String name = dis.readUTF();
+            final Item item = Item.ORDINALS.getByName(name);
+            if (item == null) {
+                throw new IllegalStateException("Unknown item " + name + " encountered!");
+            }
+            ordinals[i] = item.getOrdinal();
+            newCounts[i] = dis.readInt();
+        }
+        inventoryCapacity = newInventoryCapacity;
+        if (newStackCapacity == stackCapacity) {
+            for (int i = 0; i < ordinals.length; i++) {
+                size += stackCount(newCounts[i]) - stackCount(count(ordinals[i]));
+                setCount(ordinals[i], newCounts[i]);
+            }
+        }
+        else {
+            stackCapacity = newStackCapacity;
+            for (int i = 0; i < ordinals.length; i++) {
+                setCount(ordinals[i], newCounts[i]);
+            }
+            restack();
+        }
+        version++;
+    }
+
+    /**
+     * Reads an {@link Inventory} written by {@link #writeCompact(CompactOutputStream)} from the specified stream.
+     * @param cis the {@link CompactInputStream} to read from
+     * @return a new {@link Inventory} instance
+     * @throws IllegalStateException If an unknown item name is encountered.
+     * @throws IOException If an I/O exception occurs.
+     */
+    public static Inventory readCompact(final CompactInputStream cis) throws IllegalStateException, IOException {
+        final Inventory result = new Inventory(cis.readVarInt(), cis.readVarInt());
+        final int size = cis.readVarInt();
+        for (int i = 0; i < size; i++) {
+            final String name = cis.readTableString();
+            final Item item = Item.ORDINALS.getByName(name);
+            if (item == null) {
+                throw new IllegalStateException("Unknown item " + name + " encountered!");
+            }
+            int count = 0;
+            final int stackCount = cis.readVarInt();
+            for (int j = 0; j < stackCount; j++) {
+                count += cis.readVarInt();
+            }
+            result.put(item, count);
         }
-        result.size = size;
         return result;
     }
 
@@ -0,0 +1,319 @@
+package org.abos.dungeon.core;
+
+import org.abos.dungeon.core.task.Task;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A {@link RoomStore} keeping the rooms in a file instead of on the heap, so dungeons can grow larger than the heap.
+ * <p>
+ * Every room is a fixed-width record in a memory-mapped room file, which is mapped in segments as the dungeon grows.
+ * The room file grows one whole segment (48 MB, sparse on most file systems) at a time.
+ * Since the tasks differ in size, they are appended to a separate task file and the records only keep their offset.
+ * Changes like filled doors or collected rewards are written straight into the mapping, tasks are decoded
+ * each time they are requested. Reopening existing files continues the stored dungeon.
+ * <p>
+ * The I/O exceptions of the accessors are rethrown as {@link UncheckedIOException}.
+ */
+public class MappedRoomStore implements RoomStore, Closeable {
+
+    /**
+     * The size of a room record in bytes.
+     */
+    public static final int RECORD_SIZE = 48;
+
+    /**
+     * Identifies room files, reads "ROOM".
+     */
+    private static final int MAGIC = 0x524F4F4D;
+
+    private static final int VERSION = 1;
+
+    private static final int RECORDS_PER_SEGMENT = 1 << 20;
+
+    private static final long SEGMENT_SIZE = (long)RECORD_SIZE * RECORDS_PER_SEGMENT;
+
+    // record layout, the header occupies the first record slot
+    private static final int FROM_ID_OFFSET = 0;
+    private static final int DOOR_COUNT_OFFSET = 4;
+    private static final int FLAGS_OFFSET = 5;
+    private static final int DOORS_OFFSET = 8;
+    private static final int TASK_OFFSET = DOORS_OFFSET + 4 * Room.MAX_DOORS;
+
+    // header layout
+    private static final int HEADER_MAGIC_OFFSET = 0;
+    private static final int HEADER_VERSION_OFFSET = 4;
+    private static final int HEADER_SIZE_OFFSET = 8;
+    private static final int HEADER_TASK_FILE_SIZE_OFFSET = 16;
+
+    private static final byte FILLED_FLAG = 1;
+    private static final byte REWARD_COLLECTED_FLAG = 1 << 1;
+
+    /**
+     * Task offset of rooms without task.
+     */
+    private static final long NO_TASK = -1L;
+
+    /**
+     * The channel of the room file.
+     */
+    protected final FileChannel roomChannel;
+
+    /**
+     * The channel of the task file.
+     */
+    protected final FileChannel taskChannel;
+
+    /**
+     * The mapped segments of the room file, mapped on first access.
+     */
+    protected final List<MappedByteBuffer> segments = new ArrayList<>();
+
+    /**
+     * @see #size()
+     */
+    protected int size;
+
+    /**
+     * How many bytes of the task file are in use.
+     */
+    protected long taskFileSize;
+
+    /**
+     * Opens a {@link MappedRoomStore} on the specified files, creating them if necessary.
+     * @param roomFile the file for the room records
+     * @param taskFile the file for the tasks
+     * @throws IOException If the files couldn't be opened or the room file isn't a valid room file.
+     */
+    public MappedRoomStore(final Path roomFile, final Path taskFile) throws IOException {
+        roomChannel = FileChannel.open(roomFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        taskChannel = FileChannel.open(taskFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        final boolean existing = roomChannel.size() > 0;
+        final MappedByteBuffer header = segment(0);
+        if (existing) {
+            if (header.getInt(HEADER_MAGIC_OFFSET) != MAGIC || header.getInt(HEADER_VERSION_OFFSET) != VERSION) {
+                close();
+                throw new IOException("Not a room file: " + roomFile);
+            }
+            size = header.getInt(HEADER_SIZE_OFFSET);
+            taskFileSize = header.getLong(HEADER_TASK_FILE_SIZE_OFFSET);
+        }
+        else {
+            header.putInt(HEADER_MAGIC_OFFSET, MAGIC);
+            header.putInt(HEADER_VERSION_OFFSET, VERSION);
+            writeHeader();
+        }
+    }
+
+    private void writeHeader() {
+        final MappedByteBuffer header = segments.get(0);
+        header.putInt(HEADER_SIZE_OFFSET, size);
+        header.putLong(HEADER_TASK_FILE_SIZE_OFFSET, taskFileSize);
+    }
+
+    private MappedByteBuffer segment(final int index) {
+        try {
+            while (segments.size() <= index) {
+                // mapping beyond the end of the file grows the file
+                segments.add(roomChannel.map(FileChannel.MapMode.READ_WRITE, segments.size() * SEGMENT_SIZE, SEGMENT_SIZE));
+            }
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return segments.get(index);
+    }
+
+    /**
+     * Returns the segment holding the record of the specified room.
+     */
+    private MappedByteBuffer recordSegment(final int id) {
+        return segment((id + 1) / RECORDS_PER_SEGMENT);
+    }
+
+    /**
+     * Returns the position of the record of the specified room in its segment.
+     */
+    private static int recordOffset(final int id) {
+        return ((id + 1) % RECORDS_PER_SEGMENT) * RECORD_SIZE;
+    }
+
+    private byte getFlags(final int id) {
+        return recordSegment(id).get(recordOffset(id) + FLAGS_OFFSET);
+    }
+
+    private void setFlag(final int id, final byte flag, final boolean value) {
+        final byte flags = getFlags(id);
+        recordSegment(id).put(recordOffset(id) + FLAGS_OFFSET, (byte)(value ? flags | flag : flags & ~flag));
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isFull() {
+        // the header takes the first slot
+        return size == Integer.MAX_VALUE - 1;
+    }
+
+    @Override
+    public int add(final int fromId, final int doorCount, final Task task) {
+        if (isFull()) {
+            throw new IllegalStateException("Room store is full!");
+        }
+        if (doorCount < Room.MIN_DOORS || doorCount > Room.MAX_DOORS) {
+            throw new IllegalArgumentException("Door count out of range!");
+        }
+        final int id = size;
+        final long taskOffset = task == null ? NO_TASK : appendTask(task);
+        final MappedByteBuffer segment = recordSegment(id);
+        final int offset = recordOffset(id);
+        segment.putInt(offset + FROM_ID_OFFSET, fromId);
+        segment.put(offset + DOOR_COUNT_OFFSET, (byte)doorCount);
+        segment.put(offset + FLAGS_OFFSET, (byte)0);
+        segment.putLong(offset + TASK_OFFSET, taskOffset);
+        size++;
+        writeHeader();
+        return id;
+    }
+
+    private long appendTask(final Task task) {
+        try {
+            final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            final DataOutputStream dos = new DataOutputStream(bos);
+            dos.writeInt(0); // placeholder for the length
+            Room.writeTask(dos, task);
+            final ByteBuffer buffer = ByteBuffer.wrap(bos.toByteArray());
+            buffer.putInt(0, buffer.capacity() - Integer.BYTES);
+            final long offset = taskFileSize;
+            while (buffer.hasRemaining()) {
+                taskChannel.write(buffer, offset + buffer.position());
+            }
+            taskFileSize += buffer.capacity();
+            return offset;
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    @Override
+    public int getFromId(final int id) {
+        return recordSegment(id).getInt(recordOffset(id) + FROM_ID_OFFSET);
+    }
+
+    @Override
+    public int getDoorCount(final int id) {
+        return recordSegment(id).get(recordOffset(id) + DOOR_COUNT_OFFSET);
+    }
+
+    @Override
+    public boolean isFilled(final int id) {
+        return (getFlags(id) & FILLED_FLAG) != 0;
+    }
+
+    @Override
+    public int getDoor(final int id, final int door) {
+        if (!isFilled(id)) {
+            throw new IndexOutOfBoundsException("Doors of room " + id + " haven't been filled yet!");
+        }
+        Objects.checkIndex(door, getDoorCount(id));
+        return recordSegment(id).getInt(recordOffset(id) + DOORS_OFFSET + 4 * door);
+    }
+
+    @Override
+    public void setDoors(final int id, final int[] doors) {
+        if (isFilled(id)) {
+            throw new IllegalStateException("Doors of room " + id + " have been filled already!");
+        }
+        if (doors.length != getDoorCount(id)) {
+            throw new IllegalArgumentException("Door count doesn't match!");
+        }
+        final MappedByteBuffer segment = recordSegment(id);
+        final int offset = recordOffset(id) + DOORS_OFFSET;
+        for (int i = 0; i < doors.length; i++) {
+            segment.putInt(offset + 4 * i, doors[i]);
+        }
+        setFlag(id, FILLED_FLAG, true);
+    }
+
+    @Override
+    public Task getTask(final int id) {
+        final long offset = recordSegment(id).getLong(recordOffset(id) + TASK_OFFSET);
+        if (offset == NO_TASK) {
+            return null;
+        }
+        try {
+            final ByteBuffer lengthBuffer = ByteBuffer.allocate(Integer.BYTES);
+            readFully(lengthBuffer, offset);
+            final ByteBuffer taskBuffer = ByteBuffer.allocate(lengthBuffer.getInt(0));
+            readFully(taskBuffer, offset + Integer.BYTES);
+            return Room.readTask(new DataInputStream(new ByteArrayInputStream(taskBuffer.array())));
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private void readFully(final ByteBuffer buffer, final long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (taskChannel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of task file!");
+            }
+        }
+    }
+
+    @Override
+    public boolean isRewardCollected(final int id) {
+        return (getFlags(id) & REWARD_COLLECTED_FLAG) != 0;
+    }
+
+    @Override
+    public void setRewardCollected(final int id, final boolean rewardCollected) {
+        setFlag(id, REWARD_COLLECTED_FLAG, rewardCollected);
+    }
+
+    /**
+     * Writes all changes to the storage device.
+     * @throws IOException If an I/O exception occurs.
+     */
+    public void flush() throws IOException {
+        for (MappedByteBuffer segment : segments) {
+            segment.force();
+        }
+        taskChannel.force(false);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (!segments.isEmpty()) {
+                flush();
+            }
+        }
+        finally {
+            try {
+                roomChannel.close();
+            }
+            finally {
+                taskChannel.close();
+            }
+        }
+    }
+}
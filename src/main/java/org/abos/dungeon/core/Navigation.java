@@ -6,23 +6,29 @@ import org.abos.dungeon.core.crafting.Crafting;
 import org.abos.dungeon.core.entity.Item;
 import org.abos.dungeon.core.entity.LivingEntity;
 import org.abos.dungeon.core.reward.DefaultRewardFactory;
+import org.abos.dungeon.core.save.JournalingRoomStore;
+import org.abos.dungeon.core.save.SaveCatalog;
+import org.abos.dungeon.core.save.SaveJournal;
 import org.abos.dungeon.core.task.DefaultTaskFactory;
 
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.net.URL;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.List;
+import java.util.OptionalLong;
 import java.util.Random;
 
 public abstract class Navigation implements Runnable, Randomizer {
 
     protected static final String CREDITS_FILE_NAME = "credits.txt";
 
+    /**
+     * The directory of the save slots.
+     */
+    protected static final String SAVES_DIRECTORY_NAME = "saves";
+
     /**
      * @see #random()
      */
@@ -32,6 +38,27 @@ public abstract class Navigation implements Runnable, Randomizer {
 
     protected Player player;
 
+    /**
+     * Fills the doors of the current room while the player chooses the next turn.
+     */
+    protected final DoorPrefetcher prefetcher = new DoorPrefetcher();
+
+    /**
+     * Journals the turns of the current game once it has been saved, might be {@code null}.
+     */
+    protected SaveJournal journal;
+
+    /**
+     * The save slots, {@code null} if the catalog couldn't be opened.
+     */
+    protected SaveCatalog catalog;
+
+    /**
+     * If games are saved {@link org.abos.dungeon.core.save.CompressedSave compressed}, which makes the saves
+     * about a third of the size, but loading has to read all of the save.
+     */
+    protected boolean compressSaves;
+
     /**
      * Creates a new {@link Navigation} instance.
      */
@@ -40,6 +67,12 @@ public abstract class Navigation implements Runnable, Randomizer {
         Item.init();
         LivingEntity.init();
         Crafting.init();
+        try {
+            catalog = new SaveCatalog(Path.of(SAVES_DIRECTORY_NAME));
+        }
+        catch (final IOException ex) {
+            System.err.printf("Opening the save catalog in %s failed!%n", SAVES_DIRECTORY_NAME);
+        }
     }
 
     @Override
@@ -91,8 +124,11 @@ public abstract class Navigation implements Runnable, Randomizer {
             case DOOR -> {
                 return player.enterNextRoom();
             }
+            case FAST_TRAVEL -> player.fastTravel();
             case CRAFT -> player.craft();
             case MENU -> {
+                // saving, loading and new games access the dungeon
+                player.awaitPrefetch();
                 final MenuEntry menuChoice = displayMenu(false);
                 if (menuChoice == MenuEntry.EXIT) {
                     return false;
@@ -107,15 +143,100 @@ public abstract class Navigation implements Runnable, Randomizer {
     @Override
     public void run() {
         executeMenuChoice(displayMenu(true), true);
+        closeJournal();
     }
 
     protected void startGame() {
-        while (executeTurnChoice(displayTurnChoices()));
+        boolean running;
+        do {
+            running = executeTurnChoice(displayTurnChoices());
+            commitJournal();
+            if (running) {
+                player.prefetchDoors();
+            }
+        } while (running);
+    }
+
+    /**
+     * Appends the changes of the last turn to the journal of the current game, if it has been saved.
+     */
+    protected void commitJournal() {
+        if (journal == null) {
+            return;
+        }
+        try {
+            journal.commit();
+        }
+        catch (IOException ex) {
+            displayErrorMessage(ex);
+        }
+    }
+
+    /**
+     * Stops journaling the current game.
+     */
+    protected void closeJournal() {
+        if (journal == null) {
+            return;
+        }
+        try {
+            journal.close();
+        }
+        catch (IOException ex) {
+            displayErrorMessage(ex);
+        }
+        journal = null;
+    }
+
+    /**
+     * Records the current game in the catalog if the specified file is the save file of a slot,
+     * and lets the {@link #journal} update the entry whenever it has written the turns.
+     * @param saveFile the file the game has been saved to or loaded from
+     */
+    protected void updateCatalog(final Path saveFile) {
+        if (catalog == null) {
+            return;
+        }
+        final String slot = catalog.slotOf(saveFile);
+        if (slot == null) {
+            return;
+        }
+        try {
+            catalog.update(slot, dungeon, player);
+        }
+        catch (IOException ex) {
+            displayErrorMessage(ex);
+        }
+        // from now on the entry follows what the journal writes, so it is never ahead of the save
+        final OptionalLong seed = SaveCatalog.seedOf(dungeon);
+        journal.setWriteListener(summary -> {
+            try {
+                catalog.update(slot, seed, summary);
+            }
+            catch (IOException ex) {
+                System.err.printf("Updating the save slot %s failed!%n", slot);
+            }
+        });
+    }
+
+    /**
+     * Creates the dungeon of a game.
+     * @param seed the seed of the dungeon, if it is a {@link SeededDungeon}
+     * @param rooms the room store, might already contain the rooms of a loaded game
+     * @return a new dungeon, not {@code null}
+     */
+    protected Dungeon createDungeon(final OptionalLong seed, final RoomStore rooms) {
+        if (seed.isPresent()) {
+            return new SeededDungeon(seed.getAsLong(), random, new DefaultTaskFactory(random), new DefaultRewardFactory(random), rooms);
+        }
+        return new Dungeon(random, new DefaultTaskFactory(random), new DefaultRewardFactory(random), rooms);
     }
 
     protected void newGame() {
-        dungeon = new Dungeon(random, new DefaultTaskFactory(random), new DefaultRewardFactory(random));
+        closeJournal();
+        dungeon = createDungeon(OptionalLong.of(random.nextLong()), new JournalingRoomStore(new PersistentRoomStore()));
         player = createPlayer();
+        player.setPrefetcher(prefetcher);
     }
 
     protected Player createPlayer() {
@@ -129,9 +250,26 @@ public abstract class Navigation implements Runnable, Randomizer {
         if (saveGame == null) {
             return;
         }
-        try (final DataOutputStream dos = new DataOutputStream(new FileOutputStream(saveGame))) {
-            dungeon.writeObject(dos);
-            player.writeObject(dos);
+        if (journal != null) {
+            try {
+                // the dungeon outlives the journal, so it mustn't depend on the old snapshot
+                journal.releaseSnapshot();
+            }
+            catch (IOException ex) {
+                displayErrorMessage(ex);
+                return;
+            }
+        }
+        closeJournal();
+        final Path saveFile = Path.of(saveGame);
+        try {
+            if (catalog != null && catalog.slotOf(saveFile) != null) {
+                // the first saved slot creates the directory
+                Files.createDirectories(catalog.getDirectory());
+            }
+            // from now on only the changes of each turn get written
+            journal = SaveJournal.create(saveFile, dungeon, player, this::createPlayerWith, compressSaves);
+            updateCatalog(journal.getSaveFile());
             displayInfoMessage("Game saved successfully!");
         }
         catch (IOException ex) {
@@ -144,9 +282,19 @@ public abstract class Navigation implements Runnable, Randomizer {
         if (saveGame == null) {
             return;
         }
-        try (final DataInputStream dis = new DataInputStream(new FileInputStream(saveGame))) {
-            dungeon = Dungeon.readObject(dis, random, new DefaultTaskFactory(random), new DefaultRewardFactory(random));
-            player = Player.readObject(dis, dungeon, this::createPlayerWith);
+        closeJournal();
+        final Path saveFile = Path.of(saveGame);
+        // only the catalog knows the seed, the save itself doesn't
+        final String slot = catalog == null ? null : catalog.slotOf(saveFile);
+        final SaveCatalog.Entry entry = slot == null ? null : catalog.getEntry(slot);
+        final OptionalLong seed = entry == null ? OptionalLong.empty() : entry.seed();
+        try {
+            journal = SaveJournal.load(saveFile, rooms -> createDungeon(seed, rooms), this::createPlayerWith);
+            dungeon = journal.getDungeon();
+            player = journal.getPlayer();
+            player.setPrefetcher(prefetcher);
+            // the entry might still be behind if the game crashed
+            updateCatalog(saveFile);
             displayInfoMessage("Game loaded successfully!");
         }
         catch (IOException ex) {
@@ -155,7 +303,7 @@ public abstract class Navigation implements Runnable, Randomizer {
     }
 
     /**
-     * Let the user select a save game file.
+     * Let the user select a save game file, usually the save file of a slot of the {@link #catalog}.
      * @param load if this is used for loading a game or not
      * @return a save game file path or {@code null} if the user changed their mind.
      */
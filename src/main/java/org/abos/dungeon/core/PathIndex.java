@@ -0,0 +1,293 @@
+package org.abos.dungeon.core;
+
+import java.util.Arrays;
+
+/**
+ * Shortest paths over the doors of a {@link Dungeon} discovered so far, see {@link Dungeon#getPathIndex()}.
+ * <p>
+ * For every room the index knows the BFS distance to the start room together with the next hop on that way,
+ * and the BFS tree from the start room. Routes between two rooms go through the start room,
+ * unless one room lies on the tree path of the other. Doors only ever get added, so distances only ever decrease,
+ * and each newly filled room only relaxes the rooms whose distances actually change.
+ */
+public class PathIndex {
+
+    /**
+     * Distance of rooms that can't be reached (yet).
+     */
+    public static final int UNREACHABLE = Integer.MAX_VALUE;
+
+    /**
+     * Marks the absence of a room in the primitive arrays.
+     */
+    private static final int NONE = -1;
+
+    /**
+     * The dungeon whose doors are indexed.
+     */
+    protected final Dungeon dungeon;
+
+    /**
+     * @see #getDistanceToStart(int)
+     */
+    protected int[] distanceToStart = new int[0];
+
+    /**
+     * The next room on the shortest way to the start room.
+     */
+    protected int[] nextHopToStart = new int[0];
+
+    /**
+     * @see #getDistanceFromStart(int)
+     */
+    protected int[] distanceFromStart = new int[0];
+
+    /**
+     * The previous room on the shortest way from the start room.
+     */
+    protected int[] parentFromStart = new int[0];
+
+    /**
+     * For every room the first entry in the reverse door lists, or {@link #NONE}.
+     */
+    protected int[] firstReverseDoor = new int[0];
+
+    /**
+     * For every reverse door the room the door is in.
+     */
+    protected int[] reverseDoorSource = new int[0];
+
+    /**
+     * For every reverse door the next reverse door leading to the same room, or {@link #NONE}.
+     */
+    protected int[] nextReverseDoor = new int[0];
+
+    /**
+     * How many reverse doors are in use.
+     */
+    protected int reverseDoorCount;
+
+    /**
+     * Work queue for the relaxations, reused between updates.
+     */
+    private int[] queue = new int[16];
+
+    /**
+     * Creates a new index over all doors of the specified dungeon filled so far.
+     * @param dungeon the dungeon to index, not {@code null}
+     */
+    /* package private */ PathIndex(final Dungeon dungeon) {
+        this.dungeon = dungeon;
+        ensureCapacity(dungeon.rooms.size());
+        distanceToStart[Room.START_ID] = 0;
+        distanceFromStart[Room.START_ID] = 0;
+        for (int id = 0; id < dungeon.rooms.size(); id++) {
+            if (dungeon.rooms.isFilled(id)) {
+                addDoors(id);
+            }
+        }
+    }
+
+    private void ensureCapacity(final int roomCount) {
+        final int oldCapacity = distanceToStart.length;
+        if (roomCount <= oldCapacity) {
+            return;
+        }
+        final int newCapacity = Math.max(roomCount, oldCapacity + (oldCapacity >> 1) + 1);
+        distanceToStart = Arrays.copyOf(distanceToStart, newCapacity);
+        nextHopToStart = Arrays.copyOf(nextHopToStart, newCapacity);
+        distanceFromStart = Arrays.copyOf(distanceFromStart, newCapacity);
+        parentFromStart = Arrays.copyOf(parentFromStart, newCapacity);
+        firstReverseDoor = Arrays.copyOf(firstReverseDoor, newCapacity);
+        Arrays.fill(distanceToStart, oldCapacity, newCapacity, UNREACHABLE);
+        Arrays.fill(nextHopToStart, oldCapacity, newCapacity, NONE);
+        Arrays.fill(distanceFromStart, oldCapacity, newCapacity, UNREACHABLE);
+        Arrays.fill(parentFromStart, oldCapacity, newCapacity, NONE);
+        Arrays.fill(firstReverseDoor, oldCapacity, newCapacity, NONE);
+    }
+
+    private void addReverseDoor(final int source, final int target) {
+        if (reverseDoorCount == reverseDoorSource.length) {
+            final int newCapacity = reverseDoorCount + (reverseDoorCount >> 1) + Room.MAX_DOORS;
+            reverseDoorSource = Arrays.copyOf(reverseDoorSource, newCapacity);
+            nextReverseDoor = Arrays.copyOf(nextReverseDoor, newCapacity);
+        }
+        reverseDoorSource[reverseDoorCount] = source;
+        nextReverseDoor[reverseDoorCount] = firstReverseDoor[target];
+        firstReverseDoor[target] = reverseDoorCount++;
+    }
+
+    private void enqueue(final int tail, final int id) {
+        if (tail == queue.length) {
+            queue = Arrays.copyOf(queue, tail + (tail >> 1) + 1);
+        }
+        queue[tail] = id;
+    }
+
+    /**
+     * Adds the doors of the specified freshly filled room to the index.
+     * @param id the ID of the room whose doors have just been filled
+     */
+    /* package private */ void addDoors(final int id) {
+        final RoomStore rooms = dungeon.rooms;
+        ensureCapacity(rooms.size());
+        final int doorCount = rooms.getDoorCount(id);
+        int tail = 0;
+        // the new doors might shorten the way from the start room to their targets...
+        final int candidate = distanceFromStart[id] == UNREACHABLE ? UNREACHABLE : distanceFromStart[id] + 1;
+        for (int i = 0; i < doorCount; i++) {
+            final int target = rooms.getDoor(id, i);
+            if (target == Room.EXIT_ID) {
+                continue;
+            }
+            addReverseDoor(id, target);
+            if (candidate < distanceFromStart[target]) {
+                distanceFromStart[target] = candidate;
+                parentFromStart[target] = id;
+                enqueue(tail++, target);
+            }
+        }
+        relaxFromStart(tail);
+        // ...and the way from this room to the start room
+        int best = distanceToStart[id];
+        int bestHop = nextHopToStart[id];
+        for (int i = 0; i < doorCount; i++) {
+            final int target = rooms.getDoor(id, i);
+            if (target != Room.EXIT_ID && distanceToStart[target] != UNREACHABLE && distanceToStart[target] + 1 < best) {
+                best = distanceToStart[target] + 1;
+                bestHop = target;
+            }
+        }
+        if (best < distanceToStart[id]) {
+            distanceToStart[id] = best;
+            nextHopToStart[id] = bestHop;
+            enqueue(0, id);
+            relaxToStart(1);
+        }
+    }
+
+    /**
+     * Propagates decreased distances from the start room along the filled doors, in BFS order.
+     */
+    private void relaxFromStart(int tail) {
+        final RoomStore rooms = dungeon.rooms;
+        for (int head = 0; head < tail; head++) {
+            final int id = queue[head];
+            if (!rooms.isFilled(id)) {
+                continue;
+            }
+            final int candidate = distanceFromStart[id] + 1;
+            for (int i = 0; i < rooms.getDoorCount(id); i++) {
+                final int target = rooms.getDoor(id, i);
+                if (target != Room.EXIT_ID && candidate < distanceFromStart[target]) {
+                    distanceFromStart[target] = candidate;
+                    parentFromStart[target] = id;
+                    enqueue(tail++, target);
+                }
+            }
+        }
+    }
+
+    /**
+     * Propagates decreased distances to the start room backwards through the doors, in BFS order.
+     */
+    private void relaxToStart(int tail) {
+        for (int head = 0; head < tail; head++) {
+            final int id = queue[head];
+            final int candidate = distanceToStart[id] + 1;
+            for (int door = firstReverseDoor[id]; door != NONE; door = nextReverseDoor[door]) {
+                final int source = reverseDoorSource[door];
+                if (candidate < distanceToStart[source]) {
+                    distanceToStart[source] = candidate;
+                    nextHopToStart[source] = id;
+                    enqueue(tail++, source);
+                }
+            }
+        }
+    }
+
+    private boolean isIndexed(final int id) {
+        return id >= 0 && id < distanceToStart.length;
+    }
+
+    /**
+     * Returns how many doors are at least needed to get from the specified room to the start room.
+     * @param id the room ID
+     * @return the distance or {@link #UNREACHABLE} if there is no known way
+     */
+    public int getDistanceToStart(final int id) {
+        return isIndexed(id) ? distanceToStart[id] : UNREACHABLE;
+    }
+
+    /**
+     * Returns how many doors are at least needed to get from the start room to the specified room.
+     * @param id the room ID
+     * @return the distance or {@link #UNREACHABLE} if there is no known way
+     */
+    public int getDistanceFromStart(final int id) {
+        return isIndexed(id) ? distanceFromStart[id] : UNREACHABLE;
+    }
+
+    /**
+     * Returns a route over the discovered doors from one room to another.
+     * @param from the ID of the room to start in
+     * @param to the ID of the room to reach
+     * @return The IDs of the rooms to pass through in order, excluding {@code from} and including {@code to}.
+     * Empty if both rooms are the same and {@code null} if there is no known route.
+     */
+    public int[] getRoute(final int from, final int to) {
+        if (from == to) {
+            return new int[0];
+        }
+        if (getDistanceToStart(from) == UNREACHABLE || getDistanceFromStart(to) == UNREACHABLE) {
+            return null;
+        }
+        // tree path from the start room to the target, reversed
+        final int[] down = new int[distanceFromStart[to] + 1];
+        int downLength = 0;
+        for (int id = to; id != NONE; id = parentFromStart[id]) {
+            if (id == from) {
+                // the target lies below the starting room
+                return reversed(down, downLength);
+            }
+            down[downLength++] = id;
+        }
+        final int[] route = new int[distanceToStart[from] + downLength - 1];
+        int length = 0;
+        for (int id = nextHopToStart[from]; ; id = nextHopToStart[id]) {
+            route[length++] = id;
+            if (id == to) {
+                // the target lies on the way to the start room
+                return Arrays.copyOf(route, length);
+            }
+            if (id == Room.START_ID) {
+                break;
+            }
+        }
+        // skip the start room, it is already part of the route
+        for (int i = downLength - 2; i >= 0; i--) {
+            route[length++] = down[i];
+        }
+        return route;
+    }
+
+    private static int[] reversed(final int[] array, final int length) {
+        final int[] result = new int[length];
+        for (int i = 0; i < length; i++) {
+            result[i] = array[length - 1 - i];
+        }
+        return result;
+    }
+
+    /**
+     * Returns the next room on the route from one room to another.
+     * @param from the ID of the room to start in
+     * @param to the ID of the room to reach
+     * @return the ID of the next room or {@link Room#EXIT_ID} if there is no known route or both rooms are the same
+     * @see #getRoute(int, int)
+     */
+    public int getNextHop(final int from, final int to) {
+        final int[] route = getRoute(from, to);
+        return route == null || route.length == 0 ? Room.EXIT_ID : route[0];
+    }
+}
@@ -0,0 +1,166 @@
+package org.abos.dungeon.core;
+
+import org.abos.common.PersistentArray;
+import org.abos.dungeon.core.task.Task;
+
+import java.util.Objects;
+import java.util.stream.IntStream;
+
+/**
+ * A {@link RoomStore} keeping the rooms in a {@link PersistentArray} of immutable room states.
+ * Taking a {@link Snapshot} therefore takes constant time, and two snapshots of the same store
+ * can be compared in time proportional to their differences.
+ * Compared to {@link ArrayRoomStore}, each change costs a few small allocations.
+ */
+public class PersistentRoomStore implements RoomStore {
+
+    /**
+     * The current rooms.
+     */
+    protected PersistentArray<RoomState> rooms;
+
+    /**
+     * Creates a new empty {@link PersistentRoomStore}.
+     */
+    public PersistentRoomStore() {
+        rooms = PersistentArray.empty();
+    }
+
+    /**
+     * Creates a new {@link PersistentRoomStore} starting with the rooms of the specified snapshot.
+     * The snapshot stays unchanged, so this takes constant time.
+     * @param snapshot a snapshot of any {@link PersistentRoomStore}
+     * @throws NullPointerException If {@code snapshot} refers to {@code null}.
+     */
+    public PersistentRoomStore(final Snapshot snapshot) {
+        rooms = snapshot.rooms;
+    }
+
+    /**
+     * Returns the current state of this store in constant time.
+     * @return a new snapshot, not {@code null}
+     */
+    public Snapshot snapshot() {
+        return new Snapshot(rooms);
+    }
+
+    /**
+     * Sets this store back to the specified snapshot in constant time.
+     * @param snapshot a snapshot of any {@link PersistentRoomStore}
+     * @throws NullPointerException If {@code snapshot} refers to {@code null}.
+     */
+    public void restore(final Snapshot snapshot) {
+        rooms = snapshot.rooms;
+    }
+
+    @Override
+    public int size() {
+        return rooms.size();
+    }
+
+    @Override
+    public int add(final int fromId, final int doorCount, final Task task) {
+        if (doorCount < Room.MIN_DOORS || doorCount > Room.MAX_DOORS) {
+            throw new IllegalArgumentException("Door count out of range!");
+        }
+        if (isFull()) {
+            throw new IllegalStateException("Room store is full!");
+        }
+        rooms = rooms.append(new RoomState(fromId, doorCount, null, false, task));
+        return rooms.size() - 1;
+    }
+
+    @Override
+    public int getFromId(final int id) {
+        return rooms.get(id).fromId;
+    }
+
+    @Override
+    public int getDoorCount(final int id) {
+        return rooms.get(id).doorCount;
+    }
+
+    @Override
+    public boolean isFilled(final int id) {
+        return rooms.get(id).doors != null;
+    }
+
+    @Override
+    public int getDoor(final int id, final int door) {
+        final int[] doors = rooms.get(id).doors;
+        if (doors == null) {
+            throw new IndexOutOfBoundsException("Doors of room " + id + " haven't been filled yet!");
+        }
+        return doors[Objects.checkIndex(door, doors.length)];
+    }
+
+    @Override
+    public void setDoors(final int id, final int[] doors) {
+        final RoomState room = rooms.get(id);
+        if (room.doors != null) {
+            throw new IllegalStateException("Doors of room " + id + " have been filled already!");
+        }
+        if (doors.length != room.doorCount) {
+            throw new IllegalArgumentException("Door count doesn't match!");
+        }
+        rooms = rooms.set(id, new RoomState(room.fromId, room.doorCount, doors.clone(), room.rewardCollected, room.task));
+    }
+
+    @Override
+    public Task getTask(final int id) {
+        return rooms.get(id).task;
+    }
+
+    @Override
+    public boolean isRewardCollected(final int id) {
+        return rooms.get(id).rewardCollected;
+    }
+
+    @Override
+    public void setRewardCollected(final int id, final boolean rewardCollected) {
+        final RoomState room = rooms.get(id);
+        if (room.rewardCollected != rewardCollected) {
+            rooms = rooms.set(id, new RoomState(room.fromId, room.doorCount, room.doors, rewardCollected, room.task));
+        }
+    }
+
+    /**
+     * The immutable state of one room.
+     * @param doors the doors, {@code null} while unfilled, never modified
+     */
+    protected record RoomState(int fromId, int doorCount, int[] doors, boolean rewardCollected, Task task) {
+    }
+
+    /**
+     * An immutable state of a {@link PersistentRoomStore}.
+     */
+    public static final class Snapshot {
+
+        private final PersistentArray<RoomState> rooms;
+
+        private Snapshot(final PersistentArray<RoomState> rooms) {
+            this.rooms = rooms;
+        }
+
+        /**
+         * Returns how many rooms this snapshot has.
+         * @return a non-negative number
+         */
+        public int size() {
+            return rooms.size();
+        }
+
+        /**
+         * Returns the IDs of the rooms that differ between this and the specified snapshot, including the rooms
+         * only one of them has. Takes time proportional to the differences if both snapshots stem from the same store.
+         * @param other another snapshot
+         * @return the IDs in ascending order, might be empty but not {@code null}
+         * @throws NullPointerException If {@code other} refers to {@code null}.
+         */
+        public int[] changedRooms(final Snapshot other) {
+            final IntStream.Builder ids = IntStream.builder();
+            PersistentArray.forEachDifference(rooms, other.rooms, ids::add);
+            return ids.build().toArray();
+        }
+    }
+}
@@ -1,6 +1,10 @@
 package org.abos.dungeon.core;
 
+import org.abos.common.CompactInputStream;
+import org.abos.common.CompactOutputStream;
 import org.abos.common.ErrorUtil;
+import org.abos.common.PersistentIntSet;
+import org.abos.common.PersistentList;
 import org.abos.common.Serializable;
 import org.abos.dungeon.core.crafting.Crafting;
 import org.abos.dungeon.core.crafting.CraftingInput;
@@ -17,6 +21,7 @@ import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.Future;
 import java.util.function.BiFunction;
 
 /**
@@ -24,6 +29,11 @@ import java.util.function.BiFunction;
  */
 public abstract class Player implements Serializable {
 
+    /**
+     * How often crafting is tried again if the inventory has been changed from another thread in the meantime.
+     */
+    public static final int MAX_CRAFT_ATTEMPTS = 8;
+
     /**
      * @see #getCurrentRoom()
      */
@@ -42,15 +52,42 @@ public abstract class Player implements Serializable {
     /**
      * A set of all {@link Task Tasks} the {@link Player} cleared, represented by the ID of the task's {@link Room}.
      */
-    protected final Set<Integer> clearedTasks = new HashSet<>();
+    protected final PersistentIntSet clearedTasks = new PersistentIntSet();
 
     /**
      * A set of all creatures the {@link Player} collected.
      */
-    protected final List<Creature> menagerie = new LinkedList<>();
+    protected final PersistentList<Creature> menagerie = new PersistentList<>();
 
     protected final Inventory inventory;
 
+    /**
+     * @see #setPrefetcher(DoorPrefetcher)
+     */
+    protected DoorPrefetcher prefetcher;
+
+    /**
+     * The prefetch started by {@link #prefetchDoors()}, {@code null} if there is none.
+     */
+    private Future<?> pendingPrefetch;
+
+    /**
+     * The cleared tasks not written by {@link #writeChanges(DataOutputStream)} yet,
+     * {@code null} while changes aren't tracked.
+     * @see #trackChanges()
+     */
+    protected List<Integer> unsavedClearedTasks;
+
+    /**
+     * How many creatures of the menagerie have been written by {@link #writeChanges(DataOutputStream)}.
+     */
+    protected int savedMenagerieSize;
+
+    /**
+     * A copy of the inventory as last written by {@link #writeChanges(DataOutputStream)}.
+     */
+    protected Inventory savedInventory;
+
     /**
      * Creates a new {@link Player} instance.
      * @param startRoom The room the player starts in. Can be different from {@link Dungeon#getStartRoom()},
@@ -70,11 +107,47 @@ public abstract class Player implements Serializable {
         return currentRoom;
     }
 
+    /**
+     * Sets the {@link DoorPrefetcher} used by {@link #prefetchDoors()}.
+     * @param prefetcher the prefetcher to use, {@code null} to fill the doors synchronously
+     */
+    public void setPrefetcher(final DoorPrefetcher prefetcher) {
+        awaitPrefetch();
+        this.prefetcher = prefetcher;
+    }
+
+    /**
+     * Starts filling the doors of the current room in the background if a prefetcher is set, so the next turn
+     * finds the rooms behind them already generated. Meant to be called between turns, while the player decides what to do next.
+     * <p>
+     * The doors of the current room are filled first thing in the next turn anyway, as it is either a room whose task
+     * has just been cleared or one that has been filled already. So the dungeon stays the same with or without prefetching,
+     * as long as nothing else draws from its {@link Random} until {@link #awaitPrefetch()}, which has to be called
+     * before the dungeon is accessed from outside this player.
+     */
+    public void prefetchDoors() {
+        if (prefetcher != null && pendingPrefetch == null && currentRoom != null) {
+            pendingPrefetch = prefetcher.prefetch(currentRoom);
+        }
+    }
+
+    /**
+     * Waits until the doors started filling by {@link #prefetchDoors()} are filled, if any.
+     */
+    public void awaitPrefetch() {
+        if (pendingPrefetch != null) {
+            final Future<?> prefetch = pendingPrefetch;
+            pendingPrefetch = null;
+            DoorPrefetcher.await(prefetch);
+        }
+    }
+
     /**
      * Moves the player to the next room.
      * @return {@code true} if the player stays in the dungeon, else {@code false}.
      */
     public boolean enterNextRoom() {
+        awaitPrefetch();
         currentRoom.fillDoors();
         final Room nextRoom = selectDoor();
         oldRoom = currentRoom;
@@ -109,6 +182,66 @@ public abstract class Player implements Serializable {
      */
     protected abstract Room selectDoor();
 
+    /**
+     * If the {@link Player} may pass through the specified room without facing its {@link Task},
+     * meaning the room has no task or the player has cleared it already.
+     * @param room the room to check, not {@code null}
+     * @return {@code true} if the room can be passed through, else {@code false}.
+     */
+    public boolean canPassThrough(final Room room) {
+        return room.getTask() == null || hasClearedTask(room.getId());
+    }
+
+    /**
+     * Moves the player along the shortest known route to the specified room, see {@link Dungeon#getPathIndex()}.
+     * Only rooms the player {@link #canPassThrough(Room) can pass through} are entered, so the player stops
+     * in front of the first room on the route with an uncleared task. No tasks are faced and no rewards are collected.
+     * @param target the room to travel to, not {@code null}
+     * @return {@code true} if the player arrived at {@code target}, else {@code false}.
+     * @throws NullPointerException If {@code target} refers to {@code null}.
+     */
+    public boolean fastTravel(final Room target) {
+        awaitPrefetch();
+        currentRoom.fillDoors();
+        final int[] route = currentRoom.dungeon.getPathIndex().getRoute(currentRoom.getId(), target.getId());
+        if (route == null) {
+            return false;
+        }
+        for (int id : route) {
+            final Room nextRoom = currentRoom.dungeon.getRoom(id);
+            if (!canPassThrough(nextRoom)) {
+                break;
+            }
+            oldRoom = currentRoom;
+            currentRoom = nextRoom;
+        }
+        System.out.printf("You fast travel to room %d.%n", currentRoom.getId());
+        return currentRoom.equals(target);
+    }
+
+    /**
+     * Lets the {@link Player} select a room and fast travels there.
+     * @see #fastTravel(Room)
+     */
+    public void fastTravel() {
+        awaitPrefetch();
+        final Room target = selectRoom("Which room?");
+        if (target == null || !canPassThrough(target)) {
+            displayInformation(new Information("You haven't been there yet!"));
+            return;
+        }
+        if (!fastTravel(target)) {
+            displayInformation(new Information("You don't know the way there!"));
+        }
+    }
+
+    /**
+     * Let the {@link Player} select a room of the dungeon, e.g. as a fast travel target.
+     * @param msg the message to display
+     * @return the selected room, {@code null} if it doesn't exist
+     */
+    protected abstract Room selectRoom(final String msg);
+
     /**
      * Returns the highest ID of {@link Room Rooms} the {@link Player} cleared.
      */
@@ -133,7 +266,9 @@ public abstract class Player implements Serializable {
         if (currentRoom == null) {
             return;
         }
-        clearedTasks.add(currentRoom.getId());
+        if (clearedTasks.add(currentRoom.getId()) && unsavedClearedTasks != null) {
+            unsavedClearedTasks.add(currentRoom.getId());
+        }
     }
 
     /**
@@ -157,6 +292,10 @@ public abstract class Player implements Serializable {
      */
     public abstract boolean displayQuestion(final Question question);
 
+    /**
+     * Lets the player select two ingredients and crafts them if there is a recipe for them.
+     * The ingredients are only used up if all outputs fit into the inventory, else nothing changes and the player is told so.
+     */
     public void craft() {
         displayCraftingIngredients();
         final Item input1 = selectItem("First ingredient?");
@@ -170,21 +309,21 @@ public abstract class Player implements Serializable {
             return;
         }
         final CraftingInput input = new CraftingInput(input1, input2);
-        if (!inventory.contains(input)) {
-            displayInformation(new Information("You don't have these ingredients!"));
-            return;
-        }
-        final CraftingOutput output = Crafting.RECIPES.get(input);
+        final CraftingOutput output = Crafting.getRecipe(input1, input2);
         if (output == null) {
-            displayInformation(new Information(Crafting.getRandomDissLine(new Random())));
+            displayInformation(new Information(inventory.contains(input) ? Crafting.getRandomDissLine(new Random()) : "You don't have these ingredients!"));
             return;
         }
-        if (!inventory.removeAll(input)) {
-            throw new AssertionError("Ingredients have vanished!");
+        Inventory.TransactionResult result = Inventory.TransactionResult.CONFLICT;
+        // only conflicts if the inventory is changed from another thread
+        for (int attempt = 0; attempt < MAX_CRAFT_ATTEMPTS && result == Inventory.TransactionResult.CONFLICT; attempt++) {
+            result = inventory.transaction().removeAll(input).addAll(output).commit();
         }
-        displayCraftingResult(output);
-        if (!inventory.addAll(output)) {
-            displayInformation(new Information("Some recipe outputs were lost due to full inventory!"));
+        switch (result) {
+            case CONFLICT -> displayInformation(new Information("The inventory keeps changing, try again later!"));
+            case MISSING_ITEMS -> displayInformation(new Information("You don't have these ingredients!"));
+            case NO_SPACE -> displayInformation(new Information("There is no space for the recipe outputs!"));
+            default -> displayCraftingResult(output);
         }
     }
 
@@ -203,18 +342,14 @@ public abstract class Player implements Serializable {
             switch (reward.type()) {
                 case CREATURE -> {
                     for (int i = 0; i < reward.amount(); i++) {
-                        menagerie.add((Creature)reward.entity());
+                        // a copy of its own, the reward stays with the room
+                        menagerie.add(new Creature((Creature)reward.entity()));
                     }
                     displayRewardAcquisition(reward, 0);
 
                 }
                 case ITEM -> {
-                    int lostAmount = 0;
-                    for (int i = 0; i < reward.amount(); i++) {
-                        if (!inventory.addItem((Item)reward.entity())) {
-                            lostAmount++;
-                        }
-                    }
+                    final int lostAmount = reward.amount() - inventory.addItems((Item)reward.entity(), reward.amount());
                     displayRewardAcquisition(reward, lostAmount);
                 }
                 case PERMANENT_UPGRADE -> {
@@ -249,9 +384,16 @@ public abstract class Player implements Serializable {
         return inventory;
     }
 
+    /**
+     * Returns the room saves record for this player, the current one or, once the player left the dungeon, the last one.
+     */
+    private Room savedRoom() {
+        return currentRoom != null ? currentRoom : oldRoom;
+    }
+
     @Override
     public void writeObject(final DataOutputStream dos) throws IOException {
-        dos.writeInt(oldRoom.getId());
+        dos.writeInt(savedRoom().getId());
         dos.writeInt(highestRoomNumber);
         dos.writeInt(clearedTasks.size());
         for (Integer clearedTask : clearedTasks) {
@@ -265,11 +407,169 @@ public abstract class Player implements Serializable {
     }
 
     /**
-     * Reads an {@link Player} instance from the specified stream.
+     * Starts tracking the changes of this player from its current state on, see {@link #writeChanges(DataOutputStream)}.
+     */
+    public void trackChanges() {
+        unsavedClearedTasks = new ArrayList<>();
+        savedMenagerieSize = menagerie.size();
+        savedInventory = inventory.copy();
+    }
+
+    /**
+     * Writes the changes of this player since the last call or since {@link #trackChanges()} was called.
+     * Only the new parts of the state are written, of the inventory only the counts of the items that changed.
+     * @param dos the data output stream
+     * @throws IOException If an I/O exception occurs.
+     * @throws IllegalStateException If changes aren't tracked.
+     * @see #readChanges(DataInputStream, Dungeon)
+     */
+    public void writeChanges(final DataOutputStream dos) throws IOException {
+        if (unsavedClearedTasks == null) {
+            throw new IllegalStateException("Changes aren't tracked!");
+        }
+        dos.writeInt(savedRoom().getId());
+        dos.writeInt(highestRoomNumber);
+        dos.writeInt(unsavedClearedTasks.size());
+        for (Integer clearedTask : unsavedClearedTasks) {
+            dos.writeInt(clearedTask);
+        }
+        unsavedClearedTasks.clear();
+        dos.writeInt(menagerie.size() - savedMenagerieSize);
+        for (Iterator<Creature> it = menagerie.listIterator(savedMenagerieSize); it.hasNext(); ) {
+            it.next().writeObject(dos);
+        }
+        savedMenagerieSize = menagerie.size();
+        final Inventory currentInventory = inventory.copy();
+        Inventory.writeChanges(savedInventory, currentInventory, dos);
+        savedInventory = currentInventory;
+    }
+
+    /**
+     * Applies changes written by {@link #writeChanges(DataOutputStream)} to this player.
      * @param dis the {@link DataInputStream} to read from
      * @param dungeon the {@link Dungeon} this player roams in
+     * @throws IOException If an I/O exception occurs.
+     */
+    public void readChanges(final DataInputStream dis, final Dungeon dungeon) throws IOException {
+        currentRoom = dungeon.getRoom(dis.readInt());
+        oldRoom = currentRoom;
+        highestRoomNumber = dis.readInt();
+        final int taskCount = dis.readInt();
+        for (int i = 0; i < taskCount; i++) {
+            clearedTasks.add(dis.readInt());
+        }
+        final int creatureCount = dis.readInt();
+        for (int i = 0; i < creatureCount; i++) {
+            menagerie.add(Creature.readObject(dis));
+        }
+        // applied to a copy, as subclasses might keep their counts elsewhere
+        final Inventory changedInventory = inventory.copy();
+        changedInventory.readChanges(dis);
+        inventory.replaceWith(changedInventory);
+    }
+
+    /**
+     * Returns the current state of this player. Cleared tasks and inventory are shared with this player
+     * until either changes, so this takes constant time apart from copying the creatures of the menagerie,
+     * which can change after they have been collected.
+     * @return a new snapshot, not {@code null}
+     * @see #restore(Snapshot, Dungeon)
+     */
+    public Snapshot snapshot() {
+        return new Snapshot(idOf(currentRoom), idOf(oldRoom), highestRoomNumber, clearedTasks.copy(), copyCreatures(menagerie), inventory.copy());
+    }
+
+    private static PersistentList<Creature> copyCreatures(final List<Creature> creatures) {
+        final PersistentList<Creature> result = new PersistentList<>();
+        for (Creature creature : creatures) {
+            result.add(new Creature(creature));
+        }
+        return result;
+    }
+
+    /**
+     * Sets this player back to the specified snapshot. The changes tracked for a {@link org.abos.dungeon.core.save.SaveJournal}
+     * don't cover this, so the game should be saved anew afterwards.
+     * @param snapshot a snapshot of any player
+     * @param dungeon the dungeon the rooms of the snapshot are in
+     * @throws NullPointerException If any parameter refers to {@code null}.
+     */
+    public void restore(final Snapshot snapshot, final Dungeon dungeon) {
+        currentRoom = roomOf(snapshot.currentRoom, dungeon);
+        oldRoom = roomOf(snapshot.oldRoom, dungeon);
+        highestRoomNumber = snapshot.highestRoomNumber;
+        clearedTasks.assign(snapshot.clearedTasks);
+        // copied again, so the snapshot can be restored more than once
+        menagerie.assign(copyCreatures(snapshot.menagerie));
+        inventory.replaceWith(snapshot.inventory);
+    }
+
+    /**
+     * Creates a new player in the state of the specified snapshot.
+     * @param snapshot a snapshot of any player
+     * @param dungeon the dungeon the rooms of the snapshot are in
      * @param constructor a constructor for a concrete player subclass
      * @return a new {@link Player} instance
+     * @throws NullPointerException If any parameter refers to {@code null}.
+     */
+    public static Player fork(final Snapshot snapshot, final Dungeon dungeon, final BiFunction<Room, Inventory, Player> constructor) {
+        final Inventory inventory = new Inventory(snapshot.inventory.inventoryCapacity, snapshot.inventory.stackCapacity);
+        final Player result = constructor.apply(dungeon.getStartRoom(), inventory);
+        result.restore(snapshot, dungeon);
+        return result;
+    }
+
+    private static int idOf(final Room room) {
+        return room == null ? Room.EXIT_ID : room.getId();
+    }
+
+    private static Room roomOf(final int id, final Dungeon dungeon) {
+        return id == Room.EXIT_ID ? null : dungeon.getRoom(id);
+    }
+
+    /**
+     * An immutable state of a {@link Player}.
+     */
+    public static final class Snapshot {
+
+        private final int currentRoom;
+        private final int oldRoom;
+        private final int highestRoomNumber;
+        private final PersistentIntSet clearedTasks;
+        private final PersistentList<Creature> menagerie;
+        private final Inventory inventory;
+
+        private Snapshot(final int currentRoom, final int oldRoom, final int highestRoomNumber, final PersistentIntSet clearedTasks,
+                         final PersistentList<Creature> menagerie, final Inventory inventory) {
+            this.currentRoom = currentRoom;
+            this.oldRoom = oldRoom;
+            this.highestRoomNumber = highestRoomNumber;
+            this.clearedTasks = clearedTasks;
+            this.menagerie = menagerie;
+            this.inventory = inventory;
+        }
+
+        /**
+         * Returns the ID of the room the player was in, {@link Room#EXIT_ID} if the player left the dungeon.
+         */
+        public int getCurrentRoomId() {
+            return currentRoom;
+        }
+
+        /**
+         * Returns how many tasks the player had cleared.
+         */
+        public int getClearedTaskCount() {
+            return clearedTasks.size();
+        }
+    }
+
+    /**
+     * Reads an {@link Player} instance from the specified stream.
+     * @param dis the {@link DataInputStream} to read from
+     * @param dungeon the {@link Dungeon} this player roams in
+     * @param constructor a constructor for a concrete player subclass, {@code null} to only skip the player
+     * @return a new {@link Player} instance, {@code null} if {@code constructor} is {@code null}
      * @throws IOException If an I/O exception occurs.
      */
     public static Player readObject(final DataInputStream dis, final Dungeon dungeon, final BiFunction<Room, Inventory, Player> constructor) throws IOException {
@@ -281,11 +581,72 @@ public abstract class Player implements Serializable {
             clearedTasks.add(dis.readInt());
         }
         final int creatureCount = dis.readInt();
-        final Set<Creature> creatures = new LinkedHashSet<>();
+        final List<Creature> creatures = new ArrayList<>(creatureCount);
         for (int i = 0; i < creatureCount; i++) {
             creatures.add(Creature.readObject(dis));
         }
         final Inventory inventory = Inventory.readObject(dis);
+        if (constructor == null) {
+            return null;
+        }
+        final Player result = constructor.apply(dungeon.getRoom(currentRoom), inventory);
+        result.highestRoomNumber = highestRoomNumber;
+        result.clearedTasks.addAll(clearedTasks);
+        result.menagerie.addAll(creatures);
+        return result;
+    }
+
+    /**
+     * Writes this player more compactly than {@link #writeObject(DataOutputStream)}.
+     * The cleared tasks are written in ascending order as differences to the previous one.
+     * @param cos the compact output stream
+     * @throws IOException If an I/O exception occurs.
+     * @see #readCompact(CompactInputStream, Dungeon, BiFunction)
+     */
+    public void writeCompact(final CompactOutputStream cos) throws IOException {
+        cos.writeVarInt(savedRoom().getId());
+        cos.writeVarInt(highestRoomNumber);
+        final int[] sortedTasks = clearedTasks.stream().mapToInt(Integer::intValue).sorted().toArray();
+        cos.writeVarInt(sortedTasks.length);
+        int previous = 0;
+        for (int clearedTask : sortedTasks) {
+            cos.writeVarInt(clearedTask - previous);
+            previous = clearedTask;
+        }
+        cos.writeVarInt(menagerie.size());
+        for (Creature creature : menagerie) {
+            creature.writeCompact(cos);
+        }
+        inventory.writeCompact(cos);
+    }
+
+    /**
+     * Reads a {@link Player} written by {@link #writeCompact(CompactOutputStream)} from the specified stream.
+     * @param cis the {@link CompactInputStream} to read from
+     * @param dungeon the {@link Dungeon} this player roams in
+     * @param constructor a constructor for a concrete player subclass, {@code null} to only skip the player
+     * @return a new {@link Player} instance, {@code null} if {@code constructor} is {@code null}
+     * @throws IOException If an I/O exception occurs.
+     */
+    public static Player readCompact(final CompactInputStream cis, final Dungeon dungeon, final BiFunction<Room, Inventory, Player> constructor) throws IOException {
+        final int currentRoom = cis.readVarInt();
+        final int highestRoomNumber = cis.readVarInt();
+        final int taskCount = cis.readVarInt();
+        final Set<Integer> clearedTasks = new HashSet<>();
+        int clearedTask = 0;
+        for (int i = 0; i < taskCount; i++) {
+            clearedTask += cis.readVarInt();
+            clearedTasks.add(clearedTask);
+        }
+        final int creatureCount = cis.readVarInt();
+        final List<Creature> creatures = new ArrayList<>(creatureCount);
+        for (int i = 0; i < creatureCount; i++) {
+            creatures.add(Creature.readCompact(cis));
+        }
+        final Inventory inventory = Inventory.readCompact(cis);
+        if (constructor == null) {
+            return null;
+        }
         final Player result = constructor.apply(dungeon.getRoom(currentRoom), inventory);
         result.highestRoomNumber = highestRoomNumber;
         result.clearedTasks.addAll(clearedTasks);
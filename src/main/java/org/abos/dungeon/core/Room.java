@@ -1,21 +1,20 @@
 package org.abos.dungeon.core;
 
+import org.abos.common.CompactInputStream;
+import org.abos.common.CompactOutputStream;
 import org.abos.common.Serializable;
 import org.abos.dungeon.core.reward.Reward;
-import org.abos.dungeon.core.task.Information;
-import org.abos.dungeon.core.task.Question;
 import org.abos.dungeon.core.task.Task;
+import org.abos.dungeon.core.task.TaskCodecs;
 
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
-import java.util.Collections;
-import java.util.LinkedList;
-import java.util.List;
 import java.util.Objects;
 
 /**
  * Represents the rooms of a {@link Dungeon} a {@link Player} can be in.
+ * Instances are lightweight views, the state of the rooms is kept in the {@link RoomStore} of the dungeon.
  */
 public class Room implements Serializable {
 
@@ -53,89 +52,28 @@ public class Room implements Serializable {
      */
     protected final int id;
 
-    /**
-     * @see #getDoorCount() 
-     */
-    protected final int doorCount;
-
     /**
      * The dungeon this room is in.
      */
     protected final Dungeon dungeon;
 
     /**
-     * ID of the room normally leading into this one.
-     */
-    private final Integer fromId;
-
-    /**
-     * The rooms reachable from this room.
-     */
-    protected final List<Integer> doors = new LinkedList<>();
-
-    /**
-     * @see #getTask() 
-     */
-    protected final Task task;
-
-    protected boolean rewardCollected;
-
-    /**
-     * Unchecked constructor for {@link Serializable} read.
-     * 
-     * @see #readObject(DataInputStream, Dungeon) 
-     */
-    private Room(final int id, final Dungeon dungeon, final Integer fromId, final int doorCount, final Task task) {
-        this.id = id;
-        this.dungeon = dungeon;
-        this.fromId = fromId;
-        this.doorCount = doorCount;
-        this.task = task;
-    }
-
-    /**
-     * Creates a new {@link Room}.
-     * @param exit if this is the exit room
-     * @param id the ID of this room
+     * Creates a new view on the specified room of the dungeon.
+     * The state of the room is kept in the {@link RoomStore} of the dungeon.
      * @param dungeon the dungeon this room belongs to, not {@code null}
-     * @param fromId the room this room was reached from
+     * @param id the ID of this room
+     * @see Dungeon#getRoom(int)
      */
-    /* package private */ Room(final boolean exit, final int id, final Dungeon dungeon, final Integer fromId) {
-        if (exit && id != EXIT_ID) {
-            throw new IllegalArgumentException("Exit ID must be " + EXIT_ID + "!");
-        }
-        if (!exit && id < 0) {
-            throw new IllegalArgumentException("ID must be non-negative!");
-        }
-        if (!exit && fromId == null) {
-            throw new NullPointerException("The room we come from can't be null!");
-        }
-        this.id = id;
+    /* package private */ Room(final Dungeon dungeon, final int id) {
         this.dungeon = Objects.requireNonNull(dungeon);
-        this.fromId = fromId;
-        if (exit) {
-            doorCount = MIN_DOORS;
-            task = null;
-        }
-        else {
-            doorCount = dungeon.random().nextInt(MIN_DOORS, MAX_DOORS + 1);
-            if (id == START_ID) {
-                task = null;
-            }
-            else {
-                task = dungeon.getTaskFactory().apply(id);
-            }
-        }
+        this.id = id;
     }
 
     /**
-     * Creates a new {@link Room} that is not an exit.
-     * @param id the ID of this room
-     * @param dungeon the dungeon this room belongs to, not {@code null}
-     * @param fromId the room this room was reached from, not {@code null}
+     * If this is the exit room, which is not part of the {@link RoomStore}.
      */
-    public Room(final int id, final Dungeon dungeon, final Integer fromId) {
-        this(false, id, dungeon, fromId);
+    private boolean isExit() {
+        return id == EXIT_ID;
     }
 
     /**
@@ -145,12 +83,21 @@ public class Room implements Serializable {
         return id;
     }
 
+    /**
+     * The dungeon this room belongs to.
+     */
+    public Dungeon getDungeon() {
+        return dungeon;
+    }
+
     /**
      * How many other rooms are accessible from this room, including the room this room was originally accessed from.
-     * @see #fromId
      */
     public int getDoorCount() {
-        return doorCount;
+        if (isExit()) {
+            return MIN_DOORS;
+        }
+        return dungeon.rooms.getDoorCount(id);
     }
 
     /**
@@ -158,24 +105,13 @@ public class Room implements Serializable {
      * call will have no effects.
      */
     protected void fillDoors() {
-        if (!doors.isEmpty()) {
+        if (isExit() || dungeon.rooms.isFilled(id)) {
             return;
         }
-        // the first room is the one guaranteed to open to a new room
-        final Room guaranteedRoom = dungeon.generateRoom(this);
-        // if null it means the room size limit has been reached
-        if (guaranteedRoom == null) {
-            doors.add(dungeon.getRandomGeneratedRoom(this).getId());
-        }
-        else {
-            doors.add(guaranteedRoom.getId());
+        dungeon.rooms.setDoors(id, dungeon.generateDoors(this));
+        if (dungeon.pathIndex != null) {
+            dungeon.pathIndex.addDoors(id);
         }
-        // the others (except for door 0) could lead back
-        for (int i = MIN_DOORS; i < doorCount; i++) {
-            doors.add(dungeon.getRandomRoom(this).getId());
-        }
-        Collections.shuffle(doors, dungeon.random());
-        doors.add(0, fromId);
     }
 
     /**
@@ -184,7 +120,10 @@ public class Room implements Serializable {
      * @throws IndexOutOfBoundsException If {@code index} is invalid.
      */
     public Room getRoomBehindDoor(final int index) throws IndexOutOfBoundsException {
-        return dungeon.getRoom(doors.get(index));
+        if (isExit()) {
+            throw new IndexOutOfBoundsException("The exit has no doors!");
+        }
+        return dungeon.getRoom(dungeon.rooms.getDoor(id, index));
     }
 
     /**
@@ -192,7 +131,10 @@ public class Room implements Serializable {
      * @return the {@link Task} to be solved, can be {@code null}, meaning no task has to be completed.
      */
     public Task getTask() {
-        return task;
+        if (isExit()) {
+            return null;
+        }
+        return dungeon.rooms.getTask(id);
     }
 
     /**
@@ -201,75 +143,166 @@ public class Room implements Serializable {
      * @return the reward this room had
      */
     public Reward awardReward(final Player player) {
-        if (rewardCollected) {
+        if (isExit() || dungeon.rooms.isRewardCollected(id)) {
             return null;
         }
-        rewardCollected = true;
+        dungeon.rooms.setRewardCollected(id, true);
         return dungeon.getRewardFactory().apply(id, player);
     }
 
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof Room room)) return false;
+        return id == room.id && dungeon == room.dungeon;
+    }
+
+    @Override
+    public int hashCode() {
+        return id;
+    }
+
     @Override
     public void writeObject(final DataOutputStream dos) throws IOException {
+        final RoomStore rooms = dungeon.rooms;
+        final boolean filled = rooms.isFilled(id);
+        final int doorCount = rooms.getDoorCount(id);
         dos.writeInt(id);
         dos.writeInt(doorCount);
-        dos.writeBoolean(doors.isEmpty());
-        if (doors.isEmpty()) {
-            dos.writeInt(fromId);
+        dos.writeBoolean(!filled);
+        if (!filled) {
+            dos.writeInt(rooms.getFromId(id));
         }
         else {
-            for (Integer door : doors) {
-                dos.writeInt(door);
+            for (int i = 0; i < doorCount; i++) {
+                dos.writeInt(rooms.getDoor(id, i));
             }
         }
-        dos.writeBoolean(rewardCollected);
+        dos.writeBoolean(rooms.isRewardCollected(id));
+        final Task task = rooms.getTask(id);
         dos.writeBoolean(task != null);
         if (task != null) {
-            dos.writeUTF(task.getClass().getSimpleName());
-            task.writeObject(dos);
+            writeTask(dos, task);
+        }
+    }
+
+    /**
+     * Writes this room more compactly than {@link #writeObject(DataOutputStream)}, without its ID.
+     * The doors are written as differences to the previous door, starting from the ID of this room.
+     * @param cos the compact output stream
+     * @throws IOException If an I/O exception occurs.
+     */
+    public void writeCompact(final CompactOutputStream cos) throws IOException {
+        final RoomStore rooms = dungeon.rooms;
+        final boolean filled = rooms.isFilled(id);
+        final int doorCount = rooms.getDoorCount(id);
+        cos.writeByte((filled ? 1 : 0) | (rooms.isRewardCollected(id) ? 2 : 0));
+        cos.writeByte(doorCount);
+        if (!filled) {
+            cos.writeSignedVarInt(rooms.getFromId(id) - id);
+        }
+        else {
+            int previous = id;
+            for (int i = 0; i < doorCount; i++) {
+                final int door = rooms.getDoor(id, i);
+                cos.writeSignedVarInt(door - previous);
+                previous = door;
+            }
         }
+        writeCompactTask(cos, rooms.getTask(id));
+    }
+
+    /**
+     * Writes the specified {@link Task} with a one byte ID for its type into a {@link CompactOutputStream}.
+     * @param cos the compact output stream
+     * @param task the task to write, can be {@code null}
+     * @throws IOException If an I/O exception occurs.
+     * @throws IllegalArgumentException If the type of the task isn't registered.
+     * @see #readCompactTask(CompactInputStream)
+     * @see TaskCodecs#writeCompactTask(CompactOutputStream, Task)
+     */
+    public static void writeCompactTask(final CompactOutputStream cos, final Task task) throws IOException {
+        TaskCodecs.writeCompactTask(cos, task);
     }
 
     /**
-     * Reads an {@link Room} instance from the specified stream.
+     * Reads a {@link Task} written by {@link #writeCompactTask(CompactOutputStream, Task)} from the specified stream.
+     * @param cis the {@link CompactInputStream} to read from
+     * @return a new {@link Task} instance, can be {@code null}
+     * @throws IOException If an I/O exception occurs or the type ID is unknown.
+     */
+    public static Task readCompactTask(final CompactInputStream cis) throws IOException {
+        return TaskCodecs.readCompactTask(cis);
+    }
+
+    /**
+     * Writes the specified {@link Task} together with its type into a {@link DataOutputStream}.
+     * @param dos the data output stream
+     * @param task the task to write, not {@code null}
+     * @throws IOException If an I/O exception occurs.
+     * @throws IllegalArgumentException If the type of the task isn't registered.
+     * @see #readTask(DataInputStream)
+     * @see TaskCodecs#writeTask(DataOutputStream, Task)
+     */
+    public static void writeTask(final DataOutputStream dos, final Task task) throws IOException {
+        TaskCodecs.writeTask(dos, task);
+    }
+
+    /**
+     * Reads a {@link Task} written by {@link #writeTask(DataOutputStream, Task)} from the specified stream.
+     * @param dis the {@link DataInputStream} to read from
+     * @return a new {@link Task} instance
+     * @throws IOException If an I/O exception occurs or the type is unknown.
+     */
+    public static Task readTask(final DataInputStream dis) throws IOException {
+        return TaskCodecs.readTask(dis);
+    }
+
+    /**
+     * Skips a {@link Task} written by {@link #writeTask(DataOutputStream, Task)} without creating it.
+     * @param dis the {@link DataInputStream} to read from
+     * @throws IOException If an I/O exception occurs or the type is unknown.
+     * @see TaskCodecs#skipTask(DataInputStream)
+     */
+    public static void skipTask(final DataInputStream dis) throws IOException {
+        TaskCodecs.skipTask(dis);
+    }
+
+    /**
+     * Reads an {@link Room} instance from the specified stream and appends it to the specified dungeon.
      * @param dis the {@link DataInputStream} to read from
      * @param dungeon the {@link Dungeon} this room shall belong to
      * @return a new {@link Room} instance
      * @throws IOException If an I/O exception occurs.
+     * @throws IllegalStateException If the ID of the read room doesn't match its position in the dungeon.
      */
     public static Room readObject(final DataInputStream dis, final Dungeon dungeon) throws IOException {
         final int id = dis.readInt();
         final int doorCount = dis.readInt();
         final int fromId;
-        final List<Integer> doors = new LinkedList<>();
+        int[] doors = null;
         if (dis.readBoolean()) {
             fromId = dis.readInt();
         }
         else {
+            doors = new int[doorCount];
             for (int i = 0; i < doorCount; i++) {
-                doors.add(dis.readInt());
+                doors[i] = dis.readInt();
             }
-            fromId = doors.get(RETURN_ID);
+            fromId = doors[RETURN_ID];
         }
         final boolean rewardCollected = dis.readBoolean();
         final boolean hasTask = dis.readBoolean();
-        final Task task;
-        if (!hasTask) {
-            task = null;
+        final Task task = hasTask ? readTask(dis) : null;
+        final RoomStore rooms = dungeon.rooms;
+        if (id != rooms.size()) {
+            throw new IllegalStateException("Index and room ID differ!");
         }
-        else {
-            final String taskClass = dis.readUTF();
-            if (taskClass.equals(Information.class.getSimpleName())) {
-                task = Information.readObject(dis);
-            } else if (taskClass.equals(Question.class.getSimpleName())) {
-                task = Question.readObject(dis);
-            }
-            else {
-                throw new AssertionError("Unknown task subclass " + taskClass + " encountered!");
-            }
+        rooms.add(fromId, doorCount, task);
+        if (doors != null) {
+            rooms.setDoors(id, doors);
         }
-        final Room result = new Room(id, dungeon, fromId, doorCount, task);
-        result.rewardCollected = rewardCollected;
-        result.doors.addAll(doors);
-        return result;
+        rooms.setRewardCollected(id, rewardCollected);
+        return new Room(dungeon, id);
     }
 }
@@ -0,0 +1,95 @@
+package org.abos.dungeon.core;
+
+import org.abos.dungeon.core.task.Task;
+
+/**
+ * Storage of the per-room state of a {@link Dungeon}. {@link Room} instances are only views
+ * on a store, identified by their ID, which is the index into the store.
+ * <p>
+ * Rooms can only be appended, never removed. IDs handed to the accessors are expected to be valid,
+ * meaning between {@code 0} (inclusive) and {@link #size()} (exclusive).
+ */
+public interface RoomStore {
+
+    /**
+     * Returns how many rooms are currently stored.
+     * @return a non-negative number
+     */
+    int size();
+
+    /**
+     * If no more rooms can be added to this store.
+     * @return {@code true} if this store is full, else {@code false}
+     */
+    default boolean isFull() {
+        return size() == Integer.MAX_VALUE;
+    }
+
+    /**
+     * Appends a new room with unfilled doors to this store.
+     * @param fromId ID of the room normally leading into the new room
+     * @param doorCount the amount of doors of the new room, between {@link Room#MIN_DOORS} and {@link Room#MAX_DOORS}
+     * @param task the task of the new room, can be {@code null}
+     * @return the ID of the new room
+     * @throws IllegalStateException If the store is full.
+     * @see #isFull()
+     */
+    int add(final int fromId, final int doorCount, final Task task);
+
+    /**
+     * Returns the ID of the room normally leading into the specified room.
+     * @param id the room ID
+     */
+    int getFromId(final int id);
+
+    /**
+     * Returns the amount of doors of the specified room.
+     * @param id the room ID
+     */
+    int getDoorCount(final int id);
+
+    /**
+     * If the doors of the specified room have been assigned already.
+     * @param id the room ID
+     * @see #setDoors(int, int[])
+     */
+    boolean isFilled(final int id);
+
+    /**
+     * Returns the ID of the room behind the specified door.
+     * @param id the room ID
+     * @param door the door number
+     * @throws IndexOutOfBoundsException If {@code door} is invalid or the doors haven't been filled yet.
+     */
+    int getDoor(final int id, final int door);
+
+    /**
+     * Assigns the rooms behind the doors of the specified room. May only be called once per room.
+     * @param id the room ID
+     * @param doors the IDs of the rooms behind the doors, exactly {@link #getDoorCount(int)} many
+     * @throws IllegalStateException If the doors of the room have been filled already.
+     * @throws IllegalArgumentException If the number of doors doesn't match.
+     */
+    void setDoors(final int id, final int[] doors);
+
+    /**
+     * Returns the {@link Task} of the specified room.
+     * @param id the room ID
+     * @return the task, can be {@code null}
+     */
+    Task getTask(final int id);
+
+    /**
+     * If the reward of the specified room has been collected.
+     * @param id the room ID
+     */
+    boolean isRewardCollected(final int id);
+
+    /**
+     * Marks the reward of the specified room as collected or not.
+     * @param id the room ID
+     * @param rewardCollected the new state
+     */
+    void setRewardCollected(final int id, final boolean rewardCollected);
+
+}
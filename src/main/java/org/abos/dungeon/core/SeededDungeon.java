@@ -0,0 +1,184 @@
+package org.abos.dungeon.core;
+
+import org.abos.common.MathUtil;
+import org.abos.dungeon.core.reward.RewardFactory;
+import org.abos.dungeon.core.task.TaskFactory;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * A {@link Dungeon} whose topology is addressable by its seed: the door count and the rooms behind the doors
+ * of a room only depend on the seed, the room ID and the door number, never on the order rooms are generated in.
+ * Any room can therefore be recomputed on demand, in parallel or after being dropped, see {@link #computeDoors(int)}.
+ * <p>
+ * Room {@code n > 0} is always reached from room {@code n-1}, so the guaranteed door of each room leads to the next ID.
+ * The other doors lead back to a lower ID with {@link #chanceRoomGoesBack()}, else up to {@link #FORWARD_SPAN} IDs forward.
+ * Rooms are still generated in ID order, so the tasks only depend on the task factory.
+ */
+public class SeededDungeon extends Dungeon {
+
+    /**
+     * How far ahead doors not leading back can lead.
+     */
+    public static final int FORWARD_SPAN = 2 * Room.MAX_DOORS;
+
+    // door numbers are non-negative, so negative salts don't collide with them
+    private static final int DOOR_COUNT_SALT = -1;
+    private static final int GUARANTEED_DOOR_SALT = -2;
+
+    /**
+     * @see #getSeed()
+     */
+    protected final long seed;
+
+    /**
+     * Creates a new seeded dungeon.
+     * @param seed the seed of the topology
+     * @param random a {@link Random} instance, used for everything except the topology
+     * @param taskFactory a {@link TaskFactory} instance
+     * @param rewardFactory a {@link RewardFactory} instance
+     * @param rooms the room store; if it already contains rooms, the dungeon continues with them
+     * @param generateStartRoom if the start room should be generated
+     * @throws NullPointerException If any object parameter refers to {@code null}.
+     */
+    private SeededDungeon(final long seed, final Random random, final TaskFactory taskFactory, final RewardFactory rewardFactory, final RoomStore rooms, final boolean generateStartRoom) {
+        // the start room needs the seed, so it can't be generated by the super constructor
+        super(random, taskFactory, rewardFactory, rooms, false);
+        this.seed = seed;
+        if (generateStartRoom) {
+            startRoom = generateRoom(exitRoom);
+        }
+        else if (rooms.size() != 0) {
+            startRoom = getRoom(Room.START_ID);
+        }
+    }
+
+    /**
+     * Creates a new seeded dungeon keeping its rooms in the specified {@link RoomStore}.
+     * If the store already contains rooms, the dungeon continues with them instead of generating a new start room.
+     * @param seed the seed of the topology
+     * @param random a {@link Random} instance, used for everything except the topology
+     * @param taskFactory a {@link TaskFactory} instance
+     * @param rewardFactory a {@link RewardFactory} instance
+     * @param rooms the room store
+     * @throws NullPointerException If any object parameter refers to {@code null}.
+     */
+    public SeededDungeon(final long seed, final Random random, final TaskFactory taskFactory, final RewardFactory rewardFactory, final RoomStore rooms) {
+        this(seed, random, taskFactory, rewardFactory, rooms, rooms.size() == 0);
+    }
+
+    /**
+     * Creates a new seeded dungeon.
+     * @param seed the seed of the topology
+     * @param random a {@link Random} instance, used for everything except the topology
+     * @param taskFactory a {@link TaskFactory} instance
+     * @param rewardFactory a {@link RewardFactory} instance
+     * @throws NullPointerException If any object parameter refers to {@code null}.
+     */
+    public SeededDungeon(final long seed, final Random random, final TaskFactory taskFactory, final RewardFactory rewardFactory) {
+        this(seed, random, taskFactory, rewardFactory, new ArrayRoomStore());
+    }
+
+    /**
+     * Returns the seed the topology of this dungeon is derived from.
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Computes the amount of doors of the specified room.
+     * @param id the room ID, non-negative
+     * @return a number between {@link Room#MIN_DOORS} and {@link Room#MAX_DOORS} (both inclusive)
+     * @implNote This method is free of side effects and thread-safe.
+     */
+    public int computeDoorCount(final int id) {
+        return Room.MIN_DOORS + MathUtil.hashToInt(MathUtil.hash(seed, id, DOOR_COUNT_SALT), Room.MAX_DOORS - Room.MIN_DOORS + 1);
+    }
+
+    /**
+     * Computes the ID of the room behind the specified door.
+     * @param id the room ID, non-negative
+     * @param door the door number, between 0 (inclusive) and {@link #computeDoorCount(int)} (exclusive)
+     * @return the ID of the room behind the door, {@link Room#EXIT_ID} for the return door of the start room
+     * @throws IndexOutOfBoundsException If {@code door} is invalid.
+     * @implNote This method is free of side effects and thread-safe.
+     */
+    public int computeDoor(final int id, final int door) {
+        final int doorCount = computeDoorCount(id);
+        if (door == Room.RETURN_ID) {
+            return id == Room.START_ID ? Room.EXIT_ID : id - 1;
+        }
+        if (door < 0 || door >= doorCount) {
+            throw new IndexOutOfBoundsException("Door " + door + " out of bounds for length " + doorCount);
+        }
+        final boolean idsLeft = id < Integer.MAX_VALUE - 1;
+        final int guaranteedDoor = 1 + MathUtil.hashToInt(MathUtil.hash(seed, id, GUARANTEED_DOOR_SALT), doorCount - 1);
+        if (door == guaranteedDoor && idsLeft) {
+            return id + 1;
+        }
+        final long hash = MathUtil.hash(seed, id, door);
+        final long targetHash = MathUtil.mix64(hash);
+        final boolean back = MathUtil.hashToDouble(hash) < chanceRoomGoesBack();
+        if (id != Room.START_ID && (back || !idsLeft)) {
+            return MathUtil.hashToInt(targetHash, id);
+        }
+        return (int)Math.min((long)id + 1 + MathUtil.hashToInt(targetHash, FORWARD_SPAN), Integer.MAX_VALUE - 1);
+    }
+
+    /**
+     * Computes the IDs of the rooms behind all doors of the specified room.
+     * @param id the room ID, non-negative
+     * @return the door targets, see {@link #computeDoor(int, int)}
+     * @implNote This method is free of side effects and thread-safe.
+     */
+    public int[] computeDoors(final int id) {
+        final int[] doors = new int[computeDoorCount(id)];
+        for (int i = 0; i < doors.length; i++) {
+            doors[i] = computeDoor(id, i);
+        }
+        return doors;
+    }
+
+    @Override
+    protected int generateDoorCount(final int id) {
+        return computeDoorCount(id);
+    }
+
+    /**
+     * {@inheritDoc}
+     * @implNote Generates all rooms up to the highest door target. If the room store runs full before that,
+     * the remaining doors fall back to random existing rooms.
+     */
+    @Override
+    protected int[] generateDoors(final Room room) {
+        final int[] doors = computeDoors(room.getId());
+        for (int i = 1; i < doors.length; i++) {
+            while (rooms.size() <= doors[i]) {
+                // generating in ID order keeps room n reachable from room n-1
+                if (generateRoom(getRoom(rooms.size() - 1)) == null) {
+                    doors[i] = getRandomGeneratedRoom(room).getId();
+                }
+            }
+        }
+        return doors;
+    }
+
+    /**
+     * Reads an {@link SeededDungeon} instance from the specified stream.
+     * The seed isn't part of the stream, it has to be the one the dungeon was written with.
+     * @param dis the {@link DataInputStream} to read from
+     * @param seed the seed of the topology
+     * @param random the {@link Random} instance for the new dungeon
+     * @param taskFactory the {@link TaskFactory} instance for the new dungeon
+     * @param rewardFactory the {@link RewardFactory} instance for the new dungeon
+     * @return a new {@link SeededDungeon} instance
+     * @throws IOException If an I/O exception occurs.
+     */
+    public static SeededDungeon readObject(final DataInputStream dis, final long seed, final Random random, final TaskFactory taskFactory, final RewardFactory rewardFactory) throws IOException {
+        final int roomCount = dis.readInt();
+        return readRooms(dis, roomCount, new SeededDungeon(seed, random, taskFactory, rewardFactory, storeFor(roomCount), false));
+    }
+}
@@ -0,0 +1,591 @@
+package org.abos.dungeon.core;
+
+import org.abos.common.CompactOutputStream;
+import org.abos.dungeon.core.entity.Item;
+import org.abos.dungeon.core.entity.ItemStack;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * An {@link Inventory} many threads can use at once, for instance a stash a party of NPCs pools its loot into.
+ * <p>
+ * The count of each item is kept in its own cell, which is changed by compare and set, and the used slots are
+ * reserved the same way before a count grows, so the capacities hold without a global lock. Changes of different items
+ * only meet at the slot counter, and only if the number of stacks changes. Each cell also holds a stamp that moves on with
+ * every change of its item, which is the {@link #getItemVersion(int) version} of the item. A {@link Transaction} marks the cells
+ * of its items in the order of their ordinals while it is committed, so it is atomic as well, other changes of these items wait for it.
+ * It only conflicts if one of its own items has been changed in the meantime. Increasing the stack capacity marks all cells
+ * the same way and moves all stamps on, so changes that computed their stacks with the old capacity fail and are tried again.
+ * <p>
+ * The cells are sized by {@link Item#ORDINALS}, so shared inventories can only be created once the items have been loaded
+ * and the registry has been frozen.
+ * <p>
+ * Views, copies and saves see the count of each item at some point while they are taken, but not necessarily all counts at the same point.
+ * Replacing the contents marks all cells like increasing the stack capacity. Shared inventories are compared by their contents
+ * like other inventories, which might change during the comparison.
+ */
+public class SharedInventory extends Inventory {
+
+    /**
+     * The distance between the cells of two items in {@link #cells}, so each cell has a cache line of its own.
+     */
+    private static final int PADDING = 8;
+
+    /**
+     * The lower half of a cell, the count.
+     */
+    private static final long COUNT_MASK = 0xFFFF_FFFFL;
+
+    /**
+     * Set in a cell while a transaction changes its item.
+     */
+    private static final long MARKED = 1L << 32;
+
+    /**
+     * Where the stamp of a cell starts, above {@link #MARKED}.
+     */
+    private static final int STAMP_SHIFT = 33;
+
+    /**
+     * One step of the stamp of a cell, which is increased with every change of its item and of the stack capacity.
+     * It wraps around after 2<sup>31</sup> changes.
+     */
+    private static final long STAMP = 1L << STAMP_SHIFT;
+
+    /**
+     * After how many spins a thread waiting for a transaction yields.
+     */
+    private static final int SPINS_BEFORE_YIELD = 64;
+
+    /**
+     * The count of each item, at {@link #PADDING} times its {@link Item#getOrdinal() ordinal}.
+     * The upper half is the {@link #STAMP stamp}, plus {@link #MARKED} while a transaction changes the item.
+     */
+    private final AtomicLongArray cells;
+
+    /**
+     * How many slots are used or reserved by changes in progress.
+     */
+    private final AtomicInteger usedSlots = new AtomicInteger();
+
+    private final AtomicInteger slotCapacity;
+
+    /**
+     * The stack capacity, only changed while all cells are marked.
+     */
+    private volatile int sharedStackCapacity;
+
+    private final LongAdder sharedVersion = new LongAdder();
+
+    private volatile boolean sharedLocked;
+
+    private volatile CachedView cachedView;
+
+    private record CachedView(long version, List<ItemStack> stacks) {
+    }
+
+    /**
+     * Creates a new, empty shared inventory.
+     * @param inventoryCapacity how many stacks fit in, must be positive
+     * @param stackCapacity how many items fit in a stack, must be positive
+     * @throws IllegalArgumentException If any capacity isn't positive.
+     * @throws IllegalStateException If the items haven't been loaded by {@link Item#init()} yet.
+     */
+    public SharedInventory(final int inventoryCapacity, final int stackCapacity) {
+        super(inventoryCapacity, stackCapacity);
+        if (!Item.ORDINALS.isFrozen()) {
+            throw new IllegalStateException("Items have to be loaded before shared inventories are created!");
+        }
+        cells = new AtomicLongArray(Math.max(1, Item.ORDINALS.size()) * PADDING);
+        slotCapacity = new AtomicInteger(inventoryCapacity);
+        sharedStackCapacity = stackCapacity;
+    }
+
+    private int cellIndex(final Item item) {
+        final int ordinal = item.getOrdinal(); // throws NPE
+        if (ordinal < 0 || ordinal * PADDING >= cells.length()) {
+            throw new IllegalArgumentException("Item " + item.getName() + " hasn't been registered!");
+        }
+        return ordinal * PADDING;
+    }
+
+    private static int count(final long cell) {
+        return (int)cell;
+    }
+
+    /**
+     * Returns the specified cell with the specified count and the stamp moved on.
+     */
+    private static long changed(final long cell, final int count) {
+        return ((cell & ~COUNT_MASK) + STAMP) | (count & COUNT_MASK);
+    }
+
+    private static int stackCount(final int count, final int stackCapacity) {
+        return (count + stackCapacity - 1) / stackCapacity;
+    }
+
+    @Override
+    protected int stackCount(final int count) {
+        return stackCount(count, sharedStackCapacity);
+    }
+
+    private static void spin(final int spins) {
+        if (spins % SPINS_BEFORE_YIELD == SPINS_BEFORE_YIELD - 1) {
+            Thread.yield();
+        }
+        else {
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * Reads the cell at the specified index, waiting while a transaction changes its item.
+     */
+    private long unmarkedCell(final int index) {
+        long cell = cells.get(index);
+        for (int spins = 0; (cell & MARKED) != 0; spins++) {
+            spin(spins);
+            cell = cells.get(index);
+        }
+        return cell;
+    }
+
+    /**
+     * Marks the cell at the specified index, waiting while another transaction has marked it.
+     */
+    private void mark(final int index) {
+        for (int spins = 0; ; spins++) {
+            final long cell = cells.get(index);
+            if ((cell & MARKED) == 0 && cells.compareAndSet(index, cell, cell | MARKED)) {
+                return;
+            }
+            spin(spins);
+        }
+    }
+
+    /**
+     * Sets the count of the marked cell at the specified index.
+     */
+    private void setMarkedCount(final int index, final long count) {
+        cells.set(index, (cells.get(index) & ~COUNT_MASK) | count);
+    }
+
+    @Override
+    public int size() {
+        return usedSlots.get();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public int getInventoryCapacity() {
+        return slotCapacity.get();
+    }
+
+    @Override
+    public int getStackCapacity() {
+        return sharedStackCapacity;
+    }
+
+    @Override
+    public boolean isLocked() {
+        return sharedLocked;
+    }
+
+    @Override
+    public void setLocked(boolean locked) {
+        sharedLocked = locked;
+    }
+
+    @Override
+    public long getVersion() {
+        return sharedVersion.sum();
+    }
+
+    /**
+     * {@inheritDoc}
+     * @implNote The stamp of the cell of the item, so transactions only conflict with changes of their own items.
+     * @throws IllegalArgumentException If no item has the specified ordinal.
+     */
+    @Override
+    protected long getItemVersion(final int ordinal) {
+        if (ordinal < 0 || ordinal * PADDING >= cells.length()) {
+            throw new IllegalArgumentException("No item has the ordinal " + ordinal + "!");
+        }
+        return cells.get(ordinal * PADDING) >>> STAMP_SHIFT;
+    }
+
+    @Override
+    public void increaseCapacity() {
+        slotCapacity.incrementAndGet();
+        sharedVersion.increment();
+    }
+
+    /**
+     * Increases the stack capacity by one. As the stacks are derived from the counts, this might merge stacks and free slots.
+     * All items wait while the capacity changes.
+     */
+    @Override
+    public void increaseStackCapacity() {
+        for (int index = 0; index < cells.length(); index += PADDING) {
+            mark(index);
+        }
+        final int oldCapacity = sharedStackCapacity;
+        int stackDelta = 0;
+        for (int index = 0; index < cells.length(); index += PADDING) {
+            final int count = count(cells.get(index));
+            stackDelta += stackCount(count, oldCapacity + 1) - stackCount(count, oldCapacity);
+        }
+        sharedStackCapacity = oldCapacity + 1;
+        // slots reserved or released by changes in progress stay as they are
+        usedSlots.addAndGet(stackDelta);
+        sharedVersion.increment();
+        for (int index = 0; index < cells.length(); index += PADDING) {
+            cells.set(index, (cells.get(index) & ~MARKED) + STAMP);
+        }
+    }
+
+    @Override
+    public Set<Item> getAllItems() {
+        return new AbstractSet<>() {
+            @Override
+            public int size() {
+                int result = 0;
+                for (int index = 0; index < cells.length(); index += PADDING) {
+                    if (count(cells.get(index)) != 0) {
+                        result++;
+                    }
+                }
+                return result;
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                return o instanceof Item item && countAll(item) > 0;
+            }
+
+            @Override
+            public Iterator<Item> iterator() {
+                // there is a cell for every registered item anyway, a set of the present ones would be one more point of contention
+                return Item.ORDINALS.getAlphabeticalOrder().stream().filter(this::contains).iterator();
+            }
+        };
+    }
+
+    @Override
+    public int addItems(final Item item, final int amount) {
+        Objects.requireNonNull(item);
+        if (amount < 0) {
+            throw new IllegalArgumentException("Amount must not be negative!");
+        }
+        if (isLocked()) {
+            throw new IllegalStateException("Inventory is currently locked!");
+        }
+        final int index = cellIndex(item);
+        while (true) {
+            final long cell = unmarkedCell(index);
+            // read after the cell, the stamp tells if it is still valid
+            final int stackCapacity = sharedStackCapacity;
+            final int oldCount = count(cell);
+            final int used = usedSlots.get();
+            // the rest of the partial stack plus the free slots
+            final long space = (stackCapacity - oldCount % stackCapacity) % stackCapacity
+                    + (long)Math.max(0, slotCapacity.get() - used) * stackCapacity;
+            final int added = (int)Math.min(Math.min(amount, space), Integer.MAX_VALUE - oldCount);
+            if (added == 0) {
+                return 0;
+            }
+            final int newStacks = stackCount(oldCount + added, stackCapacity) - stackCount(oldCount, stackCapacity);
+            if (newStacks > 0 && !usedSlots.compareAndSet(used, used + newStacks)) {
+                continue;
+            }
+            if (cells.compareAndSet(index, cell, changed(cell, oldCount + added))) {
+                sharedVersion.increment();
+                return added;
+            }
+            if (newStacks > 0) {
+                usedSlots.addAndGet(-newStacks);
+            }
+        }
+    }
+
+    @Override
+    public boolean addAll(final Iterable<ItemStack> stacks) {
+        boolean addedAll = true;
+        for (ItemStack stack : stacks) {
+            addedAll &= addItems(stack.item(), stack.amount()) == stack.amount();
+        }
+        return addedAll;
+    }
+
+    @Override
+    public boolean removeItem(final Item item, Integer stackIndex) {
+        if (isLocked()) {
+            throw new IllegalStateException("Inventory is currently locked!");
+        }
+        if (item == null || (stackIndex != null && stackIndex < 0)) {
+            return false;
+        }
+        if (stackIndex != null && stackCount(countAll(item)) <= stackIndex) {
+            return false;
+        }
+        return removeItems(item, 1) == 1;
+    }
+
+    @Override
+    public int removeItems(final Item item, final int amount) {
+        if (amount < 0) {
+            throw new IllegalArgumentException("Amount must not be negative!");
+        }
+        if (isLocked()) {
+            throw new IllegalStateException("Inventory is currently locked!");
+        }
+        if (item == null || item.getOrdinal() < 0 || amount == 0) {
+            return 0;
+        }
+        final int index = cellIndex(item);
+        while (true) {
+            final long cell = unmarkedCell(index);
+            final int stackCapacity = sharedStackCapacity;
+            final int count = count(cell);
+            if (count == 0) {
+                return 0;
+            }
+            final int removed = Math.min(amount, count);
+            if (cells.compareAndSet(index, cell, changed(cell, count - removed))) {
+                // the slots are released after the count, so they never seem free too early
+                final int freedStacks = stackCount(count, stackCapacity) - stackCount(count - removed, stackCapacity);
+                if (freedStacks > 0) {
+                    usedSlots.addAndGet(-freedStacks);
+                }
+                sharedVersion.increment();
+                return removed;
+            }
+        }
+    }
+
+    @Override
+    public boolean removeAll(Iterable<ItemStack> stacks) {
+        boolean removedAll = true;
+        for (ItemStack stack : stacks) {
+            removedAll &= removeItems(stack.item(), stack.amount()) == stack.amount();
+        }
+        return removedAll;
+    }
+
+    /**
+     * Marks the cells of the items of the transaction in the order of their ordinals, so transactions never wait for each other in a circle,
+     * checks their stamps, then checks and makes the changes like {@link Inventory#commit(long[], long[])} and unmarks the cells again.
+     * Only the slot counter is shared with changes of other items.
+     */
+    @Override
+    protected TransactionResult commit(final long[] deltas, final long[] baseVersions) {
+        if (isLocked()) {
+            throw new IllegalStateException("Inventory is currently locked!");
+        }
+        for (int ordinal = 0; ordinal < baseVersions.length; ordinal++) {
+            if (baseVersions[ordinal] != NO_VERSION && ordinal * PADDING >= cells.length()) {
+                throw new IllegalArgumentException("Item " + Item.ORDINALS.get(ordinal).getName() + " hasn't been registered!");
+            }
+        }
+        int marked = 0;
+        try {
+            for (; marked < baseVersions.length; marked++) {
+                if (baseVersions[marked] != NO_VERSION) {
+                    mark(marked * PADDING);
+                }
+            }
+            long stackDelta = 0;
+            boolean changed = false;
+            for (int ordinal = 0; ordinal < baseVersions.length; ordinal++) {
+                if (baseVersions[ordinal] == NO_VERSION) {
+                    continue;
+                }
+                final long cell = cells.get(ordinal * PADDING);
+                if (cell >>> STAMP_SHIFT != baseVersions[ordinal]) {
+                    return TransactionResult.CONFLICT;
+                }
+                if (deltas[ordinal] == 0) {
+                    continue;
+                }
+                final int count = count(cell);
+                final long newCount = count + deltas[ordinal];
+                if (newCount < 0) {
+                    return TransactionResult.MISSING_ITEMS;
+                }
+                if (newCount > Integer.MAX_VALUE) {
+                    return TransactionResult.NO_SPACE;
+                }
+                stackDelta += stackCount((int)newCount) - stackCount(count);
+                changed = true;
+            }
+            if (!changed) {
+                return TransactionResult.COMMITTED;
+            }
+            if (stackDelta > 0) {
+                int used;
+                do {
+                    used = usedSlots.get();
+                    if (used + stackDelta > slotCapacity.get()) {
+                        return TransactionResult.NO_SPACE;
+                    }
+                } while (!usedSlots.compareAndSet(used, used + (int)stackDelta));
+            }
+            for (int ordinal = 0; ordinal < deltas.length; ordinal++) {
+                if (deltas[ordinal] != 0) {
+                    final int index = ordinal * PADDING;
+                    final long cell = cells.get(index);
+                    // stays marked until the finally block
+                    cells.set(index, changed(cell, (int)(count(cell) + deltas[ordinal])));
+                }
+            }
+            if (stackDelta < 0) {
+                usedSlots.addAndGet((int)stackDelta);
+            }
+            sharedVersion.increment();
+            return TransactionResult.COMMITTED;
+        }
+        finally {
+            for (int ordinal = 0; ordinal < marked; ordinal++) {
+                if (baseVersions[ordinal] != NO_VERSION) {
+                    final int index = ordinal * PADDING;
+                    cells.set(index, cells.get(index) & ~MARKED);
+                }
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * @implNote The view is cached until the version changes.
+     */
+    @Override
+    public List<ItemStack> getItemView() {
+        // read before the counts, so a view never seems newer than it is
+        final long version = getVersion();
+        final CachedView cached = cachedView;
+        if (cached != null && cached.version() == version) {
+            return cached.stacks();
+        }
+        final List<ItemStack> stacks = copy().getItemView();
+        cachedView = new CachedView(version, stacks);
+        return stacks;
+    }
+
+    @Override
+    public int countAll(final Item item) {
+        if (item == null || item.getOrdinal() < 0 || item.getOrdinal() * PADDING >= cells.length()) {
+            return 0;
+        }
+        return count(cells.get(item.getOrdinal() * PADDING));
+    }
+
+    /**
+     * {@inheritDoc}
+     * @implNote Adds up the stacks of all items of the type, as keeping totals per type would make
+     * changes of different items meet at the same counters.
+     */
+    @Override
+    public int countAll(final Class<? extends Item> keyClass) {
+        final int typeId = Item.ORDINALS.getTypeId(keyClass);
+        if (typeId < 0) {
+            return 0;
+        }
+        int result = 0;
+        for (int index = 0; index < cells.length(); index += PADDING) {
+            final int count = count(cells.get(index));
+            if (count != 0) {
+                for (int id : Item.ORDINALS.getTypeIds(index / PADDING)) {
+                    if (id == typeId) {
+                        result += stackCount(count);
+                        break;
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns a plain copy of this inventory.
+     * @return a new {@link Inventory} instance, not {@code null}
+     */
+    @Override
+    public Inventory copy() {
+        final Inventory result = new Inventory(slotCapacity.get(), sharedStackCapacity);
+        for (int index = 0; index < cells.length(); index += PADDING) {
+            final int count = count(cells.get(index));
+            if (count != 0) {
+                result.put(Item.ORDINALS.get(index / PADDING), count);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Replaces the contents and capacities of this inventory with the ones of the specified inventory.
+     * All items wait while the contents are replaced, see {@link #increaseStackCapacity()}.
+     * @param other the inventory to copy, not {@code null}
+     * @throws IllegalArgumentException If {@code other} holds an item registered after this inventory has been created.
+     */
+    @Override
+    /* package private */ void replaceWith(final Inventory other) {
+        final Inventory source = other.copy();
+        for (Item item : source.getAllItems()) {
+            cellIndex(item);
+        }
+        for (int index = 0; index < cells.length(); index += PADDING) {
+            mark(index);
+        }
+        final int oldCapacity = sharedStackCapacity;
+        final int newCapacity = source.getStackCapacity();
+        int stackDelta = 0;
+        for (int index = 0; index < cells.length(); index += PADDING) {
+            final int ordinal = index / PADDING;
+            final int newCount = ordinal < Item.ORDINALS.size() ? source.countAll(Item.ORDINALS.get(ordinal)) : 0;
+            stackDelta += stackCount(newCount, newCapacity) - stackCount(count(cells.get(index)), oldCapacity);
+            setMarkedCount(index, newCount);
+        }
+        sharedStackCapacity = newCapacity;
+        slotCapacity.set(source.getInventoryCapacity());
+        // slots reserved or released by changes in progress stay as they are
+        usedSlots.addAndGet(stackDelta);
+        sharedVersion.increment();
+        for (int index = 0; index < cells.length(); index += PADDING) {
+            cells.set(index, (cells.get(index) & ~MARKED) + STAMP);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + copy().toString().substring(Inventory.class.getSimpleName().length());
+    }
+
+    /**
+     * Writes a {@link #copy()} of this inventory, so it is read as a plain inventory.
+     */
+    @Override
+    public void writeObject(DataOutputStream dos) throws IOException {
+        copy().writeObject(dos);
+    }
+
+    /**
+     * Writes a {@link #copy()} of this inventory, so it is read as a plain inventory.
+     */
+    @Override
+    public void writeCompact(final CompactOutputStream cos) throws IOException {
+        copy().writeCompact(cos);
+    }
+}
@@ -7,6 +7,7 @@ import java.util.Objects;
 public enum TurnEntry implements Named {
 
     DOOR("Select a door"),
+    FAST_TRAVEL("Fast travel"),
     CRAFT("Craft something"),
     MENU("Go to menu");
 
@@ -0,0 +1,92 @@
+package org.abos.dungeon.core.analytics;
+
+import org.abos.dungeon.core.Dungeon;
+import org.abos.dungeon.core.Room;
+
+import java.util.Objects;
+
+/**
+ * An immutable snapshot of the doors of a {@link Dungeon} in compressed sparse row layout,
+ * see {@link Dungeon#createDoorGraph()}. The doors of room {@code id} are the entries of {@link #targets}
+ * from {@code offsets[id]} (inclusive) to {@code offsets[id+1]} (exclusive), rooms with unfilled doors have none.
+ * <p>
+ * Being detached from the dungeon, a snapshot can be analysed on any thread while the dungeon keeps changing.
+ */
+public class DoorGraph {
+
+    /**
+     * For every room the ID of the room normally leading into it.
+     */
+    protected final int[] fromIds;
+
+    /**
+     * For every room the index of its first door in {@link #targets}, followed by the total door count.
+     */
+    protected final int[] offsets;
+
+    /**
+     * The IDs of the rooms behind all doors, {@link Room#EXIT_ID} for the return door of the start room.
+     */
+    protected final int[] targets;
+
+    /**
+     * Creates a new door graph. The arrays are taken over, not copied.
+     * @param fromIds for every room the ID of the room normally leading into it
+     * @param offsets for every room the index of its first door in {@code targets}, followed by the total door count
+     * @param targets the IDs of the rooms behind all doors
+     * @throws NullPointerException If any parameter refers to {@code null}.
+     * @throws IllegalArgumentException If the array lengths don't fit together.
+     */
+    public DoorGraph(final int[] fromIds, final int[] offsets, final int[] targets) {
+        this.fromIds = Objects.requireNonNull(fromIds);
+        this.offsets = Objects.requireNonNull(offsets);
+        this.targets = Objects.requireNonNull(targets);
+        if (offsets.length != fromIds.length + 1 || offsets[fromIds.length] != targets.length) {
+            throw new IllegalArgumentException("Array lengths don't fit together!");
+        }
+    }
+
+    /**
+     * Returns how many rooms are in this snapshot.
+     */
+    public int getRoomCount() {
+        return fromIds.length;
+    }
+
+    /**
+     * Returns how many doors are in this snapshot, summed over all rooms.
+     */
+    public int getDoorCount() {
+        return targets.length;
+    }
+
+    /**
+     * Returns how many doors of the specified room are in this snapshot.
+     * @param id the room ID
+     * @return the door count of the room, {@code 0} if its doors weren't filled
+     * @throws IndexOutOfBoundsException If {@code id} is invalid.
+     */
+    public int getDoorCount(final int id) {
+        Objects.checkIndex(id, fromIds.length);
+        return offsets[id + 1] - offsets[id];
+    }
+
+    /**
+     * Returns the ID of the room behind the specified door.
+     * @param id the room ID
+     * @param door the door number
+     * @throws IndexOutOfBoundsException If {@code id} or {@code door} is invalid.
+     */
+    public int getDoor(final int id, final int door) {
+        return targets[offsets[id] + Objects.checkIndex(door, getDoorCount(id))];
+    }
+
+    /**
+     * Returns the ID of the room normally leading into the specified room.
+     * @param id the room ID
+     * @throws IndexOutOfBoundsException If {@code id} is invalid.
+     */
+    public int getFromId(final int id) {
+        return fromIds[id];
+    }
+}
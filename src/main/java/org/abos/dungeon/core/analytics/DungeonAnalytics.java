@@ -0,0 +1,348 @@
+package org.abos.dungeon.core.analytics;
+
+import org.abos.dungeon.core.Dungeon;
+import org.abos.dungeon.core.Room;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.BinaryOperator;
+
+/**
+ * Computes a {@link DungeonReport} on a {@link DoorGraph}. The dungeon itself is only read while creating the snapshot,
+ * so it isn't blocked during the analysis.
+ * <p>
+ * The passes over all doors run as fork-join tasks over chunks of room IDs, the breadth-first search from the start room
+ * expands each level in parallel. Only the strongly connected components are computed sequentially.
+ */
+public class DungeonAnalytics {
+
+    /**
+     * How many rooms a fork-join task handles at least before splitting, see {@link #DungeonAnalytics()}.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 1 << 14;
+
+    // layout of the per-chunk door statistics, following the out-degree histogram
+    private static final int FILLED_INDEX = Room.MAX_DOORS + 1;
+    private static final int RETURN_INDEX = FILLED_INDEX + 1;
+    private static final int FRESH_INDEX = RETURN_INDEX + 1;
+    private static final int BACK_INDEX = FRESH_INDEX + 1;
+    private static final int STATISTICS_LENGTH = BACK_INDEX + 1;
+
+    /**
+     * The pool the analysis runs in.
+     */
+    protected final ForkJoinPool pool;
+
+    /**
+     * How many rooms a fork-join task handles at least before splitting.
+     */
+    protected final int chunkSize;
+
+    /**
+     * Creates a new {@link DungeonAnalytics} instance.
+     * @param pool the pool to run the analysis in
+     * @param chunkSize how many rooms a fork-join task handles at least before splitting, positive
+     * @throws NullPointerException If {@code pool} refers to {@code null}.
+     * @throws IllegalArgumentException If {@code chunkSize} isn't positive.
+     */
+    public DungeonAnalytics(final ForkJoinPool pool, final int chunkSize) {
+        this.pool = Objects.requireNonNull(pool);
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size must be positive!");
+        }
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Creates a new {@link DungeonAnalytics} instance running in the common pool with {@link #DEFAULT_CHUNK_SIZE}.
+     */
+    public DungeonAnalytics() {
+        this(ForkJoinPool.commonPool(), DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Snapshots and analyses the specified dungeon.
+     * @param dungeon the dungeon to analyse, not {@code null}
+     * @return the analysis results, not {@code null}
+     * @see Dungeon#createDoorGraph()
+     */
+    public DungeonReport analyze(final Dungeon dungeon) {
+        return analyze(dungeon.createDoorGraph());
+    }
+
+    /**
+     * Analyses the specified door graph.
+     * @param graph the snapshot to analyse, not {@code null}
+     * @return the analysis results, not {@code null}
+     */
+    public DungeonReport analyze(final DoorGraph graph) {
+        final int roomCount = graph.getRoomCount();
+        final AtomicIntegerArray inDegrees = new AtomicIntegerArray(roomCount);
+        final int[] statistics = reduce(roomCount, (from, to) -> countDoors(graph, inDegrees, from, to), DungeonAnalytics::add);
+        final int maxInDegree = reduce(roomCount, (from, to) -> {
+            int max = 0;
+            for (int id = from; id < to; id++) {
+                max = Math.max(max, inDegrees.get(id));
+            }
+            return max;
+        }, Math::max);
+        final int[] inDegreeHistogram = reduce(roomCount, (from, to) -> {
+            final int[] histogram = new int[maxInDegree + 1];
+            for (int id = from; id < to; id++) {
+                histogram[inDegrees.get(id)]++;
+            }
+            return histogram;
+        }, DungeonAnalytics::add);
+        final Components components = new Components(graph);
+        final int intraComponentDoors = reduce(roomCount, (from, to) -> {
+            int count = 0;
+            for (int id = from; id < to; id++) {
+                for (int i = graph.offsets[id]; i < graph.offsets[id + 1]; i++) {
+                    final int target = graph.targets[i];
+                    if (target >= 0 && components.component[target] == components.component[id]) {
+                        count++;
+                    }
+                }
+            }
+            return count;
+        }, Integer::sum);
+        final int[] depthHistogram = breadthFirstSearch(graph);
+        return new DungeonReport(roomCount, statistics[FILLED_INDEX], graph.getDoorCount(),
+                Arrays.copyOf(statistics, Room.MAX_DOORS + 1), inDegreeHistogram,
+                statistics[RETURN_INDEX], statistics[FRESH_INDEX], statistics[BACK_INDEX],
+                components.count, components.cyclicCount, components.largestSize,
+                (long)intraComponentDoors - components.cyclicRoomCount + components.cyclicCount,
+                Arrays.stream(depthHistogram).sum(), depthHistogram);
+    }
+
+    /**
+     * Counts the doors of the specified rooms and increments the in-degrees of their targets.
+     * @return the out-degree histogram followed by the door statistics
+     */
+    private static int[] countDoors(final DoorGraph graph, final AtomicIntegerArray inDegrees, final int from, final int to) {
+        final int[] statistics = new int[STATISTICS_LENGTH];
+        for (int id = from; id < to; id++) {
+            final int first = graph.offsets[id];
+            final int doorCount = graph.offsets[id + 1] - first;
+            if (doorCount == 0) {
+                continue;
+            }
+            statistics[doorCount]++;
+            statistics[FILLED_INDEX]++;
+            statistics[RETURN_INDEX]++;
+            for (int door = 0; door < doorCount; door++) {
+                final int target = graph.targets[first + door];
+                if (target < 0) {
+                    continue;
+                }
+                inDegrees.incrementAndGet(target);
+                if (door == Room.RETURN_ID) {
+                    continue;
+                }
+                // a room generated for this door is only fresh for the first door leading there
+                boolean fresh = graph.fromIds[target] == id;
+                for (int other = 1; fresh && other < door; other++) {
+                    fresh = graph.targets[first + other] != target;
+                }
+                statistics[fresh ? FRESH_INDEX : BACK_INDEX]++;
+            }
+        }
+        return statistics;
+    }
+
+    /**
+     * Expands the start room level by level, each level in parallel.
+     * @return for every depth how many rooms have it
+     */
+    private int[] breadthFirstSearch(final DoorGraph graph) {
+        if (graph.getRoomCount() == 0) {
+            return new int[0];
+        }
+        // the depth plus one, so zero marks unvisited rooms
+        final AtomicIntegerArray depths = new AtomicIntegerArray(graph.getRoomCount());
+        depths.set(Room.START_ID, 1);
+        int[] frontier = {Room.START_ID};
+        int[] histogram = new int[16];
+        int depth = 0;
+        while (frontier.length != 0) {
+            if (depth == histogram.length) {
+                histogram = Arrays.copyOf(histogram, 2 * depth);
+            }
+            histogram[depth] = frontier.length;
+            final int[] current = frontier;
+            final int marker = depth + 2;
+            frontier = reduce(current.length, (from, to) -> {
+                int[] next = new int[Math.min(16, graph.getRoomCount())];
+                int size = 0;
+                for (int i = from; i < to; i++) {
+                    final int id = current[i];
+                    for (int door = graph.offsets[id]; door < graph.offsets[id + 1]; door++) {
+                        final int target = graph.targets[door];
+                        if (target >= 0 && depths.get(target) == 0 && depths.compareAndSet(target, 0, marker)) {
+                            if (size == next.length) {
+                                next = Arrays.copyOf(next, 2 * size);
+                            }
+                            next[size++] = target;
+                        }
+                    }
+                }
+                return Arrays.copyOf(next, size);
+            }, DungeonAnalytics::concat);
+            depth++;
+        }
+        return Arrays.copyOf(histogram, depth);
+    }
+
+    private <R> R reduce(final int length, final RangeFunction<R> function, final BinaryOperator<R> combiner) {
+        return pool.invoke(new RangeTask<>(0, length, chunkSize, function, combiner));
+    }
+
+    private static int[] add(final int[] a, final int[] b) {
+        final int[] sum = Arrays.copyOf(a, Math.max(a.length, b.length));
+        for (int i = 0; i < b.length; i++) {
+            sum[i] += b[i];
+        }
+        return sum;
+    }
+
+    private static int[] concat(final int[] a, final int[] b) {
+        final int[] result = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, result, a.length, b.length);
+        return result;
+    }
+
+    /**
+     * Computes a result for a range of indices.
+     * @param <R> the type of the result
+     */
+    @FunctionalInterface
+    private interface RangeFunction<R> {
+        R apply(int from, int to);
+    }
+
+    /**
+     * Splits a range of indices in halves until they are small enough, then combines the results of the halves.
+     * @param <R> the type of the result
+     */
+    @SuppressWarnings("serial") // fork-join tasks are Serializable, but this one is never serialized
+    private static class RangeTask<R> extends RecursiveTask<R> {
+
+        private final int from;
+        private final int to;
+        private final int chunkSize;
+        private final RangeFunction<R> function;
+        private final BinaryOperator<R> combiner;
+
+        private RangeTask(final int from, final int to, final int chunkSize, final RangeFunction<R> function, final BinaryOperator<R> combiner) {
+            this.from = from;
+            this.to = to;
+            this.chunkSize = chunkSize;
+            this.function = function;
+            this.combiner = combiner;
+        }
+
+        @Override
+        protected R compute() {
+            if (to - from <= chunkSize) {
+                return function.apply(from, to);
+            }
+            final int middle = (from + to) >>> 1;
+            final RangeTask<R> left = new RangeTask<>(from, middle, chunkSize, function, combiner);
+            left.fork();
+            final R right = new RangeTask<>(middle, to, chunkSize, function, combiner).compute();
+            return combiner.apply(left.join(), right);
+        }
+    }
+
+    /**
+     * The strongly connected components of a door graph, computed with an iterative version of Tarjan's algorithm.
+     */
+    private static class Components {
+
+        /**
+         * For every room the number of its component.
+         */
+        private final int[] component;
+
+        private int count;
+        private int cyclicCount;
+        private int cyclicRoomCount;
+        private int largestSize;
+
+        private Components(final DoorGraph graph) {
+            final int roomCount = graph.getRoomCount();
+            component = new int[roomCount];
+            Arrays.fill(component, -1);
+            // the visiting order plus one, so zero marks unvisited rooms
+            final int[] index = new int[roomCount];
+            final int[] low = new int[roomCount];
+            final int[] stack = new int[roomCount];
+            final int[] callStack = new int[roomCount];
+            final int[] nextDoor = new int[roomCount];
+            int stackSize = 0;
+            int callStackSize = 0;
+            int visited = 0;
+            for (int root = 0; root < roomCount; root++) {
+                if (index[root] != 0) {
+                    continue;
+                }
+                index[root] = low[root] = ++visited;
+                stack[stackSize++] = root;
+                callStack[callStackSize] = root;
+                nextDoor[callStackSize++] = graph.offsets[root];
+                while (callStackSize != 0) {
+                    final int id = callStack[callStackSize - 1];
+                    if (nextDoor[callStackSize - 1] < graph.offsets[id + 1]) {
+                        final int target = graph.targets[nextDoor[callStackSize - 1]++];
+                        if (target < 0) {
+                            continue;
+                        }
+                        if (index[target] == 0) {
+                            index[target] = low[target] = ++visited;
+                            stack[stackSize++] = target;
+                            callStack[callStackSize] = target;
+                            nextDoor[callStackSize++] = graph.offsets[target];
+                        }
+                        else if (component[target] == -1) {
+                            // still on the stack
+                            low[id] = Math.min(low[id], index[target]);
+                        }
+                        continue;
+                    }
+                    callStackSize--;
+                    if (low[id] == index[id]) {
+                        int size = 0;
+                        int member;
+                        do {
+                            member = stack[--stackSize];
+                            component[member] = count;
+                            size++;
+                        } while (member != id);
+                        if (size > 1 || hasDoorTo(graph, id, id)) {
+                            cyclicCount++;
+                            cyclicRoomCount += size;
+                        }
+                        largestSize = Math.max(largestSize, size);
+                        count++;
+                    }
+                    if (callStackSize != 0) {
+                        final int parent = callStack[callStackSize - 1];
+                        low[parent] = Math.min(low[parent], low[id]);
+                    }
+                }
+            }
+        }
+
+        private static boolean hasDoorTo(final DoorGraph graph, final int id, final int target) {
+            for (int door = graph.offsets[id]; door < graph.offsets[id + 1]; door++) {
+                if (graph.targets[door] == target) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
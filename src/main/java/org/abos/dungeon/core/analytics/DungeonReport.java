@@ -0,0 +1,46 @@
+package org.abos.dungeon.core.analytics;
+
+import org.abos.dungeon.core.Dungeon;
+import org.abos.dungeon.core.Room;
+
+/**
+ * The results of {@link DungeonAnalytics#analyze(DoorGraph)}.
+ * @param roomCount how many rooms the dungeon has
+ * @param filledRoomCount how many of them have their doors filled
+ * @param doorCount how many doors the filled rooms have in total
+ * @param outDegreeHistogram for every door count how many filled rooms have that many doors
+ * @param inDegreeHistogram for every number how many rooms are behind exactly that many doors
+ * @param returnDoors how many doors lead back to the room normally leading into their room,
+ *                    meaning door {@link Room#RETURN_ID}
+ * @param freshDoors how many of the other doors lead to a room generated for this door
+ * @param backDoors how many of the other doors lead to an already existing room, see {@link Dungeon#getRandomRoom(Room)}
+ * @param componentCount how many strongly connected components the rooms form
+ * @param cyclicComponentCount how many of these components contain a cycle
+ * @param largestComponentSize how many rooms the largest component has
+ * @param cycleRank how many independent cycles there are, summed over the components
+ * @param reachableRoomCount how many rooms can be reached from the start room
+ * @param depthHistogram for every number how many rooms are that many doors away from the start room at least
+ */
+public record DungeonReport(int roomCount, int filledRoomCount, int doorCount,
+                            int[] outDegreeHistogram, int[] inDegreeHistogram,
+                            int returnDoors, int freshDoors, int backDoors,
+                            int componentCount, int cyclicComponentCount, int largestComponentSize, long cycleRank,
+                            int reachableRoomCount, int[] depthHistogram) {
+
+    /**
+     * Returns the share of the doors not being return doors that lead to already existing rooms.
+     * @return a number between {@code 0} and {@code 1}, {@link Double#NaN} if there are no such doors
+     * @see Dungeon#chanceRoomGoesBack()
+     */
+    public double getBackDoorShare() {
+        return (double)backDoors / (freshDoors + backDoors);
+    }
+
+    /**
+     * Returns the highest number of doors needed to reach a room from the start room.
+     * @return a non-negative number, {@code -1} if the dungeon has no rooms
+     */
+    public int getMaxDepth() {
+        return depthHistogram.length - 1;
+    }
+}
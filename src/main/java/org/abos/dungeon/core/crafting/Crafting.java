@@ -1,5 +1,6 @@
 package org.abos.dungeon.core.crafting;
 
+import org.abos.dungeon.core.entity.Item;
 import org.abos.dungeon.core.task.Information;
 
 import java.io.File;
@@ -36,6 +37,11 @@ public final class Crafting {
      */
     public static final Map<CraftingInput, CraftingOutput> RECIPES = new HashMap<>();
 
+    /**
+     * The recipes by the {@link #ordinalPair(int, int) pair} of the {@link Item#getOrdinal() ordinals} of their inputs, built by {@link #init()}.
+     */
+    private static final Map<Long, CraftingOutput> RECIPES_BY_ORDINALS = new HashMap<>();
+
     /**
      * The information lines to randomly generate {@link Information} instances from.
      */
@@ -69,6 +75,7 @@ public final class Crafting {
         } catch (final IOException ex) {
             System.err.printf(preformattedIoErrMsg, Crafting.LIST_FILE_NAME);
         }
+        buildRecipeTable();
         url = Crafting.class.getClassLoader().getResource(DISS_LIST_FILE_NAME);
         try {
             DISS_LINES.addAll(Files.readAllLines(new File(url.getFile()).toPath()));
@@ -77,6 +84,38 @@ public final class Crafting {
         }
     }
 
+    private static void buildRecipeTable() {
+        RECIPES_BY_ORDINALS.clear();
+        RECIPES.forEach((input, output) -> {
+            final int[] ordinals = input.getAllItems().stream().mapToInt(Item::getOrdinal).toArray();
+            // two of the same item or two different ones
+            RECIPES_BY_ORDINALS.put(ordinalPair(ordinals[0], ordinals[ordinals.length - 1]), output);
+        });
+    }
+
+    /**
+     * Combines two ordinals into one key that doesn't depend on their order.
+     */
+    private static long ordinalPair(final int first, final int second) {
+        return (long)Math.min(first, second) << Integer.SIZE | Math.max(first, second);
+    }
+
+    /**
+     * Returns the recipe for the specified inputs in constant time. The order of the inputs doesn't matter.
+     * @param input1 the first input item
+     * @param input2 the second input item
+     * @return the output of the recipe, or {@code null} if there is no recipe for these inputs
+     * @throws NullPointerException If any input refers to {@code null}.
+     */
+    public static CraftingOutput getRecipe(final Item input1, final Item input2) {
+        final int first = input1.getOrdinal();
+        final int second = input2.getOrdinal();
+        if (first < 0 || second < 0) {
+            return null;
+        }
+        return RECIPES_BY_ORDINALS.get(ordinalPair(first, second));
+    }
+
     /**
      * Returns a random diss line.
      * @param random a {@link Random} instance
@@ -1,6 +1,5 @@
 package org.abos.dungeon.core.crafting;
 
-import org.abos.common.CollectionUtil;
 import org.abos.dungeon.core.Inventory;
 import org.abos.dungeon.core.entity.Item;
 
@@ -41,6 +40,6 @@ public class CraftingInput extends Inventory {
      * @see #CraftingInput(Item, Item)
      */
     public CraftingInput(final String input1, final String input2) {
-        this(CollectionUtil.getByName(Item.REGISTRY, input1), CollectionUtil.getByName(Item.REGISTRY, input2));
+        this(Item.ORDINALS.getByName(input1), Item.ORDINALS.getByName(input2));
     }
 }
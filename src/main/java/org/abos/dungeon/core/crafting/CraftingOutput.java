@@ -1,6 +1,5 @@
 package org.abos.dungeon.core.crafting;
 
-import org.abos.common.CollectionUtil;
 import org.abos.dungeon.core.Inventory;
 import org.abos.dungeon.core.entity.Item;
 
@@ -39,7 +38,7 @@ public class CraftingOutput extends Inventory {
      * @see #CraftingOutput(Item)
      */
     public CraftingOutput(final String output) {
-        this(CollectionUtil.getByName(Item.REGISTRY, output));
+        this(Item.ORDINALS.getByName(output));
     }
 
 }
@@ -7,6 +7,11 @@ import java.util.Objects;
  */
 public abstract class AbstractEntity implements Entity {
 
+    /**
+     * The ordinal of entities that haven't been registered.
+     */
+    public static final int NO_ORDINAL = -1;
+
     /**
      * @see #getName()
      */
@@ -17,6 +22,11 @@ public abstract class AbstractEntity implements Entity {
      */
     protected final String description;
 
+    /**
+     * @see #getOrdinal()
+     */
+    private int ordinal = NO_ORDINAL;
+
     /**
      * Creates a new {@link AbstractEntity} instance.
      * @param name the name of this entity, not {@code null}
@@ -38,6 +48,19 @@ public abstract class AbstractEntity implements Entity {
         return description;
     }
 
+    /**
+     * Returns the ordinal this entity has been registered under in an {@link EntityRegistry}.
+     * Equal registered entities have the same ordinal.
+     * @return the ordinal, or {@link #NO_ORDINAL} if this entity hasn't been registered
+     */
+    public int getOrdinal() {
+        return ordinal;
+    }
+
+    /* package private */ void setOrdinal(final int ordinal) {
+        this.ordinal = ordinal;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
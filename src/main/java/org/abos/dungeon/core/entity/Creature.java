@@ -1,5 +1,7 @@
 package org.abos.dungeon.core.entity;
 
+import org.abos.common.CompactInputStream;
+import org.abos.common.CompactOutputStream;
 import org.abos.common.Serializable;
 
 import java.io.DataInputStream;
@@ -39,6 +41,7 @@ public class Creature extends AbstractEntity implements LivingEntity, Serializab
     public Creature(Creature original) {
         this(original.name, original.description, original.maxHp);
         this.currentHp = original.currentHp;
+        setOrdinal(original.getOrdinal());
     }
 
     public Creature(final String name, final String description, final int maxHp) {
@@ -60,6 +63,16 @@ public class Creature extends AbstractEntity implements LivingEntity, Serializab
         return currentHp;
     }
 
+    /**
+     * Gives a read creature the ordinal of its template, if there is one.
+     */
+    private void setTemplateOrdinal() {
+        if (LivingEntity.TEMPLATE_ORDINALS.getByName(name) instanceof Creature template
+                && description.equals(template.description) && maxHp == template.maxHp) {
+            setOrdinal(template.getOrdinal());
+        }
+    }
+
     public static Set<Creature> getTemplates() {
         if (templates == null) {
             templates = LivingEntity.TEMPLATE_REGISTRY.stream().filter(Creature.class::isInstance).map(Creature.class::cast).collect(Collectors.toSet());
@@ -91,6 +104,33 @@ public class Creature extends AbstractEntity implements LivingEntity, Serializab
     public static Creature readObject(final DataInputStream dis) throws IOException {
         final Creature creature = new Creature(dis.readUTF(), dis.readUTF(), dis.readInt());
         creature.currentHp = dis.readInt();
+        creature.setTemplateOrdinal();
+        return creature;
+    }
+
+    /**
+     * Writes this creature more compactly than {@link #writeObject(DataOutputStream)}, with name and description in the string table.
+     * @param cos the compact output stream
+     * @throws IOException If an I/O exception occurs.
+     * @see #readCompact(CompactInputStream)
+     */
+    public void writeCompact(final CompactOutputStream cos) throws IOException {
+        cos.writeTableString(name);
+        cos.writeTableString(description);
+        cos.writeVarInt(maxHp);
+        cos.writeVarInt(currentHp);
+    }
+
+    /**
+     * Reads a {@link Creature} written by {@link #writeCompact(CompactOutputStream)} from the specified stream.
+     * @param cis the {@link CompactInputStream} to read from
+     * @return a new {@link Creature} instance
+     * @throws IOException If an I/O exception occurs.
+     */
+    public static Creature readCompact(final CompactInputStream cis) throws IOException {
+        final Creature creature = new Creature(cis.readTableString(), cis.readTableString(), cis.readVarInt());
+        creature.currentHp = cis.readVarInt();
+        creature.setTemplateOrdinal();
         return creature;
     }
 }
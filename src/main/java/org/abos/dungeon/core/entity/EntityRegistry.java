@@ -0,0 +1,194 @@
+package org.abos.dungeon.core.entity;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Registers entities under dense ordinals, counting up from zero in the order of registration,
+ * so tables about entities can be arrays indexed by {@link AbstractEntity#getOrdinal()} instead of hash maps.
+ * Entities can also be looked up by name in constant time.
+ * <p>
+ * The types of the registered entities, meaning their classes and all supertypes that are entities themselves,
+ * get dense type IDs the same way, so tables about types can be arrays as well.
+ * <p>
+ * The ordinals only depend on the order of registration, which is the order of the resource files.
+ * They are stable while the game runs, but not across versions of these files, so they aren't meant to be saved.
+ * <p>
+ * Entities are registered on one thread while the game starts, then the registry is {@link #freeze() frozen}.
+ * A frozen registry doesn't change anymore, so it can be read from any thread, and tables sized by {@link #size()} stay big enough.
+ * @param <T> the type of the registered entities
+ */
+public class EntityRegistry<T extends Entity> implements Iterable<T> {
+
+    /**
+     * The registered entities, indexed by ordinal.
+     */
+    protected final List<T> entities = new ArrayList<>();
+
+    /**
+     * The registered entities by name.
+     */
+    protected final Map<String, T> byName = new HashMap<>();
+
+    /**
+     * The IDs of the types of the registered entities.
+     */
+    protected final Map<Class<?>, Integer> typeIds = new HashMap<>();
+
+    /**
+     * The IDs of the types of each registered entity, indexed by ordinal.
+     */
+    protected final List<int[]> typeIdsByOrdinal = new ArrayList<>();
+
+    /**
+     * The registered entities ordered by name, {@code null} if it has to be sorted anew.
+     */
+    private volatile List<T> alphabeticalOrder;
+
+    /**
+     * @see #isFrozen()
+     */
+    private volatile boolean frozen;
+
+    /**
+     * Registers the specified entity and sets its ordinal. If an equal entity has been registered before,
+     * the entity gets the ordinal of that one, so loading the resource files twice doesn't change anything.
+     * @param entity the entity to register, must be a fully constructed {@link AbstractEntity}
+     * @return the ordinal of the entity
+     * @throws NullPointerException If {@code entity} refers to {@code null}.
+     * @throws IllegalArgumentException If {@code entity} isn't an {@link AbstractEntity}
+     * or another entity with the same name has been registered.
+     * @throws IllegalStateException If this registry is frozen and no equal entity has been registered.
+     */
+    public int register(final T entity) {
+        if (!(entity instanceof AbstractEntity abstractEntity)) { // throws NPE
+            throw new IllegalArgumentException("Only abstract entities can be registered!");
+        }
+        final T registered = byName.get(entity.getName());
+        if (registered != null) {
+            if (registered.getClass() != entity.getClass() || !registered.equals(entity)) {
+                throw new IllegalArgumentException("Another entity named " + entity.getName() + " has been registered already!");
+            }
+            abstractEntity.setOrdinal(((AbstractEntity)registered).getOrdinal());
+            return abstractEntity.getOrdinal();
+        }
+        if (frozen) {
+            throw new IllegalStateException("Registry is frozen, " + entity.getName() + " can't be registered anymore!");
+        }
+        abstractEntity.setOrdinal(entities.size());
+        entities.add(entity);
+        final Set<Class<?>> types = new LinkedHashSet<>();
+        collectTypes(entity.getClass(), types);
+        typeIdsByOrdinal.add(types.stream().mapToInt(type -> typeIds.computeIfAbsent(type, t -> typeIds.size())).toArray());
+        byName.put(entity.getName(), entity);
+        alphabeticalOrder = null;
+        return abstractEntity.getOrdinal();
+    }
+
+    /**
+     * Freezes this registry, so no new entities can be registered. Freezing twice has no effect.
+     */
+    public void freeze() {
+        getAlphabeticalOrder();
+        frozen = true;
+    }
+
+    /**
+     * If this registry is frozen, see {@link #freeze()}.
+     * @return {@code true} if no new entities can be registered, else {@code false}
+     */
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    private static void collectTypes(final Class<?> type, final Set<Class<?>> types) {
+        if (type == null || !Entity.class.isAssignableFrom(type) || !types.add(type)) {
+            return;
+        }
+        collectTypes(type.getSuperclass(), types);
+        for (Class<?> superInterface : type.getInterfaces()) {
+            collectTypes(superInterface, types);
+        }
+    }
+
+    /**
+     * Returns how many entities have been registered, which is one more than the highest ordinal.
+     */
+    public int size() {
+        return entities.size();
+    }
+
+    /**
+     * Returns the entity with the specified ordinal.
+     * @param ordinal the ordinal
+     * @return the entity, not {@code null}
+     * @throws IndexOutOfBoundsException If no entity has the specified ordinal.
+     */
+    public T get(final int ordinal) {
+        return entities.get(ordinal);
+    }
+
+    /**
+     * Returns how many types the registered entities have, which is one more than the highest type ID.
+     */
+    public int typeCount() {
+        return typeIds.size();
+    }
+
+    /**
+     * Returns the ID of the specified type.
+     * @param type the type to look up
+     * @return the type ID, or {@code -1} if no registered entity has this type
+     */
+    public int getTypeId(final Class<?> type) {
+        return typeIds.getOrDefault(type, -1);
+    }
+
+    /**
+     * Returns the IDs of all types of the entity with the specified ordinal.
+     * @param ordinal the ordinal
+     * @return the type IDs, not {@code null}. The array is shared and must not be modified.
+     * @throws IndexOutOfBoundsException If no entity has the specified ordinal.
+     */
+    public int[] getTypeIds(final int ordinal) {
+        return typeIdsByOrdinal.get(ordinal);
+    }
+
+    /**
+     * Returns the entity with the specified name.
+     * @param name the name to look up
+     * @return the entity, or {@code null} if there is none
+     */
+    public T getByName(final String name) {
+        return byName.get(name);
+    }
+
+    /**
+     * Returns the registered entities ordered by name. The list is sorted once after each registration and shared afterwards.
+     * @return an unmodifiable list, not {@code null}
+     */
+    public List<T> getAlphabeticalOrder() {
+        if (alphabeticalOrder == null) {
+            final List<T> result = new ArrayList<>(entities);
+            result.sort(Comparator.comparing(Entity::getName));
+            alphabeticalOrder = Collections.unmodifiableList(result);
+        }
+        return alphabeticalOrder;
+    }
+
+    /**
+     * Returns an iterator over the registered entities in the order of their ordinals.
+     * The remove operation is not supported.
+     */
+    @Override
+    public Iterator<T> iterator() {
+        return Collections.unmodifiableList(entities).iterator();
+    }
+}
@@ -1,6 +1,5 @@
 package org.abos.dungeon.core.entity;
 
-import org.abos.common.CollectionUtil;
 import org.abos.common.StringUtil;
 import org.abos.dungeon.core.task.Information;
 
@@ -15,8 +14,23 @@ import java.util.function.Consumer;
 
 public interface Item extends Entity {
 
+    /**
+     * All items. Rewards are drawn by iterating this set, so its order is part of what a seed generates.
+     */
     Set<Item> REGISTRY = new HashSet<>();
 
+    /**
+     * All items loaded by {@link #init()} by ordinal and name, frozen afterwards.
+     */
+    EntityRegistry<Item> ORDINALS = new EntityRegistry<>();
+
+    /**
+     * Returns the ordinal of this item in {@link #ORDINALS}.
+     * @return the ordinal, not negative for items created by their constructors
+     * @see AbstractEntity#getOrdinal()
+     */
+    int getOrdinal();
+
     private static void loadType(final String fileName, final int argCount, final Consumer<String[]> constructor) throws IllegalStateException {
         try {
             final URL url = Information.class.getClassLoader().getResource(fileName);
@@ -42,14 +56,15 @@ public interface Item extends Entity {
 
     static void init() throws IllegalStateException {
         loadType(Thing.LIST_FILE_NAME, 2, args ->
-                new Thing(args[0], args[1]));
+                ORDINALS.register(new Thing(args[0], args[1])));
         loadType(Plant.LIST_FILE_NAME, 2, args ->
-                new Plant(args[0], args[1]));
+                ORDINALS.register(new Plant(args[0], args[1])));
         loadType(Armor.LIST_FILE_NAME, 4, args ->
-                new Armor(args[0], args[1], ArmorSlot.valueOf(args[2]), Integer.parseInt(args[3])));
+                ORDINALS.register(new Armor(args[0], args[1], ArmorSlot.valueOf(args[2]), Integer.parseInt(args[3]))));
         loadType(Weapon.LIST_FILE_NAME, 5, args ->
-                new Weapon(args[0], args[1], WeaponSlot.valueOf(args[2]), Integer.parseInt(args[3]),
-                        args[4].isEmpty() ? null : CollectionUtil.getByName(Item.REGISTRY, args[4])));
+                ORDINALS.register(new Weapon(args[0], args[1], WeaponSlot.valueOf(args[2]), Integer.parseInt(args[3]),
+                        args[4].isEmpty() ? null : Item.ORDINALS.getByName(args[4]))));
+        ORDINALS.freeze();
     }
 
 }
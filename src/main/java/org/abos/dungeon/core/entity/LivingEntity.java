@@ -14,6 +14,18 @@ public interface LivingEntity extends Entity {
 
     Set<LivingEntity> TEMPLATE_REGISTRY = new HashSet<>();
 
+    /**
+     * All templates loaded by {@link #init()} by ordinal and name, frozen afterwards.
+     */
+    EntityRegistry<LivingEntity> TEMPLATE_ORDINALS = new EntityRegistry<>();
+
+    /**
+     * Returns the ordinal of the template of this living entity in {@link #TEMPLATE_ORDINALS}.
+     * @return the ordinal, or {@link AbstractEntity#NO_ORDINAL} if there is no such template
+     * @see AbstractEntity#getOrdinal()
+     */
+    int getOrdinal();
+
     int getMaxHealthPoints();
 
     int getCurrentHealthPoints();
@@ -31,11 +43,14 @@ public interface LivingEntity extends Entity {
                 if (arr.length != 3) {
                     throw new IllegalStateException(iseErrMsg + line);
                 }
-                TEMPLATE_REGISTRY.add(new Creature(arr[0], arr[1], Integer.parseInt(arr[2])));
+                final Creature template = new Creature(arr[0], arr[1], Integer.parseInt(arr[2]));
+                TEMPLATE_REGISTRY.add(template);
+                TEMPLATE_ORDINALS.register(template);
             }
         } catch (final IOException ex) {
             System.err.printf(preformattedIoErrMsg, Creature.LIST_FILE_NAME);
         }
+        TEMPLATE_ORDINALS.freeze();
     }
 
 }
@@ -0,0 +1,154 @@
+package org.abos.dungeon.core.npc;
+
+import org.abos.dungeon.core.Dungeon;
+import org.abos.dungeon.core.Inventory;
+import org.abos.dungeon.core.Player;
+import org.abos.dungeon.core.SharedInventory;
+import org.abos.dungeon.core.crafting.Crafting;
+import org.abos.dungeon.core.entity.Item;
+import org.abos.dungeon.core.entity.LivingEntity;
+import org.abos.dungeon.core.reward.DefaultRewardFactory;
+import org.abos.dungeon.core.task.DefaultTaskFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * A party of NPCs that explore at the same time, each on a thread of its own, and pool their loot into one {@link SharedInventory stash}.
+ * Dungeons generate their rooms on the thread that enters them, so each member explores a dungeon of its own.
+ */
+public class NpcParty {
+
+    /**
+     * @see #getStash()
+     */
+    protected final SharedInventory stash;
+
+    /**
+     * @see #getMembers()
+     */
+    protected final List<AbstractNpc> members;
+
+    /**
+     * Creates a new {@link NpcParty} instance.
+     * @param stash the stash of the party, not {@code null}
+     * @param members the members of the party, each with the stash as inventory and in a dungeon of its own
+     * @throws NullPointerException If any parameter or member refers to {@code null}.
+     * @throws IllegalArgumentException If there are no members, a member has another inventory or two members share a dungeon.
+     */
+    public NpcParty(final SharedInventory stash, final List<? extends AbstractNpc> members) {
+        this.stash = Objects.requireNonNull(stash);
+        this.members = List.copyOf(members);
+        if (this.members.isEmpty()) {
+            throw new IllegalArgumentException("A party needs at least one member!");
+        }
+        final Set<Dungeon> dungeons = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (AbstractNpc member : this.members) {
+            if (member.getInventory() != stash) {
+                throw new IllegalArgumentException("All members must use the stash as their inventory!");
+            }
+            if (!dungeons.add(member.getCurrentRoom().getDungeon())) {
+                throw new IllegalArgumentException("Each member must explore a dungeon of its own!");
+            }
+        }
+    }
+
+    /**
+     * Creates a party of {@link RandomNpc RandomNpcs}, each in a new dungeon.
+     * @param size how many members the party has, must be positive
+     * @param stash the stash of the party, not {@code null}
+     * @param seed the seed of the first member, the others get the following ones
+     * @return a new {@link NpcParty} instance
+     * @throws NullPointerException If {@code stash} refers to {@code null}.
+     * @throws IllegalArgumentException If {@code size} isn't positive.
+     */
+    public static NpcParty ofRandomNpcs(final int size, final SharedInventory stash, final long seed) {
+        final List<RandomNpc> members = new ArrayList<>(Math.max(0, size));
+        for (int i = 0; i < size; i++) {
+            final Random random = new Random(seed + i);
+            final Dungeon dungeon = new Dungeon(random, new DefaultTaskFactory(random), new DefaultRewardFactory(random));
+            members.add(new RandomNpc(dungeon.getStartRoom(), stash, random, true));
+        }
+        return new NpcParty(stash, members);
+    }
+
+    /**
+     * Returns the stash all members pool their loot into.
+     * @return the stash, not {@code null}
+     */
+    public SharedInventory getStash() {
+        return stash;
+    }
+
+    /**
+     * Returns the members of this party.
+     * @return an unmodifiable list, not {@code null}
+     */
+    public List<AbstractNpc> getMembers() {
+        return members;
+    }
+
+    /**
+     * Lets each member enter rooms until it has entered the specified amount or left its dungeon, all members at the same time.
+     * @param maxSteps how many rooms each member enters at most
+     * @return how many rooms the members entered in total
+     * @throws InterruptedException If the current thread is interrupted while waiting for the members.
+     * @throws IllegalStateException If a member fails, with the failure as cause.
+     */
+    public int explore(final int maxSteps) throws InterruptedException {
+        final ExecutorService executor = Executors.newFixedThreadPool(members.size());
+        try {
+            final List<Future<Integer>> futures = new ArrayList<>(members.size());
+            for (AbstractNpc member : members) {
+                futures.add(executor.submit(() -> {
+                    int steps = 0;
+                    while (steps < maxSteps && member.getCurrentRoom() != null) {
+                        member.enterNextRoom();
+                        steps++;
+                    }
+                    return steps;
+                }));
+            }
+            int total = 0;
+            for (Future<Integer> future : futures) {
+                try {
+                    total += future.get();
+                }
+                catch (ExecutionException ex) {
+                    throw new IllegalStateException("A member of the party failed!", ex.getCause());
+                }
+            }
+            return total;
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Does a test run with a party of four NPCs.
+     * @param args ignored
+     * @throws InterruptedException If the main thread is interrupted.
+     */
+    public static void main(String[] args) throws InterruptedException {
+        Item.init();
+        LivingEntity.init();
+        Crafting.init();
+        final NpcParty party = ofRandomNpcs(4, new SharedInventory(Inventory.DEFAULT_INVENTORY_CAPACITY * 4, Inventory.DEFAULT_STACK_CAPACITY), new Random().nextLong());
+        final int steps = party.explore(100_000);
+        System.out.printf("%d rooms entered by %d NPCs%n", steps, party.getMembers().size());
+        for (Player member : party.getMembers()) {
+            System.out.printf("%d tasks cleared, highest room: %d%n", member.getClearedTaskCount(), member.getHighestRoomNumber());
+        }
+        System.out.println(party.getStash());
+    }
+}
@@ -50,6 +50,15 @@ public class RandomNpc extends AbstractNpc {
         return CollectionUtil.getRandomEntry(inventory.getAllItems(), random);
     }
 
+    @Override
+    protected Room selectRoom(String msg) {
+        final Dungeon dungeon = currentRoom.getDungeon();
+        if (clearedTasks.isEmpty()) {
+            return dungeon.getStartRoom();
+        }
+        return dungeon.getRoom(CollectionUtil.getRandomEntry(clearedTasks, random));
+    }
+
     /**
      * Does a test run with the NPC.
      * @param args ignored
@@ -1,6 +1,5 @@
 package org.abos.dungeon.core.reward;
 
-import org.abos.common.CollectionUtil;
 import org.abos.common.ErrorUtil;
 import org.abos.common.Serializable;
 import org.abos.dungeon.core.entity.Creature;
@@ -54,7 +53,7 @@ public record Reward(RewardType type, Entity entity, int amount) implements Seri
         final Entity entity;
         switch (type) {
             case CREATURE -> entity = Creature.readObject(dis);
-            case ITEM -> entity = CollectionUtil.getByName(Item.REGISTRY, dis.readUTF());
+            case ITEM -> entity = Item.ORDINALS.getByName(dis.readUTF());
             case PERMANENT_UPGRADE -> entity = PermanentUpgrade.valueOf(dis.readUTF());
             default -> throw new IllegalStateException("Unknown enum entry " + type.name() + " detected!");
         }
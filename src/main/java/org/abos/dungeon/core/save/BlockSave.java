@@ -0,0 +1,389 @@
+package org.abos.dungeon.core.save;
+
+import org.abos.common.CompactInputStream;
+import org.abos.common.CompactOutputStream;
+import org.abos.dungeon.core.ArrayRoomStore;
+import org.abos.dungeon.core.Dungeon;
+import org.abos.dungeon.core.Inventory;
+import org.abos.dungeon.core.Player;
+import org.abos.dungeon.core.Room;
+import org.abos.dungeon.core.RoomStore;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.zip.CRC32C;
+
+/**
+ * The block save format, which splits the rooms into blocks of a fixed number of rooms that are checked and decoded in parallel.
+ * <p>
+ * The file starts with a header holding the offset of every block, followed by the room blocks and the player block.
+ * The header is protected by a CRC32C checksum, each block is followed by its own. A block holds the length of its room or player data,
+ * the data written by {@link Room#writeCompact(CompactOutputStream)} or {@link Player#writeCompact(CompactOutputStream)},
+ * and its own string table, so each block can be read and decoded on its own. Since the blocks are found through the header
+ * and not through each other, a damaged or missing block is reported with the rooms it holds and doesn't affect reading the others.
+ */
+public final class BlockSave {
+
+    /**
+     * Identifies block save files, negative to tell them apart from plain save files.
+     */
+    public static final int MAGIC = 0xB10C5A7E;
+
+    /**
+     * The version of the block format.
+     */
+    public static final int VERSION = 2;
+
+    /**
+     * How many rooms go into one block by default.
+     */
+    public static final int DEFAULT_ROOMS_PER_BLOCK = 1 << 12;
+
+    /**
+     * The size of the fixed part of the header: magic, version, journal generation, room count and rooms per block.
+     */
+    private static final int FIXED_HEADER_SIZE = 5 * Integer.BYTES;
+
+    /**
+     * The least amount of bytes a room written by {@link Room#writeCompact(CompactOutputStream)} takes:
+     * the flags, the door count, at least one door and the task type.
+     */
+    private static final int MIN_ROOM_SIZE = 4;
+
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private BlockSave() {
+        /* No instantiation. */
+    }
+
+    /**
+     * If the specified file is a block save file.
+     * @param file the file to check
+     * @return {@code true} if the file starts with {@link #MAGIC}, else {@code false}
+     * @throws IOException If an I/O exception occurs.
+     */
+    public static boolean isBlockSave(final Path file) throws IOException {
+        try (final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES);
+            return channel.read(buffer, 0) == Integer.BYTES && buffer.getInt(0) == MAGIC;
+        }
+    }
+
+    /**
+     * Writes the specified game as a block save with {@link #DEFAULT_ROOMS_PER_BLOCK} rooms per block.
+     * @param file the save file
+     * @param dungeon the dungeon to save
+     * @param player the player to save
+     * @param journalGeneration the first journal generation not contained in the save, see {@link SaveJournal}
+     * @throws IOException If an I/O exception occurs.
+     * @see #write(Path, Dungeon, Player, int, int)
+     */
+    public static void write(final Path file, final Dungeon dungeon, final Player player, final int journalGeneration) throws IOException {
+        write(file, dungeon, player, journalGeneration, DEFAULT_ROOMS_PER_BLOCK);
+    }
+
+    /**
+     * Writes the specified game as a block save. The file is written under a temporary name first, forced to the device
+     * and then moved over the specified file, so the file always holds a complete save.
+     * @param file the save file
+     * @param dungeon the dungeon to save
+     * @param player the player to save
+     * @param journalGeneration the first journal generation not contained in the save, see {@link SaveJournal}
+     * @param roomsPerBlock how many rooms go into one block
+     * @throws IOException If an I/O exception occurs.
+     * @throws IllegalArgumentException If {@code roomsPerBlock} isn't positive.
+     */
+    public static void write(final Path file, final Dungeon dungeon, final Player player, final int journalGeneration, final int roomsPerBlock) throws IOException {
+        if (roomsPerBlock <= 0) {
+            throw new IllegalArgumentException("Rooms per block must be positive!");
+        }
+        final Path tempFile = file.resolveSibling(file.getFileName() + TEMP_SUFFIX);
+        final int roomCount = dungeon.getRoomCount();
+        final int blockCount = blockCount(roomCount, roomsPerBlock);
+        // the offset of every block, of the player block and of the end of the file
+        final long[] offsets = new long[blockCount + 2];
+        try (final FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            offsets[0] = headerSize(blockCount);
+            channel.position(offsets[0]);
+            final ByteArrayOutputStream data = new ByteArrayOutputStream();
+            for (int block = 0; block < blockCount; block++) {
+                final CompactOutputStream cos = new CompactOutputStream(data);
+                final int first = block * roomsPerBlock;
+                for (int id = first; id < Math.min(roomCount, first + roomsPerBlock); id++) {
+                    dungeon.getRoom(id).writeCompact(cos);
+                }
+                offsets[block + 1] = offsets[block] + writeBlock(channel, data, cos);
+            }
+            final CompactOutputStream cos = new CompactOutputStream(data);
+            player.writeCompact(cos);
+            offsets[blockCount + 1] = offsets[blockCount] + writeBlock(channel, data, cos);
+            final ByteBuffer header = ByteBuffer.allocate((int)offsets[0]);
+            header.putInt(MAGIC).putInt(VERSION).putInt(journalGeneration).putInt(roomCount).putInt(roomsPerBlock);
+            for (long offset : offsets) {
+                header.putLong(offset);
+            }
+            final CRC32C crc = new CRC32C();
+            crc.update(header.array(), 0, header.position());
+            header.putInt((int)crc.getValue());
+            writeFully(channel, header.flip(), 0);
+            channel.force(true);
+        }
+        Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static int blockCount(final int roomCount, final int roomsPerBlock) {
+        return (int)((roomCount + (long)roomsPerBlock - 1) / roomsPerBlock);
+    }
+
+    /**
+     * The size of the header of a save with the specified number of room blocks: the fixed part,
+     * the offsets of the blocks, of the player block and of the end, and the checksum.
+     */
+    private static long headerSize(final int blockCount) {
+        return FIXED_HEADER_SIZE + (blockCount + 2L) * Long.BYTES + Integer.BYTES;
+    }
+
+    private static void writeFully(final FileChannel channel, final ByteBuffer buffer, final long position) throws IOException {
+        for (long at = position; buffer.hasRemaining(); ) {
+            at += channel.write(buffer, at);
+        }
+    }
+
+    /**
+     * Writes the data collected in {@code data} together with the string table of {@code cos} as one block at the position of the channel
+     * and resets {@code data}.
+     * @return the size of the block
+     */
+    private static int writeBlock(final FileChannel channel, final ByteArrayOutputStream data, final CompactOutputStream cos) throws IOException {
+        cos.flush();
+        final int dataLength = data.size();
+        cos.writeStringTable();
+        cos.flush();
+        final ByteBuffer block = ByteBuffer.allocate(Integer.BYTES + data.size() + Integer.BYTES);
+        block.putInt(dataLength);
+        block.put(data.toByteArray());
+        data.reset();
+        final CRC32C crc = new CRC32C();
+        crc.update(block.array(), 0, block.position());
+        block.putInt((int)crc.getValue());
+        block.flip();
+        while (block.hasRemaining()) {
+            channel.write(block);
+        }
+        return block.limit();
+    }
+
+    /**
+     * A game loaded from a block save.
+     * @param dungeon the dungeon
+     * @param player the player, {@code null} if it has been skipped
+     * @param journalGeneration the first journal generation not contained in the save
+     */
+    public record LoadedGame(Dungeon dungeon, Player player, int journalGeneration) {
+    }
+
+    /**
+     * Loads a block save, checking and decoding the blocks on the common {@link ForkJoinPool}.
+     * @param file the save file
+     * @param dungeonConstructor creates the dungeon on the store of the loaded rooms, e.g. a {@link org.abos.dungeon.core.SeededDungeon}
+     * @param playerConstructor a constructor for the player subclass, {@code null} to skip the player
+     * @return the loaded game
+     * @throws IOException If an I/O exception occurs, the file isn't a block save file or a block is damaged or missing.
+     * @see #load(Path, Function, BiFunction, ForkJoinPool)
+     */
+    public static LoadedGame load(final Path file, final Function<RoomStore, Dungeon> dungeonConstructor,
+                                  final BiFunction<Room, Inventory, Player> playerConstructor) throws IOException {
+        return load(file, dungeonConstructor, playerConstructor, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Loads a block save. The header is read and checked first, then the blocks are read, checked and decoded in parallel,
+     * and finally put into the room store in order. If blocks are damaged or missing, all of them are reported.
+     * @param file the save file
+     * @param dungeonConstructor creates the dungeon on the store of the loaded rooms, e.g. a {@link org.abos.dungeon.core.SeededDungeon}
+     * @param playerConstructor a constructor for the player subclass, {@code null} to skip the player
+     * @param pool the pool to decode the blocks on
+     * @return the loaded game
+     * @throws IOException If an I/O exception occurs, the file isn't a block save file or a block is damaged or missing.
+     */
+    public static LoadedGame load(final Path file, final Function<RoomStore, Dungeon> dungeonConstructor,
+                                  final BiFunction<Room, Inventory, Player> playerConstructor, final ForkJoinPool pool) throws IOException {
+        try (final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final long fileSize = channel.size();
+            final ByteBuffer fixed = ByteBuffer.allocate(FIXED_HEADER_SIZE);
+            readFully(channel, fixed, 0, "Save header");
+            if (fixed.getInt(0) != MAGIC) {
+                throw new IOException("Not a block save file!");
+            }
+            final int version = fixed.getInt(Integer.BYTES);
+            if (version != VERSION) {
+                throw new IOException("Unsupported save version " + version + "!");
+            }
+            final int journalGeneration = fixed.getInt(2 * Integer.BYTES);
+            final int roomCount = fixed.getInt(3 * Integer.BYTES);
+            final int roomsPerBlock = fixed.getInt(4 * Integer.BYTES);
+            // check the counts before anything gets allocated for them
+            if (roomCount < 0 || roomsPerBlock <= 0 || (long)roomCount * MIN_ROOM_SIZE > fileSize) {
+                throw new IOException("Save header is corrupt!");
+            }
+            final int blockCount = blockCount(roomCount, roomsPerBlock);
+            final long headerSize = headerSize(blockCount);
+            if (headerSize > fileSize || headerSize > Integer.MAX_VALUE) {
+                throw new IOException("Save header is corrupt!");
+            }
+            final ByteBuffer header = ByteBuffer.allocate((int)headerSize);
+            readFully(channel, header, 0, "Save header");
+            final CRC32C crc = new CRC32C();
+            crc.update(header.array(), 0, (int)headerSize - Integer.BYTES);
+            if (header.getInt((int)headerSize - Integer.BYTES) != (int)crc.getValue()) {
+                throw new IOException("Save header is damaged!");
+            }
+            final long[] offsets = new long[blockCount + 2];
+            for (int i = 0; i < offsets.length; i++) {
+                offsets[i] = header.getLong(FIXED_HEADER_SIZE + i * Long.BYTES);
+                if (i == 0 ? offsets[i] != headerSize : offsets[i] < offsets[i - 1] + 2 * Integer.BYTES || offsets[i] - offsets[i - 1] > Integer.MAX_VALUE) {
+                    throw new IOException("Save header is corrupt!");
+                }
+            }
+            final List<Callable<SavedRoom[]>> decoders = new ArrayList<>(blockCount);
+            for (int block = 0; block < blockCount; block++) {
+                final int index = block;
+                final String description = describe(index, roomCount, roomsPerBlock);
+                decoders.add(() -> decodeRooms(readBlock(channel, offsets[index], offsets[index + 1], description), index * roomsPerBlock,
+                        Math.min(roomsPerBlock, roomCount - index * roomsPerBlock), description));
+            }
+            final List<Future<SavedRoom[]>> decoded = pool.invokeAll(decoders);
+            byte[] playerBlock = null;
+            IOException damaged = null;
+            try {
+                playerBlock = readBlock(channel, offsets[blockCount], offsets[blockCount + 1], "Player block");
+            }
+            catch (IOException ex) {
+                damaged = ex;
+            }
+            for (Future<SavedRoom[]> future : decoded) {
+                try {
+                    await(future);
+                }
+                catch (IOException ex) {
+                    if (damaged == null) {
+                        damaged = ex;
+                    }
+                    else {
+                        damaged.addSuppressed(ex);
+                    }
+                }
+            }
+            if (damaged != null) {
+                throw damaged;
+            }
+            final RoomStore rooms = new ArrayRoomStore(roomCount);
+            for (Future<SavedRoom[]> future : decoded) {
+                for (SavedRoom room : await(future)) {
+                    room.addTo(rooms);
+                }
+            }
+            final Dungeon dungeon = dungeonConstructor.apply(rooms);
+            final Player player = Player.readCompact(openBlock(playerBlock, "Player block"), dungeon, playerConstructor);
+            return new LoadedGame(dungeon, player, journalGeneration);
+        }
+    }
+
+    private static String describe(final int block, final int roomCount, final int roomsPerBlock) {
+        final int first = block * roomsPerBlock;
+        return "Block " + block + " (rooms " + first + " to " + (Math.min(roomCount, first + roomsPerBlock) - 1) + ")";
+    }
+
+    private static void readFully(final FileChannel channel, final ByteBuffer buffer, final long position, final String description) throws IOException {
+        for (long at = position; buffer.hasRemaining(); ) {
+            final int read = channel.read(buffer, at);
+            if (read < 0) {
+                throw new IOException(description + " is missing, the save file is truncated!");
+            }
+            at += read;
+        }
+    }
+
+    /**
+     * Reads the content and the checksum of the block between the specified offsets.
+     * The offsets have been checked to be ascending and far enough apart for a block, but not against the size of the file.
+     * @return the content followed by the checksum
+     */
+    private static byte[] readBlock(final FileChannel channel, final long start, final long end, final String description) throws IOException {
+        if (end > channel.size()) {
+            throw new IOException(description + " is missing, the save file is truncated!");
+        }
+        final ByteBuffer block = ByteBuffer.allocate((int)(end - start));
+        readFully(channel, block, start, description);
+        return block.array();
+    }
+
+    /**
+     * Checks the specified block and opens a stream on its data, which knows the string table of the block.
+     */
+    private static CompactInputStream openBlock(final byte[] block, final String description) throws IOException {
+        final int length = block.length - Integer.BYTES;
+        final CRC32C crc = new CRC32C();
+        crc.update(block, 0, length);
+        if (ByteBuffer.wrap(block, length, Integer.BYTES).getInt() != (int)crc.getValue()) {
+            throw new IOException(description + " is damaged!");
+        }
+        final int dataLength = ByteBuffer.wrap(block).getInt();
+        if (dataLength < 0 || dataLength > length - Integer.BYTES) {
+            throw new IOException(description + " has an invalid data length!");
+        }
+        final List<String> strings = CompactInputStream.readStringTable(new DataInputStream(
+                new ByteArrayInputStream(block, Integer.BYTES + dataLength, length - Integer.BYTES - dataLength)));
+        return new CompactInputStream(new ByteArrayInputStream(block, Integer.BYTES, dataLength), strings);
+    }
+
+    private static SavedRoom[] decodeRooms(final byte[] block, final int firstId, final int count, final String description) throws IOException {
+        final CompactInputStream cis = openBlock(block, description);
+        final SavedRoom[] result = new SavedRoom[count];
+        try {
+            for (int i = 0; i < count; i++) {
+                result[i] = SavedRoom.readCompact(firstId + i, cis);
+            }
+        }
+        catch (EOFException ex) {
+            throw new IOException(description + " holds too few rooms!", ex);
+        }
+        return result;
+    }
+
+    private static <T> T await(final Future<T> future) throws IOException {
+        try {
+            return future.get();
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while decoding the save!", ex);
+        }
+        catch (ExecutionException ex) {
+            // the pool wraps checked exceptions of callables
+            for (Throwable cause = ex.getCause(); cause != null; cause = cause.getCause()) {
+                if (cause instanceof IOException ioe) {
+                    throw ioe;
+                }
+            }
+            throw new IOException("Decoding the save failed!", ex.getCause());
+        }
+    }
+}
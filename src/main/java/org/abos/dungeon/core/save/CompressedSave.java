@@ -0,0 +1,337 @@
+package org.abos.dungeon.core.save;
+
+import org.abos.common.CompactInputStream;
+import org.abos.common.CompactOutputStream;
+import org.abos.common.PipelinedDeflaterOutputStream;
+import org.abos.common.PipelinedInflaterInputStream;
+import org.abos.dungeon.core.ArrayRoomStore;
+import org.abos.dungeon.core.Dungeon;
+import org.abos.dungeon.core.Inventory;
+import org.abos.dungeon.core.Player;
+import org.abos.dungeon.core.Room;
+import org.abos.dungeon.core.RoomStore;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.zip.Adler32;
+import java.util.zip.Deflater;
+
+/**
+ * The compressed save format, a save compressed in blocks by a {@link PipelinedDeflaterOutputStream},
+ * so compression and decompression run on a separate thread while the game is written or read.
+ * <p>
+ * The file starts with a header holding the version and the ID of the preset dictionary, which is trained on typical
+ * room records, question texts and item names, see {@link #DICTIONARY_FILE_NAME}. The compressed data starts with
+ * the {@link SaveSummary summary} of the save, followed by the rooms and the player in the compact encoding of
+ * the {@link IndexedSave indexed format}, with each string written where it is used first instead of in a string table.
+ * Files of the {@link #FIRST_VERSION first version} compress the data written by {@link Dungeon#writeObject(DataOutputStream)}
+ * and {@link Player#writeObject(DataOutputStream)} instead, followed by the first journal generation not contained in the save.
+ * <p>
+ * Unlike indexed saves, compressed saves are read completely when loaded, trading load time and memory for size.
+ * A {@link SaveJournal} writes its snapshots compressed if it has been {@link SaveJournal#create(Path, Dungeon, Player, BiFunction, boolean) created}
+ * or loaded that way.
+ * <p>
+ * {@link #openOutput(OutputStream, int, boolean)} and {@link #openInput(InputStream)} compress any data the same way,
+ * for instance many games written one after the other.
+ */
+public final class CompressedSave {
+
+    /**
+     * Identifies compressed save files, negative to tell them apart from plain save files.
+     */
+    public static final int MAGIC = 0xDEF1A7ED;
+
+    /**
+     * The version of the compressed format written.
+     */
+    public static final int VERSION = 2;
+
+    /**
+     * The first version of the compressed format, still readable.
+     */
+    public static final int FIRST_VERSION = 1;
+
+    /**
+     * The resource holding the preset dictionary.
+     */
+    public static final String DICTIONARY_FILE_NAME = "saveDictionary.bin";
+
+    /**
+     * The uncompressed size of the blocks.
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 1 << 16;
+
+    /**
+     * The compression level used by default. It is the fastest level and compresses a save to about a third of its indexed size.
+     * The default level of {@link Deflater} saves about five more points of the indexed size in twice the time,
+     * the preset dictionary less than one point, as most of the repetition is within the save itself.
+     */
+    public static final int DEFAULT_LEVEL = Deflater.BEST_SPEED;
+
+    /**
+     * The dictionary ID written if no dictionary is used.
+     */
+    private static final int NO_DICTIONARY = 0;
+
+    /**
+     * The version of the indexed format whose encoding of the rooms is compressed.
+     */
+    private static final int ROOM_VERSION = 3;
+
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private CompressedSave() {
+        /* No instantiation. */
+    }
+
+    /**
+     * Loads the preset dictionary when first needed.
+     */
+    private static final class Dictionary {
+
+        private static final byte[] BYTES;
+
+        private static final int ID;
+
+        static {
+            try (final InputStream in = CompressedSave.class.getClassLoader().getResourceAsStream(DICTIONARY_FILE_NAME)) {
+                if (in == null) {
+                    throw new IllegalStateException("Resource " + DICTIONARY_FILE_NAME + " is missing!");
+                }
+                BYTES = in.readAllBytes();
+            }
+            catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+            final Adler32 adler = new Adler32();
+            adler.update(BYTES);
+            // the ID zlib writes as well
+            ID = (int)adler.getValue();
+        }
+    }
+
+    /**
+     * If the specified file is a compressed save file.
+     * @param file the file to check
+     * @return {@code true} if the file starts with {@link #MAGIC}, else {@code false}
+     * @throws IOException If an I/O exception occurs.
+     */
+    public static boolean isCompressed(final Path file) throws IOException {
+        try (final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES);
+            return channel.read(buffer, 0) == Integer.BYTES && buffer.getInt(0) == MAGIC;
+        }
+    }
+
+    /**
+     * Writes the header to the specified stream and returns a stream compressing everything written to it.
+     * Closing the returned stream finishes the compressed data and closes {@code out}.
+     * @param out the underlying stream
+     * @param level the compression level, see {@link Deflater#setLevel(int)}
+     * @param useDictionary if the preset dictionary should be used, which only pays off for game data
+     * @return a new {@link DataOutputStream}
+     * @throws IOException If an I/O exception occurs.
+     * @throws IllegalArgumentException If {@code level} isn't valid.
+     */
+    public static DataOutputStream openOutput(final OutputStream out, final int level, final boolean useDictionary) throws IOException {
+        if (level != Deflater.DEFAULT_COMPRESSION && (level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION)) {
+            throw new IllegalArgumentException("Invalid compression level " + level + "!");
+        }
+        final DataOutputStream header = new DataOutputStream(out);
+        header.writeInt(MAGIC);
+        header.writeInt(VERSION);
+        header.writeInt(useDictionary ? Dictionary.ID : NO_DICTIONARY);
+        return new DataOutputStream(new PipelinedDeflaterOutputStream(out, DEFAULT_BLOCK_SIZE, level, useDictionary ? Dictionary.BYTES : null));
+    }
+
+    /**
+     * Reads the header from the specified stream and returns a stream decompressing the data following it.
+     * Closing the returned stream closes {@code in}.
+     * @param in the underlying stream
+     * @return a new {@link DataInputStream}
+     * @throws IOException If an I/O exception occurs or {@code in} doesn't start with a supported header.
+     */
+    public static DataInputStream openInput(final InputStream in) throws IOException {
+        return open(in).dis();
+    }
+
+    /**
+     * The decompressing stream opened by {@link #open(InputStream)} and the version read from the header.
+     */
+    private record Input(int version, DataInputStream dis) {
+    }
+
+    private static Input open(final InputStream in) throws IOException {
+        final DataInputStream header = new DataInputStream(in);
+        try {
+            if (header.readInt() != MAGIC) {
+                throw new IOException("Not a compressed save file!");
+            }
+            final int version = header.readInt();
+            if (version < FIRST_VERSION || version > VERSION) {
+                throw new IOException("Unsupported save version " + version + "!");
+            }
+            final int dictionaryId = header.readInt();
+            if (dictionaryId != NO_DICTIONARY && dictionaryId != Dictionary.ID) {
+                throw new IOException("Save has been compressed with an unknown dictionary!");
+            }
+            return new Input(version, new DataInputStream(new PipelinedInflaterInputStream(in, dictionaryId == NO_DICTIONARY ? null : Dictionary.BYTES)));
+        }
+        catch (EOFException ex) {
+            throw new IOException("Save header is truncated!", ex);
+        }
+    }
+
+    /**
+     * Reads the summary at the start of the compressed data, which only requires decompressing the first block.
+     * @param file a compressed save file
+     * @return the summary of the save, not {@code null}
+     * @throws IOException If an I/O exception occurs, the file isn't a compressed save file or has been written by the first version.
+     */
+    public static SaveSummary readSummary(final Path file) throws IOException {
+        try (final InputStream in = new BufferedInputStream(Files.newInputStream(file))) {
+            final Input input = open(in);
+            try (final DataInputStream dis = input.dis()) {
+                if (input.version() == FIRST_VERSION) {
+                    throw new IOException("Compressed saves of the first version have no summary!");
+                }
+                return readSummary(input.version(), dis);
+            }
+        }
+        catch (EOFException ex) {
+            throw new IOException("Compressed save is truncated!", ex);
+        }
+    }
+
+    private static SaveSummary readSummary(final int version, final DataInputStream dis) throws IOException {
+        final SaveSummary summary = new SaveSummary(version, dis.readInt(), dis.readInt(), dis.readInt(), dis.readInt(), dis.readInt());
+        if (summary.roomCount() < 0) {
+            throw new IOException("Negative room count!");
+        }
+        return summary;
+    }
+
+    /**
+     * Writes the specified game as a compressed save with the {@link #DEFAULT_LEVEL} and the preset dictionary.
+     * @param file the save file
+     * @param dungeon the dungeon to save
+     * @param player the player to save
+     * @param journalGeneration the first journal generation not contained in the save, see {@link SaveJournal}
+     * @throws IOException If an I/O exception occurs.
+     * @see #write(Path, Dungeon, Player, int, int, boolean)
+     */
+    public static void write(final Path file, final Dungeon dungeon, final Player player, final int journalGeneration) throws IOException {
+        write(file, dungeon, player, journalGeneration, DEFAULT_LEVEL, true);
+    }
+
+    /**
+     * Writes the specified game as a compressed save. The file is written under a temporary name first
+     * and then moved over the specified file, so the file always holds a complete save.
+     * @param file the save file
+     * @param dungeon the dungeon to save
+     * @param player the player to save
+     * @param journalGeneration the first journal generation not contained in the save, see {@link SaveJournal}
+     * @param level the compression level, see {@link Deflater#setLevel(int)}
+     * @param useDictionary if the preset dictionary should be used
+     * @throws IOException If an I/O exception occurs.
+     * @throws IllegalArgumentException If {@code level} isn't valid.
+     */
+    public static void write(final Path file, final Dungeon dungeon, final Player player, final int journalGeneration,
+                             final int level, final boolean useDictionary) throws IOException {
+        final Path tempFile = file.resolveSibling(file.getFileName() + TEMP_SUFFIX);
+        final int roomCount = dungeon.getRoomCount();
+        try (final OutputStream out = new BufferedOutputStream(Files.newOutputStream(tempFile));
+             final CompactOutputStream cos = new CompactOutputStream(openOutput(out, level, useDictionary), true)) {
+            cos.writeInt(journalGeneration);
+            cos.writeInt(roomCount);
+            cos.writeInt(player.getHighestRoomNumber());
+            cos.writeInt(player.getClearedTaskCount());
+            cos.writeInt(player.getMenagerieSize());
+            for (int id = 0; id < roomCount; id++) {
+                dungeon.getRoom(id).writeCompact(cos);
+            }
+            player.writeCompact(cos);
+        }
+        // the file mustn't replace the old one before it is on disk
+        try (final FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * A game loaded from a compressed save.
+     * @param dungeon the dungeon
+     * @param player the player, {@code null} if it has been skipped
+     * @param journalGeneration the first journal generation not contained in the save
+     * @param version the version of the compressed format the save has been written in
+     */
+    public record LoadedGame(Dungeon dungeon, Player player, int journalGeneration, int version) {
+    }
+
+    /**
+     * Loads a compressed save, reading all of it.
+     * @param file the save file
+     * @param dungeonConstructor creates the dungeon on the store of the loaded rooms, e.g. a {@link org.abos.dungeon.core.SeededDungeon}
+     * @param playerConstructor a constructor for the player subclass, {@code null} to skip the player
+     * @return the loaded game
+     * @throws IOException If an I/O exception occurs, the file isn't a compressed save file or it is damaged.
+     */
+    public static LoadedGame load(final Path file, final Function<RoomStore, Dungeon> dungeonConstructor,
+                                  final BiFunction<Room, Inventory, Player> playerConstructor) throws IOException {
+        try (final InputStream in = new BufferedInputStream(Files.newInputStream(file))) {
+            final Input input = open(in);
+            try (final DataInputStream dis = input.dis()) {
+                if (input.version() == FIRST_VERSION) {
+                    return loadPlain(dis, dungeonConstructor, playerConstructor);
+                }
+                final SaveSummary summary = readSummary(input.version(), dis);
+                final CompactInputStream cis = new CompactInputStream(dis);
+                final SavedRoom.Decoder decoder = IndexedSave.roomDecoder(ROOM_VERSION);
+                final RoomStore rooms = new ArrayRoomStore(Math.min(summary.roomCount(), ArrayRoomStore.MAX_READ_CAPACITY));
+                for (int id = 0; id < summary.roomCount(); id++) {
+                    decoder.decode(id, cis).addTo(rooms);
+                }
+                final Dungeon dungeon = dungeonConstructor.apply(rooms);
+                final Player player = Player.readCompact(cis, dungeon, playerConstructor);
+                return new LoadedGame(dungeon, player, summary.journalGeneration(), input.version());
+            }
+        }
+        catch (EOFException ex) {
+            throw new IOException("Compressed save is truncated!", ex);
+        }
+    }
+
+    /**
+     * Loads the compressed plain save of the first version.
+     */
+    private static LoadedGame loadPlain(final DataInputStream dis, final Function<RoomStore, Dungeon> dungeonConstructor,
+                                        final BiFunction<Room, Inventory, Player> playerConstructor) throws IOException {
+        final int roomCount = dis.readInt();
+        if (roomCount < 0) {
+            throw new IOException("Negative room count!");
+        }
+        final RoomStore rooms = new ArrayRoomStore(Math.min(roomCount, ArrayRoomStore.MAX_READ_CAPACITY));
+        for (int id = 0; id < roomCount; id++) {
+            SavedRoom.readObject(id, dis).addTo(rooms);
+        }
+        final Dungeon dungeon = dungeonConstructor.apply(rooms);
+        final Player player = Player.readObject(dis, dungeon, playerConstructor);
+        return new LoadedGame(dungeon, player, dis.readInt(), FIRST_VERSION);
+    }
+}
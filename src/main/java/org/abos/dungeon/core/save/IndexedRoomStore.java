@@ -0,0 +1,173 @@
+package org.abos.dungeon.core.save;
+
+import org.abos.common.CompactInputStream;
+import org.abos.dungeon.core.Dungeon;
+import org.abos.dungeon.core.Inventory;
+import org.abos.dungeon.core.Player;
+import org.abos.dungeon.core.Room;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiFunction;
+
+/**
+ * A {@link SavedRoomStore} reading the rooms of an {@link IndexedSave}, each room on its own
+ * through the {@link IndexedSave#roomDecoder(int) decoder} of the version of the file.
+ */
+public class IndexedRoomStore extends SavedRoomStore {
+
+    /**
+     * The channel of the save file.
+     */
+    protected final FileChannel channel;
+
+    /**
+     * The version of the save file.
+     */
+    protected final int version;
+
+    /**
+     * Decodes the rooms of {@link #version}.
+     */
+    private final SavedRoom.Decoder decoder;
+
+    /**
+     * The position of the room index in the save file.
+     */
+    protected final long indexPosition;
+
+    /**
+     * The position of the player block in the save file.
+     */
+    protected final long playerPosition;
+
+    /**
+     * The end of the player block in the save file.
+     */
+    protected final long playerEnd;
+
+    /**
+     * The string table of the save file, empty for the first version.
+     */
+    protected final List<String> strings;
+
+    /**
+     * The rooms of the save file decoded so far.
+     */
+    protected final Map<Integer, SavedRoom> decoded = new HashMap<>();
+
+    /**
+     * Opens an {@link IndexedRoomStore} on the specified file.
+     * @param file an indexed save file
+     * @throws IOException If an I/O exception occurs or the file isn't an indexed save file.
+     */
+    public IndexedRoomStore(final Path file) throws IOException {
+        this(FileChannel.open(file, StandardOpenOption.READ));
+    }
+
+    private IndexedRoomStore(final FileChannel channel) throws IOException {
+        this(channel, readHeader(channel));
+    }
+
+    private IndexedRoomStore(final FileChannel channel, final ByteBuffer header) throws IOException {
+        this(channel, header, IndexedSave.toSummary(header));
+    }
+
+    private IndexedRoomStore(final FileChannel channel, final ByteBuffer header, final SaveSummary summary) throws IOException {
+        super(summary.roomCount(), summary.journalGeneration());
+        this.channel = channel;
+        try {
+            version = summary.version();
+            decoder = IndexedSave.roomDecoder(version);
+            indexPosition = header.getLong(IndexedSave.INDEX_POSITION_OFFSET);
+            playerPosition = header.getLong(IndexedSave.PLAYER_POSITION_OFFSET);
+            if (version == IndexedSave.FIRST_VERSION) {
+                playerEnd = channel.size();
+                strings = List.of();
+            }
+            else {
+                playerEnd = header.getLong(IndexedSave.STRING_TABLE_POSITION_OFFSET);
+                strings = CompactInputStream.readStringTable(new DataInputStream(new ByteArrayInputStream(
+                        read(playerEnd, Math.toIntExact(channel.size() - playerEnd)).array())));
+            }
+        }
+        catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Reads the header, closing the channel if that fails.
+     */
+    private static ByteBuffer readHeader(final FileChannel channel) throws IOException {
+        try {
+            return IndexedSave.readHeader(channel);
+        }
+        catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    @Override
+    public boolean isCurrentFormat() {
+        return version == IndexedSave.VERSION;
+    }
+
+    private ByteBuffer read(final long position, final int length) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of save file!");
+            }
+        }
+        return buffer;
+    }
+
+    /**
+     * Opens a stream on the specified part of the save file.
+     */
+    private CompactInputStream open(final long position, final long end) throws IOException {
+        return new CompactInputStream(new ByteArrayInputStream(read(position, Math.toIntExact(end - position)).array()), strings);
+    }
+
+    @Override
+    /* package private */ Player readPlayer(final Dungeon dungeon, final BiFunction<Room, Inventory, Player> constructor) throws IOException {
+        final CompactInputStream cis = open(playerPosition, playerEnd);
+        if (version == IndexedSave.FIRST_VERSION) {
+            return Player.readObject(cis, dungeon, constructor);
+        }
+        return Player.readCompact(cis, dungeon, constructor);
+    }
+
+    @Override
+    /* package private */ SavedRoom getSaved(final int id) {
+        SavedRoom room = decoded.get(id);
+        if (room == null) {
+            try {
+                final ByteBuffer positions = read(indexPosition + (long)id * Long.BYTES, 2 * Long.BYTES);
+                room = decoder.decode(id, open(positions.getLong(0), positions.getLong(Long.BYTES)));
+            }
+            catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+            decoded.put(id, room);
+        }
+        return room;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
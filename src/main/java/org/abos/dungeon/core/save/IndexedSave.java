@@ -0,0 +1,264 @@
+package org.abos.dungeon.core.save;
+
+import org.abos.common.CompactOutputStream;
+import org.abos.dungeon.core.Dungeon;
+import org.abos.dungeon.core.Inventory;
+import org.abos.dungeon.core.Player;
+import org.abos.dungeon.core.Room;
+import org.abos.dungeon.core.RoomStore;
+
+import java.io.BufferedOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * The indexed save format, which can be loaded without reading the rooms.
+ * <p>
+ * The file starts with a fixed-size header holding a {@link SaveSummary} and the positions of the other parts,
+ * followed by the rooms, the room index with the position of each room plus the end of the last room, the player block
+ * and the string table. The rooms and the player are written by {@link Room#writeCompact(CompactOutputStream)}
+ * and {@link Player#writeCompact(CompactOutputStream)}, referring to the string table at the end of the file.
+ * Files of the {@link #FIRST_VERSION first version} use the plain format for rooms and player instead and have no string table.
+ * The header starts with a negative magic number, while plain save files start with their positive room count.
+ */
+public final class IndexedSave {
+
+    /**
+     * Identifies indexed save files, negative to tell them apart from plain save files.
+     */
+    public static final int MAGIC = 0xD5A7E0FF;
+
+    /**
+     * The version of the indexed format written.
+     */
+    public static final int VERSION = 3;
+
+    /**
+     * The first version of the indexed format, still readable.
+     */
+    public static final int FIRST_VERSION = 2;
+
+    /**
+     * Upgrades the rooms of each version to the next one, by the version upgraded from.
+     * Whenever {@link #VERSION} is increased, the upgrader from the previous version has to be added.
+     */
+    private static final Map<Integer, SavedRoom.Upgrader> ROOM_UPGRADERS = Map.of(
+            // version 3 only encodes the rooms more compactly
+            2, SavedRoom.Upgrader.NONE);
+
+    // header layout
+    private static final int VERSION_OFFSET = 4;
+    private static final int GENERATION_OFFSET = 8;
+    private static final int ROOM_COUNT_OFFSET = 12;
+    private static final int HIGHEST_ROOM_OFFSET = 16;
+    private static final int CLEARED_TASKS_OFFSET = 20;
+    private static final int MENAGERIE_OFFSET = 24;
+    /* package private */ static final int INDEX_POSITION_OFFSET = 32;
+    /* package private */ static final int PLAYER_POSITION_OFFSET = 40;
+    /* package private */ static final int STRING_TABLE_POSITION_OFFSET = 48;
+    // files of the first version have a shorter header, but are always longer than this
+    /* package private */ static final int HEADER_SIZE = 56;
+
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private IndexedSave() {
+        /* No instantiation. */
+    }
+
+    /**
+     * If the specified file is an indexed save file.
+     * @param file the file to check
+     * @return {@code true} if the file starts with {@link #MAGIC}, else {@code false}
+     * @throws IOException If an I/O exception occurs.
+     */
+    public static boolean isIndexed(final Path file) throws IOException {
+        try (final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES);
+            return channel.read(buffer, 0) == Integer.BYTES && buffer.getInt(0) == MAGIC;
+        }
+    }
+
+    /**
+     * Reads the header of the specified indexed save file.
+     * @param channel a channel of the file
+     * @return the header, positioned at its start
+     * @throws IOException If an I/O exception occurs or the file isn't an indexed save file.
+     */
+    /* package private */ static ByteBuffer readHeader(final FileChannel channel) throws IOException {
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        while (header.hasRemaining()) {
+            if (channel.read(header, header.position()) < 0) {
+                throw new IOException("Save file too short!");
+            }
+        }
+        if (header.getInt(0) != MAGIC) {
+            throw new IOException("Not an indexed save file!");
+        }
+        if (header.getInt(VERSION_OFFSET) < FIRST_VERSION || header.getInt(VERSION_OFFSET) > VERSION) {
+            throw new IOException("Unsupported save version " + header.getInt(VERSION_OFFSET) + "!");
+        }
+        return header.rewind();
+    }
+
+    /**
+     * Reads the summary of the specified indexed save file from its header only.
+     * @param file the save file
+     * @return the summary, not {@code null}
+     * @throws IOException If an I/O exception occurs or the file isn't an indexed save file.
+     */
+    public static SaveSummary readSummary(final Path file) throws IOException {
+        try (final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return toSummary(readHeader(channel));
+        }
+    }
+
+    /**
+     * Extracts the summary from the specified header.
+     * @param header a header as returned by {@link #readHeader(FileChannel)}
+     * @return the summary, not {@code null}
+     */
+    /* package private */ static SaveSummary toSummary(final ByteBuffer header) {
+        return new SaveSummary(header.getInt(VERSION_OFFSET), header.getInt(GENERATION_OFFSET), header.getInt(ROOM_COUNT_OFFSET),
+                header.getInt(HIGHEST_ROOM_OFFSET), header.getInt(CLEARED_TASKS_OFFSET), header.getInt(MENAGERIE_OFFSET));
+    }
+
+    /**
+     * Returns the decoder for the rooms of the specified version. The rooms of older versions are passed through
+     * the {@link #ROOM_UPGRADERS upgraders} of all following versions, so old files are upgraded one room at a time
+     * when the rooms are accessed.
+     * @param version a version between {@link #FIRST_VERSION} and {@link #VERSION}
+     * @throws IOException If the version isn't supported.
+     */
+    /* package private */ static SavedRoom.Decoder roomDecoder(final int version) throws IOException {
+        SavedRoom.Decoder decoder = switch (version) {
+            case 2 -> SavedRoom::readObject;
+            case 3 -> SavedRoom::readCompact;
+            default -> throw new IOException("Unsupported save version " + version + "!");
+        };
+        for (int from = version; from < VERSION; from++) {
+            decoder = decoder.andThen(ROOM_UPGRADERS.get(from));
+        }
+        return decoder;
+    }
+
+    /**
+     * Writes the specified game as an indexed save. The file is written under a temporary name first
+     * and then moved over the specified file, so the file always holds a complete save.
+     * @param file the save file
+     * @param dungeon the dungeon to save
+     * @param player the player to save
+     * @param journalGeneration the first journal generation not contained in the save, see {@link SaveJournal}
+     * @throws IOException If an I/O exception occurs.
+     */
+    public static void write(final Path file, final Dungeon dungeon, final Player player, final int journalGeneration) throws IOException {
+        final Path tempFile = file.resolveSibling(file.getFileName() + TEMP_SUFFIX);
+        final int roomCount = dungeon.getRoomCount();
+        final long indexPosition;
+        final long playerPosition;
+        final long stringTablePosition;
+        try (final CountingOutputStream counter = new CountingOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)));
+             final CompactOutputStream cos = new CompactOutputStream(counter)) {
+            // the header is written once the positions are known
+            cos.write(new byte[HEADER_SIZE]);
+            final long[] index = new long[roomCount + 1];
+            for (int id = 0; id < roomCount; id++) {
+                index[id] = counter.count;
+                dungeon.getRoom(id).writeCompact(cos);
+            }
+            index[roomCount] = counter.count;
+            indexPosition = counter.count;
+            for (long position : index) {
+                cos.writeLong(position);
+            }
+            playerPosition = counter.count;
+            player.writeCompact(cos);
+            stringTablePosition = counter.count;
+            cos.writeStringTable();
+        }
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(0, MAGIC);
+        header.putInt(VERSION_OFFSET, VERSION);
+        header.putInt(GENERATION_OFFSET, journalGeneration);
+        header.putInt(ROOM_COUNT_OFFSET, roomCount);
+        header.putInt(HIGHEST_ROOM_OFFSET, player.getHighestRoomNumber());
+        header.putInt(CLEARED_TASKS_OFFSET, player.getClearedTaskCount());
+        header.putInt(MENAGERIE_OFFSET, player.getMenagerieSize());
+        header.putLong(INDEX_POSITION_OFFSET, indexPosition);
+        header.putLong(PLAYER_POSITION_OFFSET, playerPosition);
+        header.putLong(STRING_TABLE_POSITION_OFFSET, stringTablePosition);
+        try (final FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+            // the file mustn't replace the old one before it is on disk
+            channel.force(true);
+        }
+        Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * A game loaded from an indexed save.
+     * @param dungeon the dungeon, keeping its rooms in a store built on an {@link IndexedRoomStore}
+     * @param player the player, {@code null} if it has been skipped
+     * @param rooms the store reading the rooms from the file, to be closed once the game isn't needed anymore
+     * @param journalGeneration the first journal generation not contained in the save
+     */
+    public record LoadedGame(Dungeon dungeon, Player player, IndexedRoomStore rooms, int journalGeneration) {
+    }
+
+    /**
+     * Loads an indexed save. Only the header and the player block are read, the rooms are read on first access.
+     * @param file the save file
+     * @param dungeonConstructor creates the dungeon on the store of the loaded rooms, e.g. a {@link org.abos.dungeon.core.SeededDungeon}
+     * @param playerConstructor a constructor for the player subclass, {@code null} to skip the player
+     * @return the loaded game
+     * @throws IOException If an I/O exception occurs or the file isn't an indexed save file.
+     */
+    public static LoadedGame load(final Path file, final Function<RoomStore, Dungeon> dungeonConstructor,
+                                  final BiFunction<Room, Inventory, Player> playerConstructor) throws IOException {
+        final IndexedRoomStore rooms = new IndexedRoomStore(file);
+        try {
+            final Dungeon dungeon = dungeonConstructor.apply(rooms);
+            final Player player = rooms.readPlayer(dungeon, playerConstructor);
+            return new LoadedGame(dungeon, player, rooms, rooms.getJournalGeneration());
+        }
+        catch (IOException | RuntimeException ex) {
+            rooms.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Counts the bytes written, as {@link java.io.DataOutputStream#size()} stops at 2 GB.
+     */
+    private static class CountingOutputStream extends FilterOutputStream {
+
+        private long count;
+
+        private CountingOutputStream(final OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
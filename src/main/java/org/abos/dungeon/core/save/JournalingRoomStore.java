@@ -0,0 +1,137 @@
+package org.abos.dungeon.core.save;
+
+import org.abos.dungeon.core.PersistentRoomStore;
+import org.abos.dungeon.core.RoomStore;
+import org.abos.dungeon.core.task.Task;
+
+import java.util.Objects;
+
+/**
+ * A {@link RoomStore} passing all calls on to another store and reporting the changes to a {@link SaveJournal}.
+ * Without a journal attached it only passes the calls on.
+ * <p>
+ * Saving takes a {@link #snapshot() snapshot} of the rooms, which takes constant time if the other store is a {@link PersistentRoomStore}.
+ * Other stores are replaced by a copy in a {@link PersistentRoomStore} on the first snapshot.
+ */
+public class JournalingRoomStore implements RoomStore {
+
+    /**
+     * The store actually keeping the rooms.
+     */
+    protected RoomStore delegate;
+
+    /**
+     * The journal to report changes to, might be {@code null}.
+     */
+    protected SaveJournal journal;
+
+    /**
+     * Creates a new {@link JournalingRoomStore} instance.
+     * @param delegate the store actually keeping the rooms, not {@code null}
+     * @throws NullPointerException If {@code delegate} refers to {@code null}.
+     */
+    public JournalingRoomStore(final RoomStore delegate) {
+        this.delegate = Objects.requireNonNull(delegate);
+    }
+
+    /**
+     * Sets the journal to report changes to.
+     * @param journal the journal, {@code null} to stop reporting
+     */
+    /* package private */ void setJournal(final SaveJournal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * Returns the current state of the rooms, which stays unchanged when the rooms change.
+     * Unless the rooms are kept in a {@link PersistentRoomStore}, they are copied into one first, which keeps them from then on.
+     * Afterwards this store doesn't depend on the other store anymore.
+     */
+    /* package private */ PersistentRoomStore.Snapshot snapshot() {
+        if (delegate instanceof PersistentRoomStore persistent) {
+            return persistent.snapshot();
+        }
+        final PersistentRoomStore copy = new PersistentRoomStore();
+        for (int id = 0; id < delegate.size(); id++) {
+            final int doorCount = delegate.getDoorCount(id);
+            copy.add(delegate.getFromId(id), doorCount, delegate.getTask(id));
+            if (delegate.isFilled(id)) {
+                final int[] doors = new int[doorCount];
+                for (int door = 0; door < doorCount; door++) {
+                    doors[door] = delegate.getDoor(id, door);
+                }
+                copy.setDoors(id, doors);
+            }
+            if (delegate.isRewardCollected(id)) {
+                copy.setRewardCollected(id, true);
+            }
+        }
+        delegate = copy;
+        return copy.snapshot();
+    }
+
+    @Override
+    public int size() {
+        return delegate.size();
+    }
+
+    @Override
+    public boolean isFull() {
+        return delegate.isFull();
+    }
+
+    @Override
+    public int add(final int fromId, final int doorCount, final Task task) {
+        final int id = delegate.add(fromId, doorCount, task);
+        if (journal != null) {
+            journal.roomAdded(fromId, doorCount, task);
+        }
+        return id;
+    }
+
+    @Override
+    public int getFromId(final int id) {
+        return delegate.getFromId(id);
+    }
+
+    @Override
+    public int getDoorCount(final int id) {
+        return delegate.getDoorCount(id);
+    }
+
+    @Override
+    public boolean isFilled(final int id) {
+        return delegate.isFilled(id);
+    }
+
+    @Override
+    public int getDoor(final int id, final int door) {
+        return delegate.getDoor(id, door);
+    }
+
+    @Override
+    public void setDoors(final int id, final int[] doors) {
+        delegate.setDoors(id, doors);
+        if (journal != null) {
+            journal.doorsFilled(id, doors);
+        }
+    }
+
+    @Override
+    public Task getTask(final int id) {
+        return delegate.getTask(id);
+    }
+
+    @Override
+    public boolean isRewardCollected(final int id) {
+        return delegate.isRewardCollected(id);
+    }
+
+    @Override
+    public void setRewardCollected(final int id, final boolean rewardCollected) {
+        delegate.setRewardCollected(id, rewardCollected);
+        if (journal != null) {
+            journal.rewardCollected(id, rewardCollected);
+        }
+    }
+}
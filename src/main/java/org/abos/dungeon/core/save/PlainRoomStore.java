@@ -0,0 +1,210 @@
+package org.abos.dungeon.core.save;
+
+import org.abos.common.CompactInputStream;
+import org.abos.dungeon.core.Dungeon;
+import org.abos.dungeon.core.Inventory;
+import org.abos.dungeon.core.Player;
+import org.abos.dungeon.core.Room;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiFunction;
+
+/**
+ * A {@link SavedRoomStore} reading the rooms of a plain save file, as written by {@link Dungeon#writeObject(java.io.DataOutputStream)}
+ * followed by {@link Player#writeObject(java.io.DataOutputStream)}, {@link #ROOMS_PER_BLOCK} rooms at a time.
+ * <p>
+ * As plain save files have no index and the player comes last, opening the store scans the file once with a {@link SaveReader}
+ * to find the player and the start of every block, keeping nothing but these positions. The scan skips the tasks
+ * without decoding them, the rooms are only decoded and upgraded like the rooms of the
+ * {@link IndexedSave#FIRST_VERSION first indexed version} when a block is accessed.
+ */
+public class PlainRoomStore extends SavedRoomStore {
+
+    /**
+     * How many rooms are decoded together.
+     */
+    public static final int ROOMS_PER_BLOCK = 256;
+
+    /**
+     * The channel of the save file.
+     */
+    protected final FileChannel channel;
+
+    /**
+     * The position of each block in the save file, followed by the position of the player.
+     */
+    protected final long[] blockPositions;
+
+    /**
+     * The end of the player in the save file.
+     */
+    protected final long playerEnd;
+
+    /**
+     * Decodes the rooms, which have the format of the first indexed version.
+     */
+    private final SavedRoom.Decoder decoder;
+
+    /**
+     * The blocks of the save file decoded so far.
+     */
+    protected final Map<Integer, SavedRoom[]> decoded = new HashMap<>();
+
+    /**
+     * Opens a {@link PlainRoomStore} on the specified file.
+     * @param file a plain save file
+     * @throws IOException If an I/O exception occurs or the file isn't a plain save file.
+     */
+    public PlainRoomStore(final Path file) throws IOException {
+        this(file, scan(file));
+    }
+
+    private PlainRoomStore(final Path file, final Scan scan) throws IOException {
+        super(scan.roomCount, scan.journalGeneration);
+        blockPositions = scan.blockPositions;
+        playerEnd = scan.playerEnd;
+        decoder = IndexedSave.roomDecoder(IndexedSave.FIRST_VERSION);
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+    }
+
+    /**
+     * The positions found by {@link #scan(Path)}.
+     */
+    private record Scan(int roomCount, long[] blockPositions, long playerEnd, int journalGeneration) {
+    }
+
+    private static Scan scan(final Path file) throws IOException {
+        try (final CountingInputStream counter = new CountingInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            final DataInputStream dis = new DataInputStream(counter);
+            final SaveReader reader = new SaveReader(dis, false);
+            long[] positions = new long[16];
+            int blockCount = 0;
+            int roomCount = 0;
+            SaveReader.Event event;
+            do {
+                // the first record follows the room count
+                final long position = Math.max(counter.count, Integer.BYTES);
+                event = reader.next();
+                if (event == SaveReader.Event.ROOM && roomCount++ % ROOMS_PER_BLOCK == 0
+                        || event == SaveReader.Event.PLAYER) {
+                    if (blockCount == positions.length) {
+                        positions = Arrays.copyOf(positions, 2 * blockCount);
+                    }
+                    positions[blockCount++] = position;
+                }
+            } while (event != SaveReader.Event.END);
+            final long playerEnd = counter.count;
+            int journalGeneration;
+            try {
+                journalGeneration = dis.readInt();
+            }
+            catch (EOFException ex) {
+                // a save file without journal
+                journalGeneration = 0;
+            }
+            return new Scan(roomCount, Arrays.copyOf(positions, blockCount), playerEnd, journalGeneration);
+        }
+    }
+
+    @Override
+    public boolean isCurrentFormat() {
+        return false;
+    }
+
+    /**
+     * Reads the specified part of the save file.
+     */
+    private CompactInputStream open(final long position, final long end) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(Math.toIntExact(end - position));
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of save file!");
+            }
+        }
+        return new CompactInputStream(new ByteArrayInputStream(buffer.array()), List.of());
+    }
+
+    @Override
+    /* package private */ Player readPlayer(final Dungeon dungeon, final BiFunction<Room, Inventory, Player> constructor) throws IOException {
+        return Player.readObject(open(blockPositions[blockPositions.length - 1], playerEnd), dungeon, constructor);
+    }
+
+    @Override
+    /* package private */ SavedRoom getSaved(final int id) {
+        final int block = id / ROOMS_PER_BLOCK;
+        SavedRoom[] rooms = decoded.get(block);
+        if (rooms == null) {
+            final int first = block * ROOMS_PER_BLOCK;
+            rooms = new SavedRoom[Math.min(ROOMS_PER_BLOCK, savedRoomCount - first)];
+            try {
+                final CompactInputStream cis = open(blockPositions[block], blockPositions[block + 1]);
+                for (int i = 0; i < rooms.length; i++) {
+                    rooms[i] = decoder.decode(first + i, cis);
+                }
+            }
+            catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+            decoded.put(block, rooms);
+        }
+        return rooms[id - block * ROOMS_PER_BLOCK];
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Counts the bytes read from the underlying stream.
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+
+        private long count;
+
+        private CountingInputStream(final InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int result = super.read();
+            if (result >= 0) {
+                count++;
+            }
+            return result;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            final int result = super.read(b, off, len);
+            if (result > 0) {
+                count += result;
+            }
+            return result;
+        }
+
+        @Override
+        public long skip(final long n) throws IOException {
+            final long result = super.skip(n);
+            count += result;
+            return result;
+        }
+    }
+}
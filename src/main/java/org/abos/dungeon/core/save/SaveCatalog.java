@@ -0,0 +1,307 @@
+package org.abos.dungeon.core.save;
+
+import org.abos.dungeon.core.Dungeon;
+import org.abos.dungeon.core.Player;
+import org.abos.dungeon.core.SeededDungeon;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.OptionalLong;
+import java.util.TreeMap;
+
+/**
+ * Manages the save slots in one directory. Each slot is a save file named after the slot,
+ * and a small index file holds an {@link Entry} per slot, so the slots can be listed without opening any save.
+ * The index is kept in memory and rewritten whenever a slot is {@link #update(String, Dungeon, Player) updated},
+ * under a temporary name first and then moved over the old index, so it is always complete.
+ * The directory is only created once the first slot is recorded.
+ * <p>
+ * If the index is missing or damaged, it is rebuilt from the summaries of the {@link IndexedSave indexed saves}
+ * and {@link CompressedSave compressed saves} in the directory.
+ * The saves don't hold the seeds of {@link SeededDungeon seeded dungeons}, so the rebuilt entries have none.
+ */
+public class SaveCatalog {
+
+    /**
+     * The file name of the index in the directory.
+     */
+    public static final String INDEX_FILE_NAME = "saves.idx";
+
+    /**
+     * The file name suffix of the save files in the directory.
+     */
+    public static final String SAVE_SUFFIX = ".sav";
+
+    /**
+     * Identifies index files, reads "SLOT".
+     */
+    private static final int MAGIC = 0x534C4F54;
+
+    private static final int VERSION = 1;
+
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    /**
+     * The metadata of a save slot.
+     * @param slot the name of the slot
+     * @param seed the seed of the dungeon if it is a {@link SeededDungeon}
+     * @param roomCount how many rooms the dungeon has
+     * @param highestRoomNumber the highest ID of the rooms the player cleared
+     * @param clearedTaskCount how many tasks the player cleared
+     * @param menagerieSize how many creatures the player collected
+     * @param savedAt when the slot was saved
+     */
+    public record Entry(String slot, OptionalLong seed, int roomCount, int highestRoomNumber, int clearedTaskCount, int menagerieSize, Instant savedAt) {
+    }
+
+    /**
+     * The directory of the slots.
+     */
+    protected final Path directory;
+
+    /**
+     * The entries by slot name.
+     */
+    protected final Map<String, Entry> entries = new TreeMap<>();
+
+    /**
+     * Opens the catalog of the specified directory, which is empty if the directory doesn't exist yet.
+     * @param directory the directory of the slots
+     * @throws IOException If an I/O exception occurs.
+     */
+    public SaveCatalog(final Path directory) throws IOException {
+        this.directory = Objects.requireNonNull(directory);
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        final Path index = directory.resolve(INDEX_FILE_NAME);
+        if (Files.exists(index)) {
+            try {
+                readIndex(index);
+                return;
+            }
+            catch (IOException ex) {
+                entries.clear();
+            }
+        }
+        rebuild();
+    }
+
+    private void readIndex(final Path index) throws IOException {
+        try (final DataInputStream dis = new DataInputStream(new BufferedInputStream(Files.newInputStream(index)))) {
+            if (dis.readInt() != MAGIC || dis.readInt() != VERSION) {
+                throw new IOException("Not a save catalog index!");
+            }
+            final int size = dis.readInt();
+            for (int i = 0; i < size; i++) {
+                final String slot = dis.readUTF();
+                final OptionalLong seed = dis.readBoolean() ? OptionalLong.of(dis.readLong()) : OptionalLong.empty();
+                entries.put(slot, new Entry(slot, seed, dis.readInt(), dis.readInt(), dis.readInt(), dis.readInt(), Instant.ofEpochMilli(dis.readLong())));
+            }
+        }
+    }
+
+    /**
+     * Rebuilds the index from the summaries of the indexed and compressed saves in the directory. Other save files are left out.
+     */
+    private void rebuild() throws IOException {
+        try (final DirectoryStream<Path> saves = Files.newDirectoryStream(directory, "*" + SAVE_SUFFIX)) {
+            for (Path save : saves) {
+                final String slot = slotOf(save);
+                if (slot == null) {
+                    continue;
+                }
+                final SaveSummary summary = readSummary(save);
+                if (summary == null) {
+                    continue;
+                }
+                entries.put(slot, new Entry(slot, OptionalLong.empty(), summary.roomCount(), summary.highestRoomNumber(),
+                        summary.clearedTaskCount(), summary.menagerieSize(), Files.getLastModifiedTime(save).toInstant()));
+            }
+        }
+        writeIndex();
+    }
+
+    /**
+     * Reads the summary of the specified save, {@code null} if it has none.
+     */
+    private static SaveSummary readSummary(final Path save) throws IOException {
+        if (IndexedSave.isIndexed(save)) {
+            return IndexedSave.readSummary(save);
+        }
+        if (CompressedSave.isCompressed(save)) {
+            try {
+                return CompressedSave.readSummary(save);
+            }
+            catch (IOException ex) {
+                // the first version has no summary, and a damaged save can't be listed anyway
+                return null;
+            }
+        }
+        return null;
+    }
+
+    private void writeIndex() throws IOException {
+        Files.createDirectories(directory);
+        final Path index = directory.resolve(INDEX_FILE_NAME);
+        final Path tempFile = directory.resolve(INDEX_FILE_NAME + TEMP_SUFFIX);
+        try (final DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+            dos.writeInt(MAGIC);
+            dos.writeInt(VERSION);
+            dos.writeInt(entries.size());
+            for (Entry entry : entries.values()) {
+                dos.writeUTF(entry.slot());
+                dos.writeBoolean(entry.seed().isPresent());
+                if (entry.seed().isPresent()) {
+                    dos.writeLong(entry.seed().getAsLong());
+                }
+                dos.writeInt(entry.roomCount());
+                dos.writeInt(entry.highestRoomNumber());
+                dos.writeInt(entry.clearedTaskCount());
+                dos.writeInt(entry.menagerieSize());
+                dos.writeLong(entry.savedAt().toEpochMilli());
+            }
+        }
+        try (final FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(tempFile, index, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * If the specified string can be used as a slot name, which is the case if it is neither empty nor contains
+     * path separators or dots.
+     * @param slot the string to check, not {@code null}
+     * @return {@code true} if {@code slot} is a valid slot name, else {@code false}
+     */
+    public static boolean isValidSlot(final String slot) {
+        return !slot.isBlank() && slot.chars().noneMatch(c -> c == '/' || c == '\\' || c == '.' || c == ':');
+    }
+
+    private static String requireValidSlot(final String slot) {
+        if (!isValidSlot(slot)) {
+            throw new IllegalArgumentException("Invalid slot name " + slot + "!");
+        }
+        return slot;
+    }
+
+    /**
+     * Returns the directory of the slots.
+     */
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Returns the save file of the specified slot, which might not exist yet.
+     * @param slot the name of the slot
+     * @return the path of the save file, not {@code null}
+     * @throws IllegalArgumentException If {@code slot} isn't a {@link #isValidSlot(String) valid slot name}.
+     */
+    public Path getSaveFile(final String slot) {
+        return directory.resolve(requireValidSlot(slot) + SAVE_SUFFIX);
+    }
+
+    /**
+     * Returns the slot the specified file is the save file of.
+     * @param file a file
+     * @return the name of the slot, or {@code null} if the file isn't a save file in the directory
+     */
+    public String slotOf(final Path file) {
+        final Path name = file.getFileName();
+        final Path parent = file.toAbsolutePath().normalize().getParent();
+        if (name == null || parent == null || !parent.equals(directory.toAbsolutePath().normalize())) {
+            return null;
+        }
+        final String fileName = name.toString();
+        if (!fileName.endsWith(SAVE_SUFFIX)) {
+            return null;
+        }
+        final String slot = fileName.substring(0, fileName.length() - SAVE_SUFFIX.length());
+        return isValidSlot(slot) ? slot : null;
+    }
+
+    /**
+     * Returns the entries of all slots, ordered by slot name. Takes no I/O.
+     * @return a new list, not {@code null}
+     */
+    public synchronized List<Entry> getEntries() {
+        return new ArrayList<>(entries.values());
+    }
+
+    /**
+     * Returns the entry of the specified slot.
+     * @param slot the name of the slot
+     * @return the entry, or {@code null} if the slot isn't in the catalog
+     */
+    public synchronized Entry getEntry(final String slot) {
+        return entries.get(slot);
+    }
+
+    /**
+     * Records the specified game as the state of the specified slot and rewrites the index.
+     * Call this once the save of the slot has been completed.
+     * @param slot the name of the slot
+     * @param dungeon the saved dungeon
+     * @param player the saved player
+     * @throws IOException If an I/O exception occurs.
+     * @throws IllegalArgumentException If {@code slot} isn't a {@link #isValidSlot(String) valid slot name}.
+     */
+    public synchronized void update(final String slot, final Dungeon dungeon, final Player player) throws IOException {
+        entries.put(requireValidSlot(slot), new Entry(slot, seedOf(dungeon), dungeon.getRoomCount(), player.getHighestRoomNumber(),
+                player.getClearedTaskCount(), player.getMenagerieSize(), Instant.now()));
+        writeIndex();
+    }
+
+    /**
+     * Records the game with the specified summary as the state of the specified slot and rewrites the index,
+     * e.g. as {@link SaveJournal#setWriteListener(java.util.function.Consumer) told by the journal} of the slot.
+     * @param slot the name of the slot
+     * @param seed the seed of the dungeon, see {@link #seedOf(Dungeon)}
+     * @param summary the summary of the save
+     * @throws IOException If an I/O exception occurs.
+     * @throws IllegalArgumentException If {@code slot} isn't a {@link #isValidSlot(String) valid slot name}.
+     */
+    public synchronized void update(final String slot, final OptionalLong seed, final SaveSummary summary) throws IOException {
+        entries.put(requireValidSlot(slot), new Entry(slot, seed, summary.roomCount(), summary.highestRoomNumber(),
+                summary.clearedTaskCount(), summary.menagerieSize(), Instant.now()));
+        writeIndex();
+    }
+
+    /**
+     * Returns the seed of the specified dungeon if it is a {@link SeededDungeon}.
+     * @param dungeon a dungeon
+     * @return the seed, might be empty but not {@code null}
+     */
+    public static OptionalLong seedOf(final Dungeon dungeon) {
+        return dungeon instanceof SeededDungeon seeded ? OptionalLong.of(seeded.getSeed()) : OptionalLong.empty();
+    }
+
+    /**
+     * Removes the specified slot from the catalog and rewrites the index. The save file is left untouched.
+     * @param slot the name of the slot
+     * @return {@code true} if the slot was in the catalog, else {@code false}
+     * @throws IOException If an I/O exception occurs.
+     */
+    public synchronized boolean remove(final String slot) throws IOException {
+        if (entries.remove(slot) == null) {
+            return false;
+        }
+        writeIndex();
+        return true;
+    }
+}
@@ -0,0 +1,844 @@
+package org.abos.dungeon.core.save;
+
+import org.abos.dungeon.core.Dungeon;
+import org.abos.dungeon.core.Inventory;
+import org.abos.dungeon.core.PersistentRoomStore;
+import org.abos.dungeon.core.Player;
+import org.abos.dungeon.core.Room;
+import org.abos.dungeon.core.RoomStore;
+import org.abos.dungeon.core.reward.RewardFactory;
+import org.abos.dungeon.core.task.Task;
+import org.abos.dungeon.core.task.TaskFactory;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.zip.CRC32;
+
+/**
+ * Saves a game as a snapshot plus an append-only journal of the changes since, so saving after a turn
+ * only writes what changed during the turn instead of the whole dungeon.
+ * <p>
+ * The snapshot is an {@link IndexedSave}, whose rooms are only read when accessed, or a {@link CompressedSave}
+ * if the save has been {@link #create(Path, Dungeon, Player, BiFunction, boolean) created} that way. Either records
+ * the generation of the first journal not contained in it. Plain save files, {@link BlockSave block saves}
+ * and {@link CompressedSave compressed saves} can be loaded as snapshots as well.
+ * Snapshots in older formats are read room by room or block by block as well, see {@link SavedRoomStore},
+ * and are left untouched by loading. The first compaction writes them in the current format
+ * and keeps the old snapshot next to it, named with {@link #BACKUP_SUFFIX}.
+ * Each journal file belongs to one generation and holds one block per {@link #commit() commit},
+ * protected by a checksum. Blocks torn by a crash are ignored when loading, so a save is always consistent
+ * with the last complete commit. Once the journal grows beyond a threshold, it is continued in a new generation
+ * and the old generations are merged into a new snapshot in the background. The snapshot is replaced atomically
+ * before the merged journals are deleted, so a crash at any point still leaves a loadable save.
+ * <p>
+ * Committing only encodes the changes, the blocks are written by a background thread. The blocks committed
+ * within {@link #WRITE_DELAY_MILLIS} are written together, so the game neither waits for the disk
+ * nor wakes the writer every turn. A crash loses at most the blocks of that time span.
+ * <p>
+ * The dungeon has to keep its rooms in a {@link JournalingRoomStore}, which reports the room changes.
+ * The changes of the player are written by {@link Player#writeChanges(DataOutputStream)}.
+ */
+public class SaveJournal implements Closeable {
+
+    /**
+     * How many bytes the journal may grow before it gets compacted into a new snapshot by default.
+     */
+    public static final long DEFAULT_COMPACTION_THRESHOLD = 1 << 20;
+
+    /**
+     * How many milliseconds committed blocks are collected before they get written.
+     */
+    public static final long WRITE_DELAY_MILLIS = 50;
+
+    /**
+     * Appended to the name of a snapshot in an older format, when it is kept after being compacted into the current format.
+     */
+    public static final String BACKUP_SUFFIX = ".bak";
+
+    /**
+     * Identifies journal files, reads "JRNL".
+     */
+    private static final int MAGIC = 0x4A524E4C;
+
+    private static final String JOURNAL_SUFFIX = ".journal";
+
+    // record types
+    private static final byte ROOM_ADDED = 1;
+    private static final byte DOORS_FILLED = 2;
+    private static final byte REWARD_COLLECTED = 3;
+    private static final byte PLAYER_CHANGED = 4;
+
+    /**
+     * The snapshot file, the journal files are next to it.
+     */
+    protected final Path saveFile;
+
+    /**
+     * @see #getDungeon()
+     */
+    protected final Dungeon dungeon;
+
+    /**
+     * The room store of {@link #dungeon}.
+     */
+    protected final JournalingRoomStore rooms;
+
+    /**
+     * @see #getPlayer()
+     */
+    protected final Player player;
+
+    /**
+     * Creates the player when reading a save and the copy of the player a compaction writes, only on the thread using this journal.
+     */
+    protected final BiFunction<Room, Inventory, Player> playerConstructor;
+
+    /**
+     * How many bytes the journal may grow before it gets compacted.
+     */
+    protected final long compactionThreshold;
+
+    /**
+     * If the snapshot is written as a {@link CompressedSave}, else as an {@link IndexedSave}.
+     */
+    protected final boolean compressed;
+
+    /**
+     * The changes of the current turn.
+     */
+    protected final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+
+    /**
+     * Writes into {@link #pending}.
+     */
+    protected final DataOutputStream pendingData = new DataOutputStream(pending);
+
+    /**
+     * Runs the compactions.
+     */
+    protected final ExecutorService compactor = Executors.newSingleThreadExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "Save journal compactor");
+        // an unfinished compaction leaves a consistent save behind
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Writes the committed blocks.
+     */
+    protected final ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "Save journal writer");
+        // unwritten blocks are lost like blocks torn by a crash
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * The committed blocks not written yet, also guards {@link #journal}, {@link #writeScheduled} and {@link #unwrittenSummary}.
+     */
+    protected final List<ByteBuffer> unwritten = new ArrayList<>();
+
+    /**
+     * The summary of the game as of the last block in {@link #unwritten}, {@code null} if there are none.
+     */
+    protected SaveSummary unwrittenSummary;
+
+    /**
+     * Told the summary of the save whenever blocks have been written, might be {@code null}.
+     */
+    protected volatile Consumer<SaveSummary> writeListener;
+
+    /**
+     * If {@link #writer} has been asked to write {@link #unwritten}.
+     */
+    protected boolean writeScheduled;
+
+    /**
+     * Why writing a block failed, might be {@code null}. Later blocks are not written anymore then.
+     */
+    protected volatile IOException writeFailure;
+
+    /**
+     * The running or last write of a snapshot, by {@link #create(Path, Dungeon, Player, BiFunction, boolean) creating}
+     * the save or by a compaction, might be {@code null}.
+     */
+    protected Future<?> compaction;
+
+    /**
+     * @see #getGeneration()
+     */
+    protected int generation;
+
+    /**
+     * The journal file of the current generation.
+     */
+    protected FileChannel journal;
+
+    /**
+     * How many bytes of journal haven't been compacted yet.
+     */
+    protected long uncompactedSize;
+
+    /**
+     * The store reading the rooms of the loaded snapshot, might be {@code null}.
+     */
+    protected SavedRoomStore snapshotRooms;
+
+    /**
+     * Continues the save with a new journal generation.
+     */
+    protected SaveJournal(final Path saveFile, final Dungeon dungeon, final Player player, final BiFunction<Room, Inventory, Player> playerConstructor,
+                          final int generation, final long uncompactedSize, final long compactionThreshold, final boolean compressed) throws IOException {
+        this.saveFile = Objects.requireNonNull(saveFile);
+        this.dungeon = Objects.requireNonNull(dungeon);
+        if (!(dungeon.getRoomStore() instanceof JournalingRoomStore journalingRooms)) {
+            throw new IllegalArgumentException("The dungeon must keep its rooms in a " + JournalingRoomStore.class.getSimpleName() + "!");
+        }
+        this.rooms = journalingRooms;
+        this.player = Objects.requireNonNull(player);
+        this.playerConstructor = Objects.requireNonNull(playerConstructor);
+        this.compactionThreshold = compactionThreshold;
+        this.compressed = compressed;
+        this.generation = generation;
+        this.uncompactedSize = uncompactedSize;
+        journal = openJournal(saveFile, generation);
+        rooms.setJournal(this);
+        player.trackChanges();
+    }
+
+    /**
+     * Starts a new save: writes a snapshot of the specified game and journals its changes from now on.
+     * Journal files of an earlier save at the same location are deleted.
+     * Only taking the snapshot blocks, it is written by the writer thread before any journal block,
+     * see {@link JournalingRoomStore#snapshot()}. A failed write is reported by the next commit or by {@link #close()}.
+     * @param saveFile the snapshot file, the journal files are placed next to it
+     * @param dungeon the dungeon to save, keeping its rooms in a {@link JournalingRoomStore}
+     * @param player the player to save
+     * @param playerConstructor a constructor for the player subclass, used when compacting, only on the calling thread
+     * @return a new journal
+     * @throws IOException If an I/O exception occurs.
+     * @throws IllegalArgumentException If the dungeon doesn't keep its rooms in a {@link JournalingRoomStore}.
+     */
+    public static SaveJournal create(final Path saveFile, final Dungeon dungeon, final Player player, final BiFunction<Room, Inventory, Player> playerConstructor) throws IOException {
+        return create(saveFile, dungeon, player, playerConstructor, false);
+    }
+
+    /**
+     * Starts a new save like {@link #create(Path, Dungeon, Player, BiFunction)}, writing the snapshots as {@link CompressedSave compressed saves}
+     * if specified. Those are a fraction of the size, but are read completely when loaded.
+     * @param saveFile the snapshot file, the journal files are placed next to it
+     * @param dungeon the dungeon to save, keeping its rooms in a {@link JournalingRoomStore}
+     * @param player the player to save
+     * @param playerConstructor a constructor for the player subclass, used when compacting, only on the calling thread
+     * @param compressed if the snapshots are compressed
+     * @return a new journal
+     * @throws IOException If an I/O exception occurs.
+     * @throws IllegalArgumentException If the dungeon doesn't keep its rooms in a {@link JournalingRoomStore}.
+     */
+    public static SaveJournal create(final Path saveFile, final Dungeon dungeon, final Player player, final BiFunction<Room, Inventory, Player> playerConstructor,
+                                     final boolean compressed) throws IOException {
+        if (!(dungeon.getRoomStore() instanceof JournalingRoomStore journalingRooms)) {
+            throw new IllegalArgumentException("The dungeon must keep its rooms in a " + JournalingRoomStore.class.getSimpleName() + "!");
+        }
+        try (final DirectoryStream<Path> journals = Files.newDirectoryStream(directoryOf(saveFile), saveFile.getFileName() + ".*" + JOURNAL_SUFFIX)) {
+            for (Path journal : journals) {
+                Files.delete(journal);
+            }
+        }
+        // the game goes on while the copy is written
+        player.awaitPrefetch();
+        final Dungeon savedDungeon = new Dungeon(new Random(), dungeon.getTaskFactory(), dungeon.getRewardFactory(),
+                new PersistentRoomStore(journalingRooms.snapshot()));
+        final Player savedPlayer = Player.fork(player.snapshot(), savedDungeon, playerConstructor);
+        final SaveJournal journal = new SaveJournal(saveFile, dungeon, player, playerConstructor, 0, 0, DEFAULT_COMPACTION_THRESHOLD, compressed);
+        journal.compaction = journal.writer.submit(() -> {
+            try {
+                writeSnapshot(saveFile, savedDungeon, savedPlayer, 0, compressed);
+            }
+            catch (IOException | RuntimeException ex) {
+                // the blocks mustn't be written, they would be replayed on the save that was there before
+                journal.writeFailure = ex instanceof IOException ioe ? ioe : new IOException(ex);
+                throw ex;
+            }
+            return null;
+        });
+        return journal;
+    }
+
+    /**
+     * Loads a save by reading its snapshot and replaying its journal, and continues journaling it.
+     * The rooms of the snapshot are read when accessed, so the file must not be modified while the journal is open.
+     * Plain save files without journal can be loaded as well.
+     * @param saveFile the snapshot file
+     * @param random the {@link Random} instance for the new dungeon
+     * @param taskFactory the {@link TaskFactory} instance for the new dungeon
+     * @param rewardFactory the {@link RewardFactory} instance for the new dungeon
+     * @param playerConstructor a constructor for the player subclass
+     * @return a new journal, holding the loaded game
+     * @throws IOException If an I/O exception occurs.
+     */
+    public static SaveJournal load(final Path saveFile, final Random random, final TaskFactory taskFactory, final RewardFactory rewardFactory, final BiFunction<Room, Inventory, Player> playerConstructor) throws IOException {
+        return load(saveFile, rooms -> new Dungeon(random, taskFactory, rewardFactory, rooms), playerConstructor);
+    }
+
+    /**
+     * Loads a save like {@link #load(Path, Random, TaskFactory, RewardFactory, BiFunction)}, creating the dungeon by the specified constructor.
+     * @param saveFile the snapshot file
+     * @param dungeonConstructor creates the dungeon on the store of the loaded rooms, e.g. a {@link org.abos.dungeon.core.SeededDungeon}
+     * @param playerConstructor a constructor for the player subclass
+     * @return a new journal, holding the loaded game
+     * @throws IOException If an I/O exception occurs.
+     */
+    public static SaveJournal load(final Path saveFile, final Function<RoomStore, Dungeon> dungeonConstructor, final BiFunction<Room, Inventory, Player> playerConstructor) throws IOException {
+        final State state = readState(saveFile, rooms -> dungeonConstructor.apply(new JournalingRoomStore(rooms)), playerConstructor, Integer.MAX_VALUE);
+        try {
+            final SaveJournal journal = new SaveJournal(saveFile, state.dungeon, state.player, playerConstructor, state.generation, state.journalSize,
+                    DEFAULT_COMPACTION_THRESHOLD, state.compressed);
+            journal.snapshotRooms = state.snapshotRooms;
+            return journal;
+        }
+        catch (IOException | RuntimeException ex) {
+            state.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Returns the snapshot file, the journal files are next to it.
+     */
+    public Path getSaveFile() {
+        return saveFile;
+    }
+
+    /**
+     * Returns the journaled dungeon.
+     */
+    public Dungeon getDungeon() {
+        return dungeon;
+    }
+
+    /**
+     * Returns the journaled player.
+     */
+    public Player getPlayer() {
+        return player;
+    }
+
+    /**
+     * Returns the generation of the journal file currently written.
+     */
+    public int getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Sets the listener told the summary of the save whenever committed blocks have been written, e.g. to keep a {@link SaveCatalog} up to date.
+     * The summary reflects the last block written, as if the save was compacted then. The listener is called by the writer thread,
+     * so it shouldn't block.
+     * @param writeListener the listener, {@code null} for none
+     */
+    public void setWriteListener(final Consumer<SaveSummary> writeListener) {
+        this.writeListener = writeListener;
+    }
+
+    /* package private */ void roomAdded(final int fromId, final int doorCount, final Task task) {
+        try {
+            pendingData.writeByte(ROOM_ADDED);
+            pendingData.writeInt(fromId);
+            pendingData.writeByte(doorCount);
+            pendingData.writeBoolean(task != null);
+            if (task != null) {
+                Room.writeTask(pendingData, task);
+            }
+        }
+        catch (IOException ex) {
+            throw new AssertionError("Byte arrays don't throw I/O exceptions!", ex);
+        }
+    }
+
+    /* package private */ void doorsFilled(final int id, final int[] doors) {
+        try {
+            pendingData.writeByte(DOORS_FILLED);
+            pendingData.writeInt(id);
+            pendingData.writeByte(doors.length);
+            for (int door : doors) {
+                pendingData.writeInt(door);
+            }
+        }
+        catch (IOException ex) {
+            throw new AssertionError("Byte arrays don't throw I/O exceptions!", ex);
+        }
+    }
+
+    /* package private */ void rewardCollected(final int id, final boolean rewardCollected) {
+        try {
+            pendingData.writeByte(REWARD_COLLECTED);
+            pendingData.writeInt(id);
+            pendingData.writeBoolean(rewardCollected);
+        }
+        catch (IOException ex) {
+            throw new AssertionError("Byte arrays don't throw I/O exceptions!", ex);
+        }
+    }
+
+    /**
+     * Appends the changes since the last commit to the journal, usually called once per turn.
+     * The changes are written in the background, see {@link #flush()}.
+     * Starts a compaction in the background if the journal grew too large.
+     * @throws IOException If an I/O exception occurs, including one of an earlier write or of a finished compaction.
+     */
+    public void commit() throws IOException {
+        appendBlock();
+        if (uncompactedSize >= compactionThreshold && (compaction == null || compaction.isDone())) {
+            startCompaction();
+        }
+    }
+
+    /**
+     * Appends the changes since the last commit to the journal.
+     */
+    private void appendBlock() throws IOException {
+        checkWriteFailure();
+        pendingData.writeByte(PLAYER_CHANGED);
+        player.writeChanges(pendingData);
+        final byte[] block = pending.toByteArray();
+        pending.reset();
+        final CRC32 crc = new CRC32();
+        crc.update(block);
+        final ByteBuffer frame = ByteBuffer.allocate(block.length + 2 * Integer.BYTES);
+        frame.putInt(block.length).put(block).putInt((int)crc.getValue()).flip();
+        final SaveSummary summary = new SaveSummary(compressed ? CompressedSave.VERSION : IndexedSave.VERSION, generation + 1, dungeon.getRoomCount(),
+                player.getHighestRoomNumber(), player.getClearedTaskCount(), player.getMenagerieSize());
+        synchronized (unwritten) {
+            unwritten.add(frame);
+            unwrittenSummary = summary;
+            if (!writeScheduled) {
+                writeScheduled = true;
+                writer.schedule(this::writeUnwritten, WRITE_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        }
+        uncompactedSize += frame.remaining();
+    }
+
+    /**
+     * Commits the changes since the last commit, continues the journal in a new generation
+     * and merges the snapshot with the older generations in the background.
+     * @throws IOException If an I/O exception occurs, including one of the previous compaction.
+     */
+    public void compact() throws IOException {
+        appendBlock();
+        startCompaction();
+    }
+
+    /**
+     * Continues the journal in a new generation and merges the snapshot with the older generations in the background.
+     * The dungeon is read from the files, while the player is copied here, as the player subclass might only be created
+     * on the thread using this journal. Everything has been committed, so the copy matches the files.
+     */
+    private void startCompaction() throws IOException {
+        awaitCompaction();
+        // the new snapshot has to contain all blocks of the old generations
+        flush();
+        final FileChannel newJournal = openJournal(saveFile, generation + 1);
+        synchronized (unwritten) {
+            journal.close();
+            journal = newJournal;
+        }
+        generation++;
+        uncompactedSize = 0;
+        final int compactedGeneration = generation;
+        final TaskFactory taskFactory = dungeon.getTaskFactory();
+        final RewardFactory rewardFactory = dungeon.getRewardFactory();
+        player.awaitPrefetch();
+        final Player compactedPlayer = Player.fork(player.snapshot(), dungeon, playerConstructor);
+        compaction = compactor.submit(() -> {
+            // only the files and the copied player are read, never the live game
+            final int firstGeneration;
+            try (final State state = readState(saveFile, rooms -> new Dungeon(new Random(), taskFactory, rewardFactory, rooms), null, compactedGeneration)) {
+                firstGeneration = state.firstGeneration;
+                if (!state.currentFormat) {
+                    // the save is upgraded, the old snapshot is kept in case the upgrade loses something
+                    Files.copy(saveFile, saveFile.resolveSibling(saveFile.getFileName() + BACKUP_SUFFIX), StandardCopyOption.REPLACE_EXISTING);
+                }
+                writeSnapshot(saveFile, state.dungeon, compactedPlayer, compactedGeneration, compressed);
+            }
+            for (int merged = firstGeneration; merged < compactedGeneration; merged++) {
+                Files.deleteIfExists(journalFile(saveFile, merged));
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Writes a snapshot in the current format.
+     */
+    private static void writeSnapshot(final Path saveFile, final Dungeon dungeon, final Player player, final int journalGeneration,
+                                      final boolean compressed) throws IOException {
+        if (compressed) {
+            CompressedSave.write(saveFile, dungeon, player, journalGeneration);
+        }
+        else {
+            IndexedSave.write(saveFile, dungeon, player, journalGeneration);
+        }
+    }
+
+    /**
+     * Writes the blocks queued by {@link #writer} until there are none left, in as few writes as possible.
+     */
+    private void writeUnwritten() {
+        while (true) {
+            final ByteBuffer[] frames;
+            final SaveSummary summary;
+            final FileChannel channel;
+            synchronized (unwritten) {
+                if (unwritten.isEmpty()) {
+                    writeScheduled = false;
+                    unwritten.notifyAll();
+                    return;
+                }
+                frames = unwritten.toArray(new ByteBuffer[0]);
+                unwritten.clear();
+                summary = unwrittenSummary;
+                unwrittenSummary = null;
+                channel = journal;
+            }
+            if (writeFailure != null) {
+                // a gap in the journal would make the later blocks inconsistent
+                continue;
+            }
+            try {
+                while (frames[frames.length - 1].hasRemaining()) {
+                    channel.write(frames);
+                }
+                // the blocks only count as written once they are on disk
+                channel.force(false);
+            }
+            catch (IOException ex) {
+                writeFailure = ex;
+                continue;
+            }
+            final Consumer<SaveSummary> listener = writeListener;
+            if (listener != null) {
+                try {
+                    listener.accept(summary);
+                }
+                catch (RuntimeException ex) {
+                    // the blocks have been written, only the listener missed them
+                    ex.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * Throws the exception of a failed write, if any.
+     */
+    private void checkWriteFailure() throws IOException {
+        final IOException failure = writeFailure;
+        if (failure != null) {
+            throw new IOException("Writing the journal failed!", failure);
+        }
+    }
+
+    /**
+     * Writes all committed blocks right away and waits until they have been written. Interrupts are deferred until then.
+     * @throws IOException If writing a block failed.
+     */
+    public void flush() throws IOException {
+        boolean interrupted = false;
+        synchronized (unwritten) {
+            if (writeScheduled) {
+                // don't wait for the delay, the scheduled write will find nothing left
+                writer.execute(this::writeUnwritten);
+            }
+            while (writeScheduled) {
+                try {
+                    unwritten.wait();
+                }
+                catch (InterruptedException ex) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        checkWriteFailure();
+    }
+
+    /**
+     * Waits for the running compaction, if any.
+     * @throws IOException If the compaction failed.
+     */
+    protected void awaitCompaction() throws IOException {
+        if (compaction == null) {
+            return;
+        }
+        try {
+            compaction.get();
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the compaction!", ex);
+        }
+        catch (ExecutionException ex) {
+            if (ex.getCause() instanceof IOException ioe) {
+                throw ioe;
+            }
+            throw new IOException("Compaction failed!", ex.getCause());
+        }
+        finally {
+            compaction = null;
+        }
+    }
+
+    /**
+     * Reads all rooms of the loaded snapshot not read yet and closes it, so the dungeon doesn't depend on the snapshot file anymore.
+     * Afterwards the dungeon can still be used when this journal has been closed, for instance to be saved again.
+     * @throws IOException If an I/O exception occurs.
+     */
+    public void releaseSnapshot() throws IOException {
+        if (snapshotRooms == null) {
+            return;
+        }
+        try {
+            // copies all rooms, so the next save takes its snapshot in constant time
+            rooms.snapshot();
+        }
+        catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+        snapshotRooms.close();
+        snapshotRooms = null;
+    }
+
+    /**
+     * Stops journaling and closes the loaded snapshot. Uncommitted changes are discarded,
+     * committed ones and a running compaction are waited for. Unless the snapshot has been {@link #releaseSnapshot() released},
+     * the rooms of the snapshot not read yet can't be read anymore, so the dungeon shouldn't be used afterwards.
+     * @throws IOException If an I/O exception occurs, including one of a write or the compaction.
+     */
+    @Override
+    public void close() throws IOException {
+        rooms.setJournal(null);
+        try {
+            flush();
+            awaitCompaction();
+        }
+        finally {
+            writer.shutdown();
+            compactor.shutdown();
+            journal.close();
+            if (snapshotRooms != null) {
+                snapshotRooms.close();
+            }
+        }
+    }
+
+    private static Path directoryOf(final Path saveFile) {
+        final Path parent = saveFile.toAbsolutePath().getParent();
+        return parent == null ? Path.of("") : parent;
+    }
+
+    private static Path journalFile(final Path saveFile, final int generation) {
+        return saveFile.resolveSibling(saveFile.getFileName() + "." + generation + JOURNAL_SUFFIX);
+    }
+
+    private static FileChannel openJournal(final Path saveFile, final int generation) throws IOException {
+        final FileChannel channel = FileChannel.open(journalFile(saveFile, generation),
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        final ByteBuffer header = ByteBuffer.allocate(2 * Integer.BYTES).putInt(MAGIC).putInt(generation).flip();
+        try {
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+        }
+        catch (IOException ex) {
+            channel.close();
+            throw ex;
+        }
+        return channel;
+    }
+
+    /**
+     * A game read from a snapshot and its journal, the player is {@code null} if it has been skipped.
+     * @param snapshotRooms the store reading the rooms of the snapshot, {@code null} for a block or compressed save
+     * @param compressed if the snapshot is a {@link CompressedSave}
+     * @param currentFormat if the snapshot is in the current version of its format
+     * @param firstGeneration the first journal generation not contained in the snapshot
+     * @param generation the first journal generation not read
+     * @param journalSize how many bytes of journal have been read
+     */
+    private record State(Dungeon dungeon, Player player, SavedRoomStore snapshotRooms, boolean compressed, boolean currentFormat,
+                         int firstGeneration, int generation, long journalSize) implements Closeable {
+
+        @Override
+        public void close() throws IOException {
+            if (snapshotRooms != null) {
+                snapshotRooms.close();
+            }
+        }
+    }
+
+    /**
+     * Reads the snapshot and replays all existing journal generations before {@code untilGeneration}.
+     * @param dungeonConstructor creates the dungeon on the store of the loaded rooms
+     * @param playerConstructor a constructor for the player subclass, {@code null} to skip the player
+     */
+    private static State readState(final Path saveFile, final Function<RoomStore, Dungeon> dungeonConstructor,
+                                   final BiFunction<Room, Inventory, Player> playerConstructor, final int untilGeneration) throws IOException {
+        final Dungeon dungeon;
+        final Player player;
+        final SavedRoomStore snapshotRooms;
+        boolean compressed = false;
+        boolean currentFormat = false;
+        int generation;
+        if (IndexedSave.isIndexed(saveFile)) {
+            final IndexedSave.LoadedGame game = IndexedSave.load(saveFile, dungeonConstructor, playerConstructor);
+            dungeon = game.dungeon();
+            player = game.player();
+            snapshotRooms = game.rooms();
+            currentFormat = snapshotRooms.isCurrentFormat();
+            generation = game.journalGeneration();
+        }
+        else if (BlockSave.isBlockSave(saveFile)) {
+            final BlockSave.LoadedGame game = BlockSave.load(saveFile, dungeonConstructor, playerConstructor);
+            dungeon = game.dungeon();
+            player = game.player();
+            snapshotRooms = null;
+            generation = game.journalGeneration();
+        }
+        else if (CompressedSave.isCompressed(saveFile)) {
+            final CompressedSave.LoadedGame game = CompressedSave.load(saveFile, dungeonConstructor, playerConstructor);
+            dungeon = game.dungeon();
+            player = game.player();
+            snapshotRooms = null;
+            compressed = true;
+            currentFormat = game.version() == CompressedSave.VERSION;
+            generation = game.journalGeneration();
+        }
+        else {
+            final PlainRoomStore rooms = new PlainRoomStore(saveFile);
+            try {
+                dungeon = dungeonConstructor.apply(rooms);
+                player = rooms.readPlayer(dungeon, playerConstructor);
+            }
+            catch (IOException | RuntimeException ex) {
+                rooms.close();
+                throw ex;
+            }
+            snapshotRooms = rooms;
+            generation = rooms.getJournalGeneration();
+        }
+        final int firstGeneration = generation;
+        long journalSize = 0;
+        try {
+            while (generation < untilGeneration && Files.exists(journalFile(saveFile, generation))) {
+                journalSize += replay(journalFile(saveFile, generation), generation, dungeon, player);
+                generation++;
+            }
+        }
+        catch (IOException | RuntimeException ex) {
+            if (snapshotRooms != null) {
+                snapshotRooms.close();
+            }
+            throw ex;
+        }
+        return new State(dungeon, player, snapshotRooms, compressed, currentFormat, firstGeneration, generation, journalSize);
+    }
+
+    /**
+     * Applies all complete blocks of the specified journal file.
+     * @return how many bytes have been applied
+     */
+    private static long replay(final Path journalFile, final int generation, final Dungeon dungeon, final Player player) throws IOException {
+        try (final DataInputStream dis = new DataInputStream(new BufferedInputStream(Files.newInputStream(journalFile)))) {
+            try {
+                if (dis.readInt() != MAGIC || dis.readInt() != generation) {
+                    throw new IOException("Not a journal of generation " + generation + ": " + journalFile);
+                }
+            }
+            catch (EOFException ex) {
+                // created right before a crash
+                return 0;
+            }
+            long size = 0;
+            while (true) {
+                final byte[] block;
+                try {
+                    block = new byte[dis.readInt()];
+                    dis.readFully(block);
+                    final CRC32 crc = new CRC32();
+                    crc.update(block);
+                    if (dis.readInt() != (int)crc.getValue()) {
+                        // torn by a crash
+                        return size;
+                    }
+                }
+                catch (EOFException | NegativeArraySizeException ex) {
+                    return size;
+                }
+                applyBlock(new DataInputStream(new ByteArrayInputStream(block)), dungeon, player);
+                size += block.length + 2 * Integer.BYTES;
+            }
+        }
+    }
+
+    private static void applyBlock(final DataInputStream dis, final Dungeon dungeon, final Player player) throws IOException {
+        final RoomStore rooms = dungeon.getRoomStore();
+        while (dis.available() > 0) {
+            final byte type = dis.readByte();
+            switch (type) {
+                case ROOM_ADDED -> {
+                    final int fromId = dis.readInt();
+                    final int doorCount = dis.readByte();
+                    rooms.add(fromId, doorCount, dis.readBoolean() ? Room.readTask(dis) : null);
+                }
+                case DOORS_FILLED -> {
+                    final int id = dis.readInt();
+                    final int[] doors = new int[dis.readByte()];
+                    for (int i = 0; i < doors.length; i++) {
+                        doors[i] = dis.readInt();
+                    }
+                    rooms.setDoors(id, doors);
+                }
+                case REWARD_COLLECTED -> rooms.setRewardCollected(dis.readInt(), dis.readBoolean());
+                case PLAYER_CHANGED -> {
+                    // always the last record of a block
+                    if (player == null) {
+                        return;
+                    }
+                    player.readChanges(dis, dungeon);
+                }
+                default -> throw new IOException("Unknown journal record type " + type + " encountered!");
+            }
+        }
+    }
+}
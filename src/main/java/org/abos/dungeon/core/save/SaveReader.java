@@ -0,0 +1,423 @@
+package org.abos.dungeon.core.save;
+
+import org.abos.dungeon.core.Dungeon;
+import org.abos.dungeon.core.Inventory;
+import org.abos.dungeon.core.Player;
+import org.abos.dungeon.core.Room;
+import org.abos.dungeon.core.entity.Creature;
+import org.abos.dungeon.core.task.Task;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+/**
+ * Reads a plain save file, as written by {@link Dungeon#writeObject(java.io.DataOutputStream)} followed by
+ * {@link Player#writeObject(java.io.DataOutputStream)}, one record at a time without building the dungeon.
+ * Each call of {@link #next()} advances to the next record and returns its {@link Event},
+ * the getters then return the values of that record. The reader keeps only the current record,
+ * so it needs the same memory regardless of the size of the save.
+ * <p>
+ * The records come in the order they are saved in: a {@link Event#ROOM} per room, followed by a {@link Event#TASK}
+ * if the room has a task, then {@link Event#PLAYER}, a {@link Event#CLEARED_TASK} per cleared task,
+ * a {@link Event#CREATURE} per creature in the menagerie, {@link Event#INVENTORY}, an {@link Event#ITEM_STACK}
+ * per stack in the inventory and finally {@link Event#END}.
+ * Item names aren't looked up in the item registry, so the reader works without {@link org.abos.dungeon.core.entity.Item#init()}.
+ * If the reader is only used to find the records, the tasks can be skipped without decoding them,
+ * see {@link #SaveReader(DataInputStream, boolean)}.
+ * <p>
+ * Only the legacy plain format is supported. The game saves in the {@link IndexedSave indexed format} plus
+ * the {@link SaveJournal journal} of the turns since, whose blocks change rooms read long before,
+ * so they can't be streamed in the order of this reader. Such saves are read by {@link SaveJournal#load(java.nio.file.Path,
+ * java.util.function.Function, java.util.function.BiFunction)}, which still only reads the rooms that are accessed,
+ * and so are {@link BlockSave block saves} and {@link CompressedSave compressed saves}.
+ */
+public class SaveReader implements Closeable {
+
+    /**
+     * The kinds of records of a save.
+     */
+    public enum Event {
+        /**
+         * A room, see {@link #getRoomId()} and the following getters.
+         */
+        ROOM,
+        /**
+         * The task of the previous room, see {@link #getTask()}.
+         */
+        TASK,
+        /**
+         * The start of the player, see {@link #getCurrentRoomId()} and {@link #getHighestRoomNumber()}.
+         */
+        PLAYER,
+        /**
+         * The ID of a room whose task the player cleared, see {@link #getClearedTask()}.
+         */
+        CLEARED_TASK,
+        /**
+         * A creature in the menagerie of the player, see {@link #getCreature()}.
+         */
+        CREATURE,
+        /**
+         * The start of the inventory of the player, see {@link #getInventoryCapacity()} and {@link #getStackCapacity()}.
+         */
+        INVENTORY,
+        /**
+         * A stack of items in the inventory, see {@link #getItemName()} and {@link #getStackSize()}.
+         */
+        ITEM_STACK,
+        /**
+         * The end of the save.
+         */
+        END
+    }
+
+    /**
+     * The stream the save is read from.
+     */
+    protected final DataInputStream dis;
+
+    /**
+     * If the tasks are decoded, else they are skipped.
+     */
+    protected final boolean readTasks;
+
+    private Event event;
+
+    /**
+     * How many records of the current sequence are left, e.g. rooms or cleared tasks.
+     */
+    private int remaining;
+
+    /**
+     * How many stacks of the current item are left, while reading the inventory.
+     */
+    private int remainingStacks;
+
+    /**
+     * How many items are left, while reading the inventory.
+     */
+    private int remainingItems;
+
+    private boolean pendingTask;
+
+    private int roomId;
+    private int doorCount;
+    private boolean filled;
+    private int fromId;
+    private final int[] doors = new int[Room.MAX_DOORS];
+    private boolean rewardCollected;
+    private Task task;
+    private int currentRoomId;
+    private int highestRoomNumber;
+    private int clearedTask;
+    private Creature creature;
+    private int inventoryCapacity;
+    private int stackCapacity;
+    private String itemName;
+    private int stackSize;
+
+    /**
+     * Creates a new {@link SaveReader} reading from the start of the specified stream.
+     * @param dis the stream to read from, preferably buffered
+     * @throws NullPointerException If {@code dis} refers to {@code null}.
+     */
+    public SaveReader(final DataInputStream dis) {
+        this(dis, true);
+    }
+
+    /**
+     * Creates a new {@link SaveReader} reading from the start of the specified stream.
+     * @param dis the stream to read from, preferably buffered
+     * @param readTasks if the tasks are decoded; if not, they are skipped and no {@link Event#TASK} records are returned,
+     *                  but {@link #hasTask()} still tells which rooms have one
+     * @throws NullPointerException If {@code dis} refers to {@code null}.
+     */
+    public SaveReader(final DataInputStream dis, final boolean readTasks) {
+        this.dis = Objects.requireNonNull(dis);
+        this.readTasks = readTasks;
+    }
+
+    /**
+     * Advances to the next record.
+     * @return the kind of the new current record, not {@code null}
+     * @throws IOException If an I/O exception occurs or the save is malformed.
+     * @throws NoSuchElementException If {@link Event#END} has been returned already.
+     */
+    public Event next() throws IOException {
+        if (event == null) {
+            remaining = dis.readInt();
+            if (remaining == IndexedSave.MAGIC || remaining == BlockSave.MAGIC || remaining == CompressedSave.MAGIC) {
+                throw new IOException("Only plain save files can be streamed, this save has to be loaded!");
+            }
+            if (remaining < 0) {
+                throw new IOException("Not a plain save file!");
+            }
+            return event = remaining > 0 ? readRoom() : readPlayer();
+        }
+        return event = switch (event) {
+            case ROOM -> pendingTask && readTasks ? readTask() : nextAfterRoom();
+            case TASK -> nextAfterRoom();
+            case PLAYER, CLEARED_TASK -> remaining > 0 ? readClearedTask() : startMenagerie();
+            case CREATURE -> remaining > 0 ? readCreature() : readInventory();
+            case INVENTORY, ITEM_STACK -> readItemStack();
+            case END -> throw new NoSuchElementException("The save has been read completely!");
+        };
+    }
+
+    private Event nextAfterRoom() throws IOException {
+        return remaining > 0 ? readRoom() : readPlayer();
+    }
+
+    private Event readRoom() throws IOException {
+        remaining--;
+        roomId = dis.readInt();
+        doorCount = dis.readInt();
+        if (doorCount < Room.MIN_DOORS || doorCount > Room.MAX_DOORS) {
+            throw new IOException("Room " + roomId + " has an invalid door count!");
+        }
+        filled = !dis.readBoolean();
+        if (filled) {
+            for (int i = 0; i < doorCount; i++) {
+                doors[i] = dis.readInt();
+            }
+            fromId = doors[Room.RETURN_ID];
+        }
+        else {
+            fromId = dis.readInt();
+        }
+        rewardCollected = dis.readBoolean();
+        pendingTask = dis.readBoolean();
+        task = null;
+        if (pendingTask && !readTasks) {
+            // skipped right away, so the stream is at the next record like after any other room
+            Room.skipTask(dis);
+        }
+        return Event.ROOM;
+    }
+
+    private Event readTask() throws IOException {
+        pendingTask = false;
+        task = Room.readTask(dis);
+        return Event.TASK;
+    }
+
+    private Event readPlayer() throws IOException {
+        currentRoomId = dis.readInt();
+        highestRoomNumber = dis.readInt();
+        remaining = dis.readInt();
+        return Event.PLAYER;
+    }
+
+    private Event readClearedTask() throws IOException {
+        remaining--;
+        clearedTask = dis.readInt();
+        return Event.CLEARED_TASK;
+    }
+
+    private Event startMenagerie() throws IOException {
+        remaining = dis.readInt();
+        return remaining > 0 ? readCreature() : readInventory();
+    }
+
+    private Event readCreature() throws IOException {
+        remaining--;
+        creature = Creature.readObject(dis);
+        return Event.CREATURE;
+    }
+
+    private Event readInventory() throws IOException {
+        inventoryCapacity = dis.readInt();
+        stackCapacity = dis.readInt();
+        remainingItems = dis.readInt();
+        remainingStacks = 0;
+        return Event.INVENTORY;
+    }
+
+    private Event readItemStack() throws IOException {
+        while (remainingStacks == 0) {
+            if (remainingItems == 0) {
+                return Event.END;
+            }
+            remainingItems--;
+            itemName = dis.readUTF();
+            remainingStacks = dis.readInt();
+        }
+        remainingStacks--;
+        stackSize = dis.readInt();
+        return Event.ITEM_STACK;
+    }
+
+    private void check(final Event expected) {
+        if (event != expected) {
+            throw new IllegalStateException("The current record isn't a " + expected + " record!");
+        }
+    }
+
+    /**
+     * Returns the kind of the current record.
+     * @return the event returned by the last call of {@link #next()}, {@code null} before the first call
+     */
+    public Event getEvent() {
+        return event;
+    }
+
+    /**
+     * Returns the ID of the current room.
+     * @throws IllegalStateException If the current record isn't a {@link Event#ROOM}.
+     */
+    public int getRoomId() {
+        check(Event.ROOM);
+        return roomId;
+    }
+
+    /**
+     * Returns the door count of the current room.
+     * @throws IllegalStateException If the current record isn't a {@link Event#ROOM}.
+     */
+    public int getDoorCount() {
+        check(Event.ROOM);
+        return doorCount;
+    }
+
+    /**
+     * Returns if the doors of the current room have been filled.
+     * @throws IllegalStateException If the current record isn't a {@link Event#ROOM}.
+     */
+    public boolean isFilled() {
+        check(Event.ROOM);
+        return filled;
+    }
+
+    /**
+     * Returns the ID of the room the current room was entered from first.
+     * @throws IllegalStateException If the current record isn't a {@link Event#ROOM}.
+     */
+    public int getFromId() {
+        check(Event.ROOM);
+        return fromId;
+    }
+
+    /**
+     * Returns the room ID behind the specified door of the current room.
+     * @param door the index of the door
+     * @return the room ID or {@link Room#EXIT_ID}
+     * @throws IllegalStateException If the current record isn't a {@link Event#ROOM} or its doors haven't been filled.
+     * @throws IndexOutOfBoundsException If {@code door} isn't a valid index.
+     */
+    public int getDoor(final int door) {
+        check(Event.ROOM);
+        if (!filled) {
+            throw new IllegalStateException("Doors of room " + roomId + " haven't been filled!");
+        }
+        return doors[Objects.checkIndex(door, doorCount)];
+    }
+
+    /**
+     * Returns if the reward of the current room has been collected.
+     * @throws IllegalStateException If the current record isn't a {@link Event#ROOM}.
+     */
+    public boolean isRewardCollected() {
+        check(Event.ROOM);
+        return rewardCollected;
+    }
+
+    /**
+     * Returns if the current room has a task, which is the next record if the tasks are read.
+     * @throws IllegalStateException If the current record isn't a {@link Event#ROOM}.
+     */
+    public boolean hasTask() {
+        check(Event.ROOM);
+        return pendingTask;
+    }
+
+    /**
+     * Returns the task of the previous room.
+     * @throws IllegalStateException If the current record isn't a {@link Event#TASK}.
+     */
+    public Task getTask() {
+        check(Event.TASK);
+        return task;
+    }
+
+    /**
+     * Returns the ID of the room the player is in.
+     * @throws IllegalStateException If the current record isn't the {@link Event#PLAYER}.
+     */
+    public int getCurrentRoomId() {
+        check(Event.PLAYER);
+        return currentRoomId;
+    }
+
+    /**
+     * Returns the highest room number the player reached.
+     * @throws IllegalStateException If the current record isn't the {@link Event#PLAYER}.
+     */
+    public int getHighestRoomNumber() {
+        check(Event.PLAYER);
+        return highestRoomNumber;
+    }
+
+    /**
+     * Returns the ID of the room whose task has been cleared.
+     * @throws IllegalStateException If the current record isn't a {@link Event#CLEARED_TASK}.
+     */
+    public int getClearedTask() {
+        check(Event.CLEARED_TASK);
+        return clearedTask;
+    }
+
+    /**
+     * Returns the current creature.
+     * @throws IllegalStateException If the current record isn't a {@link Event#CREATURE}.
+     */
+    public Creature getCreature() {
+        check(Event.CREATURE);
+        return creature;
+    }
+
+    /**
+     * Returns how many stacks the inventory can hold.
+     * @throws IllegalStateException If the current record isn't the {@link Event#INVENTORY}.
+     * @see Inventory#Inventory(int, int)
+     */
+    public int getInventoryCapacity() {
+        check(Event.INVENTORY);
+        return inventoryCapacity;
+    }
+
+    /**
+     * Returns how many items a stack of the inventory can hold.
+     * @throws IllegalStateException If the current record isn't the {@link Event#INVENTORY}.
+     * @see Inventory#Inventory(int, int)
+     */
+    public int getStackCapacity() {
+        check(Event.INVENTORY);
+        return stackCapacity;
+    }
+
+    /**
+     * Returns the name of the item of the current stack.
+     * @throws IllegalStateException If the current record isn't an {@link Event#ITEM_STACK}.
+     */
+    public String getItemName() {
+        check(Event.ITEM_STACK);
+        return itemName;
+    }
+
+    /**
+     * Returns the amount of items in the current stack.
+     * @throws IllegalStateException If the current record isn't an {@link Event#ITEM_STACK}.
+     */
+    public int getStackSize() {
+        check(Event.ITEM_STACK);
+        return stackSize;
+    }
+
+    @Override
+    public void close() throws IOException {
+        dis.close();
+    }
+}
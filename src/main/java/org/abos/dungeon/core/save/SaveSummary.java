@@ -0,0 +1,13 @@
+package org.abos.dungeon.core.save;
+
+/**
+ * The summary in the header of an indexed save file, readable without loading the save, see {@link IndexedSave#readSummary(java.nio.file.Path)}.
+ * @param version the version of the save format
+ * @param journalGeneration the first journal generation not contained in the save, see {@link SaveJournal}
+ * @param roomCount how many rooms the dungeon has
+ * @param highestRoomNumber the highest ID of the rooms the player cleared
+ * @param clearedTaskCount how many tasks the player cleared
+ * @param menagerieSize how many creatures the player collected
+ */
+public record SaveSummary(int version, int journalGeneration, int roomCount, int highestRoomNumber, int clearedTaskCount, int menagerieSize) {
+}
@@ -0,0 +1,119 @@
+package org.abos.dungeon.core.save;
+
+import org.abos.common.CompactInputStream;
+import org.abos.dungeon.core.Room;
+import org.abos.dungeon.core.RoomStore;
+import org.abos.dungeon.core.task.Task;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+
+/**
+ * A decoded room of a save file.
+ */
+/* package private */ final class SavedRoom {
+
+    /* package private */ int fromId;
+    /* package private */ int doorCount;
+    /**
+     * {@code null} while the doors are unfilled.
+     */
+    /* package private */ int[] doors;
+    /* package private */ boolean rewardCollected;
+    /* package private */ Task task;
+
+    /**
+     * Adds this room to the specified store as its next room.
+     */
+    /* package private */ void addTo(final RoomStore rooms) {
+        final int id = rooms.add(fromId, doorCount, task);
+        if (doors != null) {
+            rooms.setDoors(id, doors);
+        }
+        rooms.setRewardCollected(id, rewardCollected);
+    }
+
+    /**
+     * Decodes the rooms of one version of a save format.
+     */
+    @FunctionalInterface
+    /* package private */ interface Decoder {
+
+        /**
+         * Decodes the room with the specified ID from the stream, which starts at the room.
+         */
+        SavedRoom decode(int id, CompactInputStream cis) throws IOException;
+
+        /**
+         * Returns a decoder upgrading the rooms decoded by this one with the specified upgrader.
+         */
+        default Decoder andThen(final Upgrader upgrader) {
+            return (id, cis) -> upgrader.upgrade(id, decode(id, cis));
+        }
+    }
+
+    /**
+     * Upgrades the decoded rooms of one version of a save format to the next version.
+     */
+    @FunctionalInterface
+    /* package private */ interface Upgrader {
+
+        /**
+         * Keeps the rooms as they are, for versions which only changed how the rooms are encoded.
+         */
+        Upgrader NONE = (id, room) -> room;
+
+        /**
+         * Upgrades the decoded room with the specified ID.
+         */
+        SavedRoom upgrade(int id, SavedRoom room);
+    }
+
+    /**
+     * Reads a room in the format of {@link Room#writeObject(java.io.DataOutputStream)}.
+     */
+    /* package private */ static SavedRoom readObject(final int id, final DataInputStream dis) throws IOException {
+        final SavedRoom room = new SavedRoom();
+        if (dis.readInt() != id) {
+            throw new IOException("Room index is corrupt at room " + id + "!");
+        }
+        room.doorCount = dis.readInt();
+        if (dis.readBoolean()) {
+            room.fromId = dis.readInt();
+        }
+        else {
+            room.doors = new int[room.doorCount];
+            for (int i = 0; i < room.doorCount; i++) {
+                room.doors[i] = dis.readInt();
+            }
+            room.fromId = room.doors[Room.RETURN_ID];
+        }
+        room.rewardCollected = dis.readBoolean();
+        room.task = dis.readBoolean() ? Room.readTask(dis) : null;
+        return room;
+    }
+
+    /**
+     * Reads a room in the format of {@link Room#writeCompact(org.abos.common.CompactOutputStream)}.
+     */
+    /* package private */ static SavedRoom readCompact(final int id, final CompactInputStream cis) throws IOException {
+        final SavedRoom room = new SavedRoom();
+        final int flags = cis.readUnsignedByte();
+        room.rewardCollected = (flags & 2) != 0;
+        room.doorCount = cis.readUnsignedByte();
+        if ((flags & 1) == 0) {
+            room.fromId = id + cis.readSignedVarInt();
+        }
+        else {
+            room.doors = new int[room.doorCount];
+            int previous = id;
+            for (int i = 0; i < room.doorCount; i++) {
+                previous += cis.readSignedVarInt();
+                room.doors[i] = previous;
+            }
+            room.fromId = room.doors[Room.RETURN_ID];
+        }
+        room.task = Room.readCompactTask(cis);
+        return room;
+    }
+}
@@ -0,0 +1,154 @@
+package org.abos.dungeon.core.save;
+
+import org.abos.dungeon.core.ArrayRoomStore;
+import org.abos.dungeon.core.Dungeon;
+import org.abos.dungeon.core.Inventory;
+import org.abos.dungeon.core.Player;
+import org.abos.dungeon.core.Room;
+import org.abos.dungeon.core.RoomStore;
+import org.abos.dungeon.core.task.Task;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Objects;
+import java.util.function.BiFunction;
+
+/**
+ * A {@link RoomStore} reading the rooms of a save file on demand, in whatever version of the format the file has.
+ * Each room is decoded the first time it is accessed and kept afterwards, changes are only kept in memory.
+ * Rooms added after loading are kept in an {@link ArrayRoomStore}. After closing, only the rooms decoded before can be accessed.
+ * <p>
+ * The I/O exceptions of the accessors are rethrown as {@link UncheckedIOException}.
+ * @see IndexedRoomStore
+ * @see PlainRoomStore
+ */
+public abstract class SavedRoomStore implements RoomStore, Closeable {
+
+    /**
+     * How many rooms are in the save file.
+     */
+    protected final int savedRoomCount;
+
+    /**
+     * The first journal generation not contained in the save file.
+     */
+    protected final int journalGeneration;
+
+    /**
+     * The rooms added after loading, their IDs are offset by {@link #savedRoomCount}.
+     */
+    protected final ArrayRoomStore added = new ArrayRoomStore();
+
+    /* package private */ SavedRoomStore(final int savedRoomCount, final int journalGeneration) {
+        this.savedRoomCount = savedRoomCount;
+        this.journalGeneration = journalGeneration;
+    }
+
+    /**
+     * Returns the first journal generation not contained in the save file.
+     */
+    public int getJournalGeneration() {
+        return journalGeneration;
+    }
+
+    /**
+     * Returns if the save file is in the current version of the indexed format, so it needn't be rewritten.
+     */
+    public abstract boolean isCurrentFormat();
+
+    /**
+     * Reads the player of the save file.
+     * @param dungeon the dungeon built on this store
+     * @param constructor a constructor for the player subclass, {@code null} to skip the player
+     * @return a new {@link Player} instance, {@code null} if {@code constructor} is {@code null}
+     * @throws IOException If an I/O exception occurs.
+     */
+    /* package private */ abstract Player readPlayer(Dungeon dungeon, BiFunction<Room, Inventory, Player> constructor) throws IOException;
+
+    /**
+     * Returns the specified room of the save file, decoding it if necessary.
+     * @throws UncheckedIOException If an I/O exception occurs.
+     */
+    /* package private */ abstract SavedRoom getSaved(int id);
+
+    private boolean isSaved(final int id) {
+        return id < savedRoomCount;
+    }
+
+    @Override
+    public int size() {
+        return savedRoomCount + added.size();
+    }
+
+    @Override
+    public int add(final int fromId, final int doorCount, final Task task) {
+        if (isFull()) {
+            throw new IllegalStateException("Room store is full!");
+        }
+        return savedRoomCount + added.add(fromId, doorCount, task);
+    }
+
+    @Override
+    public int getFromId(final int id) {
+        return isSaved(id) ? getSaved(id).fromId : added.getFromId(id - savedRoomCount);
+    }
+
+    @Override
+    public int getDoorCount(final int id) {
+        return isSaved(id) ? getSaved(id).doorCount : added.getDoorCount(id - savedRoomCount);
+    }
+
+    @Override
+    public boolean isFilled(final int id) {
+        return isSaved(id) ? getSaved(id).doors != null : added.isFilled(id - savedRoomCount);
+    }
+
+    @Override
+    public int getDoor(final int id, final int door) {
+        if (!isSaved(id)) {
+            return added.getDoor(id - savedRoomCount, door);
+        }
+        final int[] doors = getSaved(id).doors;
+        if (doors == null) {
+            throw new IndexOutOfBoundsException("Doors of room " + id + " haven't been filled yet!");
+        }
+        return doors[Objects.checkIndex(door, doors.length)];
+    }
+
+    @Override
+    public void setDoors(final int id, final int[] doors) {
+        if (!isSaved(id)) {
+            added.setDoors(id - savedRoomCount, doors);
+            return;
+        }
+        final SavedRoom room = getSaved(id);
+        if (room.doors != null) {
+            throw new IllegalStateException("Doors of room " + id + " have been filled already!");
+        }
+        if (doors.length != room.doorCount) {
+            throw new IllegalArgumentException("Door count doesn't match!");
+        }
+        room.doors = doors.clone();
+    }
+
+    @Override
+    public Task getTask(final int id) {
+        return isSaved(id) ? getSaved(id).task : added.getTask(id - savedRoomCount);
+    }
+
+    @Override
+    public boolean isRewardCollected(final int id) {
+        return isSaved(id) ? getSaved(id).rewardCollected : added.isRewardCollected(id - savedRoomCount);
+    }
+
+    @Override
+    public void setRewardCollected(final int id, final boolean rewardCollected) {
+        if (isSaved(id)) {
+            getSaved(id).rewardCollected = rewardCollected;
+        }
+        else {
+            added.setRewardCollected(id - savedRoomCount, rewardCollected);
+        }
+    }
+}
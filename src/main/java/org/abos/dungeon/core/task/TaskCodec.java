@@ -0,0 +1,67 @@
+package org.abos.dungeon.core.task;
+
+import org.abos.common.CompactInputStream;
+import org.abos.common.CompactOutputStream;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Writes and reads the tasks of one type, see {@link TaskCodecs#register(int, Class, TaskCodec)}.
+ * Only {@link #read(DataInputStream)} has to be implemented, e.g. by a method reference to the static {@code readObject}
+ * method of the task, as writing defaults to {@link Task#writeObject(DataOutputStream)}.
+ * The compact format defaults to the plain one, skipping defaults to reading.
+ * @param <T> the type of the tasks
+ */
+@FunctionalInterface
+public interface TaskCodec<T extends Task> {
+
+    /**
+     * Reads a task written by {@link #write(DataOutputStream, Task)}.
+     * @param dis the {@link DataInputStream} to read from
+     * @return a new task, not {@code null}
+     * @throws IOException If an I/O exception occurs.
+     */
+    T read(DataInputStream dis) throws IOException;
+
+    /**
+     * Skips a task written by {@link #write(DataOutputStream, Task)} without creating it,
+     * e.g. while scanning a save. Override this if the task can be skipped faster than it is read.
+     * @param dis the {@link DataInputStream} to read from
+     * @throws IOException If an I/O exception occurs.
+     */
+    default void skip(final DataInputStream dis) throws IOException {
+        read(dis);
+    }
+
+    /**
+     * Writes the specified task without its type.
+     * @param dos the data output stream
+     * @param task the task to write, not {@code null}
+     * @throws IOException If an I/O exception occurs.
+     */
+    default void write(final DataOutputStream dos, final T task) throws IOException {
+        task.writeObject(dos);
+    }
+
+    /**
+     * Reads a task written by {@link #writeCompact(CompactOutputStream, Task)}.
+     * @param cis the {@link CompactInputStream} to read from
+     * @return a new task, not {@code null}
+     * @throws IOException If an I/O exception occurs.
+     */
+    default T readCompact(final CompactInputStream cis) throws IOException {
+        return read(cis);
+    }
+
+    /**
+     * Writes the specified task without its type into a {@link CompactOutputStream}.
+     * @param cos the compact output stream
+     * @param task the task to write, not {@code null}
+     * @throws IOException If an I/O exception occurs.
+     */
+    default void writeCompact(final CompactOutputStream cos, final T task) throws IOException {
+        write(cos, task);
+    }
+}
@@ -0,0 +1,221 @@
+package org.abos.dungeon.core.task;
+
+import org.abos.common.CompactInputStream;
+import org.abos.common.CompactOutputStream;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * The registry of the {@link TaskCodec codecs} for all types of {@link Task}, so new types can be saved
+ * without changing the save formats. Each type is registered with a small ID, which identifies it in the compact format,
+ * while the plain format identifies it by its simple class name. Either way finding the codec takes constant time.
+ * {@link Information} and {@link Question} are registered from the start.
+ * <p>
+ * Types should be registered once at startup before any saves are read or written, and their IDs must never change,
+ * as they are written into the saves.
+ */
+public final class TaskCodecs {
+
+    /**
+     * The ID written for rooms without a task in the compact format.
+     */
+    public static final int NO_TASK_ID = 0;
+
+    /**
+     * The highest ID a type can be registered with.
+     */
+    public static final int MAX_ID = Byte.MAX_VALUE;
+
+    /**
+     * A registered codec.
+     */
+    private record Entry(int id, String name, TaskCodec<Task> codec) {
+    }
+
+    private static final Entry[] BY_ID = new Entry[MAX_ID + 1];
+
+    private static final Map<String, Entry> BY_NAME = new HashMap<>();
+
+    private static final Map<Class<?>, Entry> BY_TYPE = new HashMap<>();
+
+    static {
+        register(1, Information.class, new TaskCodec<>() {
+            @Override
+            public Information read(final DataInputStream dis) throws IOException {
+                return Information.readObject(dis);
+            }
+
+            @Override
+            public void skip(final DataInputStream dis) throws IOException {
+                skipString(dis);
+            }
+
+            @Override
+            public Information readCompact(final CompactInputStream cis) throws IOException {
+                return new Information(cis.readTableString());
+            }
+
+            @Override
+            public void writeCompact(final CompactOutputStream cos, final Information task) throws IOException {
+                // there are only a few different texts
+                cos.writeTableString(task.getText());
+            }
+        });
+        register(2, Question.class, new TaskCodec<>() {
+            @Override
+            public Question read(final DataInputStream dis) throws IOException {
+                return Question.readObject(dis);
+            }
+
+            @Override
+            public void skip(final DataInputStream dis) throws IOException {
+                skipString(dis);
+                skipString(dis);
+            }
+        });
+    }
+
+    private TaskCodecs() {
+        /* No instantiation. */
+    }
+
+    /**
+     * Registers the codec for the specified type of tasks. Subclasses of the type are written by the same codec
+     * unless they are registered themselves, so they are read as the type.
+     * @param id the ID of the type in the compact format, between 1 and {@link #MAX_ID}
+     * @param type the type of the tasks, its simple class name identifies it in the plain format
+     * @param codec the codec for the type
+     * @param <T> the type of the tasks
+     * @throws NullPointerException If {@code type} or {@code codec} refer to {@code null}.
+     * @throws IllegalArgumentException If {@code id} is out of range or the ID or the simple class name is taken already.
+     */
+    @SuppressWarnings("unchecked")
+    public static synchronized <T extends Task> void register(final int id, final Class<T> type, final TaskCodec<T> codec) {
+        Objects.requireNonNull(codec);
+        if (id <= NO_TASK_ID || id > MAX_ID) {
+            throw new IllegalArgumentException("Task type ID out of range!");
+        }
+        if (BY_ID[id] != null) {
+            throw new IllegalArgumentException("Task type ID " + id + " is taken by " + BY_ID[id].name + " already!");
+        }
+        final String name = type.getSimpleName();
+        if (BY_NAME.containsKey(name)) {
+            throw new IllegalArgumentException("Task type " + name + " is registered already!");
+        }
+        final Entry entry = new Entry(id, name, (TaskCodec<Task>)codec);
+        BY_ID[id] = entry;
+        BY_NAME.put(name, entry);
+        BY_TYPE.put(type, entry);
+    }
+
+    /**
+     * Finds the entry for the type of the specified task, looking at its superclasses if it isn't registered itself.
+     */
+    private static Entry entryOf(final Task task) {
+        final Entry entry = BY_TYPE.get(task.getClass());
+        if (entry != null) {
+            return entry;
+        }
+        for (Class<?> type = task.getClass().getSuperclass(); type != null; type = type.getSuperclass()) {
+            final Entry inherited = BY_TYPE.get(type);
+            if (inherited != null) {
+                return inherited;
+            }
+        }
+        throw new IllegalArgumentException("Task type " + task.getClass().getSimpleName() + " isn't registered!");
+    }
+
+    /**
+     * Writes the specified task together with its type name into a {@link DataOutputStream}.
+     * @param dos the data output stream
+     * @param task the task to write, not {@code null}
+     * @throws IOException If an I/O exception occurs.
+     * @throws IllegalArgumentException If the type of the task isn't registered.
+     * @see #readTask(DataInputStream)
+     */
+    public static void writeTask(final DataOutputStream dos, final Task task) throws IOException {
+        final Entry entry = entryOf(task);
+        dos.writeUTF(entry.name);
+        entry.codec.write(dos, task);
+    }
+
+    /**
+     * Reads a task written by {@link #writeTask(DataOutputStream, Task)}.
+     * @param dis the {@link DataInputStream} to read from
+     * @return a new task, not {@code null}
+     * @throws IOException If an I/O exception occurs or the type name is unknown.
+     */
+    public static Task readTask(final DataInputStream dis) throws IOException {
+        final String name = dis.readUTF();
+        final Entry entry = BY_NAME.get(name);
+        if (entry == null) {
+            throw new IOException("Unknown task type " + name + " encountered!");
+        }
+        return entry.codec.read(dis);
+    }
+
+    /**
+     * Skips a task written by {@link #writeTask(DataOutputStream, Task)} without creating it.
+     * @param dis the {@link DataInputStream} to read from
+     * @throws IOException If an I/O exception occurs or the type name is unknown.
+     * @see TaskCodec#skip(DataInputStream)
+     */
+    public static void skipTask(final DataInputStream dis) throws IOException {
+        final String name = dis.readUTF();
+        final Entry entry = BY_NAME.get(name);
+        if (entry == null) {
+            throw new IOException("Unknown task type " + name + " encountered!");
+        }
+        entry.codec.skip(dis);
+    }
+
+    /**
+     * Skips a string written by {@link DataOutputStream#writeUTF(String)} without decoding it.
+     * @param dis the {@link DataInputStream} to read from
+     * @throws IOException If an I/O exception occurs.
+     */
+    public static void skipString(final DataInputStream dis) throws IOException {
+        dis.skipNBytes(dis.readUnsignedShort());
+    }
+
+    /**
+     * Writes the specified task with a one byte ID for its type into a {@link CompactOutputStream}.
+     * @param cos the compact output stream
+     * @param task the task to write, can be {@code null}
+     * @throws IOException If an I/O exception occurs.
+     * @throws IllegalArgumentException If the type of the task isn't registered.
+     * @see #readCompactTask(CompactInputStream)
+     */
+    public static void writeCompactTask(final CompactOutputStream cos, final Task task) throws IOException {
+        if (task == null) {
+            cos.writeByte(NO_TASK_ID);
+            return;
+        }
+        final Entry entry = entryOf(task);
+        cos.writeByte(entry.id);
+        entry.codec.writeCompact(cos, task);
+    }
+
+    /**
+     * Reads a task written by {@link #writeCompactTask(CompactOutputStream, Task)}.
+     * @param cis the {@link CompactInputStream} to read from
+     * @return a new task, can be {@code null}
+     * @throws IOException If an I/O exception occurs or the type ID is unknown.
+     */
+    public static Task readCompactTask(final CompactInputStream cis) throws IOException {
+        final int id = cis.readByte();
+        if (id == NO_TASK_ID) {
+            return null;
+        }
+        final Entry entry = id > NO_TASK_ID ? BY_ID[id] : null;
+        if (entry == null) {
+            throw new IOException("Unknown task type ID " + id + " encountered!");
+        }
+        return entry.codec.readCompact(cis);
+    }
+}
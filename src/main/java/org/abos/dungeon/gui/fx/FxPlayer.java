@@ -90,4 +90,18 @@ public class FxPlayer extends Player {
         // TODO implement
         throw new UnsupportedOperationException("Not yet implemented!");
     }
+
+    @Override
+    protected Room selectRoom(final String msg) {
+        final Optional<String> input = new FxQuestion(msg).showAndWait();
+        if (input.isEmpty()) {
+            return null;
+        }
+        try {
+            return currentRoom.getDungeon().getRoom(Integer.parseInt(input.get().trim()));
+        }
+        catch (NumberFormatException | IndexOutOfBoundsException ex) {
+            return null;
+        }
+    }
 }
@@ -3,6 +3,13 @@ package org.abos.common;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 /**
  * Tests {@link MathUtil}.
  */
@@ -76,4 +83,98 @@ public class TestMathUtil {
         Assertions.assertFalse(MathUtil.isFibonacci(196419));
     }
     
+    /**
+     * Tests {@link MathUtil#isPrime(int)} and {@link MathUtil#isFibonacci(int)} from several threads at once,
+     * as they share their caches.
+     */
+    @Test
+    public void testCachesFromManyThreads() throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<Integer>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                final int seed = t;
+                futures.add(executor.submit(() -> {
+                    final Random random = new Random(seed);
+                    int wrong = 0;
+                    for (int i = 0; i < 2_000; i++) {
+                        final int n = random.nextInt(200_000);
+                        if (MathUtil.isPrime(n) != isPrimeSlowly(n) || MathUtil.isFibonacci(n) != isFibonacciSlowly(n)) {
+                            wrong++;
+                        }
+                    }
+                    return wrong;
+                }));
+            }
+            for (Future<Integer> future : futures) {
+                Assertions.assertEquals(0, (int)future.get());
+            }
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    private static boolean isPrimeSlowly(final int n) {
+        if (n < 2) {
+            return false;
+        }
+        for (int d = 2; (long)d * d <= n; d++) {
+            if (n % d == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isFibonacciSlowly(final int n) {
+        int a = 1;
+        int b = 1;
+        while (b < n) {
+            final int c = a + b;
+            a = b;
+            b = c;
+        }
+        return n >= 1 && b == n;
+    }
+
+    /**
+     * Tests {@link MathUtil#nextIntExcluding(Random, int, int...)}.
+     */
+    @Test
+    public void testNextIntExcluding() {
+        final Random random = new Random(0);
+        Assertions.assertThrows(IllegalArgumentException.class, () -> MathUtil.nextIntExcluding(random, 1, 0));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> MathUtil.nextIntExcluding(random, 2, 1, 0, 1));
+        Assertions.assertEquals(1, MathUtil.nextIntExcluding(random, 2, 0));
+        Assertions.assertEquals(0, MathUtil.nextIntExcluding(random, 2, 1, 1, -1, 5));
+        final int[] hits = new int[6];
+        for (int i = 0; i < 6000; i++) {
+            hits[MathUtil.nextIntExcluding(random, hits.length, 4, 1, 4)]++;
+        }
+        Assertions.assertEquals(0, hits[1]);
+        Assertions.assertEquals(0, hits[4]);
+        for (int i : new int[] {0, 2, 3, 5}) {
+            Assertions.assertTrue(hits[i] > 1300 && hits[i] < 1700);
+        }
+    }
+
+    /**
+     * Tests {@link MathUtil#hashToInt(long, int)} and {@link MathUtil#hashToDouble(long)}.
+     */
+    @Test
+    public void testHashMapping() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> MathUtil.hashToInt(1L, 0));
+        Assertions.assertEquals(MathUtil.hash(3L, 1, 2), MathUtil.hash(3L, 1, 2));
+        Assertions.assertNotEquals(MathUtil.hash(3L, 1, 2), MathUtil.hash(3L, 2, 1));
+        for (int i = 0; i < 1000; i++) {
+            final long hash = MathUtil.hash(0L, i, -i);
+            final int value = MathUtil.hashToInt(hash, 7);
+            Assertions.assertTrue(value >= 0 && value < 7);
+            final double unit = MathUtil.hashToDouble(hash);
+            Assertions.assertTrue(unit >= 0d && unit < 1d);
+        }
+        Assertions.assertEquals(0, MathUtil.hashToInt(Long.MIN_VALUE, 1));
+    }
+
 }
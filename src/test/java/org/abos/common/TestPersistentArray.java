@@ -0,0 +1,115 @@
+package org.abos.common;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Tests {@link PersistentArray}.
+ */
+public class TestPersistentArray {
+
+    private static List<Integer> differences(final PersistentArray<?> a, final PersistentArray<?> b) {
+        final List<Integer> result = new ArrayList<>();
+        @SuppressWarnings("unchecked")
+        final PersistentArray<Object> first = (PersistentArray<Object>)a;
+        @SuppressWarnings("unchecked")
+        final PersistentArray<Object> second = (PersistentArray<Object>)b;
+        PersistentArray.forEachDifference(first, second, result::add);
+        return result;
+    }
+
+    /**
+     * Tests that modifications return new arrays and leave the old ones as they were,
+     * across several levels of the tree.
+     */
+    @Test
+    public void testVersions() {
+        final Random random = new Random(0);
+        final List<PersistentArray<Integer>> versions = new ArrayList<>();
+        final List<List<Integer>> expected = new ArrayList<>();
+        PersistentArray<Integer> array = PersistentArray.empty();
+        final List<Integer> list = new ArrayList<>();
+        for (int i = 0; i < 50_000; i++) {
+            if (list.isEmpty() || random.nextInt(3) == 0) {
+                array = array.append(i);
+                list.add(i);
+            }
+            else {
+                final int index = random.nextInt(list.size());
+                array = array.set(index, -i);
+                list.set(index, -i);
+            }
+            if (i % 5_000 == 0) {
+                versions.add(array);
+                expected.add(new ArrayList<>(list));
+            }
+        }
+        versions.add(array);
+        expected.add(list);
+        for (int v = 0; v < versions.size(); v++) {
+            Assertions.assertEquals(expected.get(v).size(), versions.get(v).size());
+            for (int index = 0; index < expected.get(v).size(); index++) {
+                Assertions.assertEquals(expected.get(v).get(index), versions.get(v).get(index));
+            }
+        }
+        Assertions.assertEquals(0, PersistentArray.empty().size());
+        final PersistentArray<Integer> last = array;
+        Assertions.assertThrows(IndexOutOfBoundsException.class, () -> last.get(-1));
+        Assertions.assertThrows(IndexOutOfBoundsException.class, () -> last.get(last.size()));
+        Assertions.assertThrows(IndexOutOfBoundsException.class, () -> last.set(last.size(), 0));
+    }
+
+    /**
+     * Tests that setting an equal element keeps the array, even if the element is another object.
+     */
+    @Test
+    public void testSetEqual() {
+        final PersistentArray<Long> array = PersistentArray.<Long>empty().append(1_000_000L).append(null);
+        Assertions.assertSame(array, array.set(0, Long.valueOf(1_000_000L)));
+        Assertions.assertSame(array, array.set(1, null));
+        Assertions.assertNotSame(array, array.set(0, 1_000_001L));
+        Assertions.assertNotSame(array, array.set(1, 0L));
+    }
+
+    /**
+     * Tests {@link PersistentArray#forEachDifference(PersistentArray, PersistentArray, java.util.function.IntConsumer)}
+     * against comparing all elements.
+     */
+    @Test
+    public void testForEachDifference() {
+        final Random random = new Random(1);
+        PersistentArray<Long> base = PersistentArray.empty();
+        for (long i = 0; i < 2_000; i++) {
+            base = base.append(i * 1_000);
+        }
+        PersistentArray<Long> changed = base;
+        for (int i = 0; i < 100; i++) {
+            final int index = random.nextInt(changed.size());
+            // set back to the same value as a new object half of the time
+            changed = changed.set(index, random.nextBoolean() ? Long.valueOf(index * 1_000L) : -1L);
+        }
+        for (int i = 0; i < 1_500; i++) {
+            changed = changed.append((long)i);
+        }
+        final List<Integer> expected = new ArrayList<>();
+        for (int index = 0; index < changed.size(); index++) {
+            if (index >= base.size() || !base.get(index).equals(changed.get(index))) {
+                expected.add(index);
+            }
+        }
+        Assertions.assertEquals(expected, differences(base, changed));
+        Assertions.assertEquals(expected, differences(changed, base));
+        Assertions.assertEquals(List.of(), differences(changed, changed));
+        Assertions.assertEquals(List.of(0, 1), differences(PersistentArray.empty(), PersistentArray.empty().append(null).append(null)));
+        // arrays built independently with equal elements don't differ
+        PersistentArray<Long> rebuilt = PersistentArray.empty();
+        for (int index = 0; index < changed.size(); index++) {
+            rebuilt = rebuilt.append(changed.get(index) == null ? null : Long.valueOf(changed.get(index)));
+        }
+        Assertions.assertEquals(List.of(), differences(rebuilt, changed));
+    }
+}
@@ -0,0 +1,81 @@
+package org.abos.common;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+/**
+ * Tests {@link PersistentIntSet}.
+ */
+public class TestPersistentIntSet {
+
+    /**
+     * Tests adding and removing against a {@link TreeSet}.
+     */
+    @Test
+    public void testAddAndRemove() {
+        final Random random = new Random(0);
+        final PersistentIntSet set = new PersistentIntSet();
+        final TreeSet<Integer> expected = new TreeSet<>();
+        for (int i = 0; i < 50_000; i++) {
+            final int value = random.nextInt(100_000);
+            if (random.nextInt(4) == 0) {
+                Assertions.assertEquals(expected.remove(value), set.remove(value));
+            }
+            else {
+                Assertions.assertEquals(expected.add(value), set.add(value));
+            }
+        }
+        Assertions.assertEquals(expected.size(), set.size());
+        Assertions.assertEquals(new ArrayList<>(expected), new ArrayList<>(set));
+        Assertions.assertFalse(set.contains(-1));
+        Assertions.assertFalse(set.contains("0"));
+        Assertions.assertFalse(set.remove(-1));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> set.add(-1));
+        set.clear();
+        Assertions.assertTrue(set.isEmpty());
+        Assertions.assertFalse(set.iterator().hasNext());
+    }
+
+    /**
+     * Tests that copies and assigned sets are independent of the original.
+     */
+    @Test
+    public void testCopy() {
+        final PersistentIntSet set = new PersistentIntSet();
+        set.add(3);
+        set.add(64);
+        final PersistentIntSet copy = set.copy();
+        copy.add(200);
+        copy.remove(3);
+        Assertions.assertEquals(List.of(3, 64), new ArrayList<>(set));
+        Assertions.assertEquals(List.of(64, 200), new ArrayList<>(copy));
+        final PersistentIntSet assigned = new PersistentIntSet();
+        assigned.add(1);
+        assigned.assign(copy);
+        copy.clear();
+        Assertions.assertEquals(List.of(64, 200), new ArrayList<>(assigned));
+        Assertions.assertEquals(2, assigned.size());
+    }
+
+    /**
+     * Tests that iterating isn't affected by changes made meanwhile.
+     */
+    @Test
+    public void testIterateWhileChanging() {
+        final PersistentIntSet set = new PersistentIntSet();
+        set.add(1);
+        set.add(100);
+        final List<Integer> iterated = new ArrayList<>();
+        for (int i : set) {
+            iterated.add(i);
+            set.add(i + 1_000);
+        }
+        Assertions.assertEquals(List.of(1, 100), iterated);
+        Assertions.assertEquals(4, set.size());
+    }
+}
@@ -0,0 +1,66 @@
+package org.abos.common;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ConcurrentModificationException;
+import java.util.List;
+
+/**
+ * Tests {@link PersistentList}.
+ */
+public class TestPersistentList {
+
+    /**
+     * Tests the list operations.
+     */
+    @Test
+    public void testList() {
+        final PersistentList<String> list = new PersistentList<>();
+        Assertions.assertTrue(list.isEmpty());
+        list.add("a");
+        list.add("b");
+        list.add(null);
+        Assertions.assertEquals(List.of("a", "b"), list.subList(0, 2));
+        Assertions.assertEquals(3, list.size());
+        Assertions.assertEquals("b", list.set(1, "c"));
+        Assertions.assertEquals("c", list.get(1));
+        Assertions.assertNull(list.get(2));
+        Assertions.assertEquals(1, list.indexOf("c"));
+        Assertions.assertThrows(IndexOutOfBoundsException.class, () -> list.get(3));
+        Assertions.assertThrows(UnsupportedOperationException.class, () -> list.remove(0));
+        list.clear();
+        Assertions.assertTrue(list.isEmpty());
+    }
+
+    /**
+     * Tests that copies and assigned lists are independent of the original.
+     */
+    @Test
+    public void testCopy() {
+        final PersistentList<String> list = new PersistentList<>();
+        list.add("a");
+        final PersistentList<String> copy = list.copy();
+        copy.add("b");
+        copy.set(0, "c");
+        Assertions.assertEquals(List.of("a"), list);
+        Assertions.assertEquals(List.of("c", "b"), copy);
+        list.assign(copy);
+        copy.clear();
+        Assertions.assertEquals(List.of("c", "b"), list);
+    }
+
+    /**
+     * Tests that growing the list while iterating it fails fast.
+     */
+    @Test
+    public void testConcurrentModification() {
+        final PersistentList<String> list = new PersistentList<>();
+        list.add("a");
+        Assertions.assertThrows(ConcurrentModificationException.class, () -> {
+            for (String s : list) {
+                list.add(s);
+            }
+        });
+    }
+}
@@ -0,0 +1,87 @@
+package org.abos.dungeon.core;
+
+import org.abos.dungeon.core.task.Information;
+import org.abos.dungeon.core.task.Task;
+
+import java.util.Random;
+
+/**
+ * Benchmarks {@link Room#fillDoors()} and {@link Dungeon#getRandomGeneratedRoom(Room...)}
+ * on dungeons from 2 up to 10 million rooms. This is no unit test, run {@link #main(String[])} manually,
+ * preferably with a heap of at least 2 GB.
+ */
+public class DoorFillingBenchmark {
+
+    /**
+     * The dungeon sizes to benchmark.
+     */
+    private static final int[] SIZES = {2, 10, 100, 1_000, 10_000, 100_000, 1_000_000, 10_000_000};
+
+    /**
+     * How many random back links are drawn per size.
+     */
+    private static final int DRAWS = 2_000_000;
+
+    /**
+     * How many rooms get their doors filled per size.
+     */
+    private static final int FILLS = 200_000;
+
+    /**
+     * Creates a dungeon with a trivial task and no rewards, so only the room generation is measured.
+     */
+    private static Dungeon createDungeon(final Random random) {
+        final Task task = new Information("Benchmark");
+        return new Dungeon(random, roomNumber -> task, (roomNumber, player) -> null);
+    }
+
+    /**
+     * Fills rooms in order of their IDs until the dungeon has at least the specified size.
+     * @return the ID of the first room with unfilled doors
+     */
+    private static int grow(final Dungeon dungeon, final int size) {
+        int next = Room.START_ID;
+        while (dungeon.getRoomCount() < size) {
+            dungeon.getRoom(next++).fillDoors();
+        }
+        return next;
+    }
+
+    private static void run(final int size, final boolean print) {
+        final Dungeon dungeon = createDungeon(new Random(0));
+        int next = grow(dungeon, size);
+        final int roomCount = dungeon.getRoomCount();
+        final Room from = dungeon.getRoom(roomCount - 1);
+        long checksum = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < DRAWS; i++) {
+            checksum += dungeon.getRandomGeneratedRoom(from).getId();
+        }
+        final long drawTime = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (int i = 0; i < FILLS; i++) {
+            dungeon.getRoom(next++).fillDoors();
+        }
+        final long fillTime = System.nanoTime() - start;
+        if (print) {
+            System.out.printf("%,12d | %,12d | %8.1f | %8.1f | %d%n", size, roomCount,
+                    (double)drawTime / DRAWS, (double)fillTime / FILLS, checksum % 10);
+        }
+    }
+
+    /**
+     * Runs the benchmark.
+     * @param args ignored
+     */
+    public static void main(String[] args) {
+        // warm up
+        for (int i = 0; i < 5; i++) {
+            run(10_000, false);
+        }
+        System.out.printf("%12s | %12s | %8s | %8s | %s%n", "size", "rooms", "ns/draw", "ns/fill", "checksum");
+        for (int size : SIZES) {
+            run(size, true);
+        }
+    }
+
+}
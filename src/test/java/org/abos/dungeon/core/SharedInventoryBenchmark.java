@@ -0,0 +1,123 @@
+package org.abos.dungeon.core;
+
+import org.abos.dungeon.core.entity.Item;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Benchmarks a {@link SharedInventory} against an {@link Inventory}, which synchronizes its changes,
+ * with 1 up to 64 threads pooling loot into the same inventory. This is no unit test, run {@link #main(String[])} manually.
+ * <p>
+ * Each thread adds and removes random items, and crafts now and then by a {@link Inventory.Transaction},
+ * which is prepared before and committed after the thread has looted once more, like crafting between two rooms.
+ * The inventory is big enough that most changes succeed. Besides the time per change, the share of the
+ * transactions that conflicted is printed.
+ */
+public class SharedInventoryBenchmark {
+
+    /**
+     * The thread counts to benchmark.
+     */
+    private static final int[] THREADS = {1, 2, 4, 8, 16, 32, 64};
+
+    /**
+     * How many changes all threads make together per run.
+     */
+    private static final int OPERATIONS = 4_000_000;
+
+    /**
+     * Every how many changes a thread crafts.
+     */
+    private static final int CRAFT_EVERY = 16;
+
+    private static long work(final Inventory inventory, final List<Item> items, final int operations, final long seed, final LongAdder conflicts) {
+        final SplittableRandom random = new SplittableRandom(seed);
+        long checksum = 0;
+        for (int i = 0; i < operations; i++) {
+            final Item item = items.get(random.nextInt(items.size()));
+            if (i % CRAFT_EVERY == 0) {
+                final Item output = items.get(random.nextInt(items.size()));
+                final Inventory.Transaction transaction = inventory.transaction().remove(item, 2).add(output, 1);
+                checksum += inventory.addItems(items.get(random.nextInt(items.size())), 1);
+                final Inventory.TransactionResult result = transaction.commit();
+                if (result == Inventory.TransactionResult.CONFLICT) {
+                    conflicts.increment();
+                }
+                checksum += result.ordinal();
+            }
+            else if (random.nextBoolean()) {
+                checksum += inventory.addItems(item, 1 + random.nextInt(3));
+            }
+            else {
+                checksum += inventory.removeItems(item, 1 + random.nextInt(3));
+            }
+        }
+        return checksum;
+    }
+
+    /**
+     * Runs the benchmark once.
+     * @return the nanoseconds per change and the share of conflicting transactions in percent
+     */
+    private static double[] run(final Supplier<Inventory> supplier, final List<Item> items, final int threads) throws Exception {
+        final Inventory inventory = supplier.get();
+        final LongAdder conflicts = new LongAdder();
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            final CountDownLatch start = new CountDownLatch(1);
+            final List<Future<Long>> futures = new ArrayList<>(threads);
+            for (int t = 0; t < threads; t++) {
+                final long seed = t;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    return work(inventory, items, OPERATIONS / threads, seed, conflicts);
+                }));
+            }
+            final long startTime = System.nanoTime();
+            start.countDown();
+            for (Future<Long> future : futures) {
+                future.get();
+            }
+            final double nanosPerChange = (double)(System.nanoTime() - startTime) / OPERATIONS;
+            return new double[] {nanosPerChange, 100.0 * conflicts.sum() * CRAFT_EVERY / OPERATIONS};
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Runs the benchmark.
+     * @param args ignored
+     * @throws Exception If a thread fails.
+     */
+    public static void main(String[] args) throws Exception {
+        Item.init();
+        final List<Item> items = new ArrayList<>();
+        Item.ORDINALS.forEach(items::add);
+        final int capacity = items.size() * 4;
+        final Supplier<Inventory> plain = () -> new Inventory(capacity, Inventory.DEFAULT_STACK_CAPACITY);
+        final Supplier<Inventory> shared = () -> new SharedInventory(capacity, Inventory.DEFAULT_STACK_CAPACITY);
+        // warm up
+        for (int i = 0; i < 3; i++) {
+            run(plain, items, 4);
+            run(shared, items, 4);
+        }
+        System.out.printf("%d CPUs%n", Runtime.getRuntime().availableProcessors());
+        System.out.printf("%8s | %12s | %12s | %16s | %16s%n", "threads", "ns/op plain", "ns/op shared", "conflicts plain", "conflicts shared");
+        for (int threads : THREADS) {
+            final double[] plainResult = run(plain, items, threads);
+            final double[] sharedResult = run(shared, items, threads);
+            System.out.printf("%8d | %12.1f | %12.1f | %15.1f%% | %15.1f%%%n", threads, plainResult[0], sharedResult[0], plainResult[1], sharedResult[1]);
+        }
+    }
+
+}
@@ -0,0 +1,237 @@
+package org.abos.dungeon.core;
+
+import org.abos.common.CompactInputStream;
+import org.abos.common.CompactOutputStream;
+import org.abos.dungeon.core.entity.Item;
+import org.abos.dungeon.core.entity.ItemStack;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Tests {@link Inventory}.
+ */
+public class TestInventory {
+
+    private static final List<Item> ITEMS = new ArrayList<>();
+
+    static {
+        Item.init();
+        Item.ORDINALS.getAlphabeticalOrder().forEach(ITEMS::add);
+    }
+
+    /**
+     * Tests that adding fills the partial stack first, then free slots, and loses the rest.
+     */
+    @Test
+    public void testAdd() {
+        final Inventory inventory = new Inventory(2, 5);
+        Assertions.assertEquals(3, inventory.addItems(ITEMS.get(0), 3));
+        Assertions.assertEquals(1, inventory.size());
+        Assertions.assertEquals(4, inventory.addItems(ITEMS.get(0), 4));
+        Assertions.assertEquals(2, inventory.size());
+        // 3 more fit into the partial stack, no slot is left
+        Assertions.assertEquals(3, inventory.addItems(ITEMS.get(0), 10));
+        Assertions.assertEquals(10, inventory.countAll(ITEMS.get(0)));
+        Assertions.assertFalse(inventory.addItem(ITEMS.get(1)));
+        Assertions.assertEquals(0, inventory.addItems(ITEMS.get(0), 0));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> inventory.addItems(ITEMS.get(0), -1));
+        Assertions.assertThrows(NullPointerException.class, () -> inventory.addItems(null, 1));
+        inventory.setLocked(true);
+        Assertions.assertThrows(IllegalStateException.class, () -> inventory.addItem(ITEMS.get(0)));
+    }
+
+    /**
+     * Tests that removing takes from the partial stack and only checks the stack index.
+     */
+    @Test
+    public void testRemove() {
+        final Inventory inventory = new Inventory(3, 5);
+        inventory.addItems(ITEMS.get(0), 7);
+        Assertions.assertFalse(inventory.removeItem(ITEMS.get(0), 2));
+        Assertions.assertFalse(inventory.removeItem(ITEMS.get(0), -1));
+        Assertions.assertFalse(inventory.removeItem(ITEMS.get(1), null));
+        Assertions.assertFalse(inventory.removeItem(null, null));
+        // the index of the full stack, still taken from the partial one
+        Assertions.assertTrue(inventory.removeItem(ITEMS.get(0), 0));
+        Assertions.assertEquals(List.of(new ItemStack(ITEMS.get(0), 5), new ItemStack(ITEMS.get(0), 1)), inventory.getItemView());
+        Assertions.assertEquals(1, inventory.removeItems(ITEMS.get(0), 1));
+        Assertions.assertEquals(1, inventory.size());
+        Assertions.assertEquals(5, inventory.removeItems(ITEMS.get(0), 9));
+        Assertions.assertTrue(inventory.isEmpty());
+        Assertions.assertEquals(0, inventory.removeItems(ITEMS.get(0), 1));
+        Assertions.assertEquals(0, inventory.removeItems(null, 1));
+    }
+
+    /**
+     * Tests increasing the capacities, which for stacks merges them.
+     */
+    @Test
+    public void testCapacities() {
+        final Inventory inventory = new Inventory(3, 2);
+        inventory.addItems(ITEMS.get(0), 3);
+        Assertions.assertEquals(2, inventory.addItems(ITEMS.get(1), 3));
+        Assertions.assertEquals(3, inventory.size());
+        Assertions.assertEquals(1, inventory.addItems(ITEMS.get(0), 2));
+        inventory.increaseStackCapacity();
+        Assertions.assertEquals(3, inventory.getStackCapacity());
+        Assertions.assertEquals(3, inventory.size());
+        Assertions.assertEquals(List.of(new ItemStack(ITEMS.get(0), 3), new ItemStack(ITEMS.get(0), 1), new ItemStack(ITEMS.get(1), 2)),
+                inventory.getItemView());
+        inventory.increaseStackCapacity();
+        Assertions.assertEquals(2, inventory.size());
+        Assertions.assertEquals(inventory.size(), inventory.countAll(Item.class));
+        inventory.increaseCapacity();
+        Assertions.assertEquals(4, inventory.getInventoryCapacity());
+        Assertions.assertEquals(8, inventory.addItems(ITEMS.get(2), 8));
+        Assertions.assertEquals(4, inventory.size());
+    }
+
+    /**
+     * Tests that transactions make all of their changes or none, unlike {@link Inventory#addAll(Iterable)} and {@link Inventory#removeAll(Iterable)}.
+     */
+    @Test
+    public void testTransactions() {
+        final Inventory inventory = new Inventory(2, 5);
+        inventory.addItems(ITEMS.get(0), 5);
+        inventory.addItems(ITEMS.get(1), 3);
+        final Inventory before = inventory.copy();
+        Assertions.assertEquals(Inventory.TransactionResult.MISSING_ITEMS,
+                inventory.transaction().remove(ITEMS.get(0), 1).remove(ITEMS.get(2), 1).commit());
+        Assertions.assertEquals(before, inventory);
+        Assertions.assertEquals(Inventory.TransactionResult.NO_SPACE,
+                inventory.transaction().remove(ITEMS.get(1), 1).add(ITEMS.get(2), 1).commit());
+        Assertions.assertEquals(before, inventory);
+        // the removal frees the slot for the addition
+        Assertions.assertEquals(Inventory.TransactionResult.COMMITTED,
+                inventory.transaction().remove(ITEMS.get(1), 3).add(ITEMS.get(2), 5).commit());
+        Assertions.assertEquals(List.of(new ItemStack(ITEMS.get(0), 5), new ItemStack(ITEMS.get(2), 5)), inventory.getItemView());
+        final Inventory.Transaction transaction = inventory.transaction().add(ITEMS.get(0), 0);
+        Assertions.assertEquals(Inventory.TransactionResult.COMMITTED, transaction.commit());
+        Assertions.assertThrows(IllegalStateException.class, transaction::commit);
+        // the batch methods change what they can
+        Assertions.assertFalse(inventory.removeAll(List.of(new ItemStack(ITEMS.get(0), 2), new ItemStack(ITEMS.get(1), 1))));
+        Assertions.assertEquals(3, inventory.countAll(ITEMS.get(0)));
+        Assertions.assertFalse(inventory.addAll(List.of(new ItemStack(ITEMS.get(0), 4))));
+        Assertions.assertEquals(5, inventory.countAll(ITEMS.get(0)));
+    }
+
+    /**
+     * Tests that copies share nothing that one of them could change.
+     */
+    @Test
+    public void testCopy() {
+        final Inventory inventory = new Inventory(4, 5);
+        inventory.addItems(ITEMS.get(0), 6);
+        final Inventory copy = inventory.copy();
+        Assertions.assertEquals(inventory, copy);
+        copy.addItems(ITEMS.get(1), 1);
+        inventory.removeItems(ITEMS.get(0), 6);
+        Assertions.assertEquals(List.of(new ItemStack(ITEMS.get(0), 5), new ItemStack(ITEMS.get(0), 1), new ItemStack(ITEMS.get(1), 1)),
+                copy.getItemView());
+        Assertions.assertTrue(inventory.isEmpty());
+        final Inventory second = copy.copy();
+        copy.increaseStackCapacity();
+        Assertions.assertEquals(3, second.size());
+        Assertions.assertEquals(2, copy.size());
+        Assertions.assertEquals(second.size(), second.countAll(Item.class));
+    }
+
+    /**
+     * Tests that the items are listed alphabetically, in the view with the full stacks before the partial one.
+     */
+    @Test
+    public void testOrder() {
+        final Inventory inventory = new Inventory(10, 4);
+        inventory.addItems(ITEMS.get(2), 5);
+        inventory.addItems(ITEMS.get(0), 1);
+        inventory.addItems(ITEMS.get(1), 4);
+        Assertions.assertEquals(List.of(ITEMS.get(0), ITEMS.get(1), ITEMS.get(2)), new ArrayList<>(inventory.getAllItems()));
+        Assertions.assertEquals(List.of(new ItemStack(ITEMS.get(0), 1), new ItemStack(ITEMS.get(1), 4),
+                new ItemStack(ITEMS.get(2), 4), new ItemStack(ITEMS.get(2), 1)), inventory.getItemView());
+        Assertions.assertSame(inventory.getItemView(), inventory.getItemView());
+        inventory.removeItems(ITEMS.get(1), 4);
+        Assertions.assertEquals(List.of(ITEMS.get(0), ITEMS.get(2)), new ArrayList<>(inventory.getAllItems()));
+        final List<Item> sorted = new ArrayList<>(ITEMS);
+        sorted.sort(Comparator.comparing(Item::getName));
+        Assertions.assertEquals(sorted, ITEMS);
+    }
+
+    /**
+     * Tests writing and reading inventories in both formats.
+     */
+    @Test
+    public void testSaveRoundTrip() throws IOException {
+        final Inventory inventory = new Inventory(6, 3);
+        inventory.addItems(ITEMS.get(0), 7);
+        inventory.addItems(ITEMS.get(3), 2);
+        inventory.increaseCapacity();
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        inventory.writeObject(new DataOutputStream(bytes));
+        final Inventory read = Inventory.readObject(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        Assertions.assertEquals(inventory, read);
+        Assertions.assertEquals(inventory.getItemView(), read.getItemView());
+        bytes.reset();
+        final CompactOutputStream cos = new CompactOutputStream(bytes);
+        inventory.writeCompact(cos);
+        cos.flush();
+        final CompactInputStream cis = new CompactInputStream(new ByteArrayInputStream(bytes.toByteArray()), cos.getStringTable());
+        Assertions.assertEquals(inventory, Inventory.readCompact(cis));
+    }
+
+    /**
+     * Tests that only the changed items are written as changes and that applying them restores the inventory.
+     */
+    @Test
+    public void testChangesRoundTrip() throws IOException {
+        final Inventory inventory = new Inventory(6, 3);
+        inventory.addItems(ITEMS.get(0), 7);
+        inventory.addItems(ITEMS.get(1), 2);
+        final Inventory saved = inventory.copy();
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Inventory.writeChanges(saved, inventory.copy(), new DataOutputStream(bytes));
+        Assertions.assertEquals(1, bytes.size());
+        inventory.removeItems(ITEMS.get(1), 2);
+        inventory.addItems(ITEMS.get(2), 4);
+        inventory.increaseStackCapacity();
+        bytes.reset();
+        Inventory.writeChanges(saved, inventory.copy(), new DataOutputStream(bytes));
+        final Inventory read = saved.copy();
+        read.readChanges(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        Assertions.assertEquals(inventory, read);
+        Assertions.assertEquals(inventory.size(), read.size());
+        Assertions.assertEquals(inventory.countAll(Item.class), read.countAll(Item.class));
+        // the copy the changes have been applied to still shares its counts with the saved one
+        Assertions.assertEquals(2, saved.countAll(ITEMS.get(1)));
+        Assertions.assertEquals(0, saved.countAll(ITEMS.get(2)));
+        Assertions.assertEquals(3, saved.getStackCapacity());
+    }
+
+    /**
+     * Tests that reading merges the stacks written for an item, whatever their layout.
+     */
+    @Test
+    public void testReadMergesStacks() throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream dos = new DataOutputStream(bytes);
+        dos.writeInt(2);
+        dos.writeInt(10);
+        dos.writeInt(1);
+        dos.writeUTF(ITEMS.get(0).getName());
+        // two partial stacks, as the old inventory could leave them
+        dos.writeInt(2);
+        dos.writeInt(3);
+        dos.writeInt(4);
+        final Inventory read = Inventory.readObject(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        Assertions.assertEquals(List.of(new ItemStack(ITEMS.get(0), 7)), read.getItemView());
+        Assertions.assertEquals(1, read.size());
+    }
+}
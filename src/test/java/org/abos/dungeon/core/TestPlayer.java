@@ -0,0 +1,139 @@
+package org.abos.dungeon.core;
+
+import org.abos.dungeon.core.crafting.Crafting;
+import org.abos.dungeon.core.crafting.CraftingInput;
+import org.abos.dungeon.core.crafting.CraftingOutput;
+import org.abos.dungeon.core.entity.Item;
+import org.abos.dungeon.core.entity.ItemStack;
+import org.abos.dungeon.core.entity.LivingEntity;
+import org.abos.dungeon.core.npc.AbstractNpc;
+import org.abos.dungeon.core.reward.DefaultRewardFactory;
+import org.abos.dungeon.core.task.DefaultTaskFactory;
+import org.abos.dungeon.core.task.Information;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Tests {@link Player}.
+ */
+public class TestPlayer {
+
+    static {
+        Item.init();
+        LivingEntity.init();
+        if (Crafting.RECIPES.isEmpty()) {
+            Crafting.init();
+        }
+    }
+
+    /**
+     * A player that selects the items it is given and remembers what it has been told.
+     */
+    private static class ScriptedPlayer extends AbstractNpc {
+
+        private final Deque<Item> selections = new ArrayDeque<>();
+
+        private final List<String> information = new ArrayList<>();
+
+        private final List<CraftingOutput> results = new ArrayList<>();
+
+        private ScriptedPlayer(final Inventory inventory) {
+            super(new Dungeon(new Random(0), new DefaultTaskFactory(new Random(0)), new DefaultRewardFactory(new Random(0))).getStartRoom(),
+                    inventory, new Random(0));
+        }
+
+        private void craft(final Item input1, final Item input2) {
+            selections.add(input1);
+            selections.add(input2);
+            craft();
+        }
+
+        @Override
+        protected Item selectItem(final String msg) {
+            return selections.poll();
+        }
+
+        @Override
+        protected Room selectDoor() {
+            return null;
+        }
+
+        @Override
+        protected Room selectRoom(final String msg) {
+            return null;
+        }
+
+        @Override
+        public void displayInformation(final Information information) {
+            this.information.add(information.getText());
+        }
+
+        @Override
+        protected void displayCraftingResult(final CraftingOutput output) {
+            results.add(output);
+        }
+    }
+
+    /**
+     * Returns a recipe with two different inputs and one output that is neither of them.
+     */
+    private static Map.Entry<CraftingInput, CraftingOutput> simpleRecipe() {
+        for (Map.Entry<CraftingInput, CraftingOutput> recipe : Crafting.RECIPES.entrySet()) {
+            final List<Item> inputs = new ArrayList<>(recipe.getKey().getAllItems());
+            final List<Item> outputs = new ArrayList<>(recipe.getValue().getAllItems());
+            if (inputs.size() == 2 && outputs.size() == 1 && !inputs.contains(outputs.get(0))) {
+                return recipe;
+            }
+        }
+        throw new AssertionError("No simple recipe found!");
+    }
+
+    /**
+     * Tests that crafting swaps the inputs for the outputs.
+     */
+    @Test
+    public void testCraft() {
+        final Map.Entry<CraftingInput, CraftingOutput> recipe = simpleRecipe();
+        final List<Item> inputs = new ArrayList<>(recipe.getKey().getAllItems());
+        final Item output = recipe.getValue().getAllItems().iterator().next();
+        final ScriptedPlayer player = new ScriptedPlayer(new Inventory(2, 1));
+        player.getInventory().addItem(inputs.get(0));
+        player.getInventory().addItem(inputs.get(1));
+        player.craft(inputs.get(1), inputs.get(0));
+        Assertions.assertEquals(List.of(recipe.getValue()), player.results);
+        Assertions.assertEquals(List.of(new ItemStack(output, 1)), player.getInventory().getItemView());
+        player.craft(inputs.get(0), inputs.get(1));
+        Assertions.assertEquals(List.of("You don't have these ingredients!"), player.information);
+        Assertions.assertEquals(List.of(new ItemStack(output, 1)), player.getInventory().getItemView());
+    }
+
+    /**
+     * Tests that crafting is refused if the outputs wouldn't fit, instead of losing them, and nothing changes.
+     */
+    @Test
+    public void testCraftWithoutSpace() {
+        final Map.Entry<CraftingInput, CraftingOutput> recipe = simpleRecipe();
+        final List<Item> inputs = new ArrayList<>(recipe.getKey().getAllItems());
+        // removing one of each input frees no slot
+        final ScriptedPlayer player = new ScriptedPlayer(new Inventory(2, 5));
+        player.getInventory().addItems(inputs.get(0), 3);
+        player.getInventory().addItems(inputs.get(1), 3);
+        final Inventory before = player.getInventory().copy();
+        player.craft(inputs.get(0), inputs.get(1));
+        Assertions.assertEquals(List.of("There is no space for the recipe outputs!"), player.information);
+        Assertions.assertTrue(player.results.isEmpty());
+        Assertions.assertEquals(before, player.getInventory());
+        player.getInventory().increaseCapacity();
+        player.craft(inputs.get(0), inputs.get(1));
+        Assertions.assertEquals(1, player.results.size());
+        Assertions.assertEquals(2, player.getInventory().countAll(inputs.get(0)));
+        Assertions.assertEquals(2, player.getInventory().countAll(inputs.get(1)));
+    }
+}
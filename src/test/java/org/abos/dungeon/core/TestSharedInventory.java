@@ -0,0 +1,203 @@
+package org.abos.dungeon.core;
+
+import org.abos.dungeon.core.entity.Item;
+import org.abos.dungeon.core.entity.ItemStack;
+import org.abos.dungeon.core.entity.Thing;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Tests {@link SharedInventory}.
+ */
+public class TestSharedInventory {
+
+    private static final int THREADS = 8;
+
+    private static final int OPERATIONS = 100_000;
+
+    private static final List<Item> ITEMS = new ArrayList<>();
+
+    static {
+        Item.init();
+        Item.ORDINALS.forEach(ITEMS::add);
+    }
+
+    /**
+     * Asserts the slots used by the specified inventory match its counts.
+     */
+    private static void assertConsistent(final Inventory inventory) {
+        int stacks = 0;
+        for (Item item : ITEMS) {
+            stacks += (inventory.countAll(item) + inventory.getStackCapacity() - 1) / inventory.getStackCapacity();
+        }
+        Assertions.assertEquals(stacks, inventory.size());
+        Assertions.assertEquals(stacks, inventory.countAll(Item.class));
+        Assertions.assertEquals(stacks, inventory.getItemView().size());
+        Assertions.assertTrue(inventory.size() <= inventory.getInventoryCapacity());
+    }
+
+    /**
+     * Runs the specified task on {@link #THREADS} threads at once, passing the number of the thread.
+     */
+    private static void runConcurrently(final ThreadTask task) throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                final int thread = t;
+                futures.add(executor.submit(() -> {
+                    task.run(thread);
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    private interface ThreadTask {
+        void run(int thread) throws Exception;
+    }
+
+    /**
+     * Tests that concurrent additions, removals, transactions and increases of the stack capacity
+     * neither lose items nor exceed the capacity, by keeping track of what each thread has changed.
+     */
+    @Test
+    public void testConcurrentChanges() throws Exception {
+        final SharedInventory inventory = new SharedInventory(12, 7);
+        final AtomicLongArray expected = new AtomicLongArray(ITEMS.size());
+        final AtomicBoolean overfull = new AtomicBoolean();
+        runConcurrently(thread -> {
+            final Random random = new Random(thread);
+            for (int i = 0; i < OPERATIONS; i++) {
+                final int ordinal = random.nextInt(5);
+                final Item item = ITEMS.get(ordinal);
+                final int amount = random.nextInt(9);
+                switch (random.nextInt(3)) {
+                    case 0 -> expected.addAndGet(ordinal, inventory.addItems(item, amount));
+                    case 1 -> expected.addAndGet(ordinal, -inventory.removeItems(item, amount));
+                    default -> {
+                        final int output = random.nextInt(5);
+                        Inventory.TransactionResult result;
+                        do {
+                            result = inventory.transaction().remove(item, amount % 4).add(ITEMS.get(output), 2).commit();
+                        } while (result == Inventory.TransactionResult.CONFLICT);
+                        if (result == Inventory.TransactionResult.COMMITTED) {
+                            expected.addAndGet(ordinal, -(amount % 4));
+                            expected.addAndGet(output, 2);
+                        }
+                    }
+                }
+                if (thread == 0 && i % (OPERATIONS / 10) == 0) {
+                    inventory.increaseStackCapacity();
+                }
+                if (inventory.size() > inventory.getInventoryCapacity()) {
+                    overfull.set(true);
+                }
+            }
+        });
+        Assertions.assertFalse(overfull.get());
+        for (int ordinal = 0; ordinal < ITEMS.size(); ordinal++) {
+            Assertions.assertEquals(expected.get(ordinal), inventory.countAll(ITEMS.get(ordinal)));
+        }
+        Assertions.assertEquals(17, inventory.getStackCapacity());
+        assertConsistent(inventory);
+    }
+
+    /**
+     * Tests replacing the contents while other threads keep changing them.
+     */
+    @Test
+    public void testConcurrentReplace() throws Exception {
+        final SharedInventory inventory = new SharedInventory(10, 5);
+        final Inventory small = new Inventory(4, 3);
+        small.addItems(ITEMS.get(0), 5);
+        final Inventory big = new Inventory(20, 10);
+        for (Item item : ITEMS) {
+            big.addItems(item, 11);
+        }
+        runConcurrently(thread -> {
+            final Random random = new Random(thread);
+            for (int i = 0; i < OPERATIONS; i++) {
+                if (thread == 0 && i % 1_000 == 0) {
+                    inventory.replaceWith(random.nextBoolean() ? small : big);
+                }
+                else if (random.nextBoolean()) {
+                    inventory.addItems(ITEMS.get(random.nextInt(ITEMS.size())), 1 + random.nextInt(4));
+                }
+                else {
+                    inventory.removeItems(ITEMS.get(random.nextInt(ITEMS.size())), 1 + random.nextInt(4));
+                }
+            }
+        });
+        assertConsistent(inventory);
+        inventory.replaceWith(big);
+        Assertions.assertEquals(big, inventory);
+        Assertions.assertEquals(inventory, big);
+        Assertions.assertEquals(big.hashCode(), inventory.hashCode());
+        assertConsistent(inventory);
+    }
+
+    /**
+     * Tests that transactions only conflict with changes of their own items, unlike the ones of plain inventories.
+     */
+    @Test
+    public void testTransactionConflicts() {
+        final SharedInventory shared = new SharedInventory(10, 10);
+        final Inventory plain = new Inventory(10, 10);
+        for (Inventory inventory : List.of(shared, plain)) {
+            inventory.addItems(ITEMS.get(0), 5);
+            final Inventory.Transaction transaction = inventory.transaction().remove(ITEMS.get(0), 2).add(ITEMS.get(1), 1);
+            inventory.addItems(ITEMS.get(2), 1);
+            Assertions.assertEquals(inventory == shared ? Inventory.TransactionResult.COMMITTED : Inventory.TransactionResult.CONFLICT, transaction.commit());
+            final Inventory.Transaction conflicting = inventory.transaction().remove(ITEMS.get(0), 2);
+            inventory.removeItems(ITEMS.get(0), 1);
+            Assertions.assertEquals(Inventory.TransactionResult.CONFLICT, conflicting.commit());
+        }
+        Assertions.assertEquals(2, shared.countAll(ITEMS.get(0)));
+        Assertions.assertEquals(1, shared.countAll(ITEMS.get(1)));
+        shared.increaseStackCapacity();
+        Assertions.assertEquals(Inventory.TransactionResult.COMMITTED, shared.transaction().remove(ITEMS.get(0), 2).commit());
+        final Inventory.Transaction stale = shared.transaction().remove(ITEMS.get(1), 1);
+        shared.increaseStackCapacity();
+        Assertions.assertEquals(Inventory.TransactionResult.CONFLICT, stale.commit());
+    }
+
+    /**
+     * Tests comparing shared and plain inventories in both directions.
+     */
+    @Test
+    public void testCompareWithPlain() {
+        final SharedInventory shared = new SharedInventory(10, 10);
+        final Inventory plain = new Inventory(10, 10);
+        shared.addItems(ITEMS.get(0), 3);
+        Assertions.assertFalse(plain.contains(shared));
+        Assertions.assertTrue(shared.contains(plain));
+        Assertions.assertNotEquals(plain, shared);
+        Assertions.assertNotEquals(shared, plain);
+        plain.addItems(ITEMS.get(0), 3);
+        Assertions.assertTrue(plain.contains(shared));
+        Assertions.assertEquals(plain, shared);
+        Assertions.assertEquals(shared, plain);
+        Assertions.assertEquals(plain.hashCode(), shared.hashCode());
+        shared.increaseCapacity();
+        Assertions.assertNotEquals(plain, shared);
+        Assertions.assertEquals(shared, shared.copy());
+        Assertions.assertEquals(1, shared.countAll(Thing.class));
+        Assertions.assertEquals(List.of(new ItemStack(ITEMS.get(0), 3)), shared.getItemView());
+    }
+}
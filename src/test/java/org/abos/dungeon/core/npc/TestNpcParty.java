@@ -0,0 +1,65 @@
+package org.abos.dungeon.core.npc;
+
+import org.abos.dungeon.core.Inventory;
+import org.abos.dungeon.core.SharedInventory;
+import org.abos.dungeon.core.crafting.Crafting;
+import org.abos.dungeon.core.entity.Item;
+import org.abos.dungeon.core.entity.LivingEntity;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.List;
+
+/**
+ * Tests {@link NpcParty}.
+ */
+public class TestNpcParty {
+
+    static {
+        Item.init();
+        LivingEntity.init();
+        if (Crafting.RECIPES.isEmpty()) {
+            Crafting.init();
+        }
+    }
+
+    /**
+     * Tests that a party pools its loot into the stash without exceeding it.
+     */
+    @Test
+    public void testExplore() throws InterruptedException {
+        final SharedInventory stash = new SharedInventory(20, 5);
+        final NpcParty party = NpcParty.ofRandomNpcs(4, stash, 42);
+        // the members talk a lot
+        final PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        final int steps;
+        try {
+            steps = party.explore(500);
+        }
+        finally {
+            System.setOut(out);
+        }
+        Assertions.assertEquals(4 * 500, steps);
+        Assertions.assertFalse(stash.isEmpty());
+        Assertions.assertTrue(stash.size() <= stash.getInventoryCapacity());
+        final Inventory copy = stash.copy();
+        Assertions.assertEquals(copy.size(), stash.size());
+        Assertions.assertEquals(copy, stash);
+    }
+
+    /**
+     * Tests that members have to use the stash and explore dungeons of their own.
+     */
+    @Test
+    public void testMembers() {
+        final SharedInventory stash = new SharedInventory(20, 5);
+        final NpcParty party = NpcParty.ofRandomNpcs(2, stash, 0);
+        final AbstractNpc member = party.getMembers().get(0);
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new NpcParty(stash, List.of()));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new NpcParty(stash, List.of(member, member)));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new NpcParty(new SharedInventory(20, 5), List.of(member)));
+    }
+}
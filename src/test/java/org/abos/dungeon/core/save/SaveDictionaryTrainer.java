@@ -0,0 +1,190 @@
+package org.abos.dungeon.core.save;
+
+import org.abos.dungeon.core.Dungeon;
+import org.abos.dungeon.core.Inventory;
+import org.abos.dungeon.core.Player;
+import org.abos.dungeon.core.crafting.Crafting;
+import org.abos.dungeon.core.entity.Item;
+import org.abos.dungeon.core.entity.LivingEntity;
+import org.abos.dungeon.core.npc.RandomNpc;
+import org.abos.dungeon.core.reward.DefaultRewardFactory;
+import org.abos.dungeon.core.task.DefaultTaskFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.Set;
+import java.util.zip.Deflater;
+
+/**
+ * Trains the preset dictionary of {@link CompressedSave} on the plain saves of games played by {@link RandomNpc random NPCs},
+ * which consist mostly of room records, question texts and item names. This is no unit test, run {@link #main(String[])} manually.
+ * <p>
+ * The dictionary is put together greedily from segments of the samples: the segment whose byte sequences are
+ * the most frequent among those not covered yet is picked next, until the dictionary is full.
+ * The best segments are put last, as they are the cheapest to refer to.
+ * <p>
+ * Changing the dictionary changes its ID, so saves compressed with the old dictionary can't be loaded anymore.
+ */
+public class SaveDictionaryTrainer {
+
+    /**
+     * The seeds of the sample games.
+     */
+    private static final long[] SEEDS = {11, 12, 13, 14, 15, 16};
+
+    /**
+     * How many rooms the NPC of each sample game enters.
+     */
+    private static final int STEPS = 2_000;
+
+    /**
+     * The size of the dictionary, the window size of {@link Deflater}.
+     */
+    private static final int DICTIONARY_SIZE = 1 << 15;
+
+    private static final int SEGMENT_SIZE = 32;
+
+    /**
+     * The length of the byte sequences counted.
+     */
+    private static final int GRAM_SIZE = 8;
+
+    private static final int GRAM_TABLE_BITS = 22;
+
+    private static byte[] sample(final long seed) throws IOException {
+        final Random random = new Random(seed);
+        final Dungeon dungeon = new Dungeon(random, new DefaultTaskFactory(random), new DefaultRewardFactory(random));
+        final Player player = new RandomNpc(dungeon.getStartRoom(), new Inventory(10, 10), random, true);
+        for (int i = 0; i < STEPS && player.getCurrentRoom() != null; i++) {
+            player.enterNextRoom();
+        }
+        final ByteArrayOutputStream data = new ByteArrayOutputStream();
+        final DataOutputStream dos = new DataOutputStream(data);
+        dungeon.writeObject(dos);
+        player.writeObject(dos);
+        return data.toByteArray();
+    }
+
+    private static int gram(final byte[] data, final int offset) {
+        long hash = 0;
+        for (int i = 0; i < GRAM_SIZE; i++) {
+            hash = hash * 0x100000001B3L + (data[offset + i] & 0xFF);
+        }
+        return (int)(hash ^ hash >>> 32) & ((1 << GRAM_TABLE_BITS) - 1);
+    }
+
+    private static int score(final byte[] data, final int offset, final int[] counts) {
+        int score = 0;
+        for (int i = offset; i <= offset + SEGMENT_SIZE - GRAM_SIZE; i++) {
+            score += Math.max(0, counts[gram(data, i)] - 1);
+        }
+        return score;
+    }
+
+    private record Segment(byte[] data, int offset, int score) {
+    }
+
+    private static byte[] train(final List<byte[]> samples) {
+        final int[] counts = new int[1 << GRAM_TABLE_BITS];
+        for (byte[] sample : samples) {
+            for (int i = 0; i <= sample.length - GRAM_SIZE; i++) {
+                counts[gram(sample, i)]++;
+            }
+        }
+        final PriorityQueue<Segment> queue = new PriorityQueue<>((s1, s2) -> Integer.compare(s2.score(), s1.score()));
+        final Set<ByteBuffer> seen = new HashSet<>();
+        for (byte[] sample : samples) {
+            for (int i = 0; i <= sample.length - SEGMENT_SIZE; i += SEGMENT_SIZE / 2) {
+                if (seen.add(ByteBuffer.wrap(sample, i, SEGMENT_SIZE).slice())) {
+                    queue.add(new Segment(sample, i, score(sample, i, counts)));
+                }
+            }
+        }
+        final List<Segment> picked = new ArrayList<>();
+        while (picked.size() < DICTIONARY_SIZE / SEGMENT_SIZE && !queue.isEmpty()) {
+            final Segment best = queue.poll();
+            final int score = score(best.data(), best.offset(), counts);
+            if (score < best.score()) {
+                // scored before some of its sequences were covered
+                queue.add(new Segment(best.data(), best.offset(), score));
+                continue;
+            }
+            picked.add(best);
+            for (int i = best.offset(); i <= best.offset() + SEGMENT_SIZE - GRAM_SIZE; i++) {
+                counts[gram(best.data(), i)] = 0;
+            }
+        }
+        final byte[] dictionary = new byte[picked.size() * SEGMENT_SIZE];
+        for (int i = 0; i < picked.size(); i++) {
+            final Segment segment = picked.get(i);
+            System.arraycopy(segment.data(), segment.offset(), dictionary, dictionary.length - (i + 1) * SEGMENT_SIZE, SEGMENT_SIZE);
+        }
+        return dictionary;
+    }
+
+    private static int compressedSize(final byte[] data, final byte[] dictionary) {
+        final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        if (dictionary != null) {
+            deflater.setDictionary(dictionary);
+        }
+        deflater.setInput(data);
+        deflater.finish();
+        final byte[] buffer = new byte[1 << 16];
+        int size = 0;
+        while (!deflater.finished()) {
+            size += deflater.deflate(buffer);
+        }
+        deflater.end();
+        return size;
+    }
+
+    /**
+     * Trains the dictionary and writes it.
+     * @param args the dictionary file, by default the resource in the source tree
+     * @throws IOException If an I/O exception occurs.
+     */
+    public static void main(String[] args) throws IOException {
+        final Path file = Path.of(args.length > 0 ? args[0] : "src/main/resources/" + CompressedSave.DICTIONARY_FILE_NAME);
+        Item.init();
+        LivingEntity.init();
+        Crafting.init();
+        // the NPCs talk a lot
+        final PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        final List<byte[]> samples = new ArrayList<>();
+        final byte[] test;
+        try {
+            for (long seed : SEEDS) {
+                samples.add(sample(seed));
+            }
+            // compared on a game that isn't trained on
+            test = sample(SEEDS[SEEDS.length - 1] + 1);
+        }
+        finally {
+            System.setOut(out);
+        }
+        final byte[] dictionary = train(samples);
+        Files.write(file, dictionary);
+        long plain = 0;
+        long withDictionary = 0;
+        for (int i = 0; i < test.length; i += CompressedSave.DEFAULT_BLOCK_SIZE) {
+            final byte[] block = Arrays.copyOfRange(test, i, Math.min(test.length, i + CompressedSave.DEFAULT_BLOCK_SIZE));
+            plain += compressedSize(block, null);
+            withDictionary += compressedSize(block, dictionary);
+        }
+        System.out.printf("Wrote %d bytes to %s%n", dictionary.length, file);
+        System.out.printf("Test save: %d bytes, %d compressed, %d compressed with dictionary%n", test.length, plain, withDictionary);
+    }
+}
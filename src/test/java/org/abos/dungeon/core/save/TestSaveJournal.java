@@ -0,0 +1,246 @@
+package org.abos.dungeon.core.save;
+
+import org.abos.dungeon.core.ArrayRoomStore;
+import org.abos.dungeon.core.Dungeon;
+import org.abos.dungeon.core.Inventory;
+import org.abos.dungeon.core.Player;
+import org.abos.dungeon.core.Room;
+import org.abos.dungeon.core.crafting.Crafting;
+import org.abos.dungeon.core.entity.Item;
+import org.abos.dungeon.core.entity.LivingEntity;
+import org.abos.dungeon.core.npc.RandomNpc;
+import org.abos.dungeon.core.reward.DefaultRewardFactory;
+import org.abos.dungeon.core.task.DefaultTaskFactory;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiFunction;
+
+/**
+ * Tests {@link SaveJournal}.
+ */
+public class TestSaveJournal {
+
+    private static final BiFunction<Room, Inventory, Player> CONSTRUCTOR = (room, inventory) -> new RandomNpc(room, inventory, new Random(1), true);
+
+    static {
+        Item.init();
+        LivingEntity.init();
+        if (Crafting.RECIPES.isEmpty()) {
+            Crafting.init();
+        }
+    }
+
+    @TempDir
+    Path directory;
+
+    private static Dungeon newDungeon(final Random random) {
+        return new Dungeon(random, new DefaultTaskFactory(random), new DefaultRewardFactory(random), new JournalingRoomStore(new ArrayRoomStore()));
+    }
+
+    private static SaveJournal load(final Path saveFile) throws IOException {
+        final Random random = new Random();
+        return SaveJournal.load(saveFile, random, new DefaultTaskFactory(random), new DefaultRewardFactory(random), CONSTRUCTOR);
+    }
+
+    /**
+     * Lets the player enter the specified number of rooms, committing the journal after each turn.
+     */
+    private static void play(final Player player, final SaveJournal journal, final int steps) throws IOException {
+        // the players talk a lot
+        final PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            for (int i = 0; i < steps && player.getCurrentRoom() != null; i++) {
+                player.enterNextRoom();
+                if (journal != null) {
+                    journal.commit();
+                }
+            }
+        }
+        finally {
+            System.setOut(out);
+        }
+    }
+
+    private static byte[] bytesOf(final Dungeon dungeon) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        dungeon.writeObject(new DataOutputStream(bytes));
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Asserts the game has been loaded as it has been played, the player is placed in the room it was about to enter.
+     */
+    private static void assertLoadedAsPlayed(final Dungeon dungeon, final Player player, final SaveJournal loaded) throws IOException {
+        Assertions.assertTrue(Arrays.equals(bytesOf(dungeon), bytesOf(loaded.getDungeon())));
+        Assertions.assertEquals(player.getHighestRoomNumber(), loaded.getPlayer().getHighestRoomNumber());
+        Assertions.assertEquals(player.getClearedTaskCount(), loaded.getPlayer().getClearedTaskCount());
+        Assertions.assertEquals(player.getMenagerieSize(), loaded.getPlayer().getMenagerieSize());
+        Assertions.assertEquals(player.getInventory(), loaded.getPlayer().getInventory());
+    }
+
+    /**
+     * Loads the specified save, plays on, saves the game anew like {@link org.abos.dungeon.core.Navigation} does and loads it again.
+     */
+    private void assertSavesLoadedGame(final Path saveFile, final Path newSaveFile) throws IOException {
+        final SaveJournal loaded = load(saveFile);
+        final Dungeon dungeon = loaded.getDungeon();
+        final Player player = loaded.getPlayer();
+        play(player, loaded, 50);
+        // most rooms of the snapshot haven't been read yet
+        loaded.releaseSnapshot();
+        loaded.close();
+        final SaveJournal saved = SaveJournal.create(newSaveFile, dungeon, player, CONSTRUCTOR);
+        play(player, saved, 50);
+        saved.close();
+        try (final SaveJournal reloaded = load(newSaveFile)) {
+            assertLoadedAsPlayed(dungeon, player, reloaded);
+        }
+    }
+
+    /**
+     * Tests saving a game loaded from an indexed save, to the same file and to another one.
+     */
+    @Test
+    public void testSaveLoadedIndexedGame() throws IOException {
+        final Random random = new Random(42);
+        final Dungeon dungeon = newDungeon(random);
+        final Player player = new RandomNpc(dungeon.getStartRoom(), new Inventory(10, 10), random, true);
+        play(player, null, 1_000);
+        final Path saveFile = directory.resolve("game.sav");
+        SaveJournal.create(saveFile, dungeon, player, CONSTRUCTOR).close();
+        assertSavesLoadedGame(saveFile, directory.resolve("other.sav"));
+        assertSavesLoadedGame(saveFile, saveFile);
+    }
+
+    /**
+     * Tests saving a game loaded from a plain save.
+     */
+    @Test
+    public void testSaveLoadedPlainGame() throws IOException {
+        final Random random = new Random(43);
+        final Dungeon dungeon = newDungeon(random);
+        final Player player = new RandomNpc(dungeon.getStartRoom(), new Inventory(10, 10), random, true);
+        play(player, null, 1_000);
+        final Path saveFile = directory.resolve("plain.sav");
+        try (final DataOutputStream dos = new DataOutputStream(Files.newOutputStream(saveFile))) {
+            dungeon.writeObject(dos);
+            player.writeObject(dos);
+        }
+        assertSavesLoadedGame(saveFile, saveFile);
+    }
+
+    /**
+     * Tests that loading leaves a save in an older format untouched and that the first compaction keeps it as a backup.
+     */
+    @Test
+    public void testUpgradeKeepsBackup() throws IOException {
+        final Random random = new Random(45);
+        final Dungeon dungeon = newDungeon(random);
+        final Player player = new RandomNpc(dungeon.getStartRoom(), new Inventory(10, 10), random, true);
+        play(player, null, 500);
+        final Path saveFile = directory.resolve("old.sav");
+        try (final DataOutputStream dos = new DataOutputStream(Files.newOutputStream(saveFile))) {
+            dungeon.writeObject(dos);
+            player.writeObject(dos);
+        }
+        final byte[] plain = Files.readAllBytes(saveFile);
+        try (final SaveJournal loaded = load(saveFile)) {
+            play(loaded.getPlayer(), loaded, 50);
+            loaded.flush();
+            Assertions.assertTrue(Arrays.equals(plain, Files.readAllBytes(saveFile)));
+            loaded.compact();
+            play(loaded.getPlayer(), loaded, 50);
+        }
+        Assertions.assertTrue(Arrays.equals(plain, Files.readAllBytes(directory.resolve("old.sav" + SaveJournal.BACKUP_SUFFIX))));
+        Assertions.assertTrue(IndexedSave.isIndexed(saveFile));
+    }
+
+    /**
+     * Tests that compressed saves stay compressed when compacted and load as played.
+     */
+    @Test
+    public void testCompressedSave() throws IOException {
+        final Random random = new Random(46);
+        final Dungeon dungeon = newDungeon(random);
+        final Player player = new RandomNpc(dungeon.getStartRoom(), new Inventory(10, 10), random, true);
+        play(player, null, 500);
+        final Path saveFile = directory.resolve("compressed.sav");
+        try (final SaveJournal journal = SaveJournal.create(saveFile, dungeon, player, CONSTRUCTOR, true)) {
+            play(player, journal, 100);
+            journal.compact();
+            play(player, journal, 100);
+        }
+        Assertions.assertTrue(CompressedSave.isCompressed(saveFile));
+        Assertions.assertFalse(Files.exists(directory.resolve("compressed.sav" + SaveJournal.BACKUP_SUFFIX)));
+        try (final SaveJournal loaded = load(saveFile)) {
+            assertLoadedAsPlayed(dungeon, player, loaded);
+            play(loaded.getPlayer(), loaded, 100);
+            loaded.compact();
+        }
+        Assertions.assertTrue(CompressedSave.isCompressed(saveFile));
+    }
+
+    /**
+     * Tests that the game can go on while the save is written and the save still contains the game at the time of saving.
+     */
+    @Test
+    public void testCreateKeepsGameAtSaving() throws IOException {
+        final Random random = new Random(47);
+        final Dungeon dungeon = newDungeon(random);
+        final Player player = new RandomNpc(dungeon.getStartRoom(), new Inventory(10, 10), random, true);
+        play(player, null, 1_000);
+        final byte[] saved = bytesOf(dungeon);
+        final int highestRoomNumber = player.getHighestRoomNumber();
+        final Path saveFile = directory.resolve("async.sav");
+        final SaveJournal journal = SaveJournal.create(saveFile, dungeon, player, CONSTRUCTOR);
+        // changed without a commit, so only the snapshot can be loaded
+        play(player, null, 200);
+        journal.close();
+        try (final SaveJournal loaded = load(saveFile)) {
+            Assertions.assertTrue(Arrays.equals(saved, bytesOf(loaded.getDungeon())));
+            Assertions.assertEquals(highestRoomNumber, loaded.getPlayer().getHighestRoomNumber());
+        }
+    }
+
+    /**
+     * Tests that compacted saves load as played and that players are only created on the thread using the journal.
+     */
+    @Test
+    public void testCompaction() throws IOException {
+        final Random random = new Random(44);
+        final Dungeon dungeon = newDungeon(random);
+        final Player player = new RandomNpc(dungeon.getStartRoom(), new Inventory(10, 10), random, true);
+        final Thread gameThread = Thread.currentThread();
+        final AtomicBoolean otherThread = new AtomicBoolean();
+        final BiFunction<Room, Inventory, Player> constructor = (room, inventory) -> {
+            otherThread.compareAndSet(false, Thread.currentThread() != gameThread);
+            return CONSTRUCTOR.apply(room, inventory);
+        };
+        final Path saveFile = directory.resolve("compacted.sav");
+        try (final SaveJournal journal = SaveJournal.create(saveFile, dungeon, player, constructor)) {
+            for (int i = 0; i < 3; i++) {
+                play(player, journal, 200);
+                journal.compact();
+            }
+            play(player, journal, 200);
+        }
+        Assertions.assertFalse(otherThread.get());
+        try (final SaveJournal loaded = load(saveFile)) {
+            assertLoadedAsPlayed(dungeon, player, loaded);
+            Assertions.assertEquals(player.getCurrentRoom().getId(), loaded.getPlayer().getCurrentRoom().getId());
+        }
+    }
+}
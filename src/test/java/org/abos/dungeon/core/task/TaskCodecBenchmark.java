@@ -0,0 +1,96 @@
+package org.abos.dungeon.core.task;
+
+import org.abos.common.CompactInputStream;
+import org.abos.common.CompactOutputStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Benchmarks writing and reading tasks through {@link TaskCodecs} in the plain and the compact format.
+ * This is no unit test, run {@link #main(String[])} manually.
+ */
+public class TaskCodecBenchmark {
+
+    /**
+     * How many tasks are written and read per round.
+     */
+    private static final int TASKS = 1_000_000;
+
+    /**
+     * How many measured rounds are run.
+     */
+    private static final int ROUNDS = 5;
+
+    /**
+     * Creates a mix of information and questions, like the {@link DefaultTaskFactory} does.
+     */
+    private static List<Task> createTasks(final Random random) {
+        final List<Task> tasks = new ArrayList<>(TASKS);
+        for (int i = 0; i < TASKS; i++) {
+            tasks.add(random.nextBoolean() ? new Information("Information " + random.nextInt(50)) : Question.getSimpleArithmQuestion(random, i % 1000));
+        }
+        return tasks;
+    }
+
+    private static long plainRoundTrip(final List<Task> tasks) throws IOException {
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        final DataOutputStream dos = new DataOutputStream(bos);
+        for (Task task : tasks) {
+            TaskCodecs.writeTask(dos, task);
+        }
+        final DataInputStream dis = new DataInputStream(new ByteArrayInputStream(bos.toByteArray()));
+        long checksum = 0;
+        for (int i = 0; i < tasks.size(); i++) {
+            checksum += TaskCodecs.readTask(dis).getClass().getSimpleName().length();
+        }
+        return checksum;
+    }
+
+    private static long compactRoundTrip(final List<Task> tasks) throws IOException {
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        final CompactOutputStream cos = new CompactOutputStream(bos);
+        for (Task task : tasks) {
+            TaskCodecs.writeCompactTask(cos, task);
+        }
+        cos.flush();
+        final CompactInputStream cis = new CompactInputStream(new ByteArrayInputStream(bos.toByteArray()), cos.getStringTable());
+        long checksum = 0;
+        for (int i = 0; i < tasks.size(); i++) {
+            checksum += TaskCodecs.readCompactTask(cis).getClass().getSimpleName().length();
+        }
+        return checksum;
+    }
+
+    /**
+     * Runs the benchmark.
+     * @param args ignored
+     * @throws IOException If an I/O exception occurs, which shouldn't happen.
+     */
+    public static void main(String[] args) throws IOException {
+        final List<Task> tasks = createTasks(new Random(0));
+        // warm up
+        for (int i = 0; i < 3; i++) {
+            plainRoundTrip(tasks);
+            compactRoundTrip(tasks);
+        }
+        System.out.printf("%5s | %12s | %14s | %s%n", "round", "ns/plain", "ns/compact", "checksum");
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            final long plainChecksum = plainRoundTrip(tasks);
+            final long plainTime = System.nanoTime() - start;
+            start = System.nanoTime();
+            final long compactChecksum = compactRoundTrip(tasks);
+            final long compactTime = System.nanoTime() - start;
+            System.out.printf("%5d | %12.1f | %14.1f | %d%n", round, (double)plainTime / TASKS, (double)compactTime / TASKS,
+                    (plainChecksum + compactChecksum) % 10);
+        }
+    }
+
+}